@@ -176,6 +176,14 @@ public abstract class JDBCTestCaseAdapter extends BaseTestCase
         return jdbcTestModule.getExecutedSQLStatements();
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#getExecutedSQLStatementCounts}
+     */
+    protected Map getExecutedSQLStatementCounts()
+    {
+        return jdbcTestModule.getExecutedSQLStatementCounts();
+    }
+
     /**
      * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#getExecutedSQLStatementParameter}
      * @deprecated
@@ -393,6 +401,14 @@ public abstract class JDBCTestCaseAdapter extends BaseTestCase
         jdbcTestModule.verifySQLStatementExecuted(sql);
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#verifySQLStatementExecuted(String, int)}
+     */
+    protected void verifySQLStatementExecuted(String sql, int number)
+    {
+        jdbcTestModule.verifySQLStatementExecuted(sql, number);
+    }
+
     /**
      * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#verifySQLStatementNotExecuted(String)}
      */
@@ -1,5 +1,8 @@
 package com.mockrunner.servlet;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.Filter;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -207,6 +210,30 @@ public abstract class ServletTestCaseAdapter extends HTMLOutputTestCase
         servletTestModule.setDoChain(doChain);
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#setAsyncExecutor}
+     */
+    protected void setAsyncExecutor(Executor executor)
+    {
+        servletTestModule.setAsyncExecutor(executor);
+    }
+
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#isAsyncStarted}
+     */
+    protected boolean isAsyncStarted()
+    {
+        return servletTestModule.isAsyncStarted();
+    }
+
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#awaitAsyncCompletion}
+     */
+    protected boolean awaitAsyncCompletion(long waitTime, TimeUnit unit)
+    {
+        return servletTestModule.awaitAsyncCompletion(waitTime, unit);
+    }
+
     /**
      * Delegates to {@link com.mockrunner.servlet.ServletTestModule#doFilter}
      */
@@ -231,6 +258,14 @@ public abstract class ServletTestCaseAdapter extends HTMLOutputTestCase
         return servletTestModule.getFilteredResponse();
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#createLoadDriver}
+     */
+    protected ServletLoadDriver createLoadDriver()
+    {
+        return servletTestModule.createLoadDriver();
+    }
+
     /**
      * Delegates to {@link com.mockrunner.servlet.ServletTestModule#clearOutput}
      */
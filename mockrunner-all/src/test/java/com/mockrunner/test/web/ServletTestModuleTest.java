@@ -8,6 +8,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -28,6 +29,9 @@ import org.junit.Test;
 import com.mockrunner.base.BaseTestCase;
 import com.mockrunner.base.VerifyFailedException;
 import com.mockrunner.mock.web.MockFilterChain;
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.servlet.ServletLoadDriver;
+import com.mockrunner.servlet.ServletLoadResult;
 import com.mockrunner.servlet.ServletTestModule;
 
 public class ServletTestModuleTest extends BaseTestCase
@@ -252,6 +256,83 @@ public class ServletTestModuleTest extends BaseTestCase
         assertFalse(filter3.wasDoFilterCalled());
     }
     
+    @Test
+    public void testLoadDriver()
+    {
+        AtomicInteger counter = new AtomicInteger();
+        getWebMockObjectFactory().getMockServletContext().setAttribute("counter", counter);
+        module.setServlet(new CountingServlet());
+        TestFilter filter = new TestFilter();
+        module.addFilter(filter);
+        module.setDoChain(true);
+        ServletLoadDriver driver = module.createLoadDriver();
+        driver.setThreadCount(4);
+        driver.setSessionPoolSize(3);
+        driver.setRequestPreparer(new ServletLoadDriver.RequestPreparer()
+        {
+            public void prepare(MockHttpServletRequest request, int requestNumber)
+            {
+                request.setupAddParameter("number", String.valueOf(requestNumber));
+            }
+        });
+        ServletLoadResult result = driver.run(100);
+        assertEquals(100, result.getNumberRequests());
+        assertEquals(1, result.getNumberFailures());
+        assertTrue(result.getFailures().get(0) instanceof ServletException);
+        assertEquals(99, counter.get());
+        assertTrue(filter.wasDoFilterCalled());
+        assertEquals(100, result.getResponses().size());
+        assertEquals("42", result.getResponses().get(42).getOutputStreamContent());
+        assertEquals(3, driver.getSessions().size());
+        assertSame(getWebMockObjectFactory().getMockServletContext(), driver.getSessions().get(0).getServletContext());
+        assertTrue(result.getThroughput() > 0);
+        assertTrue(result.getLatencyPercentileMicros(50) <= result.getLatencyPercentileMicros(99));
+        assertEquals(result.getMaximumLatencyMicros(), result.getLatencyPercentileMicros(100), 0);
+        module.setDoChain(false);
+        filter.reset();
+        result = module.createLoadDriver().run(10);
+        assertEquals(10, result.getNumberRequests());
+        assertFalse(filter.wasDoFilterCalled());
+    }
+    
+    @Test
+    public void testClearOutputAfterLargeOutput()
+    {
+        module.setServlet(new LargeOutputServlet());
+        module.doGet();
+        assertEquals(10000, module.getOutput().length());
+        module.clearOutput();
+        assertEquals("", module.getOutput());
+        module.doGet();
+        assertEquals(10000, module.getOutput().length());
+    }
+    
+    public static class LargeOutputServlet extends HttpServlet
+    {
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            for(int ii = 0; ii < 1000; ii++)
+            {
+                response.getWriter().print("0123456789");
+            }
+            response.flushBuffer();
+        }
+    }
+    
+    public static class CountingServlet extends HttpServlet
+    {
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            if("7".equals(request.getParameter("number")))
+            {
+                throw new ServletException("failed");
+            }
+            AtomicInteger counter = (AtomicInteger)request.getSession().getServletContext().getAttribute("counter");
+            if(null != counter) counter.incrementAndGet();
+            response.getWriter().print(request.getParameter("number"));
+        }
+    }
+    
     public static class SkipTestFilter implements Filter
     {
         public void init(FilterConfig config) throws ServletException
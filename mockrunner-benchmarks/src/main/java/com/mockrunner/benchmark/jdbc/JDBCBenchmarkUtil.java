@@ -0,0 +1,50 @@
+package com.mockrunner.benchmark.jdbc;
+
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Creates the registered SQL strings and the executed queries
+ * for the match modes of the benchmarks: <i>contains</i> (the default
+ * of the result set handlers), <i>exact</i> and <i>regex</i>, and
+ * the <code>ResultSet</code> objects of the benchmarks.
+ */
+class JDBCBenchmarkUtil
+{
+    private JDBCBenchmarkUtil()
+    {
+
+    }
+
+    static String getPattern(String matchMode, int number)
+    {
+        if("exact".equals(matchMode))
+        {
+            return getQuery(number);
+        }
+        if("regex".equals(matchMode))
+        {
+            return "select \\* from table" + number + " where .*";
+        }
+        return "from table" + number + " where";
+    }
+
+    static String getQuery(int number)
+    {
+        return "select * from table" + number + " where id = 1";
+    }
+
+    static MockResultSet createResultSet(int numberRows, boolean useColumnarStorage)
+    {
+        MockResultSet resultSet = new MockResultSet("benchmark");
+        resultSet.setUseColumnarStorage(useColumnarStorage);
+        resultSet.addColumn("id");
+        resultSet.addColumn("amount");
+        resultSet.addColumn("price");
+        resultSet.addColumn("name");
+        for(int ii = 0; ii < numberRows; ii++)
+        {
+            resultSet.addRow(new Object[] {ii, (long)ii * 1000, ii / 3.0, "name" + ii});
+        }
+        return resultSet;
+    }
+}
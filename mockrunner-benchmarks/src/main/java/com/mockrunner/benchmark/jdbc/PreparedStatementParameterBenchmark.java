@@ -0,0 +1,80 @@
+package com.mockrunner.benchmark.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mockrunner.jdbc.ExecutedStatementLog;
+import com.mockrunner.jdbc.PreparedStatementResultSetHandler;
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Measures <code>MockPreparedStatement.executeQuery</code> with
+ * <code>ResultSet</code> objects prepared for different parameters
+ * of the same SQL string in the {@link PreparedStatementResultSetHandler},
+ * i.e. the parameter matching of the handler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreparedStatementParameterBenchmark
+{
+    private final static String SQL = "select * from table where id = ? and name = ?";
+
+    @Param({"10", "1000", "100000"})
+    private int numberParameterSets;
+
+    @Param({"false", "true"})
+    private boolean exactMatchParameter;
+
+    private PreparedStatement statement;
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        MockConnection connection = new MockConnection();
+        PreparedStatementResultSetHandler handler = connection.getPreparedStatementResultSetHandler();
+        handler.setExecutedStatementLog(new ExecutedStatementLog.Counting());
+        handler.setExactMatchParameter(exactMatchParameter);
+        for(int ii = 0; ii < numberParameterSets; ii++)
+        {
+            MockResultSet resultSet = handler.createResultSet(String.valueOf(ii));
+            resultSet.addColumn("id", new Object[] {ii});
+            handler.prepareResultSet(SQL, resultSet, new Object[] {ii, "name" + ii});
+        }
+        statement = connection.prepareStatement(SQL);
+    }
+
+    @Benchmark
+    public ResultSet executeQueryFirst() throws SQLException
+    {
+        statement.setInt(1, 0);
+        statement.setString(2, "name0");
+        return statement.executeQuery();
+    }
+
+    @Benchmark
+    public ResultSet executeQueryLast() throws SQLException
+    {
+        statement.setInt(1, numberParameterSets - 1);
+        statement.setString(2, "name" + (numberParameterSets - 1));
+        return statement.executeQuery();
+    }
+}
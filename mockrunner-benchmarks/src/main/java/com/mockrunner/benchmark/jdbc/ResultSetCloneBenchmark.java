@@ -0,0 +1,58 @@
+package com.mockrunner.benchmark.jdbc;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Measures copying a {@link MockResultSet} with <code>clone</code>,
+ * which copies the data, and <code>copyOnWriteClone</code>, which
+ * is used by the statements and shares the data until it is modified.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSetCloneBenchmark
+{
+    @Param({"10", "1000", "100000"})
+    private int numberRows;
+
+    @Param({"false", "true"})
+    private boolean useColumnarStorage;
+
+    private MockResultSet resultSet;
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        resultSet = JDBCBenchmarkUtil.createResultSet(numberRows, useColumnarStorage);
+    }
+
+    @Benchmark
+    public Object cloneResultSet()
+    {
+        return resultSet.clone();
+    }
+
+    @Benchmark
+    public MockResultSet copyOnWriteClone()
+    {
+        return resultSet.copyOnWriteClone();
+    }
+}
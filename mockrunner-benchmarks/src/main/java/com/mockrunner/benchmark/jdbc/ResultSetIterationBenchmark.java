@@ -0,0 +1,72 @@
+package com.mockrunner.benchmark.jdbc;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Measures the iteration over a {@link MockResultSet} with
+ * <code>next</code> and the <code>getXxx</code> methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSetIterationBenchmark
+{
+    @Param({"10", "1000", "100000"})
+    private int numberRows;
+
+    @Param({"false", "true"})
+    private boolean useColumnarStorage;
+
+    private MockResultSet resultSet;
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        resultSet = JDBCBenchmarkUtil.createResultSet(numberRows, useColumnarStorage);
+    }
+
+    @Benchmark
+    public void iterateByIndex(Blackhole blackhole) throws SQLException
+    {
+        resultSet.beforeFirst();
+        while(resultSet.next())
+        {
+            blackhole.consume(resultSet.getInt(1));
+            blackhole.consume(resultSet.getLong(2));
+            blackhole.consume(resultSet.getDouble(3));
+            blackhole.consume(resultSet.getString(4));
+        }
+    }
+
+    @Benchmark
+    public void iterateByName(Blackhole blackhole) throws SQLException
+    {
+        resultSet.beforeFirst();
+        while(resultSet.next())
+        {
+            blackhole.consume(resultSet.getInt("id"));
+            blackhole.consume(resultSet.getLong("amount"));
+            blackhole.consume(resultSet.getDouble("price"));
+            blackhole.consume(resultSet.getString("name"));
+        }
+    }
+}
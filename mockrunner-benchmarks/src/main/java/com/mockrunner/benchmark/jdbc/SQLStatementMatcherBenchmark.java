@@ -0,0 +1,69 @@
+package com.mockrunner.benchmark.jdbc;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mockrunner.jdbc.SQLStatementMatcher;
+
+/**
+ * Measures the lookup of objects registered for SQL strings with
+ * {@link SQLStatementMatcher} like the verify methods of
+ * <code>JDBCTestModule</code> do it, in the <i>contains</i>, <i>exact</i>
+ * and <i>regex</i> match modes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SQLStatementMatcherBenchmark
+{
+    @Param({"10", "1000", "100000"})
+    private int numberStatements;
+
+    @Param({"contains", "exact", "regex"})
+    private String matchMode;
+
+    private SQLStatementMatcher matcher;
+    private Map<String, Integer> statements;
+    private String query;
+
+    @Setup
+    public void setUp()
+    {
+        matcher = new SQLStatementMatcher(false, "exact".equals(matchMode), "regex".equals(matchMode));
+        statements = new HashMap<String, Integer>();
+        for(int ii = 0; ii < numberStatements; ii++)
+        {
+            statements.put(JDBCBenchmarkUtil.getQuery(ii), ii);
+        }
+        query = JDBCBenchmarkUtil.getPattern(matchMode, numberStatements / 2);
+    }
+
+    @Benchmark
+    public List<Integer> getMatchingObjects()
+    {
+        return matcher.getMatchingObjects(statements, query, false);
+    }
+
+    @Benchmark
+    public boolean contains()
+    {
+        return matcher.contains(statements.keySet(), query, false);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mockrunner.benchmark.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mockrunner.jdbc.ExecutedStatementLog;
+import com.mockrunner.jdbc.StatementResultSetHandler;
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Measures <code>MockStatement.executeQuery</code>, i.e. the lookup of
+ * the prepared <code>ResultSet</code> in the {@link StatementResultSetHandler}
+ * and the copy of the <code>ResultSet</code> that is returned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementExecuteQueryBenchmark
+{
+    @Param({"10", "1000", "100000"})
+    private int numberStatements;
+
+    @Param({"contains", "exact", "regex"})
+    private String matchMode;
+
+    private Statement statement;
+    private String firstQuery;
+    private String lastQuery;
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        MockConnection connection = new MockConnection();
+        StatementResultSetHandler handler = connection.getStatementResultSetHandler();
+        handler.setExecutedStatementLog(new ExecutedStatementLog.Counting());
+        handler.setExactMatch("exact".equals(matchMode));
+        handler.setUseRegularExpressions("regex".equals(matchMode));
+        for(int ii = 0; ii < numberStatements; ii++)
+        {
+            MockResultSet resultSet = handler.createResultSet(String.valueOf(ii));
+            resultSet.addColumn("id", new Object[] {1, 2, 3});
+            resultSet.addColumn("name", new Object[] {"a", "b", "c"});
+            handler.prepareResultSet(JDBCBenchmarkUtil.getPattern(matchMode, ii), resultSet);
+        }
+        statement = connection.createStatement();
+        firstQuery = JDBCBenchmarkUtil.getQuery(0);
+        lastQuery = JDBCBenchmarkUtil.getQuery(numberStatements - 1);
+    }
+
+    @Benchmark
+    public ResultSet executeQueryFirst() throws SQLException
+    {
+        return statement.executeQuery(firstQuery);
+    }
+
+    @Benchmark
+    public ResultSet executeQueryLast() throws SQLException
+    {
+        return statement.executeQuery(lastQuery);
+    }
+
+    @Benchmark
+    public ResultSet executeQueryNotPrepared() throws SQLException
+    {
+        return statement.executeQuery("select * from unknown");
+    }
+}
@@ -1,6 +1,9 @@
 package com.mockrunner.test.util;
 
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,12 +13,12 @@ import junit.framework.TestCase;
 
 public class CaseAwareMapTest extends TestCase
 {
-    private CaseAwareMap map;
+    private CaseAwareMap<Object, Object> map;
     
     protected void setUp() throws Exception
     {
         super.setUp();
-        map = new CaseAwareMap();
+        map = new CaseAwareMap<Object, Object>();
     }
     
     public void testSetCaseSensitive()
@@ -53,7 +56,7 @@ public class CaseAwareMapTest extends TestCase
     
     public void testKeySet()
     {
-        Set set = map.keySet();
+        Set<Object> set = map.keySet();
         assertTrue(set.isEmpty());
         map.put("Test", "1");
         map.put("XyZ", "2");
@@ -84,7 +87,7 @@ public class CaseAwareMapTest extends TestCase
         assertEquals("def", map.put("TesT", "ghi"));
         assertEquals("ghi", map.put("test", "jkl"));
         assertEquals(1, map.size());
-        Set set = map.keySet();
+        Set<Object> set = map.keySet();
         assertEquals(1, set.size());
         assertTrue(set.contains("Test"));
         map.setCaseSensitive(true);
@@ -97,7 +100,7 @@ public class CaseAwareMapTest extends TestCase
     
     public void testPutAll()
     {
-        Map otherMap = new HashMap();
+        Map<Object, Object> otherMap = new HashMap<Object, Object>();
         otherMap.put("hello", "1");
         otherMap.put("heLLo", "2");
         otherMap.put(3, "3");
@@ -200,7 +203,7 @@ public class CaseAwareMapTest extends TestCase
         map.put("TEST", "2");
         map.put("TeSt", "3");
         assertEquals(1, map.entrySet().size());
-        Map.Entry entry = (Map.Entry)map.entrySet().iterator().next();
+        Map.Entry<Object, Object> entry = map.entrySet().iterator().next();
         assertEquals("Test", entry.getKey());
         assertEquals("3", entry.getValue());
         map.setCaseSensitive(true);
@@ -231,4 +234,83 @@ public class CaseAwareMapTest extends TestCase
         assertEquals("2", map.remove(2));
         assertNull(map.remove(2));
     }
-}
\ No newline at end of file
+    
+    public void testIterationOrder()
+    {
+        map.put("Content-Type", "1");
+        map.put(3, "2");
+        map.put("Accept", "3");
+        map.put("CONTENT-TYPE", "4");
+        map.put(null, "5");
+        Iterator<Map.Entry<Object, Object>> iterator = map.entrySet().iterator();
+        Map.Entry<Object, Object> entry = iterator.next();
+        assertEquals("Content-Type", entry.getKey());
+        assertEquals("4", entry.getValue());
+        assertEquals(3, iterator.next().getKey());
+        assertEquals("Accept", iterator.next().getKey());
+        entry = iterator.next();
+        assertNull(entry.getKey());
+        assertEquals("5", entry.getValue());
+        assertFalse(iterator.hasNext());
+        assertEquals("5", map.get(null));
+        assertTrue(map.containsKey(null));
+    }
+    
+    public void testIteratorRemove()
+    {
+        map.put("a", "1");
+        map.put("B", "2");
+        map.put("c", "3");
+        Iterator<Object> iterator = map.keySet().iterator();
+        while(iterator.hasNext())
+        {
+            if("b".equalsIgnoreCase((String)iterator.next())) iterator.remove();
+        }
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("b"));
+        assertEquals("3", map.get("C"));
+        Map.Entry<Object, Object> entry = map.entrySet().iterator().next();
+        entry.setValue("4");
+        assertEquals("4", map.get("A"));
+        iterator = map.keySet().iterator();
+        iterator.next();
+        map.put("d", "5");
+        try
+        {
+            iterator.next();
+            fail();
+        }
+        catch(ConcurrentModificationException exc)
+        {
+            //should throw exception
+        }
+    }
+    
+    public void testManyEntries()
+    {
+        for(int ii = 0; ii < 1000; ii++)
+        {
+            map.put("Key" + ii, ii);
+        }
+        for(int ii = 0; ii < 1000; ii += 2)
+        {
+            assertEquals(ii, map.remove("KEY" + ii));
+        }
+        for(int ii = 0; ii < 1000; ii++)
+        {
+            map.put("kEY" + ii, -ii);
+        }
+        assertEquals(1000, map.size());
+        assertEquals(-1, map.get("key1"));
+        assertEquals(0, map.get("KEY0"));
+        Set<Object> keys = map.keySet();
+        assertTrue(new ArrayList<Object>(keys).contains("Key1"));
+        assertTrue(new ArrayList<Object>(keys).contains("kEY0"));
+        assertFalse(new ArrayList<Object>(keys).contains("Key0"));
+        assertEquals("Key1", keys.iterator().next());
+        Map<Object, Object> otherMap = new HashMap<Object, Object>();
+        otherMap.putAll(map);
+        assertEquals(1000, otherMap.size());
+        assertEquals(otherMap, map);
+    }
+}
@@ -1,9 +1,12 @@
 package com.mockrunner.util.common;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -20,7 +23,7 @@ import java.util.Set;
  * <code>put("TEST", "2");</code>
  * <br>
  * <br>
- * the second <code>put</code> overwrites the value of the first one, 
+ * the second <code>put</code> overwrites the value of the first one,
  * because the keys are considered to be equal. With
  * <br>
  * <br>
@@ -33,37 +36,51 @@ import java.util.Set;
  * in the above case, you'll get <code>"test"</code>.
  * It is allowed to use non-strings as keys. In this case the <code>Map</code>
  * behaves like a usual <code>HashMap</code>.<br>
+ * The entries are kept in one table in the order they were added and
+ * are found with an open addressing index, whose hash and comparison
+ * ignore the case of string keys like <code>String.equalsIgnoreCase</code>.
+ * So lookups do not create upper case copies of the keys and replacing
+ * the value of an existing key does not search the other keys.
+ * Iterators return the entries in the order they were added.<br>
  * Note: This class is similar to a <code>TreeMap(String.CASE_INSENSITIVE_ORDER)</code>
  *       except that non-strings do not throw a <code>ClassCastException</code>
  *       and that keys are not sorted.
  */
-public class CaseAwareMap implements Map
+public class CaseAwareMap<K, V> extends AbstractMap<K, V>
 {
+    private final static int INITIAL_CAPACITY = 8;
+    private final static Object REMOVED = new Object();
+
     private boolean isCaseSensitive;
-    private Map caseInsensitiveMap;
-    private Map actualMap;
-     
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int[] index;
+    private int numberEntries;
+    private int size;
+    private int modCount;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
     public CaseAwareMap()
     {
         this(false);
     }
-    
+
     public CaseAwareMap(boolean isCaseSensitive)
     {
         this.isCaseSensitive = isCaseSensitive;
-        caseInsensitiveMap = new HashMap();
-        actualMap = new HashMap();
+        init();
     }
-    
+
     /**
      * Returns if keys are case sensitive. Defaults to <code>false</code>.
      * @return are keys case sensitive
-     */ 
+     */
     public boolean isCaseSensitive()
     {
         return isCaseSensitive;
     }
-    
+
     /**
      * Sets if keys are case sensitive.
      * If set to <code>true</code> this implementation behaves like
@@ -71,153 +88,353 @@ public class CaseAwareMap implements Map
      * when switching case sensitivity. It's not possible to switch
      * and keep the entries.
      * @param isCaseSensitive are keys case sensitive
-     */ 
+     */
     public void setCaseSensitive(boolean isCaseSensitive)
     {
         clear();
         this.isCaseSensitive = isCaseSensitive;
     }
-    
+
     public void clear()
     {
-        caseInsensitiveMap.clear();
-        actualMap.clear();
+        init();
+        modCount++;
     }
-    
+
     public boolean containsKey(Object key)
     {
-        Object compareKey = getCompareKey(key);
-        return getCompareMap().containsKey(compareKey);
+        return findEntry(key, hash(key)) >= 0;
     }
-    
+
     public boolean containsValue(Object value)
     {
-        return actualMap.containsValue(value);
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            if(keys[ii] != REMOVED && areValuesEqual(value, values[ii])) return true;
+        }
+        return false;
     }
-    
-    public Set entrySet()
+
+    public Set<Map.Entry<K, V>> entrySet()
     {
-        return actualMap.entrySet();
+        if(null == entrySet)
+        {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
     }
-    
-    public Object get(Object key)
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key)
     {
-        Object compareKey = getCompareKey(key);
-        return getCompareMap().get(compareKey);
+        int entry = findEntry(key, hash(key));
+        return (entry < 0) ? null : (V)values[entry];
     }
-    
+
     public boolean isEmpty()
     {
         return size() <= 0;
     }
-    
-    public Set keySet()
-    {
-        return actualMap.keySet();
-    }
-    
-    public Object put(Object key, Object value)
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value)
     {
-        return doConsistentModify(key, new ConsistentPut(value));
+        int hash = hash(key);
+        int entry = findEntry(key, hash);
+        if(entry >= 0)
+        {
+            V oldValue = (V)values[entry];
+            values[entry] = value;
+            return oldValue;
+        }
+        if(numberEntries == keys.length)
+        {
+            resize();
+        }
+        keys[numberEntries] = key;
+        values[numberEntries] = value;
+        hashes[numberEntries] = hash;
+        insertIntoIndex(hash, numberEntries);
+        numberEntries++;
+        size++;
+        modCount++;
+        return null;
     }
-    
-    public void putAll(Map map)
+
+    public void putAll(Map<? extends K, ? extends V> map)
     {
-        for (Object nextKey : map.keySet()) {
-            Object nextValue = map.get(nextKey);
-            put(nextKey, nextValue);
+        for(Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
         }
     }
-    
-    public Object remove(Object key)
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key)
     {
-        return doConsistentModify(key, new ConsistentRemove());
+        int entry = findEntry(key, hash(key));
+        if(entry < 0) return null;
+        V oldValue = (V)values[entry];
+        removeEntry(entry);
+        return oldValue;
     }
-    
+
     public int size()
     {
-        return actualMap.size();
+        return size;
     }
-    
-    public Collection values()
-    {
-        return actualMap.values();
-    }
-    
-    private boolean areKeysEquals(Object actualKey, Object compareKey)
+
+    private void init()
     {
-        if(null == actualKey && null == compareKey) return true;
-        if(null == actualKey) return false;
-        if(null == compareKey) return false;
-        Object actualCompareKey = getCompareKey(actualKey);
-        return compareKey.equals(actualCompareKey);
+        keys = new Object[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        index = new int[INITIAL_CAPACITY * 2];
+        numberEntries = 0;
+        size = 0;
     }
-    
-    private boolean isStringKey(Object key)
+
+    /**
+     * Returns the position of the entry with the key in the table
+     * of entries or <code>-1</code>. The index contains the position
+     * plus one, <code>0</code> marks a free slot. Slots of removed entries
+     * stay occupied until the index is rebuilt, so they don't interrupt
+     * the probe sequence of other keys.
+     */
+    private int findEntry(Object key, int hash)
     {
-        return (null != key) && (key instanceof String);
+        int mask = index.length - 1;
+        for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+        {
+            int entry = index[slot] - 1;
+            if(entry < 0) return -1;
+            if(hashes[entry] == hash && keys[entry] != REMOVED && areKeysEqual(key, keys[entry])) return entry;
+        }
     }
-    
-    private Object getCompareKey(Object key)
+
+    private void insertIntoIndex(int hash, int entry)
     {
-        if(isCaseSensitive || !isStringKey(key))
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while(index[slot] != 0)
         {
-            return key;
+            slot = (slot + 1) & mask;
         }
-        return ((String)key).toUpperCase();
+        index[slot] = entry + 1;
+    }
+
+    private void removeEntry(int entry)
+    {
+        keys[entry] = REMOVED;
+        values[entry] = null;
+        size--;
+        modCount++;
     }
-    
-    private Map getCompareMap()
+
+    /**
+     * Removes the removed entries from the table and rebuilds the index.
+     * The table grows, if more than half of the entries are in use.
+     */
+    private void resize()
     {
-        if(isCaseSensitive)
+        int capacity = (size >= keys.length / 2) ? keys.length * 2 : keys.length;
+        Object[] newKeys = new Object[capacity];
+        Object[] newValues = new Object[capacity];
+        int[] newHashes = new int[capacity];
+        int position = 0;
+        for(int ii = 0; ii < numberEntries; ii++)
         {
-            return actualMap;
+            if(keys[ii] == REMOVED) continue;
+            newKeys[position] = keys[ii];
+            newValues[position] = values[ii];
+            newHashes[position] = hashes[ii];
+            position++;
+        }
+        keys = newKeys;
+        values = newValues;
+        hashes = newHashes;
+        numberEntries = position;
+        if(index.length < capacity * 2)
+        {
+            index = new int[capacity * 2];
+        }
+        else
+        {
+            Arrays.fill(index, 0);
+        }
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            insertIntoIndex(hashes[ii], ii);
         }
-        return caseInsensitiveMap;
     }
-    
-    private Object doConsistentModify(Object key, ConsistentModify modifier)
+
+    private int hash(Object key)
     {
-        Object compareKey = getCompareKey(key);
-        if(!caseInsensitiveMap.containsKey(compareKey))
+        int hash;
+        if(null == key)
         {
-            return modifier.modify(key, compareKey);
+            hash = 0;
         }
-        for (Object actualKey : actualMap.keySet()) {
-            if (areKeysEquals(actualKey, compareKey)) {
-                return modifier.modify(actualKey, compareKey);
+        else if(isCaseSensitive || !(key instanceof String))
+        {
+            hash = key.hashCode();
+        }
+        else
+        {
+            String string = (String)key;
+            hash = 0;
+            for(int ii = 0; ii < string.length(); ii++)
+            {
+                hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(string.charAt(ii)));
             }
         }
-        return null;
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean areKeysEqual(Object key, Object actualKey)
+    {
+        if(key == actualKey) return true;
+        if(null == key || null == actualKey) return false;
+        if(!isCaseSensitive && (key instanceof String) && (actualKey instanceof String))
+        {
+            return ((String)key).equalsIgnoreCase((String)actualKey);
+        }
+        return key.equals(actualKey);
     }
-    
-    private interface ConsistentModify
+
+    private static boolean areValuesEqual(Object value, Object actualValue)
     {
-        Object modify(Object key1, Object key2);
+        if(null == value) return null == actualValue;
+        return value.equals(actualValue);
     }
-    
-    private class ConsistentRemove implements ConsistentModify
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>>
     {
-        public Object modify(Object key1, Object key2)
+        public Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public boolean contains(Object object)
+        {
+            if(!(object instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>)object;
+            int position = findEntry(entry.getKey(), hash(entry.getKey()));
+            return position >= 0 && areValuesEqual(entry.getValue(), values[position]);
+        }
+
+        public boolean remove(Object object)
         {
-            actualMap.remove(key1);
-            return caseInsensitiveMap.remove(key2);
+            if(!contains(object)) return false;
+            CaseAwareMap.this.remove(((Map.Entry<?, ?>)object).getKey());
+            return true;
+        }
+
+        public void clear()
+        {
+            CaseAwareMap.this.clear();
         }
     }
-    
-    private class ConsistentPut implements ConsistentModify
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>>
     {
-        private Object value;
-        
-        public ConsistentPut(Object value)
+        private Object[] iteratedKeys = keys;
+        private int next = 0;
+        private int current = -1;
+        private int expectedModCount = modCount;
+
+        public boolean hasNext()
         {
-            this.value = value;
+            while(next < numberEntries && iteratedKeys[next] == REMOVED)
+            {
+                next++;
+            }
+            return next < numberEntries;
         }
-        
-        public Object modify(Object key1, Object key2)
+
+        public Map.Entry<K, V> next()
+        {
+            checkForComodification();
+            if(!hasNext()) throw new NoSuchElementException();
+            current = next++;
+            return new Entry(current);
+        }
+
+        public void remove()
+        {
+            if(current < 0) throw new IllegalStateException();
+            checkForComodification();
+            removeEntry(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification()
+        {
+            if(modCount != expectedModCount || iteratedKeys != keys)
+            {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private class Entry implements Map.Entry<K, V>
+    {
+        private final int position;
+        private final Object[] entryKeys = keys;
+        private final Object[] entryValues = values;
+
+        private Entry(int position)
+        {
+            this.position = position;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K getKey()
+        {
+            return (K)entryKeys[position];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue()
+        {
+            return (V)entryValues[position];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V value)
+        {
+            if(entryKeys != keys || keys[position] == REMOVED)
+            {
+                throw new IllegalStateException("entry was removed");
+            }
+            V oldValue = (V)values[position];
+            values[position] = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object object)
+        {
+            if(!(object instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>)object;
+            return areValuesEqual(getKey(), other.getKey()) && areValuesEqual(getValue(), other.getValue());
+        }
+
+        public int hashCode()
+        {
+            Object key = getKey();
+            Object value = getValue();
+            return (null == key ? 0 : key.hashCode()) ^ (null == value ? 0 : value.hashCode());
+        }
+
+        public String toString()
         {
-            actualMap.put(key1, value);
-            return caseInsensitiveMap.put(key2, value);
+            return getKey() + "=" + getValue();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package com.mockrunner.util.regexp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Factory that caches the {@link PatternMatcher} instances created by
+ * another factory, so the same pattern is compiled only once.
+ * By default, all instances share one cache with at most
+ * {@link #DEFAULT_MAXIMUM_SIZE} entries, where the least recently used
+ * matchers are discarded first. The cache key consists of the delegate
+ * factory and the pattern, so the delegate factories should implement
+ * <code>equals</code> and <code>hashCode</code> based on their settings
+ * (like the factories of this package do) to share the cached matchers.
+ * This class is thread safe, provided that the matchers created by the
+ * delegate factory are.
+ */
+public class CachingPatternMatcherFactory implements PatternMatcher.Factory {
+   public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+   private static final Cache sharedCache = new Cache(DEFAULT_MAXIMUM_SIZE);
+
+   private final PatternMatcher.Factory delegate;
+   private final Cache cache;
+
+   public CachingPatternMatcherFactory(PatternMatcher.Factory delegate) {
+      this.delegate = delegate;
+      this.cache = sharedCache;
+   }
+
+   /**
+    * Creates a factory with its own cache.
+    * @param delegate the factory that compiles the patterns
+    * @param maximumSize the maximum number of cached matchers
+    */
+   public CachingPatternMatcherFactory(PatternMatcher.Factory delegate, int maximumSize) {
+      this.delegate = delegate;
+      this.cache = new Cache(maximumSize);
+   }
+
+   /**
+    * Returns a caching factory for the specified factory. Returns
+    * the specified factory itself, if it is already caching.
+    * @param factory the factory
+    * @return the caching factory
+    */
+   public static PatternMatcher.Factory wrap(PatternMatcher.Factory factory) {
+      if (factory instanceof CachingPatternMatcherFactory) return factory;
+      return new CachingPatternMatcherFactory(factory);
+   }
+
+   /**
+    * Clears the cache shared by all instances created with
+    * {@link #CachingPatternMatcherFactory(PatternMatcher.Factory)}.
+    */
+   public static void clearSharedCache() {
+      sharedCache.clear();
+   }
+
+   public PatternMatcher create(String pattern) {
+      Key key = new Key(delegate, pattern);
+      PatternMatcher matcher = cache.get(key);
+      if (matcher == null) {
+         // compile outside the lock, creating a matcher twice is harmless
+         matcher = delegate.create(pattern);
+         cache.put(key, matcher);
+      }
+      return matcher;
+   }
+
+   @Override
+   public int hashCode() {
+      return delegate.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj) {
+      return obj instanceof CachingPatternMatcherFactory && delegate.equals(((CachingPatternMatcherFactory) obj).delegate);
+   }
+
+   private static class Cache {
+      private final Map<Key, PatternMatcher> map;
+
+      private Cache(final int maximumSize) {
+         this.map = new LinkedHashMap<Key, PatternMatcher>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PatternMatcher> eldest) {
+               return size() > maximumSize;
+            }
+         };
+      }
+
+      private synchronized PatternMatcher get(Key key) {
+         return map.get(key);
+      }
+
+      private synchronized void put(Key key, PatternMatcher matcher) {
+         map.put(key, matcher);
+      }
+
+      private synchronized void clear() {
+         map.clear();
+      }
+   }
+
+   private static class Key {
+      private final PatternMatcher.Factory factory;
+      private final String pattern;
+
+      private Key(PatternMatcher.Factory factory, String pattern) {
+         this.factory = factory;
+         this.pattern = pattern;
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * factory.hashCode() + pattern.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (!(obj instanceof Key)) return false;
+         Key other = (Key) obj;
+         return pattern.equals(other.pattern) && factory.equals(other.factory);
+      }
+   }
+}
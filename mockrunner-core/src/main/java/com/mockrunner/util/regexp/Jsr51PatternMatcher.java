@@ -7,9 +7,11 @@ import java.util.regex.Pattern;
  */
 public class Jsr51PatternMatcher extends PatternMatcher.Base {
    private final Pattern pattern;
+   private final boolean caseSensitive;
 
    public Jsr51PatternMatcher(String pattern, boolean caseSensitive) {
       super(pattern);
+      this.caseSensitive = caseSensitive;
       this.pattern = Pattern.compile(pattern, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
    }
 
@@ -17,6 +19,10 @@ public class Jsr51PatternMatcher extends PatternMatcher.Base {
       return "JSR-51";
    }
 
+   public boolean isCaseSensitive() {
+      return caseSensitive;
+   }
+
    public boolean matches(String string) {
       return pattern.matcher(string).matches();
    }
@@ -31,5 +37,15 @@ public class Jsr51PatternMatcher extends PatternMatcher.Base {
       public PatternMatcher create(String pattern) {
          return new Jsr51PatternMatcher(pattern, caseSensitive);
       }
+
+      @Override
+      public int hashCode() {
+         return caseSensitive ? 1 : 0;
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         return obj instanceof Factory && caseSensitive == ((Factory) obj).caseSensitive;
+      }
    }
 }
@@ -10,9 +10,11 @@ import org.apache.oro.text.regex.Perl5Matcher;
  */
 public class Perl5PatternMatcher extends PatternMatcher.Base {
    private final Pattern pattern;
+   private final boolean caseSensitive;
 
    public Perl5PatternMatcher(String pattern, boolean caseSensitive) {
       super(pattern);
+      this.caseSensitive = caseSensitive;
       try {
          this.pattern = new Perl5Compiler().compile(pattern,
                caseSensitive ? Perl5Compiler.DEFAULT_MASK : Perl5Compiler.CASE_INSENSITIVE_MASK);
@@ -25,6 +27,10 @@ public class Perl5PatternMatcher extends PatternMatcher.Base {
       return "Perl5";
    }
 
+   public boolean isCaseSensitive() {
+      return caseSensitive;
+   }
+
    public boolean matches(String string) {
       return (new Perl5Matcher().matches(string, pattern));
    }
@@ -39,5 +45,15 @@ public class Perl5PatternMatcher extends PatternMatcher.Base {
       public PatternMatcher create(String pattern) {
          return new Perl5PatternMatcher(pattern, caseSensitive);
       }
+
+      @Override
+      public int hashCode() {
+         return caseSensitive ? 1 : 0;
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         return obj instanceof Factory && caseSensitive == ((Factory) obj).caseSensitive;
+      }
    }
 }
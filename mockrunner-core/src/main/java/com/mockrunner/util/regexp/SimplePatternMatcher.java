@@ -21,6 +21,14 @@ public class SimplePatternMatcher extends PatternMatcher.Base {
       return "equals";
    }
 
+   public boolean isCaseSensitive() {
+      return caseSensitive;
+   }
+
+   public boolean isExactMatch() {
+      return exactMatch;
+   }
+
    public boolean matches(String string) {
       if (exactMatch) {
          if (caseSensitive) {
@@ -48,5 +56,17 @@ public class SimplePatternMatcher extends PatternMatcher.Base {
       public PatternMatcher create(String pattern) {
          return new SimplePatternMatcher(pattern, caseSensitive, exactMatch);
       }
+
+      @Override
+      public int hashCode() {
+         return (caseSensitive ? 1 : 0) + (exactMatch ? 2 : 0);
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (!(obj instanceof Factory)) return false;
+         Factory other = (Factory) obj;
+         return caseSensitive == other.caseSensitive && exactMatch == other.exactMatch;
+      }
    }
 }
@@ -18,10 +18,10 @@ public abstract class AbstractOutParameterResultSetHandler extends AbstractParam
     private boolean mustRegisterOutParameters = false;
     private MockParameterMap globalOutParameter = null;
     private final Map<String, MockParameterMap> outParameterForStatement = new TreeMap<String, MockParameterMap>();
-    private final Map<PatternMatcher, MockParameterMap> outParameterForStatementCompiled = new TreeMap<PatternMatcher, MockParameterMap>();
+    private final Map<PatternMatcher, MockParameterMap> outParameterForStatementCompiled = new PatternMatcherIndex<MockParameterMap>(new TreeMap<PatternMatcher, MockParameterMap>());
     private final Map<String, List<ParameterWrapper<MockParameterMap>>> outParameterForStatementParameters = new TreeMap<String, List<ParameterWrapper<MockParameterMap>>>();
     private final Map<PatternMatcher, List<ParameterWrapper<MockParameterMap>>> outParameterForStatementParametersCompiled
-          = new HashMap<PatternMatcher, List<ParameterWrapper<MockParameterMap>>>();
+          = new PatternMatcherIndex<List<ParameterWrapper<MockParameterMap>>>(new HashMap<PatternMatcher, List<ParameterWrapper<MockParameterMap>>>());
 
     @Override
     protected void onPatternMatcherFactoryChanged() {
@@ -96,7 +96,7 @@ public abstract class AbstractOutParameterResultSetHandler extends AbstractParam
     /**
      * Clears the out parameters.
      */
-    public void clearOutParameter()
+    public synchronized void clearOutParameter()
     {
         outParameterForStatement.clear();
         outParameterForStatementCompiled.clear();
@@ -131,7 +131,7 @@ public abstract class AbstractOutParameterResultSetHandler extends AbstractParam
      * @param sql the SQL string
      * @param outParameters the out parameter <code>Map</code>
      */
-    public void prepareOutParameter(String sql, MockParameterMap outParameters)
+    public synchronized void prepareOutParameter(String sql, MockParameterMap outParameters)
     {
         MockParameterMap mockParameterMap = new MockParameterMap(outParameters);
         outParameterForStatement.put(sql, mockParameterMap);
@@ -200,19 +200,19 @@ public abstract class AbstractOutParameterResultSetHandler extends AbstractParam
      * @param outParameters the corresponding out parameter <code>Map</code>
      * @param parameters the parameters
      */
-    public void prepareOutParameter(String sql, MockParameterMap outParameters, MockParameterMap parameters)
+    public synchronized void prepareOutParameter(String sql, MockParameterMap outParameters, MockParameterMap parameters)
     {
         List<ParameterWrapper<MockParameterMap>> list = getListFromMapForSQLStatement(sql, outParameterForStatementParameters);
         list.add(new ParameterWrapper<MockParameterMap>(new MockParameterMap(outParameters), new MockParameterMap(parameters)));
         outParameterForStatementParametersCompiled.put(getPatternMatcherFactory().create(sql), list);
     }
     
-    public void removeOutParameter(String sql){
+    public synchronized void removeOutParameter(String sql){
         outParameterForStatement.remove(sql);
         outParameterForStatementCompiled.remove(getPatternMatcherFactory().create(sql));
     }
 
-    public void removeOutParameter(String sql, MockParameterMap parameters){
+    public synchronized void removeOutParameter(String sql, MockParameterMap parameters){
         removeMatchingParameterWrapper(sql, parameters, outParameterForStatementParameters, exactMatchParameter);
     }
     
@@ -3,10 +3,8 @@ package com.mockrunner.jdbc;
 import com.mockrunner.mock.jdbc.MockParameterMap;
 import java.sql.SQLException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import com.mockrunner.mock.jdbc.MockResultSet;
 
@@ -22,46 +20,43 @@ public abstract class AbstractParameterResultSetHandler extends AbstractResultSe
 //    private final Map<String, List<ParameterWrapper<Integer[]>>> updateCountForStatement = new TreeMap<String, List<ParameterWrapper<Integer[]>>>();
 //    private final Map<String, List<ParameterWrapper<SQLException>>> throwsSQLException = new TreeMap<String, List<ParameterWrapper<SQLException>>>();
 //    private final Map<String, List<ParameterWrapper<MockResultSet>>> generatedKeysForStatement = new TreeMap<String, List<ParameterWrapper<MockResultSet>>>();
-	private final Map<String, ParameterSets> executedStatementParameters = new TreeMap<String, ParameterSets>();
     
 	/**
 	 * Collects all SQL strings that were executed.
+	 * The {@link ExecutedStatementLog} decides whether the
+	 * parameter sets are retained.
 	 * @param sql the SQL string
 	 * @param parameters a copy of the corresponding parameter map
 	 */
 	public void addParameterMapForExecutedStatement(String sql, MockParameterMap parameters)
 	{
-		if(null != parameters)
-		{
-			if(null == executedStatementParameters.get(sql))
-			{
-				executedStatementParameters.put(sql, new ParameterSets(sql));
-			}
-			ParameterSets sets = executedStatementParameters.get(sql);
-			sets.addParameterSet(parameters);
-		}
+		getExecutedStatementLog().addParameterSet(sql, parameters);
 	}
 	
 	/**
 	 * Returns the <code>ParameterSets</code> for a specified
 	 * SQL string.
+	 * If the {@link ExecutedStatementLog} does not retain all parameter sets,
+	 * only the retained parameter sets are returned.
 	 * @param sql the SQL string
 	 * @return the <code>Map</code> of parameters
 	 */
 	public ParameterSets getParametersForExecutedStatement(String sql)
 	{
-		return executedStatementParameters.get(sql);
+		return getExecutedStatementLog().getParameterSets().get(sql);
 	}
 	
 	/**
 	 * Returns the <code>Map</code> of executed SQL strings.
 	 * Each string maps to the corresponding {@link ParameterSets}
 	 * object.
+	 * If the {@link ExecutedStatementLog} does not retain all parameter sets,
+	 * only the retained parameter sets are returned.
 	 * @return the <code>Map</code> of parameters
 	 */
 	public Map<String, ParameterSets> getExecutedStatementParameterMap()
 	{
-		return Collections.unmodifiableMap(executedStatementParameters);
+		return getExecutedStatementLog().getParameterSets();
 	}
     
     /**
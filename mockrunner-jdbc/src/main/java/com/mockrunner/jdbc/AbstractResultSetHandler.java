@@ -5,6 +5,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -26,6 +28,8 @@ import com.mockrunner.util.regexp.PatternMatcher;
  * of the <code>ResultSet</code> to identify it.
  * The <code>ResultSet</code> objects returned by {@link #getReturnedResultSets}
  * are actually the instances the executed statements returned.
+ * If statements are executed by multiple threads, the
+ * {@link #setConcurrentMode concurrent mode} should be enabled.
  */
 public abstract class AbstractResultSetHandler
 {
@@ -38,19 +42,21 @@ public abstract class AbstractResultSetHandler
     private MockResultSet[] globalResultSets;
     private Integer[] globalUpdateCounts;
     private final Map<String, Boolean> returnsResultSetMap = new TreeMap<String, Boolean>();
-    private final Map<PatternMatcher, Boolean> returnsResultSetMapCompiled = new HashMap<PatternMatcher, Boolean>();
+    private final Map<PatternMatcher, Boolean> returnsResultSetMapCompiled = new PatternMatcherIndex<Boolean>(new HashMap<PatternMatcher, Boolean>());
     private MockResultSet globalGeneratedKeys;
-    private final List<String> executedStatements = new ArrayList<String>();
-    private final List<MockResultSet[]> returnedResultSets = new ArrayList<MockResultSet[]>();
+    private volatile ExecutedStatementLog executedStatementLog = new ExecutedStatementLog.Unbounded();
+    private volatile boolean concurrentMode = false;
+    private volatile int registrationCount;
+    private volatile Map<PatternMatcherIndex<?>, Snapshot> snapshots = Collections.emptyMap();
     
     private final Map<String, List<ParameterWrapper<MockResultSet[]>>> resultSetsForStatement = new TreeMap<String, List<ParameterWrapper<MockResultSet[]>>>();
-    private final Map<PatternMatcher, List<ParameterWrapper<MockResultSet[]>>> resultSetsForStatementCompiled = new HashMap<PatternMatcher, List<ParameterWrapper<MockResultSet[]>>>();
+    private final Map<PatternMatcher, List<ParameterWrapper<MockResultSet[]>>> resultSetsForStatementCompiled = new PatternMatcherIndex<List<ParameterWrapper<MockResultSet[]>>>(new HashMap<PatternMatcher, List<ParameterWrapper<MockResultSet[]>>>());
     private final Map<String, List<ParameterWrapper<Integer[]>>> updateCountForStatement = new TreeMap<String, List<ParameterWrapper<Integer[]>>>();
-    private final Map<PatternMatcher, List<ParameterWrapper<Integer[]>>> updateCountForStatementCompiled = new HashMap<PatternMatcher, List<ParameterWrapper<Integer[]>>>();
+    private final Map<PatternMatcher, List<ParameterWrapper<Integer[]>>> updateCountForStatementCompiled = new PatternMatcherIndex<List<ParameterWrapper<Integer[]>>>(new HashMap<PatternMatcher, List<ParameterWrapper<Integer[]>>>());
     private final Map<String, List<ParameterWrapper<SQLException>>> throwsSQLException = new TreeMap<String, List<ParameterWrapper<SQLException>>>();
-    private final Map<PatternMatcher, List<ParameterWrapper<SQLException>>> throwsSQLExceptionCompiled = new HashMap<PatternMatcher, List<ParameterWrapper<SQLException>>>();
+    private final Map<PatternMatcher, List<ParameterWrapper<SQLException>>> throwsSQLExceptionCompiled = new PatternMatcherIndex<List<ParameterWrapper<SQLException>>>(new HashMap<PatternMatcher, List<ParameterWrapper<SQLException>>>());
     private final Map<String, List<ParameterWrapper<MockResultSet>>> generatedKeysForStatement = new TreeMap<String, List<ParameterWrapper<MockResultSet>>>();
-    private final Map<PatternMatcher, List<ParameterWrapper<MockResultSet>>> generatedKeysForStatementCompiled = new HashMap<PatternMatcher, List<ParameterWrapper<MockResultSet>>>();
+    private final Map<PatternMatcher, List<ParameterWrapper<MockResultSet>>> generatedKeysForStatementCompiled = new PatternMatcherIndex<List<ParameterWrapper<MockResultSet>>>(new HashMap<PatternMatcher, List<ParameterWrapper<MockResultSet>>>());
 
     /**
      * Creates a new <code>ResultSet</code> with a
@@ -122,7 +128,7 @@ public abstract class AbstractResultSetHandler
      * methods.
      * @param caseSensitive enable or disable case sensitivity
      */
-    public void setCaseSensitive(boolean caseSensitive)
+    public synchronized void setCaseSensitive(boolean caseSensitive)
     {
         this.caseSensitive = caseSensitive;
         resetPatternMatcherFactory();
@@ -147,7 +153,7 @@ public abstract class AbstractResultSetHandler
      * methods.
      * @param exactMatch enable or disable exact matching
      */
-    public void setExactMatch(boolean exactMatch)
+    public synchronized void setExactMatch(boolean exactMatch)
     {
         this.exactMatch = exactMatch;
         resetPatternMatcherFactory();
@@ -167,7 +173,7 @@ public abstract class AbstractResultSetHandler
      * methods.
      * @param useRegularExpressions should regular expressions be used
      */
-    public void setUseRegularExpressions(boolean useRegularExpressions)
+    public synchronized void setUseRegularExpressions(boolean useRegularExpressions)
     {
         this.useRegularExpressions = useRegularExpressions;
         resetPatternMatcherFactory();
@@ -180,7 +186,7 @@ public abstract class AbstractResultSetHandler
     * is set, the custom factory is discarded.
     * @param factory The factory that provides pattern interprets.
     */
-    public void setPatternMatcherFactory(PatternMatcher.Factory factory) {
+    public synchronized void setPatternMatcherFactory(PatternMatcher.Factory factory) {
         this.patternMatcherFactory = factory;
         onPatternMatcherFactoryChanged();
     }
@@ -192,12 +198,12 @@ public abstract class AbstractResultSetHandler
         return patternMatcherFactory;
     }
 
-    protected void resetPatternMatcherFactory() {
+    protected synchronized void resetPatternMatcherFactory() {
         this.patternMatcherFactory = PatternMatcher.Factories.from(caseSensitive, exactMatch, useRegularExpressions);
         onPatternMatcherFactoryChanged();
     }
 
-    protected void onPatternMatcherFactoryChanged() {
+    protected synchronized void onPatternMatcherFactoryChanged() {
         recompile(returnsResultSetMap, returnsResultSetMapCompiled);
         recompile(resultSetsForStatement, resultSetsForStatementCompiled);
         recompile(updateCountForStatement, updateCountForStatementCompiled);
@@ -218,13 +224,44 @@ public abstract class AbstractResultSetHandler
         this.continueProcessingOnBatchFailure = continueProcessingOnBatchFailure;
     }
     
+    /**
+     * Set if statements are executed by multiple threads concurrently.
+     * Defaults to <code>false</code>.
+     * The logs of executed statements and returned result sets can always be
+     * written and read by multiple threads without locking. The prepared
+     * result sets, update counts and exceptions are modified under the
+     * lock of this handler. If the concurrent mode is enabled, executing
+     * statements does not read them directly, but reads an immutable snapshot,
+     * which is created on the first lookup after a modification. So executing
+     * threads never lock, as long as nothing is prepared concurrently. If the
+     * concurrent mode is disabled, the lookups read the prepared objects
+     * directly, which is faster, if the preparations change frequently,
+     * but not thread safe.
+     * @param concurrentMode enable or disable the concurrent mode
+     */
+    public synchronized void setConcurrentMode(boolean concurrentMode)
+    {
+        this.concurrentMode = concurrentMode;
+        snapshots = Collections.emptyMap();
+    }
+    
+    /**
+     * Returns if the concurrent mode is enabled.
+     * See {@link #setConcurrentMode}.
+     * @return <code>true</code> if the concurrent mode is enabled
+     */
+    public boolean isConcurrentMode()
+    {
+        return concurrentMode;
+    }
+    
     /**
      * Collects all SQL strings that were executed.
      * @param sql the SQL string
      */
     public void addExecutedStatement(String sql)
     {
-		executedStatements.add(sql);
+        executedStatementLog.addStatement(sql);
     }
     
     /**
@@ -234,9 +271,21 @@ public abstract class AbstractResultSetHandler
      * @param resultSet the <code>ResultSet</code>
      */
     public void addReturnedResultSet(MockResultSet resultSet)
+    {
+        addReturnedResultSet(null, resultSet);
+    }
+    
+    /**
+     * Collects all <code>ResultSet</code> objects that were returned by
+     * a <code>Statement</code>, <code>PreparedStatement</code> or
+     * <code>CallableStatement</code> along with the executed SQL string.
+     * @param sql the executed SQL string
+     * @param resultSet the <code>ResultSet</code>
+     */
+    public void addReturnedResultSet(String sql, MockResultSet resultSet)
     {
         if(null == resultSet) return;
-        returnedResultSets.add(new MockResultSet[]{resultSet});
+        executedStatementLog.addResultSets(sql, new MockResultSet[]{resultSet});
     }
     
     /**
@@ -247,18 +296,79 @@ public abstract class AbstractResultSetHandler
      * @param resultSets the <code>ResultSet[]</code>
      */
     public void addReturnedResultSets(MockResultSet[] resultSets)
+    {
+        addReturnedResultSets(null, resultSets);
+    }
+    
+    /**
+     * Collects all <code>ResultSet[]</code> objects that were returned by
+     * a <code>Statement</code>, <code>PreparedStatement</code> or
+     * <code>CallableStatement</code> along with the executed SQL string.
+     * Called if a statement returns multiple result sets.
+     * @param sql the executed SQL string
+     * @param resultSets the <code>ResultSet[]</code>
+     */
+    public void addReturnedResultSets(String sql, MockResultSet[] resultSets)
     {
         if(null == resultSets) return;
-        returnedResultSets.add(resultSets);
+        executedStatementLog.addResultSets(sql, resultSets);
+    }
+    
+    /**
+     * Sets the {@link ExecutedStatementLog} that records the executed
+     * SQL strings, the returned <code>ResultSet</code> objects and the
+     * parameter sets of prepared statements.
+     * Defaults to {@link ExecutedStatementLog.Unbounded}, which retains
+     * everything. The statements recorded by the previous log are discarded.
+     * @param executedStatementLog the {@link ExecutedStatementLog}
+     */
+    public void setExecutedStatementLog(ExecutedStatementLog executedStatementLog)
+    {
+        this.executedStatementLog = executedStatementLog;
+    }
+    
+    /**
+     * Returns the {@link ExecutedStatementLog}.
+     * See {@link #setExecutedStatementLog}.
+     * @return the {@link ExecutedStatementLog}
+     */
+    public ExecutedStatementLog getExecutedStatementLog()
+    {
+        return executedStatementLog;
     }
     
     /**
      * Returns the <code>List</code> of all executed SQL strings.
+     * If the {@link ExecutedStatementLog} does not retain all statements,
+     * only the retained statements are returned.
      * @return the <code>List</code> of executed SQL strings
      */
     public List<String> getExecutedStatements()
     {
-        return Collections.unmodifiableList(executedStatements);
+        return executedStatementLog.getStatements();
+    }
+    
+    /**
+     * Returns the number of executions of each executed SQL string.
+     * Covers all executed statements, even if the {@link ExecutedStatementLog}
+     * does not retain them.
+     * @return the <code>Map</code> of execution counts
+     */
+    public Map<String, Long> getExecutedStatementCounts()
+    {
+        return executedStatementLog.getStatementCounts();
+    }
+    
+    /**
+     * Returns the histogram of the row counts of the returned
+     * <code>ResultSet</code> objects for each executed SQL string.
+     * Covers all returned result sets, even if the {@link ExecutedStatementLog}
+     * does not retain them.
+     * @return the <code>Map</code> of {@link RowCountHistogram} objects
+     */
+    public Map<String, RowCountHistogram> getReturnedRowCountHistograms()
+    {
+        return executedStatementLog.getRowCountHistograms();
     }
     
     /**
@@ -269,17 +379,19 @@ public abstract class AbstractResultSetHandler
      * the full array of <code>ResultSet</code> objects that were prepared, even
      * if {@link com.mockrunner.mock.jdbc.MockStatement#getMoreResults()} was
      * not called for all the result sets.
+     * If the {@link ExecutedStatementLog} does not retain all result sets,
+     * only the retained result sets are returned.
      * @return the <code>List</code> of returned <code>ResultSet</code> or <code>ResultSet[]</code> objects
      */
     public List<MockResultSet[]> getReturnedResultSets()
     {
-        return Collections.unmodifiableList(returnedResultSets);
+        return executedStatementLog.getResultSets();
     }
     
     /**
      * Clears all prepared <code>ResultSet</code> objects.
      */
-    public void clearResultSets()
+    public synchronized void clearResultSets()
     {
         resultSetsForStatement.clear();
         resultSetsForStatementCompiled.clear();
@@ -288,7 +400,7 @@ public abstract class AbstractResultSetHandler
     /**
      * Clears all prepared update counts.
      */
-    public void clearUpdateCounts()
+    public synchronized void clearUpdateCounts()
     {
         updateCountForStatement.clear();
         updateCountForStatementCompiled.clear();
@@ -298,7 +410,7 @@ public abstract class AbstractResultSetHandler
      * Clears the definitions if statements return
      * <code>ResultSet</code> objects or update counts.
      */
-    public void clearReturnsResultSet()
+    public synchronized void clearReturnsResultSet()
     {
         returnsResultSetMap.clear();
         returnsResultSetMapCompiled.clear();
@@ -307,7 +419,7 @@ public abstract class AbstractResultSetHandler
     /**
      * Clears the list of statements that should throw an exception.
      */
-    public void clearThrowsSQLException()
+    public synchronized void clearThrowsSQLException()
     {
         throwsSQLException.clear();
         throwsSQLExceptionCompiled.clear();
@@ -316,7 +428,7 @@ public abstract class AbstractResultSetHandler
     /**
      * Clears the list of statements that return generated keys.
      */
-    public void clearGeneratedKeys()
+    public synchronized void clearGeneratedKeys()
     {
         generatedKeysForStatement.clear();
         generatedKeysForStatementCompiled.clear();
@@ -712,7 +824,7 @@ public abstract class AbstractResultSetHandler
         prepareResultSet(sql, resultSet, new MockParameterMap());
     }
 
-    protected void prepareResultSet(String sql, MockResultSet resultSet, MockParameterMap parameters)
+    protected synchronized void prepareResultSet(String sql, MockResultSet resultSet, MockParameterMap parameters)
     {
         List<ParameterWrapper<MockResultSet[]>> list = getListFromMapForSQLStatement(sql, resultSetsForStatement);
         list.add(new ParameterWrapper<MockResultSet[]>(new MockResultSet[]{resultSet}, new MockParameterMap(parameters)));
@@ -733,7 +845,7 @@ public abstract class AbstractResultSetHandler
         prepareResultSets(sql, resultSets, new MockParameterMap());
     }
 
-    protected void prepareResultSets(String sql, MockResultSet[] resultSets, MockParameterMap parameters)
+    protected synchronized void prepareResultSets(String sql, MockResultSet[] resultSets, MockParameterMap parameters)
     {
         List<ParameterWrapper<MockResultSet[]>> list = getListFromMapForSQLStatement(sql, resultSetsForStatement);
         list.add(new ParameterWrapper<MockResultSet[]>(resultSets.clone(), new MockParameterMap(parameters)));
@@ -771,7 +883,7 @@ public abstract class AbstractResultSetHandler
         prepareUpdateCount(sql, updateCount, new MockParameterMap());
     }
     
-    protected void prepareUpdateCount(String sql, int updateCount, MockParameterMap parameters)
+    protected synchronized void prepareUpdateCount(String sql, int updateCount, MockParameterMap parameters)
     {
         List<ParameterWrapper<Integer[]>> list = getListFromMapForSQLStatement(sql, updateCountForStatement);
         list.add(new ParameterWrapper<Integer[]>(new Integer[]{updateCount}, new MockParameterMap(parameters)));
@@ -792,7 +904,7 @@ public abstract class AbstractResultSetHandler
        prepareUpdateCounts(sql, updateCounts, new MockParameterMap());
     }
     
-    public void prepareUpdateCounts(String sql, Integer[] updateCounts, MockParameterMap parameters)
+    public synchronized void prepareUpdateCounts(String sql, Integer[] updateCounts, MockParameterMap parameters)
     {
         List<ParameterWrapper<Integer[]>> list = getListFromMapForSQLStatement(sql, updateCountForStatement);
         list.add(new ParameterWrapper<Integer[]>(updateCounts.clone(), new MockParameterMap(parameters)));
@@ -830,7 +942,7 @@ public abstract class AbstractResultSetHandler
         prepareGeneratedKeys(sql, generatedKeysResult, new MockParameterMap());
     }
 
-    protected void prepareGeneratedKeys(String sql, MockResultSet generatedKeysResult, MockParameterMap parameters)
+    protected synchronized void prepareGeneratedKeys(String sql, MockResultSet generatedKeysResult, MockParameterMap parameters)
     {
         List<ParameterWrapper<MockResultSet>> list = getListFromMapForSQLStatement(sql, generatedKeysForStatement);
         list.add(new ParameterWrapper<MockResultSet>(generatedKeysResult, new MockParameterMap(parameters)));
@@ -857,7 +969,7 @@ public abstract class AbstractResultSetHandler
      * @param sql the SQL string
      * @param returnsResultSet specify if the SQL string returns a <code>ResultSet</code>
      */
-    public void prepareReturnsResultSet(String sql, boolean returnsResultSet)
+    public synchronized void prepareReturnsResultSet(String sql, boolean returnsResultSet)
     {
         returnsResultSetMap.put(sql, returnsResultSet);
         returnsResultSetMapCompiled.put(patternMatcherFactory.create(sql), returnsResultSet);
@@ -899,7 +1011,7 @@ public abstract class AbstractResultSetHandler
         prepareThrowsSQLException(sql, exc, new MockParameterMap());
     }
     
-    protected void prepareThrowsSQLException(String sql, SQLException exc, MockParameterMap parameters)
+    protected synchronized void prepareThrowsSQLException(String sql, SQLException exc, MockParameterMap parameters)
     {
         List<ParameterWrapper<SQLException>> list = getListFromMapForSQLStatement(sql, throwsSQLException);
         list.add(new ParameterWrapper<SQLException>(exc, new MockParameterMap(parameters)));
@@ -946,7 +1058,7 @@ public abstract class AbstractResultSetHandler
      * Given a SQL string, remove the associated entry from the resultSetsForStatement TreeMap
      * @param sql The SQL string associated with the resultset
      */
-    public void removeAllResultSet(String sql) {
+    public synchronized void removeAllResultSet(String sql) {
     	  resultSetsForStatement.remove(sql);
         resultSetsForStatementCompiled.remove(patternMatcherFactory.create(sql));
     }
@@ -955,7 +1067,7 @@ public abstract class AbstractResultSetHandler
      * Remove the throws mock for the specified SQL string.
      * @param sql The SQL string which identifies the conditions under which to throw a SQLException
      */
-    public void removeAllThrowsSqlException(String sql) {
+    public synchronized void removeAllThrowsSqlException(String sql) {
     	  throwsSQLException.remove(sql);
         throwsSQLExceptionCompiled.remove(patternMatcherFactory.create(sql));
     }
@@ -965,7 +1077,7 @@ public abstract class AbstractResultSetHandler
      * Remove the update count mock for the specified SQL string.
      * @param sql The SQL string which identifies the conditions under which to return the specified update count
      */
-    public void removeAllUpdateCount(String sql) {
+    public synchronized void removeAllUpdateCount(String sql) {
     	  updateCountForStatement.remove(sql);
         updateCountForStatementCompiled.remove(patternMatcherFactory.create(sql));
     }
@@ -975,7 +1087,7 @@ public abstract class AbstractResultSetHandler
      * Remove the generated keys mock for the specified SQL string.
      * @param sql The SQL string which identifies the conditions under which the generated keys result would be returned.
      */
-    public void removeAllGeneratedKeys(String sql) {
+    public synchronized void removeAllGeneratedKeys(String sql) {
         generatedKeysForStatement.remove(sql);
         generatedKeysForStatementCompiled.remove(patternMatcherFactory.create(sql));
     }
@@ -988,7 +1100,7 @@ public abstract class AbstractResultSetHandler
         removeResultSet(sql, new MockParameterMap(), false);
     }
 
-    protected void removeResultSet(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
+    protected synchronized void removeResultSet(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
         removeMatchingParameterWrapper(sql, parameters, resultSetsForStatement, exactMatchParameter);
         removeMatchingParameterWrapper(patternMatcherFactory.create(sql), parameters, resultSetsForStatementCompiled, exactMatchParameter);
     }
@@ -1001,7 +1113,7 @@ public abstract class AbstractResultSetHandler
         removeThrowsSqlException(sql, new MockParameterMap(), false);
     }
     
-    protected void removeThrowsSqlException(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
+    protected synchronized void removeThrowsSqlException(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
         removeMatchingParameterWrapper(sql, parameters, throwsSQLException, exactMatchParameter);
     }
 
@@ -1013,7 +1125,7 @@ public abstract class AbstractResultSetHandler
         removeUpdateCount(sql, new MockParameterMap(), false);
     }
     
-    protected void removeUpdateCount(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
+    protected synchronized void removeUpdateCount(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
         removeMatchingParameterWrapper(sql, parameters, updateCountForStatement, exactMatchParameter);
     }
 
@@ -1026,7 +1138,7 @@ public abstract class AbstractResultSetHandler
     }
     
 
-    protected void removeGeneratedKeys(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
+    protected synchronized void removeGeneratedKeys(String sql, MockParameterMap parameters, boolean exactMatchParameter) {
         removeMatchingParameterWrapper(sql, parameters, generatedKeysForStatement, exactMatchParameter);
     }
 
@@ -1034,7 +1146,16 @@ public abstract class AbstractResultSetHandler
     {
         if(null == query) query = "";
         List<T> resultList = new ArrayList<T>();
-
+        if(dataMap instanceof PatternMatcherIndex)
+        {
+            PatternMatcherIndex<? extends T> index = (PatternMatcherIndex<? extends T>)dataMap;
+            if(concurrentMode)
+            {
+                index = getSnapshot(index);
+            }
+            index.getMatchingObjects(query, resultList);
+            return resultList;
+        }
         for(Map.Entry<PatternMatcher, ? extends T> entry : dataMap.entrySet()){
             PatternMatcher matcher = entry.getKey();
             if (matcher.matches(query)) {
@@ -1069,6 +1190,7 @@ public abstract class AbstractResultSetHandler
             if(wrapper.getParameters().doParameterMatch(parameters, exactMatchParameter))
             {
                 list.remove(wrapper);
+                registrationCount++;
                 return wrapper;
             }
         }
@@ -1083,6 +1205,8 @@ public abstract class AbstractResultSetHandler
             list = new ArrayList<T>();
             map.put(sql, list);
         }
+        // the list is modified by the caller
+        registrationCount++;
         return list;
     }
 
@@ -1093,5 +1217,66 @@ public abstract class AbstractResultSetHandler
             PatternMatcher patternMatcher = getPatternMatcherFactory().create(entry.getKey());
             compiled.put(patternMatcher, entry.getValue());
         }
+        registrationCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> PatternMatcherIndex<T> getSnapshot(PatternMatcherIndex<T> index)
+    {
+        Snapshot snapshot = snapshots.get(index);
+        if(null == snapshot || !snapshot.isCurrent(index, registrationCount))
+        {
+            snapshot = createSnapshot(index);
+        }
+        return (PatternMatcherIndex<T>)snapshot.index;
+    }
+
+    private synchronized Snapshot createSnapshot(PatternMatcherIndex<?> index)
+    {
+        Snapshot snapshot = snapshots.get(index);
+        if(null != snapshot && snapshot.isCurrent(index, registrationCount))
+        {
+            return snapshot;
+        }
+        snapshot = new Snapshot(index, registrationCount);
+        Map<PatternMatcherIndex<?>, Snapshot> newSnapshots = new IdentityHashMap<PatternMatcherIndex<?>, Snapshot>(snapshots);
+        newSnapshots.put(index, snapshot);
+        snapshots = newSnapshots;
+        return snapshot;
+    }
+
+    /**
+     * Immutable copy of a {@link PatternMatcherIndex} for the concurrent mode.
+     * The <code>List</code> values (of <code>ParameterWrapper</code> objects)
+     * are copied, because the prepare and remove methods modify them.
+     */
+    private static class Snapshot
+    {
+        private final int modificationCount;
+        private final int registrationCount;
+        private final PatternMatcherIndex<Object> index;
+
+        private Snapshot(PatternMatcherIndex<?> source, int registrationCount)
+        {
+            this.modificationCount = source.getModificationCount();
+            this.registrationCount = registrationCount;
+            Map<PatternMatcher, Object> copy = new LinkedHashMap<PatternMatcher, Object>();
+            for(Map.Entry<PatternMatcher, ?> entry : source.entrySet())
+            {
+                Object value = entry.getValue();
+                if(value instanceof List)
+                {
+                    value = Collections.unmodifiableList(new ArrayList<Object>((List<?>)value));
+                }
+                copy.put(entry.getKey(), value);
+            }
+            index = new PatternMatcherIndex<Object>(Collections.unmodifiableMap(copy));
+            index.buildIndex();
+        }
+
+        private boolean isCurrent(PatternMatcherIndex<?> source, int currentRegistrationCount)
+        {
+            return registrationCount == currentRegistrationCount && modificationCount == source.getModificationCount();
+        }
     }
 }
@@ -239,6 +239,14 @@ public abstract class BasicJDBCTestCaseAdapter
         return jdbcTestModule.getExecutedSQLStatements();
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#getExecutedSQLStatementCounts}
+     */
+    protected Map<String, Long> getExecutedSQLStatementCounts()
+    {
+        return jdbcTestModule.getExecutedSQLStatementCounts();
+    }
+
     /**
      * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#getExecutedSQLStatementParameter}
      * @deprecated
@@ -457,6 +465,14 @@ public abstract class BasicJDBCTestCaseAdapter
         jdbcTestModule.verifySQLStatementExecuted(sql);
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#verifySQLStatementExecuted(String, int)}
+     */
+    protected void verifySQLStatementExecuted(String sql, int number)
+    {
+        jdbcTestModule.verifySQLStatementExecuted(sql, number);
+    }
+
     /**
      * Delegates to {@link com.mockrunner.jdbc.JDBCTestModule#verifySQLStatementNotExecuted(String)}
      */
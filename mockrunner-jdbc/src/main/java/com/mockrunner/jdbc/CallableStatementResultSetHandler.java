@@ -1,10 +1,9 @@
 package com.mockrunner.jdbc;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.mockrunner.mock.jdbc.MockCallableStatement;
 
@@ -18,8 +17,8 @@ public class CallableStatementResultSetHandler extends AbstractOutParameterResul
 
     public CallableStatementResultSetHandler()
     {
-        callableStatements = new ArrayList<MockCallableStatement>();
-        callableStatementMap = new TreeMap<String, List<MockCallableStatement>>();
+        callableStatements = new ConcurrentAppendList<MockCallableStatement>();
+        callableStatementMap = new ConcurrentSkipListMap<String, List<MockCallableStatement>>();
     }
 
     /**
@@ -33,8 +32,9 @@ public class CallableStatementResultSetHandler extends AbstractOutParameterResul
         List<MockCallableStatement> list = callableStatementMap.get(statement.getSQL());
         if(null == list)
         {
-            list = new ArrayList<MockCallableStatement>();
-            callableStatementMap.put(statement.getSQL(), list);
+            List<MockCallableStatement> newList = new ConcurrentAppendList<MockCallableStatement>();
+            list = callableStatementMap.putIfAbsent(statement.getSQL(), newList);
+            if(null == list) list = newList;
         }
         list.add(statement);
         callableStatements.add(statement);
@@ -0,0 +1,165 @@
+package com.mockrunner.jdbc;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append only <code>List</code> that can be modified and read
+ * by multiple threads without locking. Used for the logs of
+ * the result set handlers, e.g. the executed SQL strings.
+ * Each {@link #add} reserves the next index with a compare-and-set,
+ * that fails without reserving an index if the maximum size is
+ * reached, and stores the element in a chunk of a fixed directory,
+ * i.e. elements are never copied and the order of the elements is
+ * the order in which the indexes were reserved. {@link #get} waits
+ * for an element whose index is reserved, but which is not yet stored.
+ * Elements can only be added at the end, removing single elements
+ * is not supported. Elements added concurrently with {@link #clear}
+ * may be lost.
+ * @param <T> the type of the elements
+ */
+class ConcurrentAppendList<T> extends AbstractList<T> implements RandomAccess
+{
+    private final static int FIRST_CHUNK_SIZE_BITS = 4;
+    private final static int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_SIZE_BITS;
+    private final static int NUMBER_CHUNKS = 31 - FIRST_CHUNK_SIZE_BITS;
+    private final static int MAXIMUM_SIZE = Integer.MAX_VALUE - FIRST_CHUNK_SIZE + 1;
+    private final static Object NULL = new Object();
+
+    private volatile Segments segments = new Segments();
+
+    @Override
+    public boolean add(T element)
+    {
+        segments.add(element);
+        return true;
+    }
+
+    @Override
+    public T get(int index)
+    {
+        Segments current = segments;
+        if(index < 0 || index >= current.size())
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.size());
+        }
+        return current.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public void clear()
+    {
+        segments = new Segments();
+    }
+
+    /**
+     * Returns an <code>Iterator</code> over the elements that were
+     * added before this method was called. It does not throw
+     * a <code>ConcurrentModificationException</code>.
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        final Segments current = segments;
+        final int size = current.size();
+        return new Iterator<T>()
+        {
+            private int index;
+
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+
+            public T next()
+            {
+                if(index >= size) throw new NoSuchElementException();
+                return current.get(index++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static class Segments
+    {
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicReferenceArray<AtomicReferenceArray<Object>> chunks = new AtomicReferenceArray<AtomicReferenceArray<Object>>(NUMBER_CHUNKS);
+
+        private int size()
+        {
+            return reserved.get();
+        }
+
+        private void add(Object element)
+        {
+            int index = reserve();
+            int position = index + FIRST_CHUNK_SIZE;
+            int chunkIndex = chunkIndex(position);
+            getChunk(chunkIndex).set(position - (FIRST_CHUNK_SIZE << chunkIndex), (null == element) ? NULL : element);
+        }
+
+        private int reserve()
+        {
+            while(true)
+            {
+                int index = reserved.get();
+                if(index >= MAXIMUM_SIZE)
+                {
+                    // never reserve an index that is not stored, get would wait for it forever
+                    throw new IllegalStateException("Maximum size exceeded");
+                }
+                if(reserved.compareAndSet(index, index + 1)) return index;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T get(int index)
+        {
+            int position = index + FIRST_CHUNK_SIZE;
+            int chunkIndex = chunkIndex(position);
+            int offset = position - (FIRST_CHUNK_SIZE << chunkIndex);
+            while(true)
+            {
+                AtomicReferenceArray<Object> chunk = chunks.get(chunkIndex);
+                Object element = (null == chunk) ? null : chunk.get(offset);
+                if(null != element)
+                {
+                    return (element == NULL) ? null : (T)element;
+                }
+                // the index is reserved, but the adding thread did not store the element yet
+                Thread.yield();
+            }
+        }
+
+        private AtomicReferenceArray<Object> getChunk(int chunkIndex)
+        {
+            AtomicReferenceArray<Object> chunk = chunks.get(chunkIndex);
+            if(null != chunk) return chunk;
+            AtomicReferenceArray<Object> newChunk = new AtomicReferenceArray<Object>(FIRST_CHUNK_SIZE << chunkIndex);
+            if(chunks.compareAndSet(chunkIndex, null, newChunk))
+            {
+                return newChunk;
+            }
+            return chunks.get(chunkIndex);
+        }
+
+        private static int chunkIndex(int position)
+        {
+            return 31 - Integer.numberOfLeadingZeros(position) - FIRST_CHUNK_SIZE_BITS;
+        }
+    }
+}
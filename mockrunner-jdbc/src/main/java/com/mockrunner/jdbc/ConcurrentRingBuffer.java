@@ -0,0 +1,94 @@
+package com.mockrunner.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last added elements up to a fixed capacity. Elements
+ * can be added and read by multiple threads without locking.
+ * Each element is stored with its sequence number, so {@link #toList}
+ * skips slots that were overwritten by a newer element or that are
+ * not yet stored by the adding thread. Elements added concurrently
+ * with {@link #clear} may be lost.
+ * @param <T> the type of the elements
+ */
+class ConcurrentRingBuffer<T>
+{
+    private final int capacity;
+    private volatile Slots<T> slots;
+
+    ConcurrentRingBuffer(int capacity)
+    {
+        if(capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.slots = new Slots<T>(capacity);
+    }
+
+    int getCapacity()
+    {
+        return capacity;
+    }
+
+    void add(T element)
+    {
+        Slots<T> current = slots;
+        long sequence = current.sequence.getAndIncrement();
+        current.entries.set((int)(sequence % capacity), new Entry<T>(sequence, element));
+    }
+
+    /**
+     * Returns the retained elements, the oldest one first.
+     * @return the <code>List</code> of elements
+     */
+    List<T> toList()
+    {
+        Slots<T> current = slots;
+        long end = current.sequence.get();
+        long start = Math.max(0, end - capacity);
+        if(start == end) return Collections.emptyList();
+        List<T> list = new ArrayList<T>((int)(end - start));
+        for(long sequence = start; sequence < end; sequence++)
+        {
+            Entry<T> entry = current.entries.get((int)(sequence % capacity));
+            if(null != entry && entry.sequence == sequence)
+            {
+                list.add(entry.element);
+            }
+        }
+        return list;
+    }
+
+    void clear()
+    {
+        slots = new Slots<T>(capacity);
+    }
+
+    private static class Slots<T>
+    {
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicReferenceArray<Entry<T>> entries;
+
+        private Slots(int capacity)
+        {
+            entries = new AtomicReferenceArray<Entry<T>>(capacity);
+        }
+    }
+
+    private static class Entry<T>
+    {
+        private final long sequence;
+        private final T element;
+
+        private Entry(long sequence, T element)
+        {
+            this.sequence = sequence;
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.mockrunner.jdbc;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mockrunner.mock.jdbc.MockParameterMap;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * Records the SQL strings executed by the statements of a result set handler,
+ * the <code>ResultSet</code> objects they returned and the parameter sets
+ * of prepared statements. The implementations differ in what they retain:
+ * <ul>
+ * <li>{@link Unbounded} retains everything (the default)</li>
+ * <li>{@link LastStatements} retains the last <i>n</i> statements, result sets
+ * and parameter sets per SQL string</li>
+ * <li>{@link Counting} retains only the counters and histograms per SQL string</li>
+ * <li>{@link Sampling} retains every <i>n</i>-th statement, result set
+ * and parameter set</li>
+ * </ul>
+ * All implementations count the executions and the returned rows per
+ * SQL string, i.e. {@link #getStatementCounts} and
+ * {@link #getRowCountHistograms} always cover all executed statements.
+ * Use one of the bounded implementations for tests that execute a large
+ * number of statements, which would run out of memory otherwise.
+ * The implementations can be used by multiple threads without locking.
+ * Each handler needs its own instance.
+ * See {@link AbstractResultSetHandler#setExecutedStatementLog}.
+ */
+public interface ExecutedStatementLog
+{
+    /**
+     * Records an executed SQL string.
+     * @param sql the SQL string
+     */
+    void addStatement(String sql);
+
+    /**
+     * Records the <code>ResultSet</code> objects returned by a statement.
+     * @param sql the executed SQL string, <code>null</code> if unknown
+     * @param resultSets the <code>ResultSet</code> objects
+     */
+    void addResultSets(String sql, MockResultSet[] resultSets);
+
+    /**
+     * Records the parameters of an executed prepared statement.
+     * @param sql the executed SQL string
+     * @param parameters a copy of the parameter map
+     */
+    void addParameterSet(String sql, MockParameterMap parameters);
+
+    /**
+     * Returns the retained SQL strings in the order of execution.
+     * @return the <code>List</code> of retained SQL strings
+     */
+    List<String> getStatements();
+
+    /**
+     * Returns the retained <code>ResultSet</code> arrays in the
+     * order they were returned.
+     * @return the <code>List</code> of retained <code>ResultSet</code> arrays
+     */
+    List<MockResultSet[]> getResultSets();
+
+    /**
+     * Returns the retained parameter sets. Each SQL string
+     * maps to the corresponding {@link ParameterSets} object.
+     * @return the <code>Map</code> of retained parameter sets
+     */
+    Map<String, ParameterSets> getParameterSets();
+
+    /**
+     * Returns the number of executed statements including the ones
+     * that are not retained.
+     * @return the number of executed statements
+     */
+    long getNumberStatements();
+
+    /**
+     * Returns the number of returned <code>ResultSet</code> objects
+     * including the ones that are not retained.
+     * @return the number of returned <code>ResultSet</code> objects
+     */
+    long getNumberResultSets();
+
+    /**
+     * Returns the number of executions for each executed SQL string,
+     * sorted by the SQL string. The <code>Map</code> is a read-only
+     * view that reflects later executions.
+     * @return the <code>Map</code> of execution counts
+     */
+    Map<String, Long> getStatementCounts();
+
+    /**
+     * Returns the histogram of the row counts of the returned
+     * <code>ResultSet</code> objects for each SQL string,
+     * sorted by the SQL string. The <code>Map</code> is a read-only
+     * view that reflects later executions.
+     * @return the <code>Map</code> of {@link RowCountHistogram} objects
+     */
+    Map<String, RowCountHistogram> getRowCountHistograms();
+
+    /**
+     * Discards everything recorded so far.
+     */
+    void clear();
+
+    /**
+     * Retains all statements, result sets and parameter sets
+     * and counts all executions like {@link Counting}.
+     */
+    class Unbounded extends Counting
+    {
+        private final List<String> statements = new ConcurrentAppendList<String>();
+        private final List<MockResultSet[]> resultSets = new ConcurrentAppendList<MockResultSet[]>();
+
+        @Override
+        public void addStatement(String sql)
+        {
+            super.addStatement(sql);
+            statements.add(sql);
+        }
+
+        @Override
+        public void addResultSets(String sql, MockResultSet[] resultSets)
+        {
+            super.addResultSets(sql, resultSets);
+            this.resultSets.add(resultSets);
+        }
+
+        @Override
+        public List<String> getStatements()
+        {
+            return Collections.unmodifiableList(statements);
+        }
+
+        @Override
+        public List<MockResultSet[]> getResultSets()
+        {
+            return Collections.unmodifiableList(resultSets);
+        }
+
+        @Override
+        protected ParameterSets createParameterSets(String sql)
+        {
+            return new ParameterSets(sql);
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            statements.clear();
+            resultSets.clear();
+        }
+    }
+
+    /**
+     * Retains no statements, no result sets and no parameter sets, but
+     * counts the executions and the returned rows per SQL string.
+     * Please note that the SQL strings are retained once as keys of the
+     * counts, so statements that contain literal values instead of
+     * parameters are still retained for each value.
+     */
+    class Counting implements ExecutedStatementLog
+    {
+        private final AtomicLong numberStatements = new AtomicLong();
+        private final AtomicLong numberResultSets = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> statementCounts = new ConcurrentSkipListMap<String, AtomicLong>();
+        private final ConcurrentMap<String, RowCountHistogram> rowCountHistograms = new ConcurrentSkipListMap<String, RowCountHistogram>();
+        private final ConcurrentMap<String, ParameterSets> parameterSets = new ConcurrentSkipListMap<String, ParameterSets>();
+        private final Map<String, Long> statementCountsView = new StatementCounts();
+
+        public void addStatement(String sql)
+        {
+            numberStatements.incrementAndGet();
+            if(null == sql) return;
+            AtomicLong count = statementCounts.get(sql);
+            if(null == count)
+            {
+                AtomicLong newCount = new AtomicLong();
+                count = statementCounts.putIfAbsent(sql, newCount);
+                if(null == count) count = newCount;
+            }
+            count.incrementAndGet();
+        }
+
+        public void addResultSets(String sql, MockResultSet[] resultSets)
+        {
+            if(null == resultSets) return;
+            numberResultSets.addAndGet(resultSets.length);
+            if(null == sql) return;
+            RowCountHistogram histogram = rowCountHistograms.get(sql);
+            if(null == histogram)
+            {
+                RowCountHistogram newHistogram = new RowCountHistogram();
+                histogram = rowCountHistograms.putIfAbsent(sql, newHistogram);
+                if(null == histogram) histogram = newHistogram;
+            }
+            for(MockResultSet resultSet : resultSets)
+            {
+                if(null != resultSet) histogram.record(resultSet.getRowCount());
+            }
+        }
+
+        public void addParameterSet(String sql, MockParameterMap parameters)
+        {
+            if(null == sql || null == parameters) return;
+            ParameterSets sets = parameterSets.get(sql);
+            if(null == sets)
+            {
+                ParameterSets newSets = createParameterSets(sql);
+                if(null == newSets) return;
+                sets = parameterSets.putIfAbsent(sql, newSets);
+                if(null == sets) sets = newSets;
+            }
+            sets.addParameterSet(parameters);
+        }
+
+        /**
+         * Creates the {@link ParameterSets} that retain the parameter sets
+         * of the specified SQL string. Returns <code>null</code>, i.e.
+         * parameter sets are dropped. Subclasses that retain parameter
+         * sets override this method.
+         * @param sql the SQL string
+         * @return the {@link ParameterSets} or <code>null</code>
+         */
+        protected ParameterSets createParameterSets(String sql)
+        {
+            return null;
+        }
+
+        public List<String> getStatements()
+        {
+            return Collections.emptyList();
+        }
+
+        public List<MockResultSet[]> getResultSets()
+        {
+            return Collections.emptyList();
+        }
+
+        public Map<String, ParameterSets> getParameterSets()
+        {
+            return Collections.unmodifiableMap(parameterSets);
+        }
+
+        public long getNumberStatements()
+        {
+            return numberStatements.get();
+        }
+
+        public long getNumberResultSets()
+        {
+            return numberResultSets.get();
+        }
+
+        public Map<String, Long> getStatementCounts()
+        {
+            return statementCountsView;
+        }
+
+        public Map<String, RowCountHistogram> getRowCountHistograms()
+        {
+            return Collections.unmodifiableMap(rowCountHistograms);
+        }
+
+        public void clear()
+        {
+            numberStatements.set(0);
+            numberResultSets.set(0);
+            statementCounts.clear();
+            rowCountHistograms.clear();
+            parameterSets.clear();
+        }
+
+        private class StatementCounts extends AbstractMap<String, Long>
+        {
+            @Override
+            public Long get(Object sql)
+            {
+                if(!(sql instanceof String)) return null;
+                AtomicLong count = statementCounts.get(sql);
+                return (null == count) ? null : count.get();
+            }
+
+            @Override
+            public boolean containsKey(Object sql)
+            {
+                return (sql instanceof String) && statementCounts.containsKey(sql);
+            }
+
+            @Override
+            public Set<Map.Entry<String, Long>> entrySet()
+            {
+                return new AbstractSet<Map.Entry<String, Long>>()
+                {
+                    @Override
+                    public Iterator<Map.Entry<String, Long>> iterator()
+                    {
+                        final Iterator<Map.Entry<String, AtomicLong>> iterator = statementCounts.entrySet().iterator();
+                        return new Iterator<Map.Entry<String, Long>>()
+                        {
+                            public boolean hasNext()
+                            {
+                                return iterator.hasNext();
+                            }
+
+                            public Map.Entry<String, Long> next()
+                            {
+                                Map.Entry<String, AtomicLong> entry = iterator.next();
+                                return new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().get());
+                            }
+
+                            public void remove()
+                            {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size()
+                    {
+                        return statementCounts.size();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Retains the last statements and result sets up to
+     * the specified capacity and the last parameter sets up to
+     * the specified capacity per SQL string. Counts all executions
+     * like {@link Counting}.
+     */
+    class LastStatements extends Counting
+    {
+        private final int capacity;
+        private final ConcurrentRingBuffer<String> statements;
+        private final ConcurrentRingBuffer<MockResultSet[]> resultSets;
+
+        /**
+         * @param capacity the maximum number of retained statements,
+         *        the maximum number of retained result sets and
+         *        the maximum number of retained parameter sets per SQL string
+         */
+        public LastStatements(int capacity)
+        {
+            this.capacity = capacity;
+            statements = new ConcurrentRingBuffer<String>(capacity);
+            resultSets = new ConcurrentRingBuffer<MockResultSet[]>(capacity);
+        }
+
+        @Override
+        public void addStatement(String sql)
+        {
+            super.addStatement(sql);
+            statements.add(sql);
+        }
+
+        @Override
+        public void addResultSets(String sql, MockResultSet[] resultSets)
+        {
+            super.addResultSets(sql, resultSets);
+            this.resultSets.add(resultSets);
+        }
+
+        @Override
+        protected ParameterSets createParameterSets(String sql)
+        {
+            return new ParameterSets(sql, capacity);
+        }
+
+        @Override
+        public List<String> getStatements()
+        {
+            return Collections.unmodifiableList(statements.toList());
+        }
+
+        @Override
+        public List<MockResultSet[]> getResultSets()
+        {
+            return Collections.unmodifiableList(resultSets.toList());
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            statements.clear();
+            resultSets.clear();
+        }
+    }
+
+    /**
+     * Retains every <i>n</i>-th statement, every <i>n</i>-th result set
+     * and every <i>n</i>-th parameter set, starting with the first one,
+     * and counts all executions like {@link Counting}. Of the sampled
+     * statements and result sets, the last ones up to the specified
+     * capacity are retained. Of the sampled parameter sets, the last
+     * ones up to the specified capacity per SQL string are retained.
+     */
+    class Sampling extends Counting
+    {
+        private final int interval;
+        private final int capacity;
+        private final AtomicLong resultSetSequence = new AtomicLong();
+        private final AtomicLong statementSequence = new AtomicLong();
+        private final AtomicLong parameterSetSequence = new AtomicLong();
+        private final ConcurrentRingBuffer<String> statements;
+        private final ConcurrentRingBuffer<MockResultSet[]> resultSets;
+
+        /**
+         * @param interval retain every <code>interval</code>-th statement,
+         *        result set and parameter set
+         * @param capacity the maximum number of retained statements,
+         *        the maximum number of retained result sets and
+         *        the maximum number of retained parameter sets per SQL string
+         */
+        public Sampling(int interval, int capacity)
+        {
+            if(interval <= 0)
+            {
+                throw new IllegalArgumentException("interval must be greater than 0");
+            }
+            this.interval = interval;
+            this.capacity = capacity;
+            statements = new ConcurrentRingBuffer<String>(capacity);
+            resultSets = new ConcurrentRingBuffer<MockResultSet[]>(capacity);
+        }
+
+        @Override
+        public void addStatement(String sql)
+        {
+            super.addStatement(sql);
+            if(statementSequence.getAndIncrement() % interval == 0)
+            {
+                statements.add(sql);
+            }
+        }
+
+        @Override
+        public void addResultSets(String sql, MockResultSet[] resultSets)
+        {
+            super.addResultSets(sql, resultSets);
+            if(resultSetSequence.getAndIncrement() % interval == 0)
+            {
+                this.resultSets.add(resultSets);
+            }
+        }
+
+        @Override
+        public void addParameterSet(String sql, MockParameterMap parameters)
+        {
+            if(parameterSetSequence.getAndIncrement() % interval == 0)
+            {
+                super.addParameterSet(sql, parameters);
+            }
+        }
+
+        @Override
+        protected ParameterSets createParameterSets(String sql)
+        {
+            return new ParameterSets(sql, capacity);
+        }
+
+        @Override
+        public List<String> getStatements()
+        {
+            return Collections.unmodifiableList(statements.toList());
+        }
+
+        @Override
+        public List<MockResultSet[]> getResultSets()
+        {
+            return Collections.unmodifiableList(resultSets.toList());
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            resultSetSequence.set(0);
+            statementSequence.set(0);
+            parameterSetSequence.set(0);
+            statements.clear();
+            resultSets.clear();
+        }
+    }
+}
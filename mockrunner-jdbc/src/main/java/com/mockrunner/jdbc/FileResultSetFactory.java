@@ -1,11 +1,20 @@
 package com.mockrunner.jdbc;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.mockrunner.base.NestedApplicationException;
 import com.mockrunner.mock.jdbc.MockResultSet;
 import com.mockrunner.util.common.FileUtil;
 import com.mockrunner.util.common.StringUtil;
@@ -33,6 +42,11 @@ public class FileResultSetFactory implements ResultSetFactory
     private boolean useTemplates = false;
     private String templateMarker = null;
     private Map<String, String> templates = null;
+    private boolean streaming = false;
+    private boolean useCache = false;
+    
+    
+    private final static ParsedFileCache<ParsedFile> parsedFileCache = new ParsedFileCache<ParsedFile>();
 
     public FileResultSetFactory(String fileName)
     {
@@ -149,48 +163,353 @@ public class FileResultSetFactory implements ResultSetFactory
         setTemplateConfiguration("$", defaultTemplates);
     }
 
+    /**
+     * Set this to <code>true</code> to read the file lazily. The
+     * created <code>ResultSet</code> is <code>TYPE_FORWARD_ONLY</code>
+     * and reads the next line of the file when <code>next()</code> is
+     * called. It only keeps the current row in memory, i.e.
+     * <code>getRowCount()</code> returns <code>1</code> for a valid row.
+     * Copies of the <code>ResultSet</code> (e.g. the copies returned by
+     * the statements) start reading the file from the beginning.
+     * Use this for very large files. Default is <code>false</code>.
+     * @param streaming set <code>true</code> to read the file lazily
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+    
+    /**
+     * Set this to <code>true</code> to cache the parsed content of the
+     * file. Subsequent calls of {@link #create} (of this or another
+     * factory with the same settings) do not read and parse the file
+     * again, as long as its modification time and length are unchanged.
+     * The cache is not used in streaming mode (see {@link #setStreaming}).
+     * Default is <code>false</code>.
+     * @param useCache set <code>true</code> to cache the parsed file
+     */
+    public void setUseCache(boolean useCache)
+    {
+        this.useCache = useCache;
+    }
+    
+    /**
+     * Clears the cache used by all factories with enabled cache.
+     * See {@link #setUseCache}.
+     */
+    public static void clearCache()
+    {
+        parsedFileCache.clear();
+    }
+
     public MockResultSet create(String id)
     {
-        MockResultSet resultSet = new MockResultSet(id);
         File fileToRead = getFile();
+        LineParser parser = new LineParser(delimiter, trim, useTemplates, templateMarker, templates);
+        if(streaming)
+        {
+            return new StreamingResultSet(id, fileToRead, firstLineContainsColumnNames, parser);
+        }
+        ParsedFile parsedFile;
+        if(useCache)
+        {
+            parsedFile = getCachedFile(fileToRead, parser);
+        }
+        else
+        {
+            parsedFile = parseFile(fileToRead, parser);
+        }
+        MockResultSet resultSet = new MockResultSet(id);
+        if(null != parsedFile.columnNames)
+        {
+            for(String name : parsedFile.columnNames)
+            {
+                resultSet.addColumn(name);
+            }
+        }
+        for(String[] values : parsedFile.rows)
+        {
+            resultSet.addRow(values);
+        }
+        return resultSet;
+    }
+    
+    private ParsedFile getCachedFile(File fileToRead, LineParser parser)
+    {
+        ParsedFile parsedFile = parsedFileCache.get(fileToRead, firstLineContainsColumnNames, parser);
+        if(null == parsedFile)
+        {
+            parsedFile = parseFile(fileToRead, parser);
+            parsedFileCache.put(fileToRead, parsedFile, firstLineContainsColumnNames, parser);
+        }
+        return parsedFile;
+    }
+    
+    private ParsedFile parseFile(File fileToRead, LineParser parser)
+    {
         List<String> lines = FileUtil.getLinesFromFile(fileToRead);
-
+        ParsedFile parsedFile = new ParsedFile();
         if(lines.isEmpty())
-        	return resultSet; // empty resultset
-        
+            return parsedFile; // empty resultset
         int firstLineNumber = 0;
-        
         // first loop reads the columns names
         if(firstLineContainsColumnNames)
         {
-            String firstLine = lines.get(firstLineNumber);
+            parsedFile.columnNames = parser.parseColumnNames(lines.get(firstLineNumber));
             firstLineNumber++;
-            String[] names = StringUtil.split(firstLine, delimiter, trim);
-            for (String name : names) {
-                resultSet.addColumn(name);
-            }
         }
-        
         // subsequent loops read the values
         for(int ii = firstLineNumber; ii < lines.size(); ii++)
         {
-            String line = lines.get(ii);
+            parsedFile.rows.add(parser.parseValues(lines.get(ii)));
+        }
+        return parsedFile;
+    }
+    
+    private static class ParsedFile
+    {
+        private String[] columnNames;
+        private final List<String[]> rows = new ArrayList<String[]>();
+    }
+    
+    private static class LineParser
+    {
+        private final String delimiter;
+        private final boolean trim;
+        private final boolean useTemplates;
+        private final String templateMarker;
+        private final Map<String, String> templates;
+        
+        private LineParser(String delimiter, boolean trim, boolean useTemplates, String templateMarker, Map<String, String> templates)
+        {
+            this.delimiter = delimiter;
+            this.trim = trim;
+            this.useTemplates = useTemplates;
+            this.templateMarker = templateMarker;
+            this.templates = (null != templates) ? new HashMap<String, String>(templates) : null;
+        }
+        
+        private String[] parseColumnNames(String line)
+        {
+            return StringUtil.split(line, delimiter, trim);
+        }
+        
+        private String[] parseValues(String line)
+        {
             String[] values = StringUtil.split(line, delimiter, trim);
             if(useTemplates)
             {
-            	for(int yy = 0; yy < values.length; yy++)
-            	{
-            		if(null != values[yy])
-            		{
-                		if(values[yy].startsWith(templateMarker) && templates.containsKey(values[yy].substring(1)))
-                		{
-                			values[yy] = templates.get(values[yy].substring(1));
-                		}
-            		}
-            	}
+                for(int yy = 0; yy < values.length; yy++)
+                {
+                    if(null != values[yy])
+                    {
+                        if(values[yy].startsWith(templateMarker) && templates.containsKey(values[yy].substring(1)))
+                        {
+                            values[yy] = templates.get(values[yy].substring(1));
+                        }
+                    }
+                }
+            }
+            return values;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return Arrays.asList(delimiter, trim, useTemplates, templateMarker, templates).hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof LineParser)) return false;
+            LineParser other = (LineParser)obj;
+            return Arrays.asList(delimiter, trim, useTemplates, templateMarker, templates).equals(Arrays.asList(other.delimiter, other.trim, other.useTemplates, other.templateMarker, other.templates));
+        }
+    }
+    
+    private static class StreamingResultSet extends MockResultSet
+    {
+        private final File file;
+        private final boolean firstLineContainsColumnNames;
+        private final LineParser parser;
+        private BufferedReader reader;
+        private String nextLine;
+        private boolean isExhausted;
+        private int rowNumber;
+        
+        private StreamingResultSet(String id, File file, boolean firstLineContainsColumnNames, LineParser parser)
+        {
+            super(id);
+            this.file = file;
+            this.firstLineContainsColumnNames = firstLineContainsColumnNames;
+            this.parser = parser;
+            setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+            if(firstLineContainsColumnNames)
+            {
+                String firstLine = readFirstLine();
+                if(null != firstLine)
+                {
+                    for(String name : parser.parseColumnNames(firstLine))
+                    {
+                        addColumn(name);
+                    }
+                }
+            }
+        }
+        
+        @Override
+        public Object clone()
+        {
+            return copyOnWriteClone();
+        }
+        
+        @Override
+        public MockResultSet copyOnWriteClone()
+        {
+            StreamingResultSet copy = (StreamingResultSet)super.copyOnWriteClone();
+            copy.reader = null;
+            copy.nextLine = null;
+            copy.isExhausted = false;
+            copy.rowNumber = 0;
+            copy.clearRows();
+            return copy;
+        }
+        
+        @Override
+        public void setStatement(Statement statement)
+        {
+            super.setStatement(statement);
+            setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+        }
+        
+        @Override
+        public boolean next() throws SQLException
+        {
+            if(isExhausted) return false;
+            String line = readNextLine();
+            clearRows();
+            if(null == line)
+            {
+                isExhausted = true;
+                closeReader();
+                return false;
+            }
+            addRow(parser.parseValues(line));
+            rowNumber++;
+            return super.next();
+        }
+        
+        @Override
+        public boolean isBeforeFirst() throws SQLException
+        {
+            return (0 == rowNumber) && (null != peekNextLine());
+        }
+
+        @Override
+        public boolean isAfterLast() throws SQLException
+        {
+            return isExhausted && (rowNumber > 0);
+        }
+
+        @Override
+        public boolean isFirst() throws SQLException
+        {
+            return !isExhausted && (1 == rowNumber);
+        }
+
+        @Override
+        public boolean isLast() throws SQLException
+        {
+            return !isExhausted && (rowNumber > 0) && (null == peekNextLine());
+        }
+        
+        @Override
+        public int getRow() throws SQLException
+        {
+            return isExhausted ? 0 : rowNumber;
+        }
+        
+        @Override
+        public void close() throws SQLException
+        {
+            super.close();
+            closeReader();
+        }
+        
+        private String readFirstLine()
+        {
+            BufferedReader firstLineReader = null;
+            try
+            {
+                firstLineReader = new BufferedReader(new FileReader(file));
+                return firstLineReader.readLine();
+            }
+            catch(IOException exc)
+            {
+                throw new NestedApplicationException(exc);
+            }
+            finally
+            {
+                close(firstLineReader);
+            }
+        }
+        
+        private String peekNextLine()
+        {
+            if(isExhausted) return null;
+            if(null == nextLine)
+            {
+                nextLine = doReadLine();
+            }
+            return nextLine;
+        }
+        
+        private String readNextLine()
+        {
+            String line = peekNextLine();
+            nextLine = null;
+            return line;
+        }
+        
+        private String doReadLine()
+        {
+            try
+            {
+                if(null == reader)
+                {
+                    reader = new BufferedReader(new FileReader(file));
+                    if(firstLineContainsColumnNames)
+                    {
+                        reader.readLine();
+                    }
+                }
+                return reader.readLine();
+            }
+            catch(IOException exc)
+            {
+                closeReader();
+                throw new NestedApplicationException(exc);
+            }
+        }
+        
+        private void closeReader()
+        {
+            close(reader);
+            reader = null;
+        }
+        
+        private static void close(BufferedReader reader)
+        {
+            if(null == reader) return;
+            try
+            {
+                reader.close();
+            }
+            catch(IOException ignored)
+            {
+                
             }
-            resultSet.addRow(values);
         }
-        return resultSet;
     }
 }
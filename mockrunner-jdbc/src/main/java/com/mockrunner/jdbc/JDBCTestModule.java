@@ -167,6 +167,8 @@ public class JDBCTestModule
      * by calling an <code>execute</code> method of a {@link com.mockrunner.mock.jdbc.MockStatement},
      * {@link com.mockrunner.mock.jdbc.MockPreparedStatement} or
      * {@link com.mockrunner.mock.jdbc.MockCallableStatement}.
+     * If an {@link ExecutedStatementLog} is set that does not retain all
+     * statements, only the retained statements are returned.
      * @return the <code>List</code> of SQL statements
      */
     public List<String> getExecutedSQLStatements()
@@ -178,6 +180,33 @@ public class JDBCTestModule
         return list;
     }
     
+    /**
+     * Returns the number of executions of each SQL statement that was executed
+     * by calling an <code>execute</code> method of a {@link com.mockrunner.mock.jdbc.MockStatement},
+     * {@link com.mockrunner.mock.jdbc.MockPreparedStatement} or
+     * {@link com.mockrunner.mock.jdbc.MockCallableStatement}.
+     * Unlike {@link #getExecutedSQLStatements}, the counts cover all
+     * executed statements, regardless of the {@link ExecutedStatementLog}.
+     * @return the <code>Map</code> of execution counts
+     */
+    public Map<String, Long> getExecutedSQLStatementCounts()
+    {
+        Map<String, Long> map = new TreeMap<String, Long>();
+        addCounts(map, mockFactory.getMockConnection().getStatementResultSetHandler().getExecutedStatementCounts());
+        addCounts(map, mockFactory.getMockConnection().getPreparedStatementResultSetHandler().getExecutedStatementCounts());
+        addCounts(map, mockFactory.getMockConnection().getCallableStatementResultSetHandler().getExecutedStatementCounts());
+        return map;
+    }
+    
+    private void addCounts(Map<String, Long> map, Map<String, Long> counts)
+    {
+        for(Map.Entry<String, Long> entry : counts.entrySet())
+        {
+            Long count = map.get(entry.getKey());
+            map.put(entry.getKey(), (null == count) ? entry.getValue() : count + entry.getValue());
+        }
+    }
+    
     /**
      * @deprecated use {@link #getExecutedSQLStatementParameterMap}
      */
@@ -589,12 +618,34 @@ public class JDBCTestModule
     public void verifySQLStatementExecuted(String sql)
     {
         SQLStatementMatcher matcher = new SQLStatementMatcher(caseSensitive, exactMatch, useRegularExpressions);
-        if(!matcher.contains(getExecutedSQLStatements(), sql, false))
+        if(!matcher.contains(getExecutedSQLStatementCounts().keySet(), sql, false))
         {
             throw new VerifyFailedException("Statement " + sql + " not executed.");
         }
     }
     
+    /**
+     * Verifies the number of executions of an SQL statement.
+     * If the specified SQL string matches more than one executed
+     * SQL statement, the executions of all matching statements are added.
+     * @param sql the expected SQL string
+     * @param number the expected number of executions
+     * @throws VerifyFailedException if verification fails
+     */
+    public void verifySQLStatementExecuted(String sql, int number)
+    {
+        SQLStatementMatcher matcher = new SQLStatementMatcher(caseSensitive, exactMatch, useRegularExpressions);
+        long actualNumber = 0;
+        for(Long count : matcher.getMatchingObjects(getExecutedSQLStatementCounts(), sql, false))
+        {
+            actualNumber += count;
+        }
+        if(actualNumber != number)
+        {
+            throw new VerifyFailedException("Expected " + number + " executions of statement " + sql + ", actual " + actualNumber);
+        }
+    }
+    
     /**
      * Verifies that an SQL statement was not executed.
      * @param sql the SQL string
@@ -603,7 +654,7 @@ public class JDBCTestModule
     public void verifySQLStatementNotExecuted(String sql)
     {
         SQLStatementMatcher matcher = new SQLStatementMatcher(caseSensitive, exactMatch, useRegularExpressions);
-        if(matcher.contains(getExecutedSQLStatements(), sql, false))
+        if(matcher.contains(getExecutedSQLStatementCounts().keySet(), sql, false))
         {
             throw new VerifyFailedException("Statement " + sql + " was executed.");
         }
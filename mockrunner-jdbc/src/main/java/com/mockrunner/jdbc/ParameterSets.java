@@ -1,7 +1,6 @@
 package com.mockrunner.jdbc;
 
 import com.mockrunner.mock.jdbc.MockParameterMap;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,15 +12,31 @@ import java.util.List;
  * Each <code>execute</code> call creates a parameter set.
  * A parameter set is a map, the index or the name of the 
  * parameter maps to the value.
+ * If a capacity is specified, only the last parameter sets
+ * up to the capacity are retained and the indices refer
+ * to the retained parameter sets.
  */
 public class ParameterSets
 {
 	private final List<MockParameterMap> parameterSets;
+	private final ConcurrentRingBuffer<MockParameterMap> lastParameterSets;
 	private final String sql;
 	
 	public ParameterSets(String sql)
 	{
-		parameterSets = new ArrayList<MockParameterMap>();
+		parameterSets = new ConcurrentAppendList<MockParameterMap>();
+		lastParameterSets = null;
+		this.sql = sql;
+	}
+	
+	/**
+	 * @param sql the SQL string
+	 * @param capacity the maximum number of retained parameter sets
+	 */
+	public ParameterSets(String sql, int capacity)
+	{
+		parameterSets = null;
+		lastParameterSets = new ConcurrentRingBuffer<MockParameterMap>(capacity);
 		this.sql = sql;
 	}
 	
@@ -40,6 +55,11 @@ public class ParameterSets
 	 */
 	public void addParameterSet(MockParameterMap parameterSet)
 	{
+		if(null != lastParameterSets)
+		{
+			lastParameterSets.add(parameterSet);
+			return;
+		}
 		parameterSets.add(parameterSet);
 	}
 	
@@ -49,7 +69,7 @@ public class ParameterSets
 	 */
 	public int getNumberParameterSets()
 	{
-		return parameterSets.size();
+		return getParameterSets().size();
 	}
 	
 	/**
@@ -59,7 +79,17 @@ public class ParameterSets
 	 */
 	public MockParameterMap getParameterSet(int indexOfParameterSet)
 	{
-		if(indexOfParameterSet >= getNumberParameterSets()) return null;
-		return parameterSets.get(indexOfParameterSet);
+		List<MockParameterMap> sets = getParameterSets();
+		if(indexOfParameterSet >= sets.size()) return null;
+		return sets.get(indexOfParameterSet);
+	}
+	
+	private List<MockParameterMap> getParameterSets()
+	{
+		if(null != lastParameterSets)
+		{
+			return lastParameterSets.toList();
+		}
+		return parameterSets;
 	}
 }
@@ -0,0 +1,68 @@
+package com.mockrunner.jdbc;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache for the parsed content of files used by the
+ * <code>ResultSetFactory</code> implementations.
+ * The entries are identified by the file (path, modification time
+ * and length) and the settings used to parse it. At most
+ * {@link #MAXIMUM_SIZE} entries are kept, the parsed content is
+ * softly referenced, so it can be discarded if memory is low.
+ * This class is thread safe.
+ */
+class ParsedFileCache<T>
+{
+    final static int MAXIMUM_SIZE = 16;
+    
+    private final Map<List<Object>, SoftReference<T>> cache = new LinkedHashMap<List<Object>, SoftReference<T>>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, SoftReference<T>> eldest)
+        {
+            return size() > MAXIMUM_SIZE;
+        }
+    };
+    
+    /**
+     * Returns the cached content or <code>null</code>, if there is
+     * no (or an outdated) entry for the file and settings.
+     * @param file the file
+     * @param settings the settings used to parse the file, must
+     *        implement <code>equals</code> and <code>hashCode</code>
+     * @return the cached content
+     */
+    synchronized T get(File file, Object... settings)
+    {
+        SoftReference<T> reference = cache.get(createKey(file, settings));
+        return (null != reference) ? reference.get() : null;
+    }
+    
+    synchronized void put(File file, T content, Object... settings)
+    {
+        cache.put(createKey(file, settings), new SoftReference<T>(content));
+    }
+    
+    synchronized void clear()
+    {
+        cache.clear();
+    }
+    
+    private List<Object> createKey(File file, Object[] settings)
+    {
+        List<Object> key = new ArrayList<Object>(settings.length + 3);
+        key.add(file.getAbsolutePath());
+        key.add(file.lastModified());
+        key.add(file.length());
+        key.addAll(Arrays.asList(settings));
+        return key;
+    }
+}
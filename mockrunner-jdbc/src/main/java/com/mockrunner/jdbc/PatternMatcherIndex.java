@@ -0,0 +1,513 @@
+package com.mockrunner.jdbc;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import com.mockrunner.util.regexp.Jsr51PatternMatcher;
+import com.mockrunner.util.regexp.PatternMatcher;
+import com.mockrunner.util.regexp.Perl5PatternMatcher;
+import com.mockrunner.util.regexp.SimplePatternMatcher;
+
+/**
+ * A <code>Map</code> of compiled SQL statement patterns that avoids
+ * calling {@link PatternMatcher#matches} for every registered pattern
+ * when looking up the objects that match an executed SQL string.
+ * The patterns are kept in the backing <code>Map</code>, which also
+ * defines the iteration order. Lookup structures are built lazily on
+ * the first lookup after a modification:
+ * <ul>
+ * <li>exact match patterns are hashed by their (case folded) string</li>
+ * <li>"contains" patterns of {@link SimplePatternMatcher} are compiled into
+ *     an Aho-Corasick automaton, so the SQL string is scanned only once</li>
+ * <li>regular expressions are bucketed in a trie by their literal prefix,
+ *     only the candidates of the prefixes of the SQL string are evaluated</li>
+ * </ul>
+ * All other {@link PatternMatcher} implementations are evaluated for
+ * every lookup. {@link #getMatchingObjects} returns the matching objects
+ * in the iteration order of the backing <code>Map</code>, i.e. the
+ * result is the same as if every pattern had been evaluated.
+ * This class is not thread safe. However, lookups of multiple threads
+ * are safe after {@link #buildIndex} was called, as long as the index
+ * is not modified anymore.
+ * @param <T> the type of the mapped objects
+ */
+public class PatternMatcherIndex<T> extends AbstractMap<PatternMatcher, T>
+{
+    private final Map<PatternMatcher, T> delegate;
+    private volatile Index index;
+    private volatile int modificationCount;
+
+    public PatternMatcherIndex(Map<PatternMatcher, T> delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public T put(PatternMatcher key, T value)
+    {
+        T oldValue = delegate.put(key, value);
+        modificationCount++;
+        if(null == oldValue || oldValue != value)
+        {
+            index = null;
+        }
+        return oldValue;
+    }
+
+    @Override
+    public T remove(Object key)
+    {
+        T oldValue = delegate.remove(key);
+        if(null != oldValue)
+        {
+            modificationCount++;
+            index = null;
+        }
+        return oldValue;
+    }
+
+    @Override
+    public void clear()
+    {
+        delegate.clear();
+        modificationCount++;
+        index = null;
+    }
+
+    @Override
+    public T get(Object key)
+    {
+        return delegate.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+    @Override
+    public Set<Entry<PatternMatcher, T>> entrySet()
+    {
+        return Collections.unmodifiableMap(delegate).entrySet();
+    }
+
+    /**
+     * Returns the number of modifications of this index. The number
+     * is incremented by every <code>put</code>, even if the key was
+     * already mapped to the same value, because the value may have
+     * been modified.
+     * @return the number of modifications
+     */
+    public int getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    /**
+     * Builds the lookup structures, if they were not built yet.
+     * Lookups do this lazily, so calling this method is only
+     * necessary before sharing the index with multiple threads.
+     */
+    public void buildIndex()
+    {
+        if(null == index)
+        {
+            index = new Index();
+        }
+    }
+
+    /**
+     * Adds all objects whose pattern matches the specified SQL string
+     * to the specified <code>Collection</code>.
+     * @param query the SQL string
+     * @param result the <code>Collection</code> the matching objects are added to
+     */
+    public void getMatchingObjects(String query, Collection<? super T> result)
+    {
+        if(null == query) query = "";
+        Index currentIndex = index;
+        if(null == currentIndex)
+        {
+            currentIndex = new Index();
+            index = currentIndex;
+        }
+        currentIndex.collectMatches(query, result);
+    }
+
+    private class Index
+    {
+        private final PatternMatcher[] matchers;
+        private final Object[] values;
+        private final Map<String, int[]> exactCaseSensitive = new HashMap<String, int[]>();
+        private final Map<String, int[]> exactCaseInsensitive = new HashMap<String, int[]>();
+        private final ContainsAutomaton containsCaseSensitive = new ContainsAutomaton();
+        private final ContainsAutomaton containsCaseInsensitive = new ContainsAutomaton();
+        private final PrefixTrie prefixCaseSensitive = new PrefixTrie();
+        private final PrefixTrie prefixCaseInsensitive = new PrefixTrie();
+        private int[] unindexed = new int[0];
+
+        private Index()
+        {
+            matchers = new PatternMatcher[delegate.size()];
+            values = new Object[delegate.size()];
+            int ordinal = 0;
+            for(Map.Entry<PatternMatcher, T> entry : delegate.entrySet())
+            {
+                matchers[ordinal] = entry.getKey();
+                values[ordinal] = entry.getValue();
+                add(entry.getKey(), ordinal);
+                ordinal++;
+            }
+            containsCaseSensitive.build();
+            containsCaseInsensitive.build();
+        }
+
+        private void add(PatternMatcher matcher, int ordinal)
+        {
+            if(matcher instanceof SimplePatternMatcher)
+            {
+                SimplePatternMatcher simpleMatcher = (SimplePatternMatcher)matcher;
+                String pattern = simpleMatcher.pattern();
+                if(simpleMatcher.isExactMatch())
+                {
+                    if(simpleMatcher.isCaseSensitive())
+                    {
+                        addExact(exactCaseSensitive, pattern, ordinal);
+                    }
+                    else
+                    {
+                        addExact(exactCaseInsensitive, foldCase(pattern), ordinal);
+                    }
+                }
+                else if(simpleMatcher.isCaseSensitive())
+                {
+                    containsCaseSensitive.add(pattern, ordinal);
+                }
+                else
+                {
+                    containsCaseInsensitive.add(pattern.toUpperCase(), ordinal);
+                }
+            }
+            else if(matcher instanceof Perl5PatternMatcher)
+            {
+                addRegularExpression(matcher.pattern(), ((Perl5PatternMatcher)matcher).isCaseSensitive(), ordinal);
+            }
+            else if(matcher instanceof Jsr51PatternMatcher)
+            {
+                addRegularExpression(matcher.pattern(), ((Jsr51PatternMatcher)matcher).isCaseSensitive(), ordinal);
+            }
+            else
+            {
+                unindexed = append(unindexed, ordinal);
+            }
+        }
+
+        private void addExact(Map<String, int[]> map, String key, int ordinal)
+        {
+            int[] ordinals = map.get(key);
+            map.put(key, (null == ordinals) ? new int[] {ordinal} : append(ordinals, ordinal));
+        }
+
+        private void addRegularExpression(String pattern, boolean caseSensitive, int ordinal)
+        {
+            String prefix = getLiteralPrefix(pattern);
+            if(caseSensitive)
+            {
+                prefixCaseSensitive.add(prefix, ordinal);
+            }
+            else
+            {
+                prefixCaseInsensitive.add(toLowerCase(prefix), ordinal);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void collectMatches(String query, Collection<? super T> result)
+        {
+            IntList matches = new IntList();
+            IntList candidates = new IntList();
+            if(!exactCaseSensitive.isEmpty())
+            {
+                matches.addAll(exactCaseSensitive.get(query));
+            }
+            if(!exactCaseInsensitive.isEmpty())
+            {
+                matches.addAll(exactCaseInsensitive.get(foldCase(query)));
+            }
+            containsCaseSensitive.collect(query, matches);
+            if(!containsCaseInsensitive.isEmpty())
+            {
+                containsCaseInsensitive.collect(query.toUpperCase(), matches);
+            }
+            prefixCaseSensitive.collect(query, false, candidates);
+            prefixCaseInsensitive.collect(query, true, candidates);
+            candidates.addAll(unindexed);
+            for(int ii = 0; ii < candidates.size(); ii++)
+            {
+                int ordinal = candidates.get(ii);
+                if(matchers[ordinal].matches(query))
+                {
+                    matches.add(ordinal);
+                }
+            }
+            int[] sorted = matches.toSortedArray();
+            for(int ii = 0; ii < sorted.length; ii++)
+            {
+                if(ii == 0 || sorted[ii] != sorted[ii - 1])
+                {
+                    result.add((T)values[sorted[ii]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the literal characters a regular expression must start with
+     * to match a string as a whole. This is conservative, i.e. it stops
+     * at the first character that is not a plain letter, digit or
+     * a few safe punctuation characters, and it returns an empty
+     * string, if the expression contains an alternation.
+     */
+    static String getLiteralPrefix(String pattern)
+    {
+        if(pattern.indexOf('|') >= 0) return "";
+        int start = pattern.startsWith("^") ? 1 : 0;
+        StringBuilder prefix = new StringBuilder();
+        for(int ii = start; ii < pattern.length(); ii++)
+        {
+            char current = pattern.charAt(ii);
+            if(!isLiteral(current)) break;
+            if(ii + 1 < pattern.length() && isQuantifier(pattern.charAt(ii + 1))) break;
+            prefix.append(current);
+        }
+        return prefix.toString();
+    }
+
+    private static boolean isLiteral(char c)
+    {
+        if(c >= 128) return false;
+        return Character.isLetterOrDigit(c) || " _,;:=<>'\"-/%!@&~".indexOf(c) >= 0;
+    }
+
+    private static boolean isQuantifier(char c)
+    {
+        return c == '*' || c == '?' || c == '+' || c == '{';
+    }
+
+    /**
+     * Folds the case of the string like {@link String#equalsIgnoreCase}
+     * compares characters.
+     */
+    private static String foldCase(String string)
+    {
+        char[] chars = string.toCharArray();
+        for(int ii = 0; ii < chars.length; ii++)
+        {
+            chars[ii] = Character.toLowerCase(Character.toUpperCase(chars[ii]));
+        }
+        return new String(chars);
+    }
+
+    private static String toLowerCase(String string)
+    {
+        char[] chars = string.toCharArray();
+        for(int ii = 0; ii < chars.length; ii++)
+        {
+            chars[ii] = Character.toLowerCase(chars[ii]);
+        }
+        return new String(chars);
+    }
+
+    private static int[] append(int[] array, int value)
+    {
+        int[] newArray = Arrays.copyOf(array, array.length + 1);
+        newArray[array.length] = value;
+        return newArray;
+    }
+
+    private static class PrefixTrie
+    {
+        private final TrieNode root = new TrieNode();
+        private boolean empty = true;
+
+        private void add(String prefix, int ordinal)
+        {
+            TrieNode node = root;
+            for(int ii = 0; ii < prefix.length(); ii++)
+            {
+                Character current = prefix.charAt(ii);
+                TrieNode child = node.children.get(current);
+                if(null == child)
+                {
+                    child = new TrieNode();
+                    node.children.put(current, child);
+                }
+                node = child;
+            }
+            node.ordinals = append(node.ordinals, ordinal);
+            empty = false;
+        }
+
+        private void collect(String query, boolean toLowerCase, IntList candidates)
+        {
+            if(empty) return;
+            TrieNode node = root;
+            candidates.addAll(node.ordinals);
+            for(int ii = 0; ii < query.length(); ii++)
+            {
+                char current = query.charAt(ii);
+                if(toLowerCase) current = Character.toLowerCase(current);
+                node = node.children.get(current);
+                if(null == node) return;
+                candidates.addAll(node.ordinals);
+            }
+        }
+    }
+
+    private static class ContainsAutomaton
+    {
+        private final TrieNode root = new TrieNode();
+        private boolean empty = true;
+
+        private void add(String pattern, int ordinal)
+        {
+            TrieNode node = root;
+            for(int ii = 0; ii < pattern.length(); ii++)
+            {
+                Character current = pattern.charAt(ii);
+                TrieNode child = node.children.get(current);
+                if(null == child)
+                {
+                    child = new TrieNode();
+                    node.children.put(current, child);
+                }
+                node = child;
+            }
+            node.ordinals = append(node.ordinals, ordinal);
+            empty = false;
+        }
+
+        private boolean isEmpty()
+        {
+            return empty;
+        }
+
+        private void build()
+        {
+            if(empty) return;
+            Queue<TrieNode> queue = new ArrayDeque<TrieNode>();
+            for(TrieNode child : root.children.values())
+            {
+                child.failure = root;
+                child.output = root;
+                queue.add(child);
+            }
+            while(!queue.isEmpty())
+            {
+                TrieNode node = queue.remove();
+                for(Map.Entry<Character, TrieNode> entry : node.children.entrySet())
+                {
+                    TrieNode child = entry.getValue();
+                    TrieNode failure = node.failure;
+                    while(null != failure && !failure.children.containsKey(entry.getKey()))
+                    {
+                        failure = failure.failure;
+                    }
+                    child.failure = (null == failure) ? root : failure.children.get(entry.getKey());
+                    TrieNode output = child.failure;
+                    while(output != root && output.ordinals.length == 0)
+                    {
+                        output = output.output;
+                    }
+                    child.output = output;
+                    queue.add(child);
+                }
+            }
+        }
+
+        private void collect(String query, IntList matches)
+        {
+            if(empty) return;
+            matches.addAll(root.ordinals);
+            TrieNode node = root;
+            for(int ii = 0; ii < query.length(); ii++)
+            {
+                Character current = query.charAt(ii);
+                TrieNode next = node.children.get(current);
+                while(null == next && node != root)
+                {
+                    node = node.failure;
+                    next = node.children.get(current);
+                }
+                node = (null == next) ? root : next;
+                for(TrieNode output = node; null != output && output != root; output = output.output)
+                {
+                    matches.addAll(output.ordinals);
+                }
+            }
+        }
+    }
+
+    private static class TrieNode
+    {
+        private final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+        private int[] ordinals = new int[0];
+        private TrieNode failure;
+        private TrieNode output;
+    }
+
+    private static class IntList
+    {
+        private int[] data = new int[8];
+        private int size;
+
+        private void add(int value)
+        {
+            if(size == data.length)
+            {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        private void addAll(int[] values)
+        {
+            if(null == values) return;
+            for(int value : values)
+            {
+                add(value);
+            }
+        }
+
+        private int get(int index)
+        {
+            return data[index];
+        }
+
+        private int size()
+        {
+            return size;
+        }
+
+        private int[] toSortedArray()
+        {
+            int[] sorted = Arrays.copyOf(data, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package com.mockrunner.jdbc;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.mockrunner.mock.jdbc.MockPreparedStatement;
 
@@ -18,8 +17,8 @@ public class PreparedStatementResultSetHandler extends AbstractParameterResultSe
     
     public PreparedStatementResultSetHandler()
     {
-        preparedStatements = new ArrayList<MockPreparedStatement>();
-        preparedStatementMap = new TreeMap<String, List<MockPreparedStatement>>();
+        preparedStatements = new ConcurrentAppendList<MockPreparedStatement>();
+        preparedStatementMap = new ConcurrentSkipListMap<String, List<MockPreparedStatement>>();
     }
     
     /**
@@ -33,8 +32,9 @@ public class PreparedStatementResultSetHandler extends AbstractParameterResultSe
         List<MockPreparedStatement> list = preparedStatementMap.get(statement.getSQL());
         if(null == list)
         {
-            list = new ArrayList<MockPreparedStatement>();
-            preparedStatementMap.put(statement.getSQL(), list);
+            List<MockPreparedStatement> newList = new ConcurrentAppendList<MockPreparedStatement>();
+            list = preparedStatementMap.putIfAbsent(statement.getSQL(), newList);
+            if(null == list) list = newList;
         }
         list.add(statement);
         preparedStatements.add(statement);
@@ -0,0 +1,133 @@
+package com.mockrunner.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of the number of rows of the <code>ResultSet</code> objects
+ * returned for one SQL string. The row counts are counted in buckets
+ * whose upper bounds are powers of two, i.e. recording a row count
+ * takes constant time and the memory does not grow with the number
+ * of executions. The percentiles returned by {@link #getPercentile}
+ * are the upper bound of the bucket that contains the percentile,
+ * so they are exact within a factor of two.
+ */
+public class RowCountHistogram
+{
+    private final static int NUMBER_BUCKETS = 64;
+
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final AtomicLong maximum;
+
+    public RowCountHistogram()
+    {
+        buckets = new LongAdder[NUMBER_BUCKETS];
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            buckets[ii] = new LongAdder();
+        }
+        sum = new LongAdder();
+        maximum = new AtomicLong();
+    }
+
+    /**
+     * Records the row count of a returned <code>ResultSet</code>.
+     * @param rowCount the number of rows
+     */
+    public void record(long rowCount)
+    {
+        long rows = Math.max(0, rowCount);
+        buckets[NUMBER_BUCKETS - Long.numberOfLeadingZeros(rows)].increment();
+        sum.add(rows);
+        long currentMaximum = maximum.get();
+        while(rows > currentMaximum && !maximum.compareAndSet(currentMaximum, rows))
+        {
+            currentMaximum = maximum.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded <code>ResultSet</code> objects.
+     * @return the number of recorded <code>ResultSet</code> objects
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for(LongAdder bucket : buckets)
+        {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total number of rows of all
+     * recorded <code>ResultSet</code> objects.
+     * @return the total number of rows
+     */
+    public long getTotalRows()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the mean row count or <code>0</code>,
+     * if no <code>ResultSet</code> was recorded.
+     * @return the mean row count
+     */
+    public long getMean()
+    {
+        long count = getCount();
+        if(count == 0) return 0;
+        return sum.sum() / count;
+    }
+
+    /**
+     * Returns the maximum row count or <code>0</code>,
+     * if no <code>ResultSet</code> was recorded.
+     * @return the maximum row count
+     */
+    public long getMaximum()
+    {
+        return maximum.get();
+    }
+
+    /**
+     * Returns an upper bound for the specified percentile of the
+     * row counts, e.g. <code>getPercentile(99)</code> returns a
+     * row count that is greater than or equal to 99 percent of the
+     * recorded row counts. The result is never greater than
+     * {@link #getMaximum}. Returns <code>0</code>, if no
+     * <code>ResultSet</code> was recorded.
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound for the percentile
+     */
+    public long getPercentile(double percentile)
+    {
+        if(percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] counts = new long[NUMBER_BUCKETS];
+        long count = 0;
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            counts[ii] = buckets[ii].sum();
+            count += counts[ii];
+        }
+        if(count == 0) return 0;
+        long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            seen += counts[ii];
+            if(seen >= rank)
+            {
+                long upperBound = (1L << ii) - 1;
+                return Math.min(upperBound, getMaximum());
+            }
+        }
+        return getMaximum();
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import com.mockrunner.util.regexp.CachingPatternMatcherFactory;
 import com.mockrunner.util.regexp.PatternMatcher;
 
 import java.util.Map.Entry;
@@ -22,6 +23,9 @@ import java.util.Map.Entry;
  * <code>useRegularExpression</code> use regular expressions for matching, if this parameter is
  *                                   <code>false</code>, strings match, if one string starts with the other
  *                                   (default is <code>false</code>)
+ * <br>
+ * The compiled patterns are cached (see {@link CachingPatternMatcherFactory}),
+ * so verifying the same statement repeatedly does not compile it again.
  */
 public class SQLStatementMatcher
 {
@@ -38,7 +42,7 @@ public class SQLStatementMatcher
     }
 
     public SQLStatementMatcher(PatternMatcher.Factory patternMatcherFactory) {
-        this.patternMatcherFactory = patternMatcherFactory;
+        this.patternMatcherFactory = CachingPatternMatcherFactory.wrap(patternMatcherFactory);
     }
     
     /**
@@ -57,20 +61,9 @@ public class SQLStatementMatcher
 	{
 		if(null == query) query = "";
 		List<T> resultList = new ArrayList<T>();
-        
+        PatternMatcher queryMatcher = queryContainsMapData ? null : getPatternMatcher(query);
         for(Entry<String, ? extends T> entry : dataMap.entrySet()){
-			String source, currentQuery;
-			if(queryContainsMapData)
-			{
-				source = query;
-				currentQuery = entry.getKey();
-			}
-			else
-			{
-				source = entry.getKey();
-				currentQuery = query;
-			}
-			if(doStringsMatch(source, currentQuery)){
+            if(doesElementMatch(queryMatcher, entry.getKey(), query)){
                 T matchingObject = entry.getValue();
     			resultList.add(matchingObject);
             }
@@ -94,20 +87,9 @@ public class SQLStatementMatcher
 	{
 		if(null == query) query = "";
 		List<T> resultList = new ArrayList<T>();
-        
+        PatternMatcher queryMatcher = queryContainsMapData ? null : getPatternMatcher(query);
         for(Entry<String, ? extends Collection<? extends T>> entry : dataMap.entrySet()){
-			String source, currentQuery;
-			if(queryContainsMapData)
-			{
-				source = query;
-				currentQuery = entry.getKey();
-			}
-			else
-			{
-				source = entry.getKey();
-				currentQuery = query;
-			}
-			if(doStringsMatch(source, currentQuery)){
+            if(doesElementMatch(queryMatcher, entry.getKey(), query)){
                 Collection<? extends T> matchingObject = entry.getValue();
                 resultList.addAll(matchingObject);
             }
@@ -127,23 +109,33 @@ public class SQLStatementMatcher
      */
     public boolean contains(Collection<String> col, String query, boolean queryContainsData)
     {
+        if(null == query) query = "";
+        PatternMatcher queryMatcher = queryContainsData ? null : getPatternMatcher(query);
         for(String element : col){
-			String source, currentQuery;
-			if(queryContainsData)
-			{
-				source = query;
-				currentQuery = element;
-			}
-			else
-			{
-				source = element;
-				currentQuery = query;
-			}
-			if(doStringsMatch(source, currentQuery)) return true;
+            if(doesElementMatch(queryMatcher, element, query)) return true;
         }
         return false;
     }
     
+    /**
+     * Returns all elements in the specified <code>Collection</code> that
+     * match the specified query string. Unlike calling {@link #doStringsMatch}
+     * for each element, the query string is compiled only once.
+     * @param col the <code>Collections</code>
+     * @param query the query string that must match the elements in <i>col</i>
+     * @return the matching elements in iteration order of <i>col</i>
+     */
+    public List<String> getMatchingStrings(Collection<String> col, String query)
+    {
+        if(null == query) query = "";
+        PatternMatcher queryMatcher = getPatternMatcher(query);
+        List<String> resultList = new ArrayList<String>();
+        for(String element : col){
+            if(queryMatcher.matches(null == element ? "" : element)) resultList.add(element);
+        }
+        return resultList;
+    }
+    
     /**
      * Compares two strings and returns if they match. 
      * @param query the query string that must match source
@@ -154,7 +146,20 @@ public class SQLStatementMatcher
     {
         if(null == source) source = "";
         if(null == query) query = "";
-        PatternMatcher patternMatcher = patternMatcherFactory.create(query);
-        return patternMatcher.matches(source);
+        return getPatternMatcher(query).matches(source);
+    }
+    
+    private boolean doesElementMatch(PatternMatcher queryMatcher, String element, String query)
+    {
+        if(null == queryMatcher)
+        {
+            return doStringsMatch(query, element);
+        }
+        return queryMatcher.matches(null == element ? "" : element);
+    }
+    
+    private PatternMatcher getPatternMatcher(String pattern)
+    {
+        return patternMatcherFactory.create(pattern);
     }
 }
@@ -1,6 +1,5 @@
 package com.mockrunner.jdbc;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -15,7 +14,7 @@ public class StatementResultSetHandler extends AbstractResultSetHandler
 
     public StatementResultSetHandler()
     {
-        statements = new ArrayList<MockStatement>();
+        statements = new ConcurrentAppendList<MockStatement>();
     }  
     
     /**
@@ -1,15 +1,19 @@
 package com.mockrunner.jdbc;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.input.SAXBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.mockrunner.base.NestedApplicationException;
 import com.mockrunner.mock.jdbc.MockResultSet;
@@ -37,6 +41,18 @@ public class XMLResultSetFactory implements ResultSetFactory
     private String fileName = null;
     private boolean trim = true;
     private int dialect = SYBASE_DIALECT;
+    private boolean useCache = false;
+    
+    private final static ParsedFileCache<ParsedDocument> parsedFileCache = new ParsedFileCache<ParsedDocument>();
+    private final static XMLInputFactory inputFactory = createInputFactory();
+    
+    private static XMLInputFactory createInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        return factory;
+    }
     
     public XMLResultSetFactory(String fileName)
     {
@@ -145,6 +161,28 @@ public class XMLResultSetFactory implements ResultSetFactory
         return dialect;
     }
     
+    /**
+     * Set this to <code>true</code> to cache the parsed content of the
+     * file. Subsequent calls of {@link #create} (of this or another
+     * factory with the same settings) do not parse the file again,
+     * as long as its modification time and length are unchanged.
+     * Default is <code>false</code>.
+     * @param useCache set <code>true</code> to cache the parsed file
+     */
+    public void setUseCache(boolean useCache)
+    {
+        this.useCache = useCache;
+    }
+    
+    /**
+     * Clears the cache used by all factories with enabled cache.
+     * See {@link #setUseCache}.
+     */
+    public static void clearCache()
+    {
+        parsedFileCache.clear();
+    }
+    
     /**
      * Return a MockResultSet with proper column names and 
      * rows based on the XML <code>Document</code>.
@@ -153,55 +191,7 @@ public class XMLResultSetFactory implements ResultSetFactory
      */
     public MockResultSet createSybaseResultSet(String id) 
     {
-       MockResultSet resultSet = new MockResultSet(id);
-       SAXBuilder builder = new SAXBuilder();
-       Document doc = null;
-       File fileToParse = getXMLFile();
-       if(null == fileToParse)
-       {
-           throw new RuntimeException("File " + fileName + " not found.");
-       }
-       try 
-       {
-           doc = builder.build(fileToParse);
-           Element root = doc.getRootElement();
-           List rows = root.getChildren("row");
-           Iterator ri = rows.iterator();
-           boolean firstIteration = true;
-           int colNum = 0;
-           while (ri.hasNext()) 
-           {
-               Element cRow = (Element)ri.next();
-               List cRowChildren = cRow.getChildren();
-               Iterator cri = cRowChildren.iterator();   
-               if (firstIteration)
-               {
-                   List columns = cRowChildren;
-
-                   for (Object column : columns) {
-                       Element ccRow = (Element) column;
-                       resultSet.addColumn(ccRow.getName());
-                       colNum++;
-                   }
-                   firstIteration = false;
-               }
-               String[] cRowValues = new String[colNum];
-               int curCol = 0;
-               while (cri.hasNext())
-               {
-                   Element crValue = (Element)cri.next();
-                   String value = trim ? crValue.getTextTrim() : crValue.getText();
-                   cRowValues[curCol] = value;
-                   curCol++;
-               }
-               resultSet.addRow(cRowValues);
-           }
-       } 
-       catch(Exception exc) 
-       {
-           throw new NestedApplicationException("Failure while reading from XML file", exc);
-       }
-       return resultSet;
+        return createResultSet(id, SYBASE_DIALECT);
     }
     
     /**
@@ -212,74 +202,273 @@ public class XMLResultSetFactory implements ResultSetFactory
      */
     public MockResultSet createSquirrelResultSet(String id) 
     {
-       MockResultSet resultSet = new MockResultSet(id);
-       SAXBuilder builder = new SAXBuilder();
-       Document doc = null;
-       File fileToParse = getXMLFile();
-       if(null == fileToParse)
-       {
-           throw new RuntimeException("File " + fileName + " not found.");
-       }
-       try 
-       {
-           doc = builder.build(fileToParse);
-           int offset;
-           int maxColumnNumber; // first column is 0 (unlike JDBC)
-           
-           Map columnNameMap = new HashMap();
-           Element root = doc.getRootElement();
-           List columns = root.getChild("columns").getChildren("column");
-           Iterator ci = columns.iterator();
-           maxColumnNumber = 0;
-           while (ci.hasNext()) 
-           {
-               Element cColumn = (Element)ci.next();
-               int columnNumber = cColumn.getAttribute("number").getIntValue();
-               if (columnNumber>maxColumnNumber)
-               {
-               	    maxColumnNumber = columnNumber;
-               }
-               String columnName = cColumn.getChildText("name");
-               columnNameMap.put(columnNumber, columnName);
-           }
-           offset = 0;
-           for (int ii=0; ii<columnNameMap.size(); ii++)
-           {
-               while (true) {
-                   String name = (String)columnNameMap.get(ii + offset);
-                   if (name==null) {
-                       offset++;
-                       resultSet.addColumn("unknown."+offset);
-                       continue;
-                   }
-                   else 
-                   {
-                       resultSet.addColumn(name);
-                       break;
-                   }
-               }
-               
-           }
-           
-           List rows = root.getChild("rows").getChildren("row");
-           for (Object row : rows) {
-               Element cRow = (Element) row;
-               List cRowChildren = cRow.getChildren();
-               Iterator cri = cRowChildren.iterator();
-               String[] cRowValues = new String[maxColumnNumber + 1];
-               while (cri.hasNext()) {
-                   Element crValue = (Element) cri.next();
-                   String value = trim ? crValue.getTextTrim() : crValue.getText();
-                   int curCol = crValue.getAttribute("columnNumber").getIntValue();
-                   cRowValues[curCol] = value;
-               }
-               resultSet.addRow(cRowValues);
-           }
-       } 
-       catch(Exception exc) 
-       {
-           throw new NestedApplicationException("Failure while reading from XML file", exc);
-       }
-       return resultSet;
+        return createResultSet(id, SQUIRREL_DIALECT);
+    }
+    
+    private MockResultSet createResultSet(String id, int dialect)
+    {
+        File fileToParse = getXMLFile();
+        if(null == fileToParse)
+        {
+            throw new RuntimeException("File " + fileName + " not found.");
+        }
+        ParsedDocument document = null;
+        if(useCache)
+        {
+            document = parsedFileCache.get(fileToParse, dialect, trim);
+        }
+        if(null == document)
+        {
+            document = parse(fileToParse, dialect);
+            if(useCache)
+            {
+                parsedFileCache.put(fileToParse, document, dialect, trim);
+            }
+        }
+        MockResultSet resultSet = new MockResultSet(id);
+        for(String columnName : document.columnNames)
+        {
+            resultSet.addColumn(columnName);
+        }
+        for(String[] row : document.rows)
+        {
+            resultSet.addRow(row);
+        }
+        return resultSet;
+    }
+    
+    private ParsedDocument parse(File fileToParse, int dialect)
+    {
+        InputStream stream = null;
+        XMLStreamReader reader = null;
+        try 
+        {
+            stream = new BufferedInputStream(new FileInputStream(fileToParse));
+            reader = inputFactory.createXMLStreamReader(fileToParse.toURI().toString(), stream);
+            while(XMLStreamConstants.START_ELEMENT != reader.next())
+            {
+                // move to the root element
+            }
+            if(SQUIRREL_DIALECT == dialect)
+            {
+                return parseSquirrelDocument(reader);
+            }
+            return parseSybaseDocument(reader);
+        } 
+        catch(Exception exc) 
+        {
+            throw new NestedApplicationException("Failure while reading from XML file", exc);
+        }
+        finally
+        {
+            close(reader, stream);
+        }
+    }
+    
+    private ParsedDocument parseSybaseDocument(XMLStreamReader reader) throws XMLStreamException
+    {
+        ParsedDocument document = new ParsedDocument();
+        boolean firstIteration = true;
+        while(nextChildElement(reader))
+        {
+            if(!"row".equals(reader.getLocalName()))
+            {
+                skipElement(reader);
+                continue;
+            }
+            List<String> values = new ArrayList<String>();
+            while(nextChildElement(reader))
+            {
+                if(firstIteration)
+                {
+                    document.columnNames.add(reader.getLocalName());
+                }
+                values.add(getElementText(reader));
+            }
+            firstIteration = false;
+            if(values.size() > document.columnNames.size())
+            {
+                throw new XMLStreamException("Row with more values than columns", reader.getLocation());
+            }
+            document.rows.add(values.toArray(new String[document.columnNames.size()]));
+        }
+        return document;
+    }
+    
+    private ParsedDocument parseSquirrelDocument(XMLStreamReader reader) throws XMLStreamException
+    {
+        ParsedDocument document = new ParsedDocument();
+        Map<Integer, String> columnNameMap = null;
+        List<Map<Integer, String>> rows = null;
+        int maxColumnNumber = 0; // first column is 0 (unlike JDBC)
+        while(nextChildElement(reader))
+        {
+            String name = reader.getLocalName();
+            if("columns".equals(name) && null == columnNameMap)
+            {
+                columnNameMap = new HashMap<Integer, String>();
+                while(nextChildElement(reader))
+                {
+                    if(!"column".equals(reader.getLocalName()))
+                    {
+                        skipElement(reader);
+                        continue;
+                    }
+                    int columnNumber = getIntAttribute(reader, "number");
+                    maxColumnNumber = Math.max(maxColumnNumber, columnNumber);
+                    String columnName = null;
+                    while(nextChildElement(reader))
+                    {
+                        if("name".equals(reader.getLocalName()) && null == columnName)
+                        {
+                            columnName = getElementText(reader, false);
+                        }
+                        else
+                        {
+                            skipElement(reader);
+                        }
+                    }
+                    columnNameMap.put(columnNumber, columnName);
+                }
+            }
+            else if("rows".equals(name) && null == rows)
+            {
+                rows = new ArrayList<Map<Integer, String>>();
+                while(nextChildElement(reader))
+                {
+                    if(!"row".equals(reader.getLocalName()))
+                    {
+                        skipElement(reader);
+                        continue;
+                    }
+                    Map<Integer, String> row = new HashMap<Integer, String>();
+                    while(nextChildElement(reader))
+                    {
+                        int columnNumber = getIntAttribute(reader, "columnNumber");
+                        row.put(columnNumber, getElementText(reader));
+                    }
+                    rows.add(row);
+                }
+            }
+            else
+            {
+                skipElement(reader);
+            }
+        }
+        if(null == columnNameMap || null == rows)
+        {
+            throw new XMLStreamException("Missing columns or rows element");
+        }
+        int offset = 0;
+        for(int ii = 0; ii < columnNameMap.size(); ii++)
+        {
+            String name = columnNameMap.get(ii + offset);
+            while(null == name)
+            {
+                offset++;
+                document.columnNames.add("unknown." + offset);
+                name = columnNameMap.get(ii + offset);
+            }
+            document.columnNames.add(name);
+        }
+        for(Map<Integer, String> row : rows)
+        {
+            String[] values = new String[maxColumnNumber + 1];
+            for(Map.Entry<Integer, String> entry : row.entrySet())
+            {
+                values[entry.getKey()] = entry.getValue();
+            }
+            document.rows.add(values);
+        }
+        return document;
+    }
+    
+    /**
+     * Moves to the start of the next child element of the current
+     * element. Returns <code>false</code> if the current element
+     * ends before, the reader is on its end tag then.
+     */
+    private boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        while(reader.hasNext())
+        {
+            int event = reader.next();
+            if(XMLStreamConstants.START_ELEMENT == event) return true;
+            if(XMLStreamConstants.END_ELEMENT == event) return false;
+        }
+        return false;
+    }
+    
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+        while(depth > 0)
+        {
+            int event = reader.next();
+            if(XMLStreamConstants.START_ELEMENT == event) depth++;
+            if(XMLStreamConstants.END_ELEMENT == event) depth--;
+        }
+    }
+    
+    private String getElementText(XMLStreamReader reader) throws XMLStreamException
+    {
+        return getElementText(reader, trim);
+    }
+    
+    /**
+     * Returns the text of the current element without the text of
+     * nested elements, like the JDOM <code>getText()</code> method.
+     * The reader is on the end tag of the element afterwards.
+     */
+    private String getElementText(XMLStreamReader reader, boolean trim) throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while(depth > 0)
+        {
+            int event = reader.next();
+            if(XMLStreamConstants.START_ELEMENT == event)
+            {
+                depth++;
+            }
+            else if(XMLStreamConstants.END_ELEMENT == event)
+            {
+                depth--;
+            }
+            else if(1 == depth && (XMLStreamConstants.CHARACTERS == event || XMLStreamConstants.CDATA == event || XMLStreamConstants.SPACE == event))
+            {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+        return trim ? text.toString().trim() : text.toString();
+    }
+    
+    private int getIntAttribute(XMLStreamReader reader, String name) throws XMLStreamException
+    {
+        String value = reader.getAttributeValue(null, name);
+        if(null == value)
+        {
+            throw new XMLStreamException("Missing attribute " + name, reader.getLocation());
+        }
+        return Integer.parseInt(value.trim());
+    }
+    
+    private void close(XMLStreamReader reader, InputStream stream)
+    {
+        try
+        {
+            if(null != reader) reader.close();
+            if(null != stream) stream.close();
+        }
+        catch(Exception ignored)
+        {
+            
+        }
+    }
+    
+    private static class ParsedDocument
+    {
+        private final List<String> columnNames = new ArrayList<String>();
+        private final List<String[]> rows = new ArrayList<String[]>();
     }
 }
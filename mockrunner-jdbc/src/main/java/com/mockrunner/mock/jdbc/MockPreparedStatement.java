@@ -198,7 +198,7 @@ public class MockPreparedStatement extends MockStatement implements PreparedStat
         result = cloneResultSet(result);
         if(null != result)
         {
-            resultSetHandler.addReturnedResultSet(result);
+            resultSetHandler.addReturnedResultSet(getSQL(), result);
         }
         setResultSets(new MockResultSet[] {result});
         setGeneratedKeysResultSet(sql, params);
@@ -210,7 +210,7 @@ public class MockPreparedStatement extends MockStatement implements PreparedStat
         results = cloneResultSets(results);
         if(null != results)
         {
-            resultSetHandler.addReturnedResultSets(results);
+            resultSetHandler.addReturnedResultSets(getSQL(), results);
         }
         setResultSets(results);
         setGeneratedKeysResultSet(sql, params);
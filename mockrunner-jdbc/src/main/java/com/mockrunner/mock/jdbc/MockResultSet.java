@@ -26,8 +26,10 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +57,8 @@ import com.mockrunner.util.common.StringUtil;
  */
 public class MockResultSet implements ResultSet, Cloneable
 {
+    private final static int MAXIMUM_COLUMN_INDEX_CACHE_SIZE = 256;
+
     private Statement statement;
     private String id;
     private Map<String, List<Object>> columnMap;
@@ -77,6 +81,11 @@ public class MockResultSet implements ResultSet, Cloneable
     private ResultSetMetaData resultSetMetaData;
     private boolean closed;
     private boolean columnsCaseSensitive;
+    private boolean useColumnarStorage;
+    private List<Object>[] databaseColumns;
+    private List<Object>[] resultSetColumns;
+    private Map<String, Integer> columnIndexCache;
+    private boolean isDataShared;
     
     public MockResultSet(String id)
     {
@@ -104,6 +113,8 @@ public class MockResultSet implements ResultSet, Cloneable
         isCursorInInsertRow = false;
         isDatabaseView = false;
         resultSetMetaData = null;
+        columnIndexCache = new IdentityHashMap<String, Integer>();
+        isDataShared = false;
         copyColumnMap();
         adjustInsertRow();
     }
@@ -130,6 +141,61 @@ public class MockResultSet implements ResultSet, Cloneable
         this.columnsCaseSensitive = columnsCaseSensitive;
         init();
     }
+    
+    /**
+     * Sets if the columns should be stored in primitive arrays. Default is
+     * <code>false</code>. If set to <code>true</code>, columns containing
+     * only <code>Integer</code>, <code>Long</code> or <code>Double</code>
+     * values are stored in <code>int[]</code>, <code>long[]</code> or
+     * <code>double[]</code> arrays, <code>byte[]</code> values are stored
+     * in a <code>byte[][]</code>. The <code>getInt</code>, <code>getLong</code>
+     * and <code>getDouble</code> methods read such columns without boxing,
+     * and numeric columns are shared by the database and the
+     * <code>ResultSet</code> data (see {@link #setDatabaseView}) until one
+     * of them is modified. Columns with values of other types are stored
+     * as objects. Switching this attribute keeps the current data.
+     * @param useColumnarStorage store the columns in primitive arrays
+     */
+    public void setUseColumnarStorage(boolean useColumnarStorage)
+    {
+        if(this.useColumnarStorage == useColumnarStorage) return;
+        this.useColumnarStorage = useColumnarStorage;
+        Map<String, List<Object>> newColumnMap = createCaseAwareMap();
+        for(String nextColumnName : columnMap.keySet())
+        {
+            newColumnMap.put(nextColumnName, createColumn(columnMap.get(nextColumnName)));
+        }
+        if(null != columnMapCopy)
+        {
+            Map<String, List<Object>> newColumnMapCopy = createCaseAwareMap();
+            for(String nextColumnName : columnMapCopy.keySet())
+            {
+                List<Object> nextColumn = columnMapCopy.get(nextColumnName);
+                if(nextColumn == columnMap.get(nextColumnName))
+                {
+                    nextColumn = newColumnMap.get(nextColumnName);
+                }
+                else
+                {
+                    nextColumn = createColumn(nextColumn);
+                }
+                newColumnMapCopy.put(nextColumnName, nextColumn);
+            }
+            columnMapCopy = newColumnMapCopy;
+        }
+        columnMap = newColumnMap;
+        resetColumnCache();
+    }
+    
+    /**
+     * Returns if the columns are stored in primitive arrays.
+     * See {@link #setUseColumnarStorage}.
+     * @return <code>true</code> if the columns are stored in primitive arrays
+     */
+    public boolean isUseColumnarStorage()
+    {
+        return useColumnarStorage;
+    }
 
     /**
      * Copies this <code>ResultSet</code>. The data of the
@@ -140,21 +206,44 @@ public class MockResultSet implements ResultSet, Cloneable
      */
     @Override
     public Object clone()
+    {
+        MockResultSet copy = createCopy();
+        copy.copyData();
+        return copy;
+    }
+    
+    /**
+     * Copies this <code>ResultSet</code> like {@link #clone}, but the
+     * copy shares the data with this <code>ResultSet</code>. The data
+     * is copied, when the copy or this <code>ResultSet</code> is modified
+     * for the first time, e.g. by calling an <code>update</code> method,
+     * {@link #insertRow}, {@link #deleteRow} or {@link #addRow}. If the
+     * copy is only read, the data is never copied.
+     * Multiple threads may create copies of the same
+     * <code>ResultSet</code> concurrently, as long as it is
+     * not modified.
+     * @return a copy of this <code>ResultSet</code>
+     */
+    public synchronized MockResultSet copyOnWriteClone()
+    {
+        getColumnMapCopy();
+        MockResultSet copy = createCopy();
+        copy.isDataShared = true;
+        isDataShared = true;
+        return copy;
+    }
+    
+    private MockResultSet createCopy()
     {
         try
         {       
             MockResultSet copy = (MockResultSet)super.clone();
-            copy.columnNameList = new ArrayList<String>(columnNameList);
-            copy.updatedRows = new ArrayList<Boolean>(updatedRows);
-            copy.deletedRows = new ArrayList<Boolean>(deletedRows);
-            copy.insertedRows = new ArrayList<Boolean>(insertedRows);
-            copy.insertRow = copyColumnDataMap(insertRow);
-            copy.columnMap = copyColumnDataMap(columnMap);
-            copy.columnMapCopy = copyColumnDataMap(columnMapCopy);
             if(null != resultSetMetaData && resultSetMetaData instanceof MockResultSetMetaData)
             {
                 copy.resultSetMetaData = (ResultSetMetaData)((MockResultSetMetaData)resultSetMetaData).clone();
             }
+            copy.columnIndexCache = new IdentityHashMap<String, Integer>();
+            copy.resetColumnCache();
             return copy;
         }
         catch(CloneNotSupportedException exc)
@@ -165,7 +254,12 @@ public class MockResultSet implements ResultSet, Cloneable
 
    public MockResultSet shallowCopy() {
       try {
-         return (MockResultSet) super.clone();
+         MockResultSet copy = (MockResultSet) super.clone();
+         copy.columnMapCopy = createCaseAwareMap();
+         copy.columnMapCopy.putAll(getColumnMapCopy());
+         copy.columnIndexCache = new IdentityHashMap<String, Integer>();
+         copy.resetColumnCache();
+         return copy;
       } catch (CloneNotSupportedException e) {
          throw new NestedApplicationException(e);
       }
@@ -344,6 +438,7 @@ public class MockResultSet implements ResultSet, Cloneable
      */
     public void addRow(List<Object> values)
     {
+        copyDataIfShared();
         int missingColumns = values.size() - columnNameList.size();
         for(int yy = 0; yy < missingColumns; yy++)
         {
@@ -467,24 +562,46 @@ public class MockResultSet implements ResultSet, Cloneable
      */
     public void addColumn(String columnName, List<Object> values)
     {
-        List<Object> column = new ArrayList<Object>(values);
+        copyDataIfShared();
+        List<Object> column = createColumn(values);
         columnMap.put(columnName, column);
         columnNameList.add(columnName);
+        columnIndexCache.clear();
         adjustColumns();
         adjustInsertRow();
         copyColumnMap();
         adjustFlags();
     }
     
+    /**
+     * Removes all rows from the simulated database table and the
+     * <code>ResultSet</code> data. The columns are kept and the
+     * cursor is moved before the first row. Can be used by
+     * subclasses that provide the rows lazily.
+     */
+    protected void clearRows()
+    {
+        copyDataIfShared();
+        for(List<Object> nextColumn : columnMap.values())
+        {
+            nextColumn.clear();
+        }
+        updatedRows.clear();
+        deletedRows.clear();
+        insertedRows.clear();
+        cursor = -1;
+        copyColumnMap();
+    }
+    
     /**
      * Returns the current number of rows.
      * @return the number of rows
      */
     public int getRowCount()
     {
-        if(columnMapCopy.size() == 0) return 0;
-        List<Object> column = columnMapCopy.values().iterator().next();
-        return column.size();
+        List<Object>[] columns = getResultSetColumns();
+        if(columns.length == 0) return 0;
+        return columns[0].size();
     }
     
     /**
@@ -493,7 +610,7 @@ public class MockResultSet implements ResultSet, Cloneable
      */
     public int getColumnCount()
     {
-        return columnMapCopy.size();
+        return getColumnMapCopy().size();
     }
     
     /**
@@ -670,7 +787,7 @@ public class MockResultSet implements ResultSet, Cloneable
         }
         else
         {
-            thisMap = columnMapCopy;  
+            thisMap = getColumnMapCopy();
         }
         if(resultSet.isDatabaseView)
         {
@@ -678,7 +795,7 @@ public class MockResultSet implements ResultSet, Cloneable
         }
         else
         {
-            otherMap = resultSet.columnMapCopy;
+            otherMap = resultSet.getColumnMapCopy();
         }
         for (String currentKey : thisMap.keySet()) {
             List<Object> thisList = thisMap.get(currentKey);
@@ -725,7 +842,7 @@ public class MockResultSet implements ResultSet, Cloneable
             if (isDatabaseView) {
                 nextColumnList = columnMap.get(nextColumnName);
             } else {
-                nextColumnList = columnMapCopy.get(nextColumnName);
+                nextColumnList = getColumnMapCopy().get(nextColumnName);
             }
             list.add(nextColumnList.get(index));
         }
@@ -767,7 +884,7 @@ public class MockResultSet implements ResultSet, Cloneable
         }
         else
         {
-            columnList = columnMapCopy.get(name);
+            columnList = getColumnMapCopy().get(name);
         }
         if(null == columnList) return null;
         list.addAll(columnList);
@@ -788,22 +905,23 @@ public class MockResultSet implements ResultSet, Cloneable
     {
         checkColumnBounds(columnIndex);
         checkRowBounds();
-        String columnName = columnNameList.get(columnIndex - 1);
-        return getObject(columnName);
+        if(rowDeleted()) throw new SQLException("row was deleted");
+        List<Object> column = getColumns()[columnIndex - 1];
+        checkColumnNotNull(column, columnNameList.get(columnIndex - 1));
+        Object value = column.get(cursor);
+        wasNull = (null == value);
+        return value;
     }
     
     public Object getObject(String columnName) throws SQLException
     {
         checkRowBounds();
         if(rowDeleted()) throw new SQLException("row was deleted");
-        List<Object> column;
-        if(isDatabaseView)
-        {
-            column = columnMap.get(columnName);
-        }
-        else
+        List<Object> column = null;
+        int columnIndex = getColumnIndex(columnName);
+        if(columnIndex >= 0)
         {
-            column = columnMapCopy.get(columnName);
+            column = getColumns()[columnIndex];
         }
         checkColumnNotNull(column, columnName);
         Object value = column.get(cursor);
@@ -923,6 +1041,8 @@ public class MockResultSet implements ResultSet, Cloneable
 
     public int getInt(int columnIndex) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnIndex);
+        if(null != column) return column.getInt(cursor);
         Object value = getObject(columnIndex);
         if(null != value)
         {
@@ -934,6 +1054,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     public int getInt(String columnName) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnName);
+        if(null != column) return column.getInt(cursor);
         Object value = getObject(columnName);
         if(null != value)
         {
@@ -945,6 +1067,8 @@ public class MockResultSet implements ResultSet, Cloneable
 
     public long getLong(int columnIndex) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnIndex);
+        if(null != column) return column.getLong(cursor);
         Object value = getObject(columnIndex);
         if(null != value)
         {
@@ -956,6 +1080,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     public long getLong(String columnName) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnName);
+        if(null != column) return column.getLong(cursor);
         Object value = getObject(columnName);
         if(null != value)
         {
@@ -989,6 +1115,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     public double getDouble(int columnIndex) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnIndex);
+        if(null != column) return column.getDouble(cursor);
         Object value = getObject(columnIndex);
         if(null != value)
         {
@@ -1000,6 +1128,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     public double getDouble(String columnName) throws SQLException
     {
+        TypedColumnList column = getNumericColumn(columnName);
+        if(null != column) return column.getDouble(cursor);
         Object value = getObject(columnName);
         if(null != value)
         {
@@ -1624,8 +1754,9 @@ public class MockResultSet implements ResultSet, Cloneable
             return;
         }
         this.fetchDirection = fetchDirection;
-        for (List<Object> column : columnMapCopy.values()) {
-            Collections.reverse(column);
+        copyDataIfShared();
+        for (String columnName : getColumnMapCopy().keySet()) {
+            Collections.reverse(getWritableColumn(columnName));
         }
         if(-1 != cursor) cursor = getRowCount() - cursor - 1;
     }
@@ -1699,6 +1830,7 @@ public class MockResultSet implements ResultSet, Cloneable
             checkRowBounds();
             if(rowDeleted()) throw new SQLException("row was deleted");
         }
+        copyDataIfShared();
         if(isCursorInInsertRow)
         {
             List<Object> column = insertRow.get(columnName);
@@ -1707,7 +1839,7 @@ public class MockResultSet implements ResultSet, Cloneable
         }
         else
         {
-            List<Object> column = columnMapCopy.get(columnName);
+            List<Object> column = getWritableColumn(columnName);
             checkColumnNotNull(column, columnName);
             column.set(cursor, value);
         }
@@ -2258,12 +2390,22 @@ public class MockResultSet implements ResultSet, Cloneable
     
     private void insertRow(int index)
     {
+        copyDataIfShared();
+        Map<String, List<Object>> columnMapCopy = getColumnMapCopy();
         for (String currentColumnName : columnMapCopy.keySet()) {
             List<Object> copyColumn = columnMapCopy.get(currentColumnName);
             List<Object> databaseColumn = columnMap.get(currentColumnName);
             List<Object> sourceColumn = insertRow.get(currentColumnName);
-            copyColumn.add(index, ParameterUtil.copyParameter(sourceColumn.get(0)));
-            databaseColumn.add(index, ParameterUtil.copyParameter(sourceColumn.get(0)));  
+            databaseColumn.add(index, ParameterUtil.copyParameter(sourceColumn.get(0)));
+            if(copyColumn != databaseColumn)
+            {
+                copyColumn.add(index, ParameterUtil.copyParameter(sourceColumn.get(0)));
+            }
+            else if(!isShareable(databaseColumn))
+            {
+                columnMapCopy.put(currentColumnName, copyColumn(databaseColumn));
+                resetColumnCache();
+            }
         }
         updatedRows.add(index, false);
         deletedRows.add(index, false);
@@ -2272,6 +2414,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     private void deleteRow(int index)
     {
+        copyDataIfShared();
+        Map<String, List<Object>> columnMapCopy = getColumnMapCopy();
         for (String currentColumnName : columnMapCopy.keySet()) {
             List<Object> copyColumn = columnMapCopy.get(currentColumnName);
             List<Object> databaseColumn = columnMap.get(currentColumnName);
@@ -2282,6 +2426,8 @@ public class MockResultSet implements ResultSet, Cloneable
     
     private void updateRow(int index, boolean toDatabase)
     {
+        copyDataIfShared();
+        Map<String, List<Object>> columnMapCopy = getColumnMapCopy();
         for (String currentColumnName : columnMapCopy.keySet()) {
             List<Object> sourceColumn;
             List<Object> targetColumn;
@@ -2295,6 +2441,7 @@ public class MockResultSet implements ResultSet, Cloneable
                 sourceColumn = columnMap.get(currentColumnName);
                 targetColumn = columnMapCopy.get(currentColumnName);
             } 
+            if(sourceColumn == targetColumn) continue;
             targetColumn.set(index, ParameterUtil.copyParameter(sourceColumn.get(index)));
         }
     }
@@ -2350,7 +2497,190 @@ public class MockResultSet implements ResultSet, Cloneable
     
     private void copyColumnMap()
     {
-        columnMapCopy = copyColumnDataMap(columnMap);
+        // the copy is created lazily, so adding many rows does not copy the data each time
+        columnMapCopy = null;
+        resetColumnCache();
+    }
+    
+    private Map<String, List<Object>> getColumnMapCopy()
+    {
+        if(null == columnMapCopy)
+        {
+            columnMapCopy = createCaseAwareMap();
+            for(String nextColumnName : columnMap.keySet())
+            {
+                List<Object> nextColumn = columnMap.get(nextColumnName);
+                if(!isShareable(nextColumn))
+                {
+                    nextColumn = copyColumn(nextColumn);
+                }
+                columnMapCopy.put(nextColumnName, nextColumn);
+            }
+        }
+        return columnMapCopy;
+    }
+    
+    private List<Object> getWritableColumn(String columnName)
+    {
+        copyDataIfShared();
+        Map<String, List<Object>> columnMapCopy = getColumnMapCopy();
+        List<Object> column = columnMapCopy.get(columnName);
+        if(null != column && column == columnMap.get(columnName))
+        {
+            column = copyColumn(column);
+            columnMapCopy.put(columnName, column);
+            resetColumnCache();
+        }
+        return column;
+    }
+    
+    private void copyDataIfShared()
+    {
+        if(isDataShared)
+        {
+            copyData();
+        }
+    }
+    
+    private void copyData()
+    {
+        columnNameList = new ArrayList<String>(columnNameList);
+        updatedRows = new ArrayList<Boolean>(updatedRows);
+        deletedRows = new ArrayList<Boolean>(deletedRows);
+        insertedRows = new ArrayList<Boolean>(insertedRows);
+        insertRow = copyColumnDataMap(insertRow);
+        Map<String, List<Object>> oldColumnMap = columnMap;
+        columnMap = copyColumnDataMap(columnMap);
+        if(null != columnMapCopy)
+        {
+            Map<String, List<Object>> oldColumnMapCopy = columnMapCopy;
+            columnMapCopy = createCaseAwareMap();
+            for(String nextColumnName : oldColumnMapCopy.keySet())
+            {
+                List<Object> nextColumn = oldColumnMapCopy.get(nextColumnName);
+                if(nextColumn == oldColumnMap.get(nextColumnName))
+                {
+                    nextColumn = columnMap.get(nextColumnName);
+                }
+                else
+                {
+                    nextColumn = copyColumn(nextColumn);
+                }
+                columnMapCopy.put(nextColumnName, nextColumn);
+            }
+        }
+        resetColumnCache();
+        isDataShared = false;
+    }
+    
+    private boolean isShareable(List<Object> column)
+    {
+        return (column instanceof TypedColumnList) && ((TypedColumnList)column).isImmutable();
+    }
+    
+    private List<Object> createColumn(Collection<Object> values)
+    {
+        if(useColumnarStorage)
+        {
+            return new TypedColumnList(values);
+        }
+        return new ArrayList<Object>(values);
+    }
+    
+    private List<Object> copyColumn(List<Object> column)
+    {
+        if(isShareable(column))
+        {
+            return new TypedColumnList((TypedColumnList)column);
+        }
+        List<Object> copy = (column instanceof TypedColumnList) ? new TypedColumnList() : new ArrayList<Object>(column.size());
+        for(Object nextValue : column)
+        {
+            copy.add(ParameterUtil.copyParameter(nextValue));
+        }
+        return copy;
+    }
+    
+    private List<Object>[] getColumns()
+    {
+        if(isDatabaseView)
+        {
+            if(null == databaseColumns)
+            {
+                databaseColumns = createColumnArray(columnMap);
+            }
+            return databaseColumns;
+        }
+        return getResultSetColumns();
+    }
+    
+    private List<Object>[] getResultSetColumns()
+    {
+        if(null == resultSetColumns)
+        {
+            resultSetColumns = createColumnArray(getColumnMapCopy());
+        }
+        return resultSetColumns;
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object>[] createColumnArray(Map<String, List<Object>> columnMap)
+    {
+        List<Object>[] columns = new List[columnNameList.size()];
+        for(int ii = 0; ii < columns.length; ii++)
+        {
+            columns[ii] = columnMap.get(columnNameList.get(ii));
+        }
+        return columns;
+    }
+    
+    private void resetColumnCache()
+    {
+        databaseColumns = null;
+        resultSetColumns = null;
+    }
+    
+    private int getColumnIndex(String columnName)
+    {
+        if(null == columnName) return -1;
+        Integer cachedIndex = columnIndexCache.get(columnName);
+        if(null != cachedIndex) return cachedIndex;
+        String compareName = columnsCaseSensitive ? columnName : columnName.toUpperCase();
+        for(int ii = 0; ii < columnNameList.size(); ii++)
+        {
+            String nextColumnName = columnNameList.get(ii);
+            if(!columnsCaseSensitive) nextColumnName = nextColumnName.toUpperCase();
+            if(compareName.equals(nextColumnName))
+            {
+                if(columnIndexCache.size() >= MAXIMUM_COLUMN_INDEX_CACHE_SIZE)
+                {
+                    columnIndexCache.clear();
+                }
+                columnIndexCache.put(columnName, ii);
+                return ii;
+            }
+        }
+        return -1;
+    }
+    
+    private TypedColumnList getNumericColumn(String columnName) throws SQLException
+    {
+        int columnIndex = getColumnIndex(columnName);
+        if(columnIndex < 0) return null;
+        return getNumericColumn(columnIndex + 1);
+    }
+    
+    private TypedColumnList getNumericColumn(int columnIndex) throws SQLException
+    {
+        checkColumnBounds(columnIndex);
+        checkRowBounds();
+        if(rowDeleted()) throw new SQLException("row was deleted");
+        List<Object> column = getColumns()[columnIndex - 1];
+        if(!(column instanceof TypedColumnList)) return null;
+        TypedColumnList typedColumn = (TypedColumnList)column;
+        if(!typedColumn.isNumeric()) return null;
+        wasNull = typedColumn.isNull(cursor);
+        return typedColumn;
     }
     
     private String determineValidColumnName()
@@ -2364,25 +2694,18 @@ public class MockResultSet implements ResultSet, Cloneable
         return name + count;
     }
     
-    private <T> Map<String, List<T>> copyColumnDataMap(Map<String, List<T>> columnMap)
+    private Map<String, List<Object>> copyColumnDataMap(Map<String, List<Object>> columnMap)
     {
-        Map<String, List<T>> copy = createCaseAwareMap();
+        Map<String, List<Object>> copy = createCaseAwareMap();
         for (String s : columnMap.keySet()) {
-            List<T> copyList = new ArrayList<T>();
-            String nextKey = s;
-            List<T> nextColumnList = columnMap.get(nextKey);
-            for (T nextColumnList1 : nextColumnList) {
-                T copyParameter = (T) ParameterUtil.copyParameter(nextColumnList1);
-                copyList.add(copyParameter);
-            }
-            copy.put(nextKey, copyList);
+            copy.put(s, copyColumn(columnMap.get(s)));
         }
         return copy;
     }
     
     private <T> Map<String, T> createCaseAwareMap()
     {
-        return (Map<String, T>)new CaseAwareMap(columnsCaseSensitive);
+        return new CaseAwareMap<String, T>(columnsCaseSensitive);
     }
     
     private NClob getNClobFromClob(Clob clobValue) throws SQLException
@@ -124,42 +124,42 @@ public class MockStatement implements Statement
         {
             if (results.length > 1)
             {
-                return cloneAndSetMultipleResultSets(results);
+                return cloneAndSetMultipleResultSets(sql, results);
             }
             else
             {
-                return cloneAndSetSingleResultSet(results[0]);
+                return cloneAndSetSingleResultSet(sql, results[0]);
             }
         }
         if(resultSetHandler.hasMultipleGlobalResultSets())
         {
-            return cloneAndSetMultipleResultSets(resultSetHandler.getGlobalResultSets());
+            return cloneAndSetMultipleResultSets(sql, resultSetHandler.getGlobalResultSets());
         }
         MockResultSet result = resultSetHandler.getGlobalResultSet();
         if(null != result){
-            return cloneAndSetSingleResultSet(result);
+            return cloneAndSetSingleResultSet(sql, result);
         }
         return new MockResultSet(String.valueOf(Math.random()));
     }
 
-    private MockResultSet cloneAndSetSingleResultSet(MockResultSet result)
+    private MockResultSet cloneAndSetSingleResultSet(String sql, MockResultSet result)
     {
         result = cloneResultSet(result);
         if(null != result)
         {
-            resultSetHandler.addReturnedResultSet(result);
+            resultSetHandler.addReturnedResultSet(sql, result);
         }
         setResultSets(new MockResultSet[] {result});
         setLastGeneratedKeysResultSet(null);
         return result;
     }
     
-    private MockResultSet cloneAndSetMultipleResultSets(MockResultSet[] results)
+    private MockResultSet cloneAndSetMultipleResultSets(String sql, MockResultSet[] results)
     {
         results = cloneResultSets(results);
         if(null != results)
         {
-            resultSetHandler.addReturnedResultSets(results);
+            resultSetHandler.addReturnedResultSets(sql, results);
         }
         setResultSets(results);
         setLastGeneratedKeysResultSet(null);
@@ -587,13 +587,13 @@ public class MockStatement implements Statement
 
     protected MockResultSet cloneResultSet(MockResultSet resultSet)
     {
-        if (resultSetConcurrency == ResultSet.CONCUR_READ_ONLY) {
-            // no need to clone
-            return resultSet.shallowCopy();
-        }
         if(null == resultSet) return null;
-        MockResultSet clone = (MockResultSet)resultSet.clone();
-        clone.setStatement(this);
+        // the data is only copied if the result set is modified
+        MockResultSet clone = resultSet.copyOnWriteClone();
+        if(resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+        {
+            clone.setStatement(this);
+        }
         return clone;
     }
     
@@ -603,15 +603,7 @@ public class MockStatement implements Statement
         MockResultSet[] clonedResultsSets = new MockResultSet[resultSets.length];
         for(int ii = 0; ii < resultSets.length; ii++)
         {
-            if(null != resultSets[ii])
-            {
-                if (resultSetConcurrency == ResultSet.CONCUR_READ_ONLY) {
-                    clonedResultsSets[ii] = resultSets[ii].shallowCopy();
-                } else {
-                    clonedResultsSets[ii] = (MockResultSet) resultSets[ii].clone();
-                    clonedResultsSets[ii].setStatement(this);
-                }
-            }
+            clonedResultsSets[ii] = cloneResultSet(resultSets[ii]);
         }
         return clonedResultsSets;
     }
@@ -0,0 +1,344 @@
+package com.mockrunner.mock.jdbc;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Column storage of a {@link MockResultSet} with columnar storage
+ * enabled (see {@link MockResultSet#setUseColumnarStorage}).
+ * As long as a column only contains <code>Integer</code>, <code>Long</code>,
+ * <code>Double</code> or <code>byte[]</code> values (and <code>null</code>),
+ * the values are stored in an <code>int[]</code>, <code>long[]</code>,
+ * <code>double[]</code> or <code>byte[][]</code> with a separate bitmap
+ * for <code>null</code> values. The <code>get</code> methods for primitive
+ * values read the values without boxing. If a value of another type is
+ * added, the column falls back to an <code>Object[]</code>.
+ * <code>get</code> returns the same boxed type that was added.
+ */
+class TypedColumnList extends AbstractList<Object> implements RandomAccess
+{
+    static final int TYPE_NULL = 0;
+    static final int TYPE_INT = 1;
+    static final int TYPE_LONG = 2;
+    static final int TYPE_DOUBLE = 3;
+    static final int TYPE_BINARY = 4;
+    static final int TYPE_OBJECT = 5;
+
+    private int type = TYPE_NULL;
+    private int size;
+    private long[] nullBits = new long[1];
+    private int[] intValues;
+    private long[] longValues;
+    private double[] doubleValues;
+    private byte[][] binaryValues;
+    private Object[] objectValues;
+
+    TypedColumnList()
+    {
+
+    }
+
+    TypedColumnList(Collection<?> values)
+    {
+        ensureCapacity(values.size());
+        for(Object value : values)
+        {
+            add(value);
+        }
+    }
+
+    /**
+     * Creates a copy of the specified column. The values are not copied,
+     * i.e. both columns contain the same <code>byte[]</code> and object references.
+     */
+    TypedColumnList(TypedColumnList column)
+    {
+        type = column.type;
+        size = column.size;
+        nullBits = column.nullBits.clone();
+        if(null != column.intValues) intValues = column.intValues.clone();
+        if(null != column.longValues) longValues = column.longValues.clone();
+        if(null != column.doubleValues) doubleValues = column.doubleValues.clone();
+        if(null != column.binaryValues) binaryValues = column.binaryValues.clone();
+        if(null != column.objectValues) objectValues = column.objectValues.clone();
+    }
+
+    int getType()
+    {
+        return type;
+    }
+
+    boolean isNumeric()
+    {
+        return type == TYPE_INT || type == TYPE_LONG || type == TYPE_DOUBLE;
+    }
+
+    /**
+     * Returns if the column contains only numbers and <code>null</code> values,
+     * i.e. immutable values that do not have to be copied.
+     */
+    boolean isImmutable()
+    {
+        return type == TYPE_NULL || isNumeric();
+    }
+
+    boolean isNull(int index)
+    {
+        checkIndex(index);
+        return (nullBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the value as <code>int</code> like <code>Number.intValue()</code>.
+     * Must only be called if {@link #isNumeric} returns <code>true</code>.
+     * Returns 0 for <code>null</code> values.
+     */
+    int getInt(int index)
+    {
+        checkIndex(index);
+        switch(type)
+        {
+            case TYPE_INT: return intValues[index];
+            case TYPE_LONG: return (int)longValues[index];
+            default: return (int)doubleValues[index];
+        }
+    }
+
+    /**
+     * Returns the value as <code>long</code> like <code>Number.longValue()</code>.
+     * Must only be called if {@link #isNumeric} returns <code>true</code>.
+     * Returns 0 for <code>null</code> values.
+     */
+    long getLong(int index)
+    {
+        checkIndex(index);
+        switch(type)
+        {
+            case TYPE_INT: return intValues[index];
+            case TYPE_LONG: return longValues[index];
+            default: return (long)doubleValues[index];
+        }
+    }
+
+    /**
+     * Returns the value as <code>double</code> like <code>Number.doubleValue()</code>.
+     * Must only be called if {@link #isNumeric} returns <code>true</code>.
+     * Returns 0 for <code>null</code> values.
+     */
+    double getDouble(int index)
+    {
+        checkIndex(index);
+        switch(type)
+        {
+            case TYPE_INT: return intValues[index];
+            case TYPE_LONG: return longValues[index];
+            default: return doubleValues[index];
+        }
+    }
+
+    @Override
+    public Object get(int index)
+    {
+        if(isNull(index)) return null;
+        switch(type)
+        {
+            case TYPE_INT: return intValues[index];
+            case TYPE_LONG: return longValues[index];
+            case TYPE_DOUBLE: return doubleValues[index];
+            case TYPE_BINARY: return binaryValues[index];
+            default: return objectValues[index];
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Object set(int index, Object value)
+    {
+        Object oldValue = get(index);
+        adjustType(value);
+        store(index, value);
+        return oldValue;
+    }
+
+    @Override
+    public void add(int index, Object value)
+    {
+        if(index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        adjustType(value);
+        ensureCapacity(size + 1);
+        int moved = size - index;
+        if(moved > 0)
+        {
+            Object array = getArray();
+            if(null != array) System.arraycopy(array, index, array, index + 1, moved);
+            for(int ii = size; ii > index; ii--)
+            {
+                setNullBit(ii, isNullBit(ii - 1));
+            }
+        }
+        size++;
+        modCount++;
+        store(index, value);
+    }
+
+    @Override
+    public Object remove(int index)
+    {
+        Object oldValue = get(index);
+        int moved = size - index - 1;
+        if(moved > 0)
+        {
+            Object array = getArray();
+            if(null != array) System.arraycopy(array, index + 1, array, index, moved);
+            for(int ii = index; ii < size - 1; ii++)
+            {
+                setNullBit(ii, isNullBit(ii + 1));
+            }
+        }
+        size--;
+        modCount++;
+        store(size, null);
+        return oldValue;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(nullBits, 0);
+        if(null != binaryValues) Arrays.fill(binaryValues, 0, size, null);
+        if(null != objectValues) Arrays.fill(objectValues, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    private void store(int index, Object value)
+    {
+        setNullBit(index, null == value);
+        switch(type)
+        {
+            case TYPE_INT: intValues[index] = (null == value) ? 0 : (Integer)value; break;
+            case TYPE_LONG: longValues[index] = (null == value) ? 0 : (Long)value; break;
+            case TYPE_DOUBLE: doubleValues[index] = (null == value) ? 0 : (Double)value; break;
+            case TYPE_BINARY: binaryValues[index] = (byte[])value; break;
+            case TYPE_OBJECT: objectValues[index] = value; break;
+            default: break;
+        }
+    }
+
+    private void adjustType(Object value)
+    {
+        if(null == value) return;
+        int valueType = getType(value);
+        if(valueType == type || type == TYPE_OBJECT) return;
+        if(type == TYPE_NULL)
+        {
+            type = valueType;
+            allocate(nullBits.length << 6);
+            return;
+        }
+        Object[] boxed = new Object[capacity()];
+        for(int ii = 0; ii < size; ii++)
+        {
+            boxed[ii] = get(ii);
+        }
+        intValues = null;
+        longValues = null;
+        doubleValues = null;
+        binaryValues = null;
+        objectValues = boxed;
+        type = TYPE_OBJECT;
+    }
+
+    private static int getType(Object value)
+    {
+        Class<?> valueClass = value.getClass();
+        if(valueClass == Integer.class) return TYPE_INT;
+        if(valueClass == Long.class) return TYPE_LONG;
+        if(valueClass == Double.class) return TYPE_DOUBLE;
+        if(valueClass == byte[].class) return TYPE_BINARY;
+        return TYPE_OBJECT;
+    }
+
+    private void allocate(int capacity)
+    {
+        switch(type)
+        {
+            case TYPE_INT: intValues = new int[capacity]; break;
+            case TYPE_LONG: longValues = new long[capacity]; break;
+            case TYPE_DOUBLE: doubleValues = new double[capacity]; break;
+            case TYPE_BINARY: binaryValues = new byte[capacity][]; break;
+            case TYPE_OBJECT: objectValues = new Object[capacity]; break;
+            default: break;
+        }
+    }
+
+    private Object getArray()
+    {
+        switch(type)
+        {
+            case TYPE_INT: return intValues;
+            case TYPE_LONG: return longValues;
+            case TYPE_DOUBLE: return doubleValues;
+            case TYPE_BINARY: return binaryValues;
+            case TYPE_OBJECT: return objectValues;
+            default: return null;
+        }
+    }
+
+    private int capacity()
+    {
+        return nullBits.length << 6;
+    }
+
+    private void ensureCapacity(int minCapacity)
+    {
+        if(minCapacity <= capacity()) return;
+        int newCapacity = Math.max(minCapacity, capacity() + (capacity() >> 1));
+        nullBits = Arrays.copyOf(nullBits, (newCapacity + 63) >>> 6);
+        newCapacity = capacity();
+        switch(type)
+        {
+            case TYPE_INT: intValues = Arrays.copyOf(intValues, newCapacity); break;
+            case TYPE_LONG: longValues = Arrays.copyOf(longValues, newCapacity); break;
+            case TYPE_DOUBLE: doubleValues = Arrays.copyOf(doubleValues, newCapacity); break;
+            case TYPE_BINARY: binaryValues = Arrays.copyOf(binaryValues, newCapacity); break;
+            case TYPE_OBJECT: objectValues = Arrays.copyOf(objectValues, newCapacity); break;
+            default: break;
+        }
+    }
+
+    private boolean isNullBit(int index)
+    {
+        return (nullBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void setNullBit(int index, boolean isNull)
+    {
+        if(isNull)
+        {
+            nullBits[index >>> 6] |= (1L << index);
+        }
+        else
+        {
+            nullBits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    private void checkIndex(int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
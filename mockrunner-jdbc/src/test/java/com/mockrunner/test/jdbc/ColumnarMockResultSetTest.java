@@ -0,0 +1,140 @@
+package com.mockrunner.test.jdbc;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+public class ColumnarMockResultSetTest extends MockResultSetTest
+{
+    @Override
+    protected MockResultSet createResultSet(String id)
+    {
+        MockResultSet resultSet = new MockResultSet(id);
+        resultSet.setUseColumnarStorage(true);
+        return resultSet;
+    }
+    
+    public void testPrimitiveValues() throws Exception
+    {
+        MockResultSet resultSet = createResultSet("");
+        resultSet.addColumn("intColumn", new Object[] {1, null, -3});
+        resultSet.addColumn("longColumn", new Object[] {Long.MAX_VALUE, 2L, null});
+        resultSet.addColumn("doubleColumn", new Object[] {null, 2.5, -3.7});
+        resultSet.addColumn("bytesColumn", new Object[] {new byte[] {1, 2}, null, new byte[0]});
+        resultSet.next();
+        assertEquals(1, resultSet.getInt("intColumn"));
+        assertEquals(1L, resultSet.getLong(1));
+        assertEquals(1.0, resultSet.getDouble("INTCOLUMN"), 0.0);
+        assertFalse(resultSet.wasNull());
+        assertEquals(Integer.valueOf(1), resultSet.getObject(1));
+        assertEquals(Long.MAX_VALUE, resultSet.getLong("longColumn"));
+        assertEquals((int)Long.MAX_VALUE, resultSet.getInt(2));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), resultSet.getObject("longColumn"));
+        assertEquals(0.0, resultSet.getDouble(3), 0.0);
+        assertTrue(resultSet.wasNull());
+        assertTrue(Arrays.equals(new byte[] {1, 2}, resultSet.getBytes(4)));
+        resultSet.next();
+        assertEquals(0, resultSet.getInt(1));
+        assertTrue(resultSet.wasNull());
+        assertNull(resultSet.getObject(1));
+        assertEquals(2.5, resultSet.getDouble("doubleColumn"), 0.0);
+        assertEquals(2, resultSet.getInt("doubleColumn"));
+        assertEquals(Double.valueOf(2.5), resultSet.getObject(3));
+        assertNull(resultSet.getBytes(4));
+        resultSet.next();
+        assertEquals(-3, resultSet.getLong(1));
+        assertEquals(-3, resultSet.getInt(3));
+        assertEquals(0, resultSet.getLong(2));
+        assertTrue(resultSet.wasNull());
+    }
+    
+    public void testMixedValues() throws Exception
+    {
+        MockResultSet resultSet = createResultSet("");
+        resultSet.addColumn("column", new Object[] {1, 2});
+        resultSet.addRow(new Object[] {"3"});
+        resultSet.addRow(new Object[] {4L});
+        assertEquals(Arrays.asList(new Object[] {1, 2, "3", 4L}), resultSet.getColumn(1));
+        resultSet.next();
+        assertEquals(1, resultSet.getInt(1));
+        resultSet.absolute(3);
+        assertEquals(3, resultSet.getInt(1));
+        assertEquals("3", resultSet.getObject(1));
+        resultSet.setUseColumnarStorage(false);
+        assertEquals(Arrays.asList(new Object[] {1, 2, "3", 4L}), resultSet.getColumn(1));
+        assertEquals(4L, resultSet.getLong(1) + 1);
+    }
+    
+    public void testCopyOnWrite() throws Exception
+    {
+        MockResultSet resultSet = createResultSet("");
+        resultSet.setResultSetConcurrency(ResultSet.CONCUR_UPDATABLE);
+        resultSet.addColumn("column", new Object[] {1, 2, 3});
+        resultSet.next();
+        resultSet.updateInt(1, 5);
+        assertEquals(5, resultSet.getInt(1));
+        resultSet.setDatabaseView(true);
+        assertEquals(1, resultSet.getInt(1));
+        resultSet.setDatabaseView(false);
+        resultSet.updateRow();
+        resultSet.setDatabaseView(true);
+        assertEquals(5, resultSet.getInt(1));
+        resultSet.setDatabaseView(false);
+        resultSet.moveToInsertRow();
+        resultSet.updateInt(1, 7);
+        resultSet.insertRow();
+        resultSet.moveToCurrentRow();
+        assertEquals(4, resultSet.getRowCount());
+        resultSet.setDatabaseView(true);
+        assertEquals(Arrays.asList(new Object[] {7, 5, 2, 3}), resultSet.getColumn(1));
+        resultSet.setDatabaseView(false);
+        assertEquals(Arrays.asList(new Object[] {7, 5, 2, 3}), resultSet.getColumn(1));
+        MockResultSet copy = (MockResultSet)resultSet.clone();
+        copy.absolute(2);
+        copy.updateInt(1, 8);
+        copy.updateRow();
+        assertEquals(Arrays.asList(new Object[] {7, 8, 2, 3}), copy.getColumn(1));
+        assertEquals(Arrays.asList(new Object[] {7, 5, 2, 3}), resultSet.getColumn(1));
+    }
+    
+    public void testSharedColumnBecomesMutable() throws Exception
+    {
+        MockResultSet resultSet = createResultSet("");
+        resultSet.setResultSetConcurrency(ResultSet.CONCUR_UPDATABLE);
+        resultSet.addColumn("column", new Object[] {1});
+        resultSet.next();
+        byte[] bytes = new byte[] {1};
+        resultSet.moveToInsertRow();
+        resultSet.updateBytes(1, bytes);
+        resultSet.insertRow();
+        resultSet.moveToCurrentRow();
+        byte[] resultSetBytes = resultSet.getBytes(1);
+        resultSet.setDatabaseView(true);
+        byte[] databaseBytes = resultSet.getBytes(1);
+        assertTrue(Arrays.equals(bytes, resultSetBytes));
+        assertTrue(Arrays.equals(bytes, databaseBytes));
+        assertNotSame(resultSetBytes, databaseBytes);
+    }
+    
+    public void testManyRows() throws Exception
+    {
+        MockResultSet resultSet = createResultSet("");
+        resultSet.addColumn("id");
+        resultSet.addColumn("value");
+        for(int ii = 0; ii < 20000; ii++)
+        {
+            resultSet.addRow(new Object[] {ii, (long)ii * 2});
+        }
+        long sum = 0;
+        while(resultSet.next())
+        {
+            sum += resultSet.getInt("id") + resultSet.getLong("value");
+        }
+        assertEquals(3L * (19999L * 20000L / 2), sum);
+        List<Object> column = resultSet.getColumn("id");
+        assertEquals(20000, column.size());
+        assertEquals(19999, column.get(19999));
+    }
+}
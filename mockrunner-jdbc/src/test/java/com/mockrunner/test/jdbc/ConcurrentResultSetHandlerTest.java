@@ -0,0 +1,171 @@
+package com.mockrunner.test.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.jdbc.PreparedStatementResultSetHandler;
+import com.mockrunner.jdbc.StatementResultSetHandler;
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockParameterMap;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+public class ConcurrentResultSetHandlerTest extends TestCase
+{
+    private final static int NUMBER_THREADS = 8;
+    private final static int NUMBER_ITERATIONS = 300;
+
+    private MockConnection connection;
+    private List<Throwable> failures;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        connection = new MockConnection();
+        connection.getStatementResultSetHandler().setConcurrentMode(true);
+        connection.getPreparedStatementResultSetHandler().setConcurrentMode(true);
+        failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    }
+
+    private MockResultSet createResultSet(String id)
+    {
+        MockResultSet resultSet = new MockResultSet(id);
+        resultSet.addColumn("id");
+        resultSet.addColumn("name");
+        resultSet.addRow(new Object[] {1, "one"});
+        resultSet.addRow(new Object[] {2, "two"});
+        return resultSet;
+    }
+
+    private MockParameterMap createParameters(int value)
+    {
+        MockParameterMap parameters = new MockParameterMap();
+        parameters.put(1, value);
+        return parameters;
+    }
+
+    private void runConcurrently(final Task task) throws Exception
+    {
+        Thread[] threads = new Thread[NUMBER_THREADS];
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            final int threadNumber = ii;
+            threads[ii] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for(int jj = 0; jj < NUMBER_ITERATIONS; jj++)
+                        {
+                            task.run(threadNumber, jj);
+                        }
+                    }
+                    catch(Throwable exc)
+                    {
+                        failures.add(exc);
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            threads[ii].join();
+        }
+        if(!failures.isEmpty())
+        {
+            Throwable failure = failures.get(0);
+            if(failure instanceof Error) throw (Error)failure;
+            throw (Exception)failure;
+        }
+    }
+
+    public void testConcurrentStatements() throws Exception
+    {
+        final StatementResultSetHandler handler = connection.getStatementResultSetHandler();
+        handler.prepareResultSet("select", createResultSet("1"));
+        handler.prepareUpdateCount("update", 3);
+        runConcurrently(new Task()
+        {
+            public void run(int threadNumber, int iteration) throws Exception
+            {
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("select * from table where thread = " + threadNumber);
+                assertTrue(resultSet.next());
+                assertEquals(1, resultSet.getInt("id"));
+                assertTrue(resultSet.next());
+                assertEquals("two", resultSet.getString("name"));
+                assertFalse(resultSet.next());
+                assertEquals(3, statement.executeUpdate("update table set x = " + iteration));
+            }
+        });
+        assertEquals(2 * NUMBER_THREADS * NUMBER_ITERATIONS, handler.getExecutedStatements().size());
+        assertEquals(NUMBER_THREADS * NUMBER_ITERATIONS, handler.getReturnedResultSets().size());
+        assertEquals(NUMBER_THREADS * NUMBER_ITERATIONS, handler.getStatements().size());
+        assertEquals(NUMBER_ITERATIONS, Collections.frequency(handler.getExecutedStatements(), "select * from table where thread = 0"));
+    }
+
+    public void testConcurrentPreparedStatementsWhilePreparing() throws Exception
+    {
+        final PreparedStatementResultSetHandler handler = connection.getPreparedStatementResultSetHandler();
+        handler.prepareResultSet("select", createResultSet("1"));
+        runConcurrently(new Task()
+        {
+            public void run(int threadNumber, int iteration) throws Exception
+            {
+                if(threadNumber == 0)
+                {
+                    handler.prepareResultSet("call names", createResultSet("2"), new Object[] {iteration});
+                    handler.prepareUpdateCount("delete", iteration);
+                    return;
+                }
+                PreparedStatement statement = connection.prepareStatement("select * from table where id = ?");
+                statement.setInt(1, iteration);
+                ResultSet resultSet = statement.executeQuery();
+                assertEquals("1", ((MockResultSet)resultSet).getId());
+                assertTrue(resultSet.next());
+                assertEquals(1, resultSet.getInt(1));
+            }
+        });
+        int numberExecutions = (NUMBER_THREADS - 1) * NUMBER_ITERATIONS;
+        assertEquals(numberExecutions, handler.getExecutedStatements().size());
+        assertEquals(numberExecutions, handler.getParametersForExecutedStatement("select * from table where id = ?").getNumberParameterSets());
+        assertEquals(numberExecutions, handler.getPreparedStatementMap().get("select * from table where id = ?").size());
+        assertEquals("2", handler.getResultSet("call names(?)", createParameters(NUMBER_ITERATIONS - 1)).getId());
+    }
+
+    public void testSnapshotUpdatedAfterModification() throws Exception
+    {
+        PreparedStatementResultSetHandler handler = connection.getPreparedStatementResultSetHandler();
+        assertNull(handler.getResultSet("select * from table"));
+        handler.prepareResultSet("select", createResultSet("1"), new Object[] {1});
+        assertNull(handler.getResultSet("select * from table"));
+        assertEquals("1", handler.getResultSet("select * from table", createParameters(1)).getId());
+        handler.prepareResultSet("select", createResultSet("2"), new Object[] {2});
+        assertEquals("2", handler.getResultSet("select * from table", createParameters(2)).getId());
+        handler.removeResultSet("select", createParameters(1));
+        assertNull(handler.getResultSet("select * from table", createParameters(1)));
+        assertEquals("2", handler.getResultSet("select * from table", createParameters(2)).getId());
+        handler.setExactMatch(true);
+        assertNull(handler.getResultSet("select * from table", createParameters(2)));
+        assertEquals("2", handler.getResultSet("select", createParameters(2)).getId());
+        handler.clearResultSets();
+        assertNull(handler.getResultSet("select", createParameters(2)));
+        handler.setConcurrentMode(false);
+        handler.prepareResultSet("select", createResultSet("3"));
+        assertEquals("3", handler.getResultSet("select").getId());
+    }
+
+    private interface Task
+    {
+        void run(int threadNumber, int iteration) throws Exception;
+    }
+}
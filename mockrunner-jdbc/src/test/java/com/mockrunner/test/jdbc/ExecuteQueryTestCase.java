@@ -3,6 +3,7 @@ package com.mockrunner.test.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -100,4 +101,37 @@ public class ExecuteQueryTestCase extends TestCase {
         
 	}
 
+	public void testExecuteQueryReturnsIndependentCopies() throws Exception {
+		
+		MockConnection connection = new MockConnection();
+		String stmt = "select isbn, quantity from books";
+		MockResultSet resultSet = new MockResultSet("");
+		resultSet.addColumn("isbn");
+		resultSet.addColumn("quantity");
+		resultSet.addRow(new Object[] { isbnNumbers.get(0), 10 });
+		connection.getStatementResultSetHandler().prepareResultSet(stmt, resultSet);
+		
+		Statement statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+		ResultSet result = statement.executeQuery(stmt);
+		assertSame(statement, result.getStatement());
+		result.next();
+		result.updateInt("quantity", 9);
+		result.updateRow();
+		assertEquals(9, result.getInt("quantity"));
+		
+		ResultSet otherResult = statement.executeQuery(stmt);
+		assertNotSame(result, otherResult);
+		otherResult.next();
+		assertEquals(10, otherResult.getInt("quantity"));
+		assertEquals(10, resultSet.getColumn("quantity").get(0));
+		
+		statement = connection.createStatement();
+		result = statement.executeQuery(stmt);
+		((MockResultSet) result).setResultSetConcurrency(ResultSet.CONCUR_UPDATABLE);
+		result.next();
+		result.updateInt("quantity", 8);
+		assertEquals(10, resultSet.getColumn("quantity").get(0));
+		connection.close();
+	}
+
 }
@@ -0,0 +1,211 @@
+package com.mockrunner.test.jdbc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.jdbc.ExecutedStatementLog;
+import com.mockrunner.jdbc.ParameterSets;
+import com.mockrunner.jdbc.RowCountHistogram;
+import com.mockrunner.mock.jdbc.MockParameterMap;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+public class ExecutedStatementLogTest extends TestCase
+{
+    private void addStatements(ExecutedStatementLog log, int number)
+    {
+        for(int ii = 0; ii < number; ii++)
+        {
+            log.addStatement("select " + (ii % 3));
+            log.addResultSets("select " + (ii % 3), new MockResultSet[] {new MockResultSet(String.valueOf(ii))});
+            MockParameterMap parameters = new MockParameterMap();
+            parameters.put(1, ii);
+            log.addParameterSet("select " + (ii % 3), parameters);
+        }
+    }
+
+    private void assertResultSetIds(List<MockResultSet[]> resultSets, String... ids)
+    {
+        assertEquals(ids.length, resultSets.size());
+        for(int ii = 0; ii < ids.length; ii++)
+        {
+            assertEquals(ids[ii], resultSets.get(ii)[0].getId());
+        }
+    }
+
+    private void assertCounts(ExecutedStatementLog log)
+    {
+        Map<String, Long> counts = log.getStatementCounts();
+        assertEquals(Arrays.asList("select 0", "select 1", "select 2"), Arrays.asList(counts.keySet().toArray()));
+        assertEquals(Long.valueOf(4), counts.get("select 0"));
+        assertEquals(Long.valueOf(3), counts.get("select 1"));
+        assertEquals(Long.valueOf(3), counts.get("select 2"));
+        assertEquals(10, log.getNumberStatements());
+        assertEquals(10, log.getNumberResultSets());
+        assertEquals(4, log.getRowCountHistograms().get("select 0").getCount());
+    }
+
+    private void assertParameterSets(ParameterSets sets, Integer... values)
+    {
+        assertEquals(values.length, sets.getNumberParameterSets());
+        for(int ii = 0; ii < values.length; ii++)
+        {
+            assertEquals(values[ii], sets.getParameterSet(ii).get(1));
+        }
+    }
+
+    public void testUnbounded()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.Unbounded();
+        addStatements(log, 10);
+        assertEquals(10, log.getStatements().size());
+        assertEquals("select 1", log.getStatements().get(4));
+        assertResultSetIds(log.getResultSets(), "0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+        assertCounts(log);
+        assertParameterSets(log.getParameterSets().get("select 0"), 0, 3, 6, 9);
+        log.clear();
+        assertTrue(log.getStatements().isEmpty());
+        assertTrue(log.getResultSets().isEmpty());
+        assertTrue(log.getStatementCounts().isEmpty());
+        assertTrue(log.getParameterSets().isEmpty());
+        assertTrue(log.getRowCountHistograms().isEmpty());
+    }
+
+    public void testCounting()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.Counting();
+        addStatements(log, 10);
+        assertTrue(log.getStatements().isEmpty());
+        assertTrue(log.getResultSets().isEmpty());
+        assertTrue(log.getParameterSets().isEmpty());
+        assertCounts(log);
+        log.clear();
+        assertEquals(0, log.getNumberStatements());
+        assertEquals(0, log.getNumberResultSets());
+        assertTrue(log.getStatementCounts().isEmpty());
+    }
+
+    public void testLastStatements()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.LastStatements(4);
+        addStatements(log, 2);
+        assertEquals(Arrays.asList("select 0", "select 1"), log.getStatements());
+        log.clear();
+        addStatements(log, 10);
+        assertEquals(Arrays.asList("select 0", "select 1", "select 2", "select 0"), log.getStatements());
+        assertResultSetIds(log.getResultSets(), "6", "7", "8", "9");
+        assertCounts(log);
+        assertParameterSets(log.getParameterSets().get("select 0"), 0, 3, 6, 9);
+        assertParameterSets(log.getParameterSets().get("select 1"), 1, 4, 7);
+        log.clear();
+        assertTrue(log.getStatements().isEmpty());
+        assertTrue(log.getResultSets().isEmpty());
+        try
+        {
+            new ExecutedStatementLog.LastStatements(0);
+            fail();
+        }
+        catch(IllegalArgumentException exc)
+        {
+            //should throw exception
+        }
+    }
+
+    public void testSampling()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.Sampling(3, 2);
+        addStatements(log, 4);
+        assertEquals(Arrays.asList("select 0", "select 0"), log.getStatements());
+        assertResultSetIds(log.getResultSets(), "0", "3");
+        log.clear();
+        addStatements(log, 10);
+        assertEquals(Arrays.asList("select 0", "select 0"), log.getStatements());
+        assertResultSetIds(log.getResultSets(), "6", "9");
+        assertCounts(log);
+        assertParameterSets(log.getParameterSets().get("select 0"), 6, 9);
+        assertNull(log.getParameterSets().get("select 1"));
+        log = new ExecutedStatementLog.Sampling(1, 2);
+        addStatements(log, 10);
+        assertParameterSets(log.getParameterSets().get("select 0"), 6, 9);
+    }
+
+    public void testStatementCountsReflectLaterExecutions()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.Unbounded();
+        Map<String, Long> counts = log.getStatementCounts();
+        assertTrue(counts.isEmpty());
+        log.addStatement("update");
+        log.addStatement("select");
+        log.addStatement("select");
+        assertEquals(Arrays.asList("select", "update"), Arrays.asList(counts.keySet().toArray()));
+        assertEquals(Long.valueOf(2), counts.get("select"));
+        assertTrue(counts.containsKey("update"));
+        assertNull(counts.get("insert"));
+        assertNull(counts.get(null));
+        try
+        {
+            counts.put("insert", 1L);
+            fail();
+        }
+        catch(UnsupportedOperationException exc)
+        {
+            //should throw exception
+        }
+    }
+
+    public void testRowCountHistograms()
+    {
+        ExecutedStatementLog log = new ExecutedStatementLog.Counting();
+        for(int ii = 0; ii < 100; ii++)
+        {
+            MockResultSet resultSet = new MockResultSet(String.valueOf(ii));
+            resultSet.addColumn("id", Collections.<Object>nCopies(ii % 10, 1));
+            log.addResultSets("select", new MockResultSet[] {resultSet, null});
+        }
+        log.addResultSets(null, new MockResultSet[] {new MockResultSet("unknown")});
+        assertEquals(201, log.getNumberResultSets());
+        assertEquals(1, log.getRowCountHistograms().size());
+        RowCountHistogram histogram = log.getRowCountHistograms().get("select");
+        assertEquals(100, histogram.getCount());
+        assertEquals(450, histogram.getTotalRows());
+        assertEquals(4, histogram.getMean());
+        assertEquals(9, histogram.getMaximum());
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(9, histogram.getPercentile(100));
+    }
+
+    public void testConcurrentLastStatements() throws Exception
+    {
+        final ExecutedStatementLog log = new ExecutedStatementLog.LastStatements(100);
+        Thread[] threads = new Thread[4];
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            threads[ii] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for(int jj = 0; jj < 1000; jj++)
+                    {
+                        log.addStatement("select");
+                        List<String> statements = log.getStatements();
+                        if(statements.size() > 100 || statements.contains(null))
+                        {
+                            throw new IllegalStateException();
+                        }
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            threads[ii].join();
+        }
+        assertEquals(Collections.nCopies(100, "select"), log.getStatements());
+        assertEquals(Long.valueOf(4000), log.getStatementCounts().get("select"));
+    }
+}
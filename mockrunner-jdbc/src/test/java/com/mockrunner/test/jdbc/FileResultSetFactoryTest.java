@@ -1,10 +1,17 @@
 package com.mockrunner.test.jdbc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -186,4 +193,99 @@ public class FileResultSetFactoryTest
             //should throw exception
         }
     }
+    
+    @Test
+    public void testStreaming() throws Exception
+    {
+        File file = createFile("id;name", "1;first", "2; second ", "3;");
+        FileResultSetFactory factory = new FileResultSetFactory(file);
+        factory.setFirstLineContainsColumnNames(true);
+        factory.setStreaming(true);
+        MockResultSet resultSet = factory.create("streaming");
+        assertEquals(ResultSet.TYPE_FORWARD_ONLY, resultSet.getType());
+        assertEquals(2, resultSet.getColumnCount());
+        assertEquals("name", resultSet.getMetaData().getColumnName(2));
+        for(int ii = 0; ii < 2; ii++)
+        {
+            MockResultSet copy = resultSet.copyOnWriteClone();
+            assertTrue(copy.isBeforeFirst());
+            assertTrue(copy.next());
+            assertTrue(copy.isFirst());
+            assertEquals(1, copy.getRow());
+            assertEquals(1, copy.getInt("id"));
+            assertEquals("first", copy.getString(2));
+            assertTrue(copy.next());
+            assertEquals("second", copy.getString("name"));
+            assertFalse(copy.isLast());
+            assertTrue(copy.next());
+            assertEquals(3, copy.getRow());
+            assertTrue(copy.isLast());
+            assertNull(copy.getString("name"));
+            assertTrue(copy.wasNull());
+            assertFalse(copy.next());
+            assertTrue(copy.isAfterLast());
+            assertFalse(copy.next());
+            try
+            {
+                copy.first();
+                fail();
+            }
+            catch(SQLException exc)
+            {
+                //should throw exception
+            }
+        }
+        file.delete();
+    }
+    
+    @Test
+    public void testCache() throws Exception
+    {
+        File file = createFile("1;2", "3;4");
+        FileResultSetFactory factory = new FileResultSetFactory(file);
+        factory.setUseCache(true);
+        MockResultSet resultSet = factory.create("");
+        assertEquals(2, resultSet.getRowCount());
+        assertTrue(resultSet.isRowEqual(2, Arrays.asList(new Object[] {"3", "4"})));
+        resultSet = factory.create("");
+        assertEquals(2, resultSet.getRowCount());
+        assertTrue(resultSet.isRowEqual(1, Arrays.asList(new Object[] {"1", "2"})));
+        factory.setFirstLineContainsColumnNames(true);
+        resultSet = factory.create("");
+        assertEquals(1, resultSet.getRowCount());
+        assertEquals("3", resultSet.getColumn("1").get(0));
+        factory.setFirstLineContainsColumnNames(false);
+        writeFile(file, "5;6;7");
+        file.setLastModified(file.lastModified() + 2000);
+        resultSet = factory.create("");
+        assertEquals(1, resultSet.getRowCount());
+        assertEquals(3, resultSet.getColumnCount());
+        FileResultSetFactory.clearCache();
+        file.delete();
+    }
+    
+    private File createFile(String... lines) throws IOException
+    {
+        File file = File.createTempFile("mockrunner", ".txt");
+        file.deleteOnExit();
+        writeFile(file, lines);
+        return file;
+    }
+    
+    private void writeFile(File file, String... lines) throws IOException
+    {
+        FileWriter writer = new FileWriter(file);
+        try
+        {
+            for(String line : lines)
+            {
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
 }
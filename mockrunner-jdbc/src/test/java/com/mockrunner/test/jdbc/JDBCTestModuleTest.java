@@ -21,6 +21,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.mockrunner.base.VerifyFailedException;
+import com.mockrunner.jdbc.ExecutedStatementLog;
 import com.mockrunner.jdbc.JDBCTestModule;
 import com.mockrunner.jdbc.ParameterSets;
 import com.mockrunner.mock.jdbc.JDBCMockObjectFactory;
@@ -400,6 +401,49 @@ public class JDBCTestModuleTest
         module.verifySQLStatementExecuted("{CALL getData(?, ?, ?, ?)}");
     }
     
+    @Test
+    public void testExecutedStatementLog() throws Exception
+    {
+        prepareStatements();
+        preparePreparedStatements();
+        mockfactory.getMockConnection().getStatementResultSetHandler().setExecutedStatementLog(new ExecutedStatementLog.Counting());
+        mockfactory.getMockConnection().getPreparedStatementResultSetHandler().setExecutedStatementLog(new ExecutedStatementLog.LastStatements(2));
+        MockStatement statement = module.getStatement(0);
+        for(int ii = 0; ii < 5; ii++)
+        {
+            statement.executeQuery("select * from test");
+        }
+        statement.execute("UPDATE");
+        module.getPreparedStatement("insert").execute();
+        module.getPreparedStatement("update").execute();
+        module.getPreparedStatement("update").execute();
+        assertEquals(Arrays.asList("update mytable set test = test + ? where id = ?", "update mytable set test = test + ? where id = ?"), module.getExecutedSQLStatements());
+        assertEquals(0, module.getReturnedResultSets().size());
+        Map<String, Long> counts = module.getExecutedSQLStatementCounts();
+        assertEquals(4, counts.size());
+        assertEquals(Long.valueOf(5), counts.get("select * from test"));
+        assertEquals(Long.valueOf(1), counts.get("UPDATE"));
+        assertEquals(2, module.getExecutedSQLStatementParameterSets("update").getNumberParameterSets());
+        assertEquals(1, module.getExecutedSQLStatementParameterSets("insert").getNumberParameterSets());
+        module.verifySQLStatementExecuted("select");
+        module.verifySQLStatementExecuted("INSERT");
+        module.verifySQLStatementNotExecuted("delete");
+        module.verifySQLStatementExecuted("select", 5);
+        module.verifySQLStatementExecuted("update", 3);
+        module.verifySQLStatementExecuted("delete", 0);
+        try
+        {
+            module.verifySQLStatementExecuted("select", 4);
+            fail();
+        }
+        catch(VerifyFailedException exc)
+        {
+            //should throw exception
+        }
+        module.setExactMatch(true);
+        module.verifySQLStatementExecuted("UPDATE", 1);
+    }
+    
     @Test
     public void testGetExecutedSQLStatementsRegEx() throws Exception
     {
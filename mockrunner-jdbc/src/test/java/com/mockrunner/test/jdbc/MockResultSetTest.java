@@ -36,7 +36,12 @@ public class MockResultSetTest extends TestCase
     protected void setUp() throws Exception
     {
         super.setUp();
-        resultSet = new MockResultSet("");
+        resultSet = createResultSet("");
+    }
+    
+    protected MockResultSet createResultSet(String id)
+    {
+        return new MockResultSet(id);
     }
     
     public void testGetColumnCountMetaData() throws Exception
@@ -1107,6 +1112,37 @@ public class MockResultSetTest extends TestCase
         assertTrue(cloneResult.isRowEqual(3, list));
     }
     
+    public void testCopyOnWriteClone() throws Exception
+    {
+        resultSet.setResultSetConcurrency(ResultSet.CONCUR_UPDATABLE);
+        resultSet.addRow(new Object[] {"test1", 1});
+        resultSet.addRow(new Object[] {"test2", 2});
+        MockResultSet cloneResult = resultSet.copyOnWriteClone();
+        MockResultSet otherCloneResult = resultSet.copyOnWriteClone();
+        assertTrue(resultSet.isEqual(cloneResult));
+        cloneResult.next();
+        cloneResult.updateString(1, "test3");
+        cloneResult.updateRow();
+        cloneResult.next();
+        cloneResult.deleteRow();
+        cloneResult.moveToInsertRow();
+        cloneResult.updateObject(1, "test4");
+        cloneResult.insertRow();
+        cloneResult.moveToCurrentRow();
+        assertEquals(3, cloneResult.getRowCount());
+        assertEquals(2, resultSet.getRowCount());
+        assertEquals(Arrays.asList(new Object[] {"test1", 1}), resultSet.getRow(1));
+        assertEquals(Arrays.asList(new Object[] {"test2", 2}), resultSet.getRow(2));
+        assertTrue(resultSet.isEqual(otherCloneResult));
+        resultSet.addRow(new Object[] {"test5", 5});
+        assertEquals(3, resultSet.getRowCount());
+        assertEquals(2, otherCloneResult.getRowCount());
+        otherCloneResult.setFetchDirection(ResultSet.FETCH_REVERSE);
+        assertEquals(Arrays.asList(new Object[] {"test2", 2}), otherCloneResult.getRow(1));
+        assertEquals(Arrays.asList(new Object[] {"test1", 1}), resultSet.getRow(1));
+        assertFalse(otherCloneResult.rowUpdated(1) || resultSet.rowUpdated(1));
+    }
+    
     public void testCloneDeepCopyMetaData() throws Exception
     {
         MockResultSetMetaData metaData1 = new MockResultSetMetaData();
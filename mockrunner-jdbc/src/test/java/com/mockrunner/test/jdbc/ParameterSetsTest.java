@@ -23,4 +23,21 @@ public class ParameterSetsTest extends TestCase
 		assertSame(parameters, sets.getParameterSet(1));
 		assertNull(sets.getParameterSet(2));
 	}
+	
+	public void testParameterSetsWithCapacity()
+	{
+		ParameterSets sets = new ParameterSets("testsql", 2);
+		assertEquals(0, sets.getNumberParameterSets());
+		assertNull(sets.getParameterSet(0));
+		MockParameterMap parameters1 = new MockParameterMap();
+		MockParameterMap parameters2 = new MockParameterMap();
+		MockParameterMap parameters3 = new MockParameterMap();
+		sets.addParameterSet(parameters1);
+		sets.addParameterSet(parameters2);
+		sets.addParameterSet(parameters3);
+		assertEquals(2, sets.getNumberParameterSets());
+		assertSame(parameters2, sets.getParameterSet(0));
+		assertSame(parameters3, sets.getParameterSet(1));
+		assertNull(sets.getParameterSet(2));
+	}
 }
@@ -0,0 +1,106 @@
+package com.mockrunner.test.jdbc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.jdbc.PatternMatcherIndex;
+import com.mockrunner.jdbc.StatementResultSetHandler;
+import com.mockrunner.mock.jdbc.MockResultSet;
+import com.mockrunner.util.regexp.Jsr51PatternMatcher;
+import com.mockrunner.util.regexp.PatternMatcher;
+
+public class PatternMatcherIndexTest extends TestCase
+{
+    private final static String[] PATTERNS = new String[] {"", "select", "SELECT * from", "from", "insert into", "Insert into Table",
+                                                           "update", "table", "TABLE", "select.*", "^insert", "in.*", "[a-z]+",
+                                                           "sel(ect)? .*", "x|select.*", "update t?able", "table where id = ?"};
+    private final static String[] QUERIES = new String[] {"", "select", "SELECT", "select * from table", "SELECT ID FROM TABLE",
+                                                          "insert into table values(1)", "Insert into Table", "update table",
+                                                          "update able", "delete from x", "table where id = ?", "TaBlE", "in"};
+
+    private List<String> getMatchingObjectsLinear(Map<PatternMatcher, String> map, String query)
+    {
+        List<String> result = new ArrayList<String>();
+        for(Map.Entry<PatternMatcher, String> entry : map.entrySet())
+        {
+            if(entry.getKey().matches(query)) result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    private void doTestSameResultAsLinearScan(PatternMatcher.Factory factory)
+    {
+        Map<PatternMatcher, String> linear = new HashMap<PatternMatcher, String>();
+        PatternMatcherIndex<String> index = new PatternMatcherIndex<String>(new HashMap<PatternMatcher, String>());
+        for(int ii = 0; ii < PATTERNS.length; ii++)
+        {
+            linear.put(factory.create(PATTERNS[ii]), PATTERNS[ii]);
+            index.put(factory.create(PATTERNS[ii]), PATTERNS[ii]);
+        }
+        for(int ii = 0; ii < QUERIES.length; ii++)
+        {
+            List<String> result = new ArrayList<String>();
+            index.getMatchingObjects(QUERIES[ii], result);
+            assertEquals(getMatchingObjectsLinear(linear, QUERIES[ii]), result);
+        }
+    }
+
+    public void testSameResultAsLinearScan()
+    {
+        for(int ii = 0; ii < 8; ii++)
+        {
+            doTestSameResultAsLinearScan(PatternMatcher.Factories.from((ii & 1) != 0, (ii & 2) != 0, (ii & 4) != 0));
+        }
+        doTestSameResultAsLinearScan(new Jsr51PatternMatcher.Factory(true));
+        doTestSameResultAsLinearScan(new Jsr51PatternMatcher.Factory(false));
+    }
+
+    public void testIndexUpdatedOnModification()
+    {
+        PatternMatcher.Factory factory = PatternMatcher.Factories.from(false, false, false);
+        PatternMatcherIndex<String> index = new PatternMatcherIndex<String>(new TreeMap<PatternMatcher, String>());
+        index.put(factory.create("select"), "1");
+        List<String> result = new ArrayList<String>();
+        index.getMatchingObjects("select * from x", result);
+        assertEquals(1, result.size());
+        index.put(factory.create("from"), "2");
+        result.clear();
+        index.getMatchingObjects("select * from x", result);
+        assertEquals(2, result.size());
+        assertEquals("2", result.get(0));
+        assertEquals("1", result.get(1));
+        index.remove(factory.create("from"));
+        result.clear();
+        index.getMatchingObjects("select * from x", result);
+        assertEquals(1, result.size());
+        assertEquals("1", result.get(0));
+        index.clear();
+        result.clear();
+        index.getMatchingObjects("select * from x", result);
+        assertTrue(result.isEmpty());
+    }
+
+    public void testHandlerWithManyStatements()
+    {
+        StatementResultSetHandler handler = new StatementResultSetHandler();
+        for(int ii = 0; ii < 1000; ii++)
+        {
+            MockResultSet resultSet = handler.createResultSet(String.valueOf(ii));
+            handler.prepareResultSet("select id from table" + ii + " where", resultSet);
+        }
+        assertEquals("500", handler.getResultSet("SELECT ID FROM TABLE500 WHERE id = 1").getId());
+        assertNull(handler.getResultSet("SELECT ID FROM TABLE1000 WHERE id = 1"));
+        handler.setExactMatch(true);
+        assertNull(handler.getResultSet("SELECT ID FROM TABLE500 WHERE id = 1"));
+        assertEquals("500", handler.getResultSet("SELECT ID FROM TABLE500 WHERE").getId());
+        handler.setExactMatch(false);
+        handler.setUseRegularExpressions(true);
+        assertEquals("500", handler.getResultSet("SELECT ID FROM TABLE500 WHERE").getId());
+        assertNull(handler.getResultSet("SELECT ID FROM TABLE500 WHERE id = 1"));
+    }
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 
 import com.mockrunner.jdbc.SQLStatementMatcher;
+import com.mockrunner.util.regexp.CachingPatternMatcherFactory;
+import com.mockrunner.util.regexp.PatternMatcher;
 
 import junit.framework.TestCase;
 
@@ -190,4 +192,40 @@ public class SQLStatementMatcherTest extends TestCase
         matcher = new SQLStatementMatcher(true, true, true);
         assertFalse(matcher.doStringsMatch("myTest", "[nmg]ytest"));
     }
+    
+    public void testGetMatchingStrings()
+    {
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("TestString1");
+        list.add(null);
+        list.add("OtherString");
+        list.add("TestString3");
+        SQLStatementMatcher matcher = new SQLStatementMatcher(false, false);
+        List<String> resultList = matcher.getMatchingStrings(list, "teststring");
+        assertEquals(2, resultList.size());
+        assertEquals("TestString1", resultList.get(0));
+        assertEquals("TestString3", resultList.get(1));
+        matcher = new SQLStatementMatcher(true, false, true);
+        resultList = matcher.getMatchingStrings(list, ".*String.");
+        assertEquals(2, resultList.size());
+        resultList = matcher.getMatchingStrings(list, "");
+        assertEquals(1, resultList.size());
+        assertNull(resultList.get(0));
+    }
+    
+    public void testCachingPatternMatcherFactory()
+    {
+        PatternMatcher.Factory factory = new CachingPatternMatcherFactory(PatternMatcher.Factories.from(false, false, true));
+        PatternMatcher matcher = factory.create("test.*");
+        assertSame(matcher, factory.create("test.*"));
+        assertSame(matcher, new CachingPatternMatcherFactory(PatternMatcher.Factories.from(false, false, true)).create("test.*"));
+        assertNotSame(matcher, new CachingPatternMatcherFactory(PatternMatcher.Factories.from(true, false, true)).create("test.*"));
+        assertNotSame(matcher, factory.create("test"));
+        assertSame(factory, CachingPatternMatcherFactory.wrap(factory));
+        factory = new CachingPatternMatcherFactory(PatternMatcher.Factories.from(false, false, false), 2);
+        matcher = factory.create("1");
+        factory.create("2");
+        factory.create("3");
+        assertNotSame(matcher, factory.create("1"));
+    }
 }
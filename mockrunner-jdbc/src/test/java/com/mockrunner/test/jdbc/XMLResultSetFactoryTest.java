@@ -6,9 +6,15 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.mockrunner.base.NestedApplicationException;
 import com.mockrunner.jdbc.XMLResultSetFactory;
 import com.mockrunner.mock.jdbc.MockResultSet;
 
@@ -117,4 +123,87 @@ public class XMLResultSetFactoryTest
             //should throw exception
         }
     }
+    
+    @Test
+    public void testSybaseCreateFromFile() throws Exception
+    {
+        File file = createFile("<resultset xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n" +
+                               "<!-- comment --><row><pub_id> 0736 </pub_id><pub_name>New Age Books</pub_name></row>\n" +
+                               "<other><row><pub_id>x</pub_id></row></other>\n" +
+                               "<row><pub_id>0877</pub_id><pub_name>Binnet &amp; <b>x</b>Hardley</pub_name></row>\n" +
+                               "<row><pub_id><![CDATA[1389]]></pub_id></row>\n" +
+                               "</resultset>");
+        XMLResultSetFactory factory = new XMLResultSetFactory(file);
+        MockResultSet resultSet = factory.create("id");
+        assertEquals("id", resultSet.getId());
+        assertEquals(2, resultSet.getColumnCount());
+        assertEquals(3, resultSet.getRowCount());
+        assertEquals(Arrays.asList("0736", "New Age Books"), resultSet.getRow(1));
+        assertEquals(Arrays.asList("0877", "Binnet & Hardley"), resultSet.getRow(2));
+        assertEquals(Arrays.asList("1389", null), resultSet.getRow(3));
+        factory.setTrim(false);
+        resultSet = factory.create("id");
+        assertEquals(" 0736 ", resultSet.getColumn("pub_id").get(0));
+        file.delete();
+    }
+    
+    @Test
+    public void testSquirrelCreateFromFile() throws Exception
+    {
+        File file = createFile("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<table>\n" +
+                               "<columns><column number=\"0\"><name>pub_id</name></column>" +
+                               "<column number=\"2\"><name>pub_name</name></column></columns>\n" +
+                               "<rows><row rowNumber=\"0\"><value columnNumber=\"2\">New Age Books</value><value columnNumber=\"0\">0736</value></row>\n" +
+                               "<row rowNumber=\"1\"><value columnNumber=\"0\">0877</value></row></rows>\n" +
+                               "</table>");
+        XMLResultSetFactory factory = new XMLResultSetFactory(file);
+        factory.setDialect(XMLResultSetFactory.SQUIRREL_DIALECT);
+        factory.setUseCache(true);
+        for(int ii = 0; ii < 2; ii++)
+        {
+            MockResultSet resultSet = factory.create("id" + ii);
+            assertEquals("id" + ii, resultSet.getId());
+            assertEquals(3, resultSet.getColumnCount());
+            assertEquals("unknown.1", resultSet.getMetaData().getColumnName(2));
+            assertEquals("pub_name", resultSet.getMetaData().getColumnName(3));
+            assertEquals(2, resultSet.getRowCount());
+            assertEquals(Arrays.asList("0736", null, "New Age Books"), resultSet.getRow(1));
+            assertEquals(Arrays.asList("0877", null, null), resultSet.getRow(2));
+        }
+        XMLResultSetFactory.clearCache();
+        file.delete();
+    }
+    
+    @Test
+    public void testCreateInvalidFile() throws Exception
+    {
+        File file = createFile("<table><rows></rows>");
+        XMLResultSetFactory factory = new XMLResultSetFactory(file);
+        try
+        {
+            factory.create("id");
+            fail();
+        }
+        catch(NestedApplicationException exc)
+        {
+            //should throw exception
+        }
+        file.delete();
+    }
+    
+    private File createFile(String content) throws IOException
+    {
+        File file = File.createTempFile("mockrunner", ".xml");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            writer.write(content);
+        }
+        finally
+        {
+            writer.close();
+        }
+        return file;
+    }
 }
@@ -1,6 +1,7 @@
 package com.mockrunner.jms;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The <code>ConfigurationManager</code> is used
@@ -10,11 +11,25 @@ public class ConfigurationManager implements Serializable
 {
     private boolean doCloneOnSend;
     private boolean useMessageSelectors;
+    private boolean useAsynchronousDelivery;
+    private int numberDispatcherThreads;
+    private int maximumPendingDeliveries;
+    private int sessionConcurrency;
+    private boolean useTransactionalSessions;
+    private int maximumRedeliveries;
+    private transient ThreadFactory dispatcherThreadFactory;
     
     public ConfigurationManager()
     {
         doCloneOnSend = false;
         useMessageSelectors = true;
+        useAsynchronousDelivery = false;
+        numberDispatcherThreads = 1;
+        maximumPendingDeliveries = 10000;
+        sessionConcurrency = 1;
+        useTransactionalSessions = false;
+        maximumRedeliveries = 10;
+        dispatcherThreadFactory = null;
     }
     
     /**
@@ -74,4 +89,208 @@ public class ConfigurationManager implements Serializable
     {
         this.useMessageSelectors = useMessageSelectors;
     }
+
+    /**
+     * Get if messages are delivered asynchronously, see
+     * {@link #setUseAsynchronousDelivery} for a description
+     * of this option.
+     * @return <code>true</code> deliver messages asynchronously,
+     *         <code>false</code> deliver messages synchronously
+     */
+    public boolean getUseAsynchronousDelivery()
+    {
+        return useAsynchronousDelivery;
+    }
+
+    /**
+     * Set if messages should be delivered asynchronously.
+     * Default is <code>false</code>, i.e. a sent message is
+     * delivered to the message listeners by the thread that sends it,
+     * and <code>send</code> returns after all listeners are finished.
+     * If you set this to <code>true</code>, each destination delivers
+     * its messages with its own dispatcher threads (see
+     * {@link #setNumberDispatcherThreads}) and <code>send</code>
+     * returns immediately. The message is added to the list of received
+     * messages of the destination before <code>send</code> returns.
+     * Use {@link DestinationManager#awaitQuiescence} or
+     * {@link DestinationManager#drain} to wait until all messages are
+     * delivered before verifying the results.
+     * @param useAsynchronousDelivery <code>true</code> deliver messages asynchronously,
+     *                                <code>false</code> deliver messages synchronously
+     */
+    public void setUseAsynchronousDelivery(boolean useAsynchronousDelivery)
+    {
+        this.useAsynchronousDelivery = useAsynchronousDelivery;
+    }
+
+    /**
+     * Returns the number of dispatcher threads per destination.
+     * @return the number of dispatcher threads
+     */
+    public int getNumberDispatcherThreads()
+    {
+        return numberDispatcherThreads;
+    }
+
+    /**
+     * Sets the number of threads each destination uses to deliver
+     * messages if asynchronous delivery is enabled. Default is 1,
+     * i.e. the messages of one destination are delivered in the
+     * order they were sent. With more threads, the messages of one
+     * destination are delivered concurrently, e.g. to simulate a pool
+     * of message driven beans. The setting applies to destinations
+     * that start their dispatcher threads afterwards, i.e. destinations
+     * that did not deliver messages asynchronously yet or that
+     * were drained with {@link DestinationManager#drain}.
+     * @param numberDispatcherThreads the number of dispatcher threads
+     */
+    public void setNumberDispatcherThreads(int numberDispatcherThreads)
+    {
+        if(numberDispatcherThreads <= 0)
+        {
+            throw new IllegalArgumentException("numberDispatcherThreads must be greater than 0");
+        }
+        this.numberDispatcherThreads = numberDispatcherThreads;
+    }
+
+    /**
+     * Returns the maximum number of pending deliveries per destination.
+     * @return the maximum number of pending deliveries
+     */
+    public int getMaximumPendingDeliveries()
+    {
+        return maximumPendingDeliveries;
+    }
+
+    /**
+     * Sets the maximum number of messages per destination that are
+     * sent, but not yet delivered, if asynchronous delivery is enabled.
+     * If the limit is reached, <code>send</code> blocks until a message
+     * is delivered, like a JMS server with flow control.
+     * Messages sent by message listeners, i.e. by dispatcher threads,
+     * do not block. Default is 10000. Like {@link #setNumberDispatcherThreads},
+     * the setting applies to destinations that start their dispatcher
+     * threads afterwards.
+     * @param maximumPendingDeliveries the maximum number of pending deliveries
+     */
+    public void setMaximumPendingDeliveries(int maximumPendingDeliveries)
+    {
+        if(maximumPendingDeliveries <= 0)
+        {
+            throw new IllegalArgumentException("maximumPendingDeliveries must be greater than 0");
+        }
+        this.maximumPendingDeliveries = maximumPendingDeliveries;
+    }
+
+    /**
+     * Returns the maximum number of concurrent deliveries per session.
+     * @return the maximum number of concurrent deliveries
+     */
+    public int getSessionConcurrency()
+    {
+        return sessionConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of messages that are delivered
+     * concurrently to the message listeners of one session,
+     * if asynchronous delivery is enabled. Default is 1, i.e.
+     * the listeners of a session are never called concurrently,
+     * as required by the JMS specification. A higher value allows
+     * to use one session for a pool of listeners. The setting
+     * applies to sessions that did not receive messages
+     * asynchronously yet.
+     * @param sessionConcurrency the maximum number of concurrent deliveries
+     */
+    public void setSessionConcurrency(int sessionConcurrency)
+    {
+        if(sessionConcurrency <= 0)
+        {
+            throw new IllegalArgumentException("sessionConcurrency must be greater than 0");
+        }
+        this.sessionConcurrency = sessionConcurrency;
+    }
+
+    /**
+     * Get if transacted sessions buffer their messages until
+     * the transaction is committed or rolled back.
+     * @return <code>true</code> if transacted sessions buffer messages
+     */
+    public boolean getUseTransactionalSessions()
+    {
+        return useTransactionalSessions;
+    }
+
+    /**
+     * Set if transacted sessions buffer their messages until the
+     * transaction is committed or rolled back. Default is
+     * <code>false</code>, i.e. transacted sessions send messages
+     * immediately and acknowledge received messages like sessions
+     * with acknowledge mode <code>AUTO_ACKNOWLEDGE</code>.
+     * If you set this to <code>true</code>, messages sent by a
+     * transacted session are staged and added to their destinations
+     * on <code>commit()</code>. Messages received by a transacted
+     * session are acknowledged on <code>commit()</code> and
+     * delivered again with the <code>JMSRedelivered</code> flag on
+     * <code>rollback()</code>. See {@link com.mockrunner.mock.jms.MockSession}.
+     * @param useTransactionalSessions should transacted sessions
+     *        buffer messages
+     */
+    public void setUseTransactionalSessions(boolean useTransactionalSessions)
+    {
+        this.useTransactionalSessions = useTransactionalSessions;
+    }
+
+    /**
+     * Returns the maximum number of times a rolled back message
+     * is delivered again.
+     * @return the maximum number of redeliveries
+     */
+    public int getMaximumRedeliveries()
+    {
+        return maximumRedeliveries;
+    }
+
+    /**
+     * Sets the maximum number of times a message that is rolled back
+     * by a transacted session is delivered again, if transacted sessions
+     * buffer their messages (see {@link #setUseTransactionalSessions}).
+     * If a message is rolled back more often, it is dropped and stays
+     * unacknowledged, like a JMS server that moves the message to a
+     * dead letter queue. This prevents endless redeliveries to a message
+     * listener that always rolls back. Default is 10. <code>0</code>
+     * disables the redelivery.
+     * @param maximumRedeliveries the maximum number of redeliveries
+     */
+    public void setMaximumRedeliveries(int maximumRedeliveries)
+    {
+        if(maximumRedeliveries < 0)
+        {
+            throw new IllegalArgumentException("maximumRedeliveries must not be negative");
+        }
+        this.maximumRedeliveries = maximumRedeliveries;
+    }
+
+    /**
+     * Returns the <code>ThreadFactory</code> for the dispatcher threads.
+     * @return the <code>ThreadFactory</code> or <code>null</code>,
+     *         if the default daemon threads are used
+     */
+    public ThreadFactory getDispatcherThreadFactory()
+    {
+        return dispatcherThreadFactory;
+    }
+
+    /**
+     * Sets the <code>ThreadFactory</code> for the dispatcher threads
+     * of asynchronous delivery. Default is <code>null</code>, i.e.
+     * the destinations use daemon threads. On a Java runtime with
+     * virtual threads, you can set <code>Thread.ofVirtual().factory()</code>.
+     * The <code>ThreadFactory</code> is not serialized.
+     * @param dispatcherThreadFactory the <code>ThreadFactory</code>
+     */
+    public void setDispatcherThreadFactory(ThreadFactory dispatcherThreadFactory)
+    {
+        this.dispatcherThreadFactory = dispatcherThreadFactory;
+    }
 }
@@ -1,9 +1,22 @@
 package com.mockrunner.jms;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.mockrunner.base.NestedApplicationException;
+import com.mockrunner.mock.jms.MessageMetrics;
+import com.mockrunner.mock.jms.MockDestination;
 import com.mockrunner.mock.jms.MockQueue;
 import com.mockrunner.mock.jms.MockTopic;
 
@@ -14,11 +27,14 @@ import com.mockrunner.mock.jms.MockTopic;
  * acquired using JNDI in a J2EE environment, you can bind
  * the created objects to the mock context with the help
  * of com.mockrunner.ejb.EJBTestModule#bindToContext.
+ * The metrics of the queues and topics can be registered as
+ * JMX MBeans with {@link #registerMBeans}.
  */
 public class DestinationManager implements Serializable
 {
     private ConcurrentMap<String, MockQueue> queues;
     private ConcurrentMap<String, MockTopic> topics;
+    private transient volatile MBeanServer mBeanServer;
 
     public DestinationManager()
     {
@@ -41,7 +57,9 @@ public class DestinationManager implements Serializable
     {
         MockQueue queue = new MockQueue(name);
         MockQueue orig = queues.putIfAbsent(name, queue);
-        return orig == null ? queue : orig;
+        if(null != orig) return orig;
+        registerMBean(mBeanServer, queue, "Queue", name);
+        return queue;
     }
 
     /**
@@ -50,7 +68,12 @@ public class DestinationManager implements Serializable
      */
     public void removeQueue(String name)
     {
-        queues.remove(name);
+        MockQueue queue = queues.remove(name);
+        if(null != queue)
+        {
+            queue.shutdownDispatcher();
+            unregisterMBean(mBeanServer, "Queue", name);
+        }
     }
 
     /**
@@ -79,7 +102,9 @@ public class DestinationManager implements Serializable
     {
         MockTopic topic = new MockTopic(name);
         MockTopic orig = topics.putIfAbsent(name, topic);
-        return orig == null ? topic : orig;
+        if(null != orig) return orig;
+        registerMBean(mBeanServer, topic, "Topic", name);
+        return topic;
     }
 
     /**
@@ -88,7 +113,12 @@ public class DestinationManager implements Serializable
      */
     public void removeTopic(String name)
     {
-        topics.remove(name);
+        MockTopic topic = topics.remove(name);
+        if(null != topic)
+        {
+            topic.shutdownDispatcher();
+            unregisterMBean(mBeanServer, "Topic", name);
+        }
     }
 
     /**
@@ -102,6 +132,130 @@ public class DestinationManager implements Serializable
         return createTopic(name);
     }
 
+    /**
+     * Returns the metrics of a <code>Queue</code> that was created
+     * with {@link #createQueue}.
+     * @param name the name of the <code>Queue</code>
+     * @return the metrics or <code>null</code>, if the
+     *         <code>Queue</code> does not exist
+     */
+    public MessageMetrics getQueueMetrics(String name)
+    {
+        MockQueue queue = queues.get(name);
+        return (null == queue) ? null : queue.getMetrics();
+    }
+
+    /**
+     * Returns the metrics of a <code>Topic</code> that was created
+     * with {@link #createTopic}.
+     * @param name the name of the <code>Topic</code>
+     * @return the metrics or <code>null</code>, if the
+     *         <code>Topic</code> does not exist
+     */
+    public MessageMetrics getTopicMetrics(String name)
+    {
+        MockTopic topic = topics.get(name);
+        return (null == topic) ? null : topic.getMetrics();
+    }
+
+    /**
+     * Registers the metrics of all queues and topics as MBeans
+     * with the specified <code>MBeanServer</code>, e.g. the
+     * <code>ManagementFactory.getPlatformMBeanServer()</code>.
+     * Queues and topics created later are registered when they
+     * are created and unregistered when they are removed.
+     * The names of the MBeans are
+     * <code>com.mockrunner.jms:type=Queue,name="&lt;name&gt;"</code>
+     * and <code>com.mockrunner.jms:type=Topic,name="&lt;name&gt;"</code>.
+     * MBeans registered with another <code>MBeanServer</code>
+     * before are unregistered.
+     * @param server the <code>MBeanServer</code>
+     */
+    public synchronized void registerMBeans(MBeanServer server)
+    {
+        unregisterMBeans();
+        mBeanServer = server;
+        for(Map.Entry<String, MockQueue> entry : queues.entrySet())
+        {
+            registerMBean(server, entry.getValue(), "Queue", entry.getKey());
+        }
+        for(Map.Entry<String, MockTopic> entry : topics.entrySet())
+        {
+            registerMBean(server, entry.getValue(), "Topic", entry.getKey());
+        }
+    }
+
+    /**
+     * Unregisters the MBeans registered with {@link #registerMBeans}.
+     */
+    public synchronized void unregisterMBeans()
+    {
+        MBeanServer server = mBeanServer;
+        if(null == server) return;
+        mBeanServer = null;
+        for(String name : queues.keySet())
+        {
+            unregisterMBean(server, "Queue", name);
+        }
+        for(String name : topics.keySet())
+        {
+            unregisterMBean(server, "Topic", name);
+        }
+    }
+
+    /**
+     * Returns the name of the MBean for the metrics of a
+     * queue or topic.
+     * @param type <code>Queue</code> or <code>Topic</code>
+     * @param name the name of the queue or topic
+     * @return the name of the MBean
+     */
+    public static ObjectName getMBeanName(String type, String name)
+    {
+        try
+        {
+            return new ObjectName("com.mockrunner.jms:type=" + type + ",name=" + ObjectName.quote(name));
+        }
+        catch(JMException exc)
+        {
+            throw new NestedApplicationException(exc);
+        }
+    }
+
+    private static void registerMBean(MBeanServer server, MockDestination destination, String type, String name)
+    {
+        if(null == server) return;
+        try
+        {
+            server.registerMBean(destination.getMetrics(), getMBeanName(type, name));
+        }
+        catch(InstanceAlreadyExistsException exc)
+        {
+            // registered concurrently by registerMBeans
+        }
+        catch(JMException exc)
+        {
+            throw new NestedApplicationException(exc);
+        }
+    }
+
+    private static void unregisterMBean(MBeanServer server, String type, String name)
+    {
+        if(null == server) return;
+        try
+        {
+            server.unregisterMBean(getMBeanName(type, name));
+        }
+        catch(InstanceNotFoundException exc)
+        {
+            // not registered
+        }
+        catch(JMException exc)
+        {
+            throw new NestedApplicationException(exc);
+        }
+    }
+
     public boolean existsTopic(String topicName) {
         return topics.containsKey(topicName);
     }
@@ -109,4 +263,86 @@ public class DestinationManager implements Serializable
     public boolean existsQueue(String queueName) {
         return queues.containsKey(queueName);
     }
+
+    /**
+     * Waits until all messages sent to the queues and topics of
+     * this manager are delivered, if asynchronous delivery is enabled
+     * (see {@link ConfigurationManager#setUseAsynchronousDelivery}).
+     * This includes messages that are sent by message listeners while
+     * waiting. Temporary queues and topics are not covered, use
+     * {@link MockDestination#awaitQuiescence(long, TimeUnit)} for them.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of <code>timeout</code>
+     * @return <code>true</code> if all messages are delivered,
+     *         <code>false</code> if the timeout elapsed before
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(true)
+        {
+            List<MockDestination> destinations = getDestinations();
+            long numberDispatchedMessages = getNumberDispatchedMessages(destinations);
+            for(MockDestination destination : destinations)
+            {
+                if(!destination.awaitQuiescence(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) return false;
+            }
+            if(numberDispatchedMessages == getNumberDispatchedMessages(destinations)) return true;
+        }
+    }
+
+    /**
+     * Waits until all messages sent to the queues and topics of
+     * this manager are delivered like {@link #awaitQuiescence}, but
+     * without timeout, and stops the dispatcher threads afterwards.
+     * The destinations start new dispatcher threads with the current
+     * settings of the {@link ConfigurationManager} for the next message.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void drain() throws InterruptedException
+    {
+        while(true)
+        {
+            List<MockDestination> destinations = getDestinations();
+            long numberDispatchedMessages = getNumberDispatchedMessages(destinations);
+            for(MockDestination destination : destinations)
+            {
+                destination.awaitQuiescence();
+            }
+            if(numberDispatchedMessages == getNumberDispatchedMessages(destinations)) break;
+        }
+        shutdownDispatchers();
+    }
+
+    /**
+     * Stops the dispatcher threads of the queues and topics of this
+     * manager after their pending deliveries are finished. Called when
+     * a connection is closed. The destinations start new dispatcher threads
+     * for the next message.
+     */
+    public void shutdownDispatchers()
+    {
+        for(MockDestination destination : getDestinations())
+        {
+            destination.shutdownDispatcher();
+        }
+    }
+
+    private List<MockDestination> getDestinations()
+    {
+        List<MockDestination> destinations = new ArrayList<MockDestination>(queues.values());
+        destinations.addAll(topics.values());
+        return destinations;
+    }
+
+    private long getNumberDispatchedMessages(List<MockDestination> destinations)
+    {
+        long numberDispatchedMessages = 0;
+        for(MockDestination destination : destinations)
+        {
+            numberDispatchedMessages += destination.getNumberDispatchedMessages();
+        }
+        return numberDispatchedMessages;
+    }
 }
@@ -207,9 +207,9 @@ public class TopicTransmissionManager implements Serializable
      */
     public MockTopicSubscriber getTopicSubscriber(String topicName)
     {
-        List subscribers = getTopicSubscriberList(topicName);
+        List<MockTopicSubscriber> subscribers = getTopicSubscriberList(topicName);
         if(subscribers.size() <= 0) return null;
-        return (MockTopicSubscriber)subscribers.get(0);
+        return subscribers.get(0);
     }
 
     /**
@@ -218,11 +218,11 @@ public class TopicTransmissionManager implements Serializable
      * @param topicName the name of the <code>Topic</code>
      * @return the list of <code>TopicSubscriber</code> objects
      */
-    public List getTopicSubscriberList(String topicName)
+    public List<MockTopicSubscriber> getTopicSubscriberList(String topicName)
     {
-        List resultList = new ArrayList();
+        List<MockTopicSubscriber> resultList = new ArrayList<MockTopicSubscriber>();
         for (Object aTopicSubscriberList : topicSubscriberList) {
-            TopicSubscriber subscriber = (TopicSubscriber) aTopicSubscriberList;
+            MockTopicSubscriber subscriber = (MockTopicSubscriber) aTopicSubscriberList;
             try {
                 if (subscriber.getTopic().getTopicName().equals(topicName)) {
                     resultList.add(subscriber);
@@ -289,14 +289,14 @@ public class TopicTransmissionManager implements Serializable
      * @param topicName the name of the <code>Topic</code>
      * @return the map of <code>TopicSubscriber</code> objects
      */
-    public Map getDurableTopicSubscriberMap(String topicName)
+    public Map<String, MockTopicSubscriber> getDurableTopicSubscriberMap(String topicName)
     {
-        Map resultMap = new HashMap();
+        Map<String, MockTopicSubscriber> resultMap = new HashMap<String, MockTopicSubscriber>();
         for (Object nextName : topicDurableSubscriberMap.keySet()) {
             MockTopicSubscriber subscriber = (MockTopicSubscriber) topicDurableSubscriberMap.get(nextName);
             try {
                 if (null != subscriber && subscriber.getTopic().getTopicName().equals(topicName)) {
-                    resultMap.put(nextName, subscriber);
+                    resultMap.put((String) nextName, subscriber);
                 }
             } catch (JMSException ignored) {
 
@@ -0,0 +1,129 @@
+package com.mockrunner.mock.jms;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.activemq.filter.mockrunner.Filter;
+
+/**
+ * Base class for the message stores of a {@link MockDestination}.
+ * The <code>List</code> returned by {@link #getListView} is a read only
+ * view of the store, like an unmodifiable <code>CopyOnWriteArrayList</code>:
+ * <code>get</code> and <code>size</code> reflect the current content,
+ * while iterators work on a snapshot and never throw a
+ * <code>ConcurrentModificationException</code>.
+ */
+abstract class AbstractMessageStore implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Returns if the message can be added, e.g. <code>false</code>
+     * if the store discards expired messages and the message is expired.
+     * @param message the message
+     * @return <code>true</code> if the message can be added
+     */
+    boolean accepts(Message message)
+    {
+        return true;
+    }
+
+    /**
+     * Returns the number of messages that were discarded, because
+     * they expired. Always <code>0</code>, if the store does not
+     * discard expired messages.
+     * @return the number of expired messages
+     */
+    long getNumberExpiredMessages()
+    {
+        return 0;
+    }
+
+    /**
+     * Adds a message.
+     * @param message the message
+     * @return a handle for the message, e.g. for {@link MessageStore#remove(Object)}
+     */
+    abstract Object add(Message message);
+
+    /**
+     * Removes and returns the first message.
+     * @return the first message or <code>null</code>, if the store is empty
+     */
+    abstract Message removeFirst();
+
+    /**
+     * Removes and returns the first message that matches the filter.
+     * @param filter the filter
+     * @return the first matching message or <code>null</code>, if no message matches
+     * @throws JMSException if the filter throws an exception
+     */
+    abstract Message removeFirstMatching(Filter filter) throws JMSException;
+
+    abstract Message get(int index);
+
+    abstract int size();
+
+    abstract void clear();
+
+    /**
+     * Returns the messages in the order they are removed.
+     * @return a new array with the messages
+     */
+    abstract Message[] toArray();
+
+    /**
+     * Returns a read only view of the store.
+     * @return the <code>List</code> view
+     */
+    List<Message> getListView()
+    {
+        return new ListView();
+    }
+
+    private class ListView extends AbstractList<Message>
+    {
+        @Override
+        public Message get(int index)
+        {
+            return AbstractMessageStore.this.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return AbstractMessageStore.this.size();
+        }
+
+        @Override
+        public Object[] toArray()
+        {
+            return AbstractMessageStore.this.toArray();
+        }
+
+        @Override
+        public Iterator<Message> iterator()
+        {
+            return snapshot().iterator();
+        }
+
+        @Override
+        public ListIterator<Message> listIterator(int index)
+        {
+            return snapshot().listIterator(index);
+        }
+
+        private List<Message> snapshot()
+        {
+            return Collections.unmodifiableList(Arrays.asList(AbstractMessageStore.this.toArray()));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.mockrunner.mock.jms;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds. The latencies are counted
+ * in buckets whose upper bounds are powers of two, i.e. recording
+ * a latency takes constant time and the memory does not grow with
+ * the number of recorded latencies. The percentiles returned by
+ * {@link #getPercentile} are the upper bound of the bucket that
+ * contains the percentile, so they are exact within a factor of two.
+ * The buckets are <code>LongAdder</code> instances, so concurrent
+ * threads recording latencies do not contend on one counter.
+ */
+public class LatencyHistogram implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final static int NUMBER_BUCKETS = 64;
+
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final AtomicLong maximum;
+
+    public LatencyHistogram()
+    {
+        buckets = new LongAdder[NUMBER_BUCKETS];
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            buckets[ii] = new LongAdder();
+        }
+        sum = new LongAdder();
+        maximum = new AtomicLong();
+    }
+
+    /**
+     * Records a latency. Negative latencies are recorded as <code>0</code>.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long latency = Math.max(0, nanos);
+        buckets[NUMBER_BUCKETS - Long.numberOfLeadingZeros(latency)].increment();
+        sum.add(latency);
+        long currentMaximum = maximum.get();
+        while(latency > currentMaximum && !maximum.compareAndSet(currentMaximum, latency))
+        {
+            currentMaximum = maximum.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     * @return the number of recorded latencies
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for(LongAdder bucket : buckets)
+        {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean latency in nanoseconds or <code>0</code>,
+     * if no latency was recorded.
+     * @return the mean latency
+     */
+    public long getMean()
+    {
+        long count = getCount();
+        if(count == 0) return 0;
+        return sum.sum() / count;
+    }
+
+    /**
+     * Returns the maximum latency in nanoseconds or <code>0</code>,
+     * if no latency was recorded.
+     * @return the maximum latency
+     */
+    public long getMaximum()
+    {
+        return maximum.get();
+    }
+
+    /**
+     * Returns an upper bound for the specified percentile of the
+     * latencies in nanoseconds, e.g. <code>getPercentile(99)</code>
+     * returns a latency that is greater than or equal to 99 percent
+     * of the recorded latencies. The result is never greater than
+     * {@link #getMaximum}. Returns <code>0</code>, if no latency
+     * was recorded.
+     * @param percentile the percentile between 0 and 100
+     * @return the upper bound for the percentile
+     */
+    public long getPercentile(double percentile)
+    {
+        if(percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] counts = new long[NUMBER_BUCKETS];
+        long count = 0;
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            counts[ii] = buckets[ii].sum();
+            count += counts[ii];
+        }
+        if(count == 0) return 0;
+        long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int ii = 0; ii < NUMBER_BUCKETS; ii++)
+        {
+            seen += counts[ii];
+            if(seen >= rank)
+            {
+                long upperBound = (1L << ii) - 1;
+                return Math.min(upperBound, getMaximum());
+            }
+        }
+        return getMaximum();
+    }
+
+    /**
+     * Discards all recorded latencies.
+     */
+    public void reset()
+    {
+        for(LongAdder bucket : buckets)
+        {
+            bucket.reset();
+        }
+        sum.reset();
+        maximum.set(0);
+    }
+}
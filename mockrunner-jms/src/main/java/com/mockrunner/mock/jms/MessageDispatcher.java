@@ -0,0 +1,228 @@
+package com.mockrunner.mock.jms;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.mockrunner.jms.ConfigurationManager;
+
+/**
+ * Delivers the messages of a {@link MockDestination} with its
+ * own threads, if asynchronous delivery is enabled (see
+ * {@link ConfigurationManager#setUseAsynchronousDelivery}).
+ * The number of messages that are dispatched, but not yet
+ * delivered, is limited by {@link ConfigurationManager#getMaximumPendingDeliveries}.
+ * Exceptions thrown by message listeners are logged.
+ * The threads terminate when they are idle for one second
+ * and are started again for the next message, so a destination
+ * that is not used anymore does not keep its threads.
+ */
+class MessageDispatcher
+{
+    private static final Log logger = LogFactory.getLog(MessageDispatcher.class);
+    private static final ThreadLocal<Boolean> dispatcherThread = new ThreadLocal<Boolean>();
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore pendingPermits;
+    private final Object lock = new Object();
+    private int numberPendingDeliveries;
+    private long numberDispatchedMessages;
+
+    MessageDispatcher(String name, ConfigurationManager configurationManager)
+    {
+        ThreadFactory threadFactory = configurationManager.getDispatcherThreadFactory();
+        if(null == threadFactory)
+        {
+            threadFactory = new DaemonThreadFactory(name);
+        }
+        int numberThreads = configurationManager.getNumberDispatcherThreads();
+        executor = new ThreadPoolExecutor(numberThreads, numberThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new DispatcherThreadFactory(threadFactory));
+        executor.allowCoreThreadTimeOut(true);
+        pendingPermits = new Semaphore(configurationManager.getMaximumPendingDeliveries());
+    }
+
+    /**
+     * Returns if the current thread is a dispatcher thread.
+     * @return <code>true</code> if the current thread is a dispatcher thread
+     */
+    static boolean isDispatcherThread()
+    {
+        return Boolean.TRUE.equals(dispatcherThread.get());
+    }
+
+    /**
+     * Adds the message to the list of received messages of the destination
+     * and delivers it with a dispatcher thread. Blocks while the
+     * maximum number of pending deliveries is reached, unless the
+     * current thread is a dispatcher thread itself.
+     * @param destination the destination
+     * @param message the message
+     * @throws JMSException if the thread is interrupted while waiting
+     *         or if the dispatcher is shut down
+     */
+    void dispatch(final MockDestination destination, final Message message) throws JMSException
+    {
+        final boolean hasPermit = !isDispatcherThread();
+        if(hasPermit)
+        {
+            try
+            {
+                pendingPermits.acquire();
+            }
+            catch(InterruptedException exc)
+            {
+                Thread.currentThread().interrupt();
+                throw new JMSException("Interrupted while waiting for message delivery");
+            }
+        }
+        destination.addReceivedMessage(message);
+        synchronized(lock)
+        {
+            numberPendingDeliveries++;
+            numberDispatchedMessages++;
+        }
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        destination.deliverMessage(message);
+                    }
+                    catch(Throwable exc)
+                    {
+                        logger.error("Error delivering message", exc);
+                    }
+                    finally
+                    {
+                        deliveryFinished(hasPermit);
+                    }
+                }
+            });
+        }
+        catch(RejectedExecutionException exc)
+        {
+            deliveryFinished(hasPermit);
+            throw new JMSException("Dispatcher is shut down");
+        }
+    }
+
+    /**
+     * Returns the total number of dispatched messages.
+     * @return the number of dispatched messages
+     */
+    long getNumberDispatchedMessages()
+    {
+        synchronized(lock)
+        {
+            return numberDispatchedMessages;
+        }
+    }
+
+    /**
+     * Waits until all dispatched messages are delivered.
+     * @param deadline the deadline in terms of <code>System.nanoTime()</code>
+     * @param timed <code>false</code> to ignore the deadline and wait
+     *        until all dispatched messages are delivered
+     * @return <code>true</code> if all dispatched messages are delivered,
+     *         <code>false</code> if the deadline elapsed before
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean awaitQuiescence(long deadline, boolean timed) throws InterruptedException
+    {
+        synchronized(lock)
+        {
+            while(numberPendingDeliveries > 0)
+            {
+                if(!timed)
+                {
+                    lock.wait();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops the dispatcher threads after the pending
+     * deliveries are finished.
+     */
+    void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private void deliveryFinished(boolean hasPermit)
+    {
+        if(hasPermit)
+        {
+            pendingPermits.release();
+        }
+        synchronized(lock)
+        {
+            numberPendingDeliveries--;
+            if(numberPendingDeliveries == 0)
+            {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory
+    {
+        private final ThreadFactory threadFactory;
+
+        private DispatcherThreadFactory(ThreadFactory threadFactory)
+        {
+            this.threadFactory = threadFactory;
+        }
+
+        public Thread newThread(final Runnable runnable)
+        {
+            return threadFactory.newThread(new Runnable()
+            {
+                public void run()
+                {
+                    dispatcherThread.set(Boolean.TRUE);
+                    runnable.run();
+                }
+            });
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private DaemonThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "Dispatcher " + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.mockrunner.mock.jms;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Counters for the messages of a {@link MockDestination} or a
+ * {@link MockSession}. The metrics of a destination count the messages
+ * added to the destination, the metrics of a session count the messages
+ * sent by its producers. Both count the messages delivered to message
+ * listeners or received by consumers, the messages acknowledged by the
+ * session (messages acknowledged by the client with
+ * <code>Message.acknowledge()</code> are not counted) and the deliveries
+ * of messages with the <code>JMSRedelivered</code> flag. The depth and
+ * the expired messages are only available for destinations.
+ * The latency is the time between adding a {@link MockMessage} to
+ * the destination and delivering or receiving it.
+ * The counters are <code>LongAdder</code> instances, so concurrent
+ * producers and consumers do not contend on one counter.
+ */
+public class MessageMetrics implements MessageMetricsMBean, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final MockDestination destination;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder redelivered = new LongAdder();
+    private final AtomicLong maximumDepth = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * @param destination the destination or <code>null</code>
+     *        for the metrics of a session
+     */
+    MessageMetrics(MockDestination destination)
+    {
+        this.destination = destination;
+    }
+
+    void messageEnqueued()
+    {
+        enqueued.increment();
+    }
+
+    void messageDelivered(Message message)
+    {
+        delivered.increment();
+        if(message instanceof MockMessage)
+        {
+            long enqueueTime = ((MockMessage)message).getEnqueueTime();
+            if(enqueueTime != 0) latencies.record(System.nanoTime() - enqueueTime);
+        }
+        try
+        {
+            if(message.getJMSRedelivered()) redelivered.increment();
+        }
+        catch(JMSException exc)
+        {
+            // not counted
+        }
+    }
+
+    void messageAcknowledged()
+    {
+        acknowledged.increment();
+    }
+
+    void depthChanged(long depth)
+    {
+        long currentMaximum = maximumDepth.get();
+        while(depth > currentMaximum && !maximumDepth.compareAndSet(currentMaximum, depth))
+        {
+            currentMaximum = maximumDepth.get();
+        }
+    }
+
+    /**
+     * Returns the number of messages added to the destination
+     * or sent by the producers of the session.
+     * @return the number of enqueued messages
+     */
+    public long getNumberEnqueuedMessages()
+    {
+        return enqueued.sum();
+    }
+
+    /**
+     * Returns the number of messages delivered to message listeners
+     * or received by consumers.
+     * @return the number of delivered messages
+     */
+    public long getNumberDeliveredMessages()
+    {
+        return delivered.sum();
+    }
+
+    /**
+     * Returns the number of messages acknowledged by the session.
+     * @return the number of acknowledged messages
+     */
+    public long getNumberAcknowledgedMessages()
+    {
+        return acknowledged.sum();
+    }
+
+    /**
+     * Returns the number of messages that were discarded, because they
+     * expired (see {@link MockQueue#setUsePriorityOrdering}). Always
+     * <code>0</code> for sessions.
+     * @return the number of expired messages
+     */
+    public long getNumberExpiredMessages()
+    {
+        if(null == destination) return 0;
+        return destination.getCurrentMessageStore().getNumberExpiredMessages();
+    }
+
+    /**
+     * Returns the number of deliveries of messages with the
+     * <code>JMSRedelivered</code> flag.
+     * @return the number of redelivered messages
+     */
+    public long getNumberRedeliveredMessages()
+    {
+        return redelivered.sum();
+    }
+
+    /**
+     * Returns the number of current messages of the destination.
+     * Always <code>0</code> for sessions.
+     * @return the current depth
+     */
+    public long getCurrentDepth()
+    {
+        if(null == destination) return 0;
+        return destination.getCurrentMessageStore().size();
+    }
+
+    /**
+     * Returns the maximum number of current messages of the destination
+     * since it was created or the metrics were reset. Always <code>0</code>
+     * for sessions.
+     * @return the maximum depth
+     */
+    public long getMaximumDepth()
+    {
+        return maximumDepth.get();
+    }
+
+    /**
+     * Returns the histogram of the latencies in nanoseconds.
+     * @return the histogram of the latencies
+     */
+    public LatencyHistogram getLatencyHistogram()
+    {
+        return latencies;
+    }
+
+    public long getMeanLatencyMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMean());
+    }
+
+    public long getMaximumLatencyMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMaximum());
+    }
+
+    public long getLatencyPercentileMicros(double percentile)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(percentile));
+    }
+
+    /**
+     * Resets all counters and the latencies. The maximum depth
+     * is reset to the current depth. The number of expired messages
+     * is counted by the destination and not reset.
+     */
+    public void reset()
+    {
+        enqueued.reset();
+        delivered.reset();
+        acknowledged.reset();
+        redelivered.reset();
+        maximumDepth.set(getCurrentDepth());
+        latencies.reset();
+    }
+}
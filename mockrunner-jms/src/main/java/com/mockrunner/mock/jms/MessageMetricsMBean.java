@@ -0,0 +1,32 @@
+package com.mockrunner.mock.jms;
+
+/**
+ * Management interface of {@link MessageMetrics}, used to
+ * register the metrics of destinations as JMX MBeans
+ * (see {@link com.mockrunner.jms.DestinationManager#registerMBeans}).
+ * Latencies are in microseconds.
+ */
+public interface MessageMetricsMBean
+{
+    public long getNumberEnqueuedMessages();
+
+    public long getNumberDeliveredMessages();
+
+    public long getNumberAcknowledgedMessages();
+
+    public long getNumberExpiredMessages();
+
+    public long getNumberRedeliveredMessages();
+
+    public long getCurrentDepth();
+
+    public long getMaximumDepth();
+
+    public long getMeanLatencyMicros();
+
+    public long getMaximumLatencyMicros();
+
+    public long getLatencyPercentileMicros(double percentile);
+
+    public void reset();
+}
@@ -0,0 +1,371 @@
+package com.mockrunner.mock.jms;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.activemq.filter.mockrunner.Filter;
+
+/**
+ * FIFO store for the messages of a {@link MockDestination}.
+ * The messages are kept in a circular array, i.e. adding a message
+ * and removing the first message take constant time (amortized
+ * for adding) and do not copy the other messages. Messages removed
+ * in the middle, e.g. with {@link #removeFirstMatching}, are marked
+ * as removed and the array is compacted once the removed messages
+ * outnumber the remaining ones.
+ * {@link #removeFirstMatching} uses an index on the property that
+ * the filter compares with a literal (see {@link PropertyCondition}),
+ * so only the messages with a matching property value are checked.
+ * The index for a property is built when a filter uses the property
+ * for the first time. The indexed values are read when the message
+ * is added. If the properties or headers of a {@link MockMessage}
+ * change after it was added to a store, e.g. because the same message
+ * object is sent again with <code>doCloneOnSend</code> disabled,
+ * the indexes are discarded and built again with the next lookup.
+ * Changes of other <code>Message</code> implementations are not detected.
+ * All methods lock the store, so it can be used by multiple threads.
+ */
+class MessageStore extends AbstractMessageStore
+{
+    private static final long serialVersionUID = 1L;
+
+    private final static int INITIAL_CAPACITY = 16;
+
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+    private int head;
+    private int numberEntries;
+    private int size;
+    private long sequence;
+    private transient Map<String, PropertyIndex> indexes;
+    private transient long indexedMessageChanges;
+
+    synchronized Object add(Message message)
+    {
+        if(numberEntries == entries.length)
+        {
+            grow();
+        }
+        if(message instanceof MockMessage)
+        {
+            ((MockMessage)message).setStored();
+        }
+        Entry entry = new Entry(sequence++, message);
+        entries[(head + numberEntries) & (entries.length - 1)] = entry;
+        numberEntries++;
+        size++;
+        if(null != indexes)
+        {
+            for(PropertyIndex index : indexes.values())
+            {
+                index.add(entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the messages in one step, i.e. the store
+     * is locked only once.
+     * @param messages the messages
+     */
+    synchronized void addAll(List<Message> messages)
+    {
+        for(Message message : messages)
+        {
+            add(message);
+        }
+    }
+
+    synchronized Message removeFirst()
+    {
+        if(size == 0) return null;
+        Entry entry = entries[head];
+        remove(entry);
+        return entry.message;
+    }
+
+    synchronized Message removeFirstMatching(Filter filter) throws JMSException
+    {
+        if(size == 0) return null;
+        PropertyCondition condition = PropertyCondition.extract(filter);
+        if(null != condition)
+        {
+            discardStaleIndexes();
+        }
+        Entry entry = (null == condition) ? findFirstMatching(filter) : getIndex(condition.getName()).findFirstMatching(condition.getKey(), filter);
+        if(null == entry) return null;
+        remove(entry);
+        return entry.message;
+    }
+
+    /**
+     * Removes the message that was added with the handle.
+     * @param handle the handle returned by {@link #add}
+     * @return <code>true</code> if the message was removed,
+     *         <code>false</code> if it was already removed before
+     */
+    synchronized boolean remove(Object handle)
+    {
+        Entry entry = (Entry)handle;
+        if(entry.removed) return false;
+        remove(entry);
+        return true;
+    }
+
+    synchronized Message get(int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if(numberEntries > size)
+        {
+            compact();
+        }
+        return entries[(head + index) & (entries.length - 1)].message;
+    }
+
+    synchronized int size()
+    {
+        return size;
+    }
+
+    synchronized void clear()
+    {
+        entries = new Entry[INITIAL_CAPACITY];
+        head = 0;
+        numberEntries = 0;
+        size = 0;
+        indexes = null;
+    }
+
+    synchronized Message[] toArray()
+    {
+        Message[] array = new Message[size];
+        int mask = entries.length - 1;
+        int position = 0;
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            Entry entry = entries[(head + ii) & mask];
+            if(!entry.removed) array[position++] = entry.message;
+        }
+        return array;
+    }
+
+    private Entry findFirstMatching(Filter filter) throws JMSException
+    {
+        int mask = entries.length - 1;
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            Entry entry = entries[(head + ii) & mask];
+            if(!entry.removed && filter.matches(entry.message)) return entry;
+        }
+        return null;
+    }
+
+    private void remove(Entry entry)
+    {
+        entry.removed = true;
+        size--;
+        if(null != indexes)
+        {
+            for(PropertyIndex index : indexes.values())
+            {
+                index.remove(entry);
+            }
+        }
+        int mask = entries.length - 1;
+        while(numberEntries > 0 && entries[head].removed)
+        {
+            entries[head] = null;
+            head = (head + 1) & mask;
+            numberEntries--;
+        }
+        if(numberEntries - size > Math.max(size, INITIAL_CAPACITY))
+        {
+            compact();
+        }
+    }
+
+    private void compact()
+    {
+        int mask = entries.length - 1;
+        int position = 0;
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            Entry entry = entries[(head + ii) & mask];
+            entries[(head + ii) & mask] = null;
+            if(!entry.removed)
+            {
+                entries[(head + position) & mask] = entry;
+                position++;
+            }
+        }
+        numberEntries = position;
+    }
+
+    private void grow()
+    {
+        int firstPart = entries.length - head;
+        Entry[] newEntries = new Entry[entries.length << 1];
+        System.arraycopy(entries, head, newEntries, 0, firstPart);
+        System.arraycopy(entries, 0, newEntries, firstPart, head);
+        entries = newEntries;
+        head = 0;
+    }
+
+    /**
+     * Discards the indexes, if the properties of a stored message
+     * changed since the indexes were built.
+     */
+    private void discardStaleIndexes()
+    {
+        if(null == indexes || indexedMessageChanges == MockMessage.getStoredMessageChanges()) return;
+        indexes = null;
+        int mask = entries.length - 1;
+        for(int ii = 0; ii < numberEntries; ii++)
+        {
+            entries[(head + ii) & mask].keys = null;
+        }
+    }
+
+    private PropertyIndex getIndex(String name)
+    {
+        if(null == indexes)
+        {
+            indexes = new HashMap<String, PropertyIndex>();
+            indexedMessageChanges = MockMessage.getStoredMessageChanges();
+        }
+        PropertyIndex index = indexes.get(name);
+        if(null == index)
+        {
+            index = new PropertyIndex(name);
+            int mask = entries.length - 1;
+            for(int ii = 0; ii < numberEntries; ii++)
+            {
+                Entry entry = entries[(head + ii) & mask];
+                if(!entry.removed) index.add(entry);
+            }
+            indexes.put(name, index);
+        }
+        return index;
+    }
+
+    private static class Entry implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+        private final Message message;
+        private boolean removed;
+        private transient Map<String, Object> keys;
+
+        private Entry(long sequence, Message message)
+        {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    /**
+     * The messages of the store grouped by the index key of a property,
+     * each group in FIFO order.
+     */
+    private static class PropertyIndex
+    {
+        private final String name;
+        private final Map<Object, LinkedHashSet<Entry>> entriesByKey = new HashMap<Object, LinkedHashSet<Entry>>();
+
+        private PropertyIndex(String name)
+        {
+            this.name = name;
+        }
+
+        private void add(Entry entry)
+        {
+            Object key;
+            try
+            {
+                key = PropertyCondition.getKey(entry.message, name);
+            }
+            catch(JMSException exc)
+            {
+                key = PropertyCondition.OTHER_VALUE;
+            }
+            if(null == key) return;
+            if(null == entry.keys)
+            {
+                entry.keys = new HashMap<String, Object>(4);
+            }
+            entry.keys.put(name, key);
+            LinkedHashSet<Entry> keyEntries = entriesByKey.get(key);
+            if(null == keyEntries)
+            {
+                keyEntries = new LinkedHashSet<Entry>();
+                entriesByKey.put(key, keyEntries);
+            }
+            keyEntries.add(entry);
+        }
+
+        private void remove(Entry entry)
+        {
+            if(null == entry.keys) return;
+            Object key = entry.keys.get(name);
+            if(null == key) return;
+            LinkedHashSet<Entry> keyEntries = entriesByKey.get(key);
+            keyEntries.remove(entry);
+            if(keyEntries.isEmpty())
+            {
+                entriesByKey.remove(key);
+            }
+        }
+
+        /**
+         * Returns the first entry with the key or with a value
+         * that is not indexed, which matches the filter.
+         */
+        private Entry findFirstMatching(Object key, Filter filter) throws JMSException
+        {
+            Iterator<Entry> keyEntries = getEntries(key);
+            Iterator<Entry> otherEntries = getEntries(PropertyCondition.OTHER_VALUE);
+            Entry keyEntry = next(keyEntries);
+            Entry otherEntry = next(otherEntries);
+            while(null != keyEntry || null != otherEntry)
+            {
+                Entry entry;
+                if(null == otherEntry || (null != keyEntry && keyEntry.sequence < otherEntry.sequence))
+                {
+                    entry = keyEntry;
+                    keyEntry = next(keyEntries);
+                }
+                else
+                {
+                    entry = otherEntry;
+                    otherEntry = next(otherEntries);
+                }
+                if(filter.matches(entry.message)) return entry;
+            }
+            return null;
+        }
+
+        private Iterator<Entry> getEntries(Object key)
+        {
+            LinkedHashSet<Entry> keyEntries = entriesByKey.get(key);
+            if(null == keyEntries) return Collections.<Entry>emptyList().iterator();
+            return keyEntries.iterator();
+        }
+
+        private static Entry next(Iterator<Entry> iterator)
+        {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+}
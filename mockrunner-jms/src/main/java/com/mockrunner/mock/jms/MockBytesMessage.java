@@ -1,12 +1,6 @@
 package com.mockrunner.mock.jms;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
-import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
@@ -19,15 +13,39 @@ import com.mockrunner.base.NestedApplicationException;
 
 /**
  * Mock implementation of JMS <code>BytesMessage</code>.
+ * The body is stored in a growable <code>ByteBuffer</code>, in the
+ * format of a <code>DataOutputStream</code>. {@link #reset} does not
+ * copy the body and a clone shares the body with the original message
+ * until one of them writes to it, so sending a message with
+ * {@link com.mockrunner.jms.ConfigurationManager#setDoCloneOnSend}
+ * enabled does not copy the body either. Use {@link #getBodyBuffer}
+ * to access the body without copying it.
  */
 public class MockBytesMessage extends MockMessage implements BytesMessage
 {
-    private DataOutputStream outStream;
-    private ByteArrayOutputStream byteOutStream;
-    private DataInputStream inStream;
+    private static final int MINIMUM_CAPACITY = 64;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private boolean useDirectBuffer;
+    private ByteBuffer buffer;
+    private int length;
+    private int readPosition;
     
     public MockBytesMessage()
     {
+        this(false);
+    }
+
+    /**
+     * Creates a message whose body is stored in a direct
+     * <code>ByteBuffer</code>, if <code>useDirectBuffer</code>
+     * is <code>true</code>. Otherwise, the body is stored in
+     * a heap <code>ByteBuffer</code>.
+     * @param useDirectBuffer should a direct buffer be used
+     */
+    public MockBytesMessage(boolean useDirectBuffer)
+    {
+        this.useDirectBuffer = useDirectBuffer;
         try
         {
             clearBody();
@@ -44,247 +62,67 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
         {
             throw new MessageNotReadableException("Message is in write mode");
         }
-        return outStream.size();
+        return length;
     }
 
     public boolean readBoolean() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readBoolean();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.get(startRead(1)) != 0;
     }
 
     public byte readByte() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readByte();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.get(startRead(1));
     }
 
     public int readUnsignedByte() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readByte();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.get(startRead(1));
     }
 
     public short readShort() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readShort();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getShort(startRead(2));
     }
 
     public int readUnsignedShort() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readShort();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getShort(startRead(2));
     }
 
     public char readChar() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readChar();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getChar(startRead(2));
     }
 
     public int readInt() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readInt();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getInt(startRead(4));
     }
 
     public long readLong() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readLong();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getLong(startRead(8));
     }
 
     public float readFloat() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readFloat();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getFloat(startRead(4));
     }
 
     public double readDouble() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readDouble();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return buffer.getDouble(startRead(8));
     }
 
     public String readUTF() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.readUTF();
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return decodeUTF();
     }
 
     public int readBytes(byte[] data) throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        try
-        {
-            return inStream.read(data);
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        return readBytes(data, data.length);
     }
 
     public int readBytes(byte[] data, int length) throws JMSException
@@ -293,194 +131,88 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
         {
             throw new MessageNotReadableException("Message is in write mode");
         }
-        try
+        if(length < 0 || length > data.length)
         {
-            return inStream.read(data, 0, length);
-        }
-        catch(EOFException exc)
-        {
-            throw new MessageEOFException(exc.getMessage());
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
+            throw new IndexOutOfBoundsException("Invalid length: " + length);
         }
+        if(length == 0) return 0;
+        if(readPosition >= this.length) return -1;
+        int numberBytes = Math.min(length, this.length - readPosition);
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition);
+        source.get(data, 0, numberBytes);
+        readPosition += numberBytes;
+        return numberBytes;
     }
 
     public void writeBoolean(boolean value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeBoolean(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(1);
+        buffer.put(position, (byte)(value ? 1 : 0));
     }
 
     public void writeByte(byte value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeByte(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(1);
+        buffer.put(position, value);
     }
 
     public void writeShort(short value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeShort(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(2);
+        buffer.putShort(position, value);
     }
 
     public void writeChar(char value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeChar(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(2);
+        buffer.putChar(position, value);
     }
 
     public void writeInt(int value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeInt(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(4);
+        buffer.putInt(position, value);
     }
 
     public void writeLong(long value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeLong(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(8);
+        buffer.putLong(position, value);
     }
 
     public void writeFloat(float value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeFloat(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(4);
+        buffer.putFloat(position, value);
     }
 
     public void writeDouble(double value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeDouble(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        int position = startWrite(8);
+        buffer.putDouble(position, value);
     }
 
     public void writeUTF(String value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.writeUTF(value);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        encodeUTF(value);
     }
 
     public void writeBytes(byte[] data) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.write(data);
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
+        writeBytes(data, 0, data.length);
     }
 
     public void writeBytes(byte[] data, int offset, int length) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        try
-        {
-            outStream.write(data, offset, length);
-        }
-        catch(IOException exc)
+        if(offset < 0 || length < 0 || offset + length > data.length || offset + length < 0)
         {
-            throw new JMSException(exc.getMessage());
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " or length " + length);
         }
+        int position = startWrite(length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(data, offset, length);
     }
 
     public void writeObject(Object object) throws JMSException
@@ -545,22 +277,15 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
     public void reset() throws JMSException
     {
         setReadOnly(true);
-        try
-        {
-            outStream.flush();
-        }
-        catch(IOException exc)
-        {
-            throw new JMSException(exc.getMessage());
-        }
-        inStream = new DataInputStream(new ByteArrayInputStream(byteOutStream.toByteArray()));
+        readPosition = 0;
     }
     
     public void clearBody() throws JMSException
     {
         super.clearBody();
-        byteOutStream = new ByteArrayOutputStream();
-        outStream = new DataOutputStream(byteOutStream);
+        buffer = EMPTY_BUFFER;
+        length = 0;
+        readPosition = 0;
     }
     
     /**
@@ -570,15 +295,22 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
      */
     public byte[] getBytes()
     {
-        try
-        {
-            outStream.flush();
-        }
-        catch(IOException exc)
-        {
-            throw new RuntimeException(exc.getMessage());
-        }
-        return byteOutStream.toByteArray();
+        byte[] data = new byte[length];
+        getBodyBuffer().get(data);
+        return data;
+    }
+
+    /**
+     * Returns a read only view of the underlying byte data regardless
+     * if the message is in read or write mode. The data is not copied.
+     * The view does not change if the message is written afterwards.
+     * @return the byte data
+     */
+    public ByteBuffer getBodyBuffer()
+    {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.limit(length);
+        return view.slice();
     }
     
     /**
@@ -589,17 +321,15 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
         if(null == otherObject) return false;
         if(!(otherObject instanceof MockBytesMessage)) return false;
         MockBytesMessage otherMessage = (MockBytesMessage)otherObject;
-        byte[] firstData = getBytes();
-        byte[] secondData = otherMessage.getBytes();
-        return Arrays.equals(firstData, secondData);
+        return getBodyBuffer().equals(otherMessage.getBodyBuffer());
     }
 
     public int hashCode()
     {
         int value = 17;
-        byte[] data = getBytes();
-        for (byte aData : data) {
-            value = (31 * value) + aData;
+        for(int ii = 0; ii < length; ii++)
+        {
+            value = (31 * value) + buffer.get(ii);
         }
         return value;
     }
@@ -607,27 +337,20 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
     public Object clone()
     {
         MockBytesMessage message = (MockBytesMessage)super.clone();
-        try
-        {
-            message.clearBody();
-            message.outStream.write(getBytes());
-            return message;
-        }
-        catch(Exception exc)
-        {
-            throw new NestedApplicationException(exc);
-        }
+        message.setReadOnly(false);
+        message.buffer = buffer.asReadOnlyBuffer();
+        message.readPosition = 0;
+        return message;
     }
 
     public String toString()
     {
         StringBuilder buffer = new StringBuilder();
         buffer.append(this.getClass().getName()).append(": [");
-        byte[] data = getBytes();
-        for(int ii = 0; ii < data.length; ii++)
+        for(int ii = 0; ii < length; ii++)
         {
-            buffer.append(data[ii]);
-            if(ii < data.length - 1)
+            buffer.append(this.buffer.get(ii));
+            if(ii < length - 1)
             {
                 buffer.append(", ");
             }
@@ -635,4 +358,139 @@ public class MockBytesMessage extends MockMessage implements BytesMessage
         buffer.append("]");
         return buffer.toString();
     }
+
+    private int startRead(int size) throws JMSException
+    {
+        if(isInWriteMode())
+        {
+            throw new MessageNotReadableException("Message is in write mode");
+        }
+        if(size > length - readPosition)
+        {
+            throw new MessageEOFException("End of message body reached");
+        }
+        int position = readPosition;
+        readPosition += size;
+        return position;
+    }
+
+    /**
+     * Reserves <code>size</code> bytes at the end of the body.
+     * The buffer is replaced by a bigger one if it is too small,
+     * and by a copy if it is shared with a clone.
+     */
+    private int startWrite(int size) throws JMSException
+    {
+        if(!isInWriteMode())
+        {
+            throw new MessageNotWriteableException("Message is in read mode");
+        }
+        int required = length + size;
+        if(required < 0)
+        {
+            throw new JMSException("Message body too large");
+        }
+        if(buffer.isReadOnly() || required > buffer.capacity())
+        {
+            long capacity = Math.max(required, Math.max(MINIMUM_CAPACITY, 2L * buffer.capacity()));
+            ByteBuffer newBuffer = allocate((int)Math.min(capacity, Integer.MAX_VALUE - 8));
+            ByteBuffer source = buffer.duplicate();
+            source.limit(length);
+            newBuffer.put(source);
+            newBuffer.clear();
+            buffer = newBuffer;
+        }
+        int position = length;
+        length = required;
+        return position;
+    }
+
+    private ByteBuffer allocate(int capacity)
+    {
+        if(useDirectBuffer)
+        {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Writes the string like <code>DataOutputStream.writeUTF</code>.
+     */
+    private void encodeUTF(String value) throws JMSException
+    {
+        int numberChars = value.length();
+        int utfLength = 0;
+        for(int ii = 0; ii < numberChars; ii++)
+        {
+            char nextChar = value.charAt(ii);
+            if(nextChar >= 0x0001 && nextChar <= 0x007F) utfLength++;
+            else if(nextChar > 0x07FF) utfLength += 3;
+            else utfLength += 2;
+        }
+        if(utfLength > 65535)
+        {
+            throw new JMSException("Encoded string too long: " + utfLength + " bytes");
+        }
+        int position = startWrite(2 + utfLength);
+        buffer.putShort(position, (short)utfLength);
+        position += 2;
+        for(int ii = 0; ii < numberChars; ii++)
+        {
+            char nextChar = value.charAt(ii);
+            if(nextChar >= 0x0001 && nextChar <= 0x007F)
+            {
+                buffer.put(position++, (byte)nextChar);
+            }
+            else if(nextChar > 0x07FF)
+            {
+                buffer.put(position++, (byte)(0xE0 | ((nextChar >> 12) & 0x0F)));
+                buffer.put(position++, (byte)(0x80 | ((nextChar >> 6) & 0x3F)));
+                buffer.put(position++, (byte)(0x80 | (nextChar & 0x3F)));
+            }
+            else
+            {
+                buffer.put(position++, (byte)(0xC0 | ((nextChar >> 6) & 0x1F)));
+                buffer.put(position++, (byte)(0x80 | (nextChar & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a string like <code>DataInputStream.readUTF</code>.
+     */
+    private String decodeUTF() throws JMSException
+    {
+        int utfLength = buffer.getShort(startRead(2)) & 0xFFFF;
+        int position = startRead(utfLength);
+        int end = position + utfLength;
+        char[] chars = new char[utfLength];
+        int numberChars = 0;
+        while(position < end)
+        {
+            int first = buffer.get(position++) & 0xFF;
+            switch(first >> 4)
+            {
+                case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                    chars[numberChars++] = (char)first;
+                    break;
+                case 12: case 13:
+                    if(position + 1 > end) throw new JMSException("Malformed input: partial character at end");
+                    int second = buffer.get(position++);
+                    if((second & 0xC0) != 0x80) throw new JMSException("Malformed input around byte " + position);
+                    chars[numberChars++] = (char)(((first & 0x1F) << 6) | (second & 0x3F));
+                    break;
+                case 14:
+                    if(position + 2 > end) throw new JMSException("Malformed input: partial character at end");
+                    int middle = buffer.get(position++);
+                    int last = buffer.get(position++);
+                    if(((middle & 0xC0) != 0x80) || ((last & 0xC0) != 0x80)) throw new JMSException("Malformed input around byte " + position);
+                    chars[numberChars++] = (char)(((first & 0x0F) << 12) | ((middle & 0x3F) << 6) | (last & 0x3F));
+                    break;
+                default:
+                    throw new JMSException("Malformed input around byte " + position);
+            }
+        }
+        return new String(chars, 0, numberChars);
+    }
 }
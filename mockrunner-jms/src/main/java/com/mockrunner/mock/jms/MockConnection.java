@@ -253,6 +253,7 @@ public class MockConnection implements Connection, Serializable
             Session session = (Session) session1;
             session.close();
         }
+        destinationManager.shutdownDispatchers();
         closed = true;
         if(logger.isDebugEnabled())
         	logger.debug("Closed mock connection");
@@ -1,6 +1,7 @@
 package com.mockrunner.mock.jms;
 
 import com.mockrunner.base.NestedApplicationException;
+import com.mockrunner.jms.ConfigurationManager;
 import org.activemq.filter.mockrunner.Filter;
 
 import javax.jms.Destination;
@@ -8,11 +9,16 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Mock implementation of JMS <code>Destination</code>.
@@ -20,14 +26,21 @@ import java.util.concurrent.CopyOnWriteArraySet;
 public abstract class MockDestination implements Destination, Serializable
 {
     private Set sessions;
-    private List currentMessages;
-    private List receivedMessages;
+    private volatile AbstractMessageStore currentMessages;
+    private MessageStore receivedMessages;
+    private transient MessageDispatcher dispatcher;
+    private ReentrantLock receiveLock;
+    private transient List<Waiter> waiters;
+    private transient int waitersVersion;
+    private final MessageMetrics metrics;
 
     public MockDestination()
     {
         sessions = new CopyOnWriteArraySet();
-        currentMessages = new CopyOnWriteArrayList();
-        receivedMessages = new CopyOnWriteArrayList();
+        currentMessages = new MessageStore();
+        receivedMessages = new MessageStore();
+        receiveLock = new ReentrantLock();
+        metrics = new MessageMetrics(this);
     }
     
     /**
@@ -37,6 +50,95 @@ public abstract class MockDestination implements Destination, Serializable
      * @throws JMSException os case the message can not be added
      */
     public abstract void addMessage(Message message) throws JMSException;
+
+    /**
+     * Delivers a message to the corresponding consumers. The message
+     * is not added to the list of received messages.
+     * Implemented by {@link MockQueue} and {@link MockTopic}.
+     * @param message the message
+     * @throws JMSException os case the message can not be delivered
+     */
+    protected abstract void deliverMessage(Message message) throws JMSException;
+
+    /**
+     * Delivers a message again that was rolled back by a transacted
+     * session. The message is not added to the list of received messages.
+     * @param message the message
+     * @param session the session that rolled back the message
+     * @throws JMSException os case the message can not be delivered
+     */
+    void redeliverMessage(Message message, MockSession session) throws JMSException
+    {
+        deliverMessage(message);
+    }
+
+    /**
+     * Adds a message to the list of received messages and delivers it
+     * to the corresponding consumers with the dispatcher threads of
+     * this destination. Used by producers if asynchronous delivery is
+     * enabled (see {@link ConfigurationManager#setUseAsynchronousDelivery}).
+     * @param message the message
+     * @param configurationManager the <code>ConfigurationManager</code>
+     *        used to start the dispatcher threads
+     * @throws JMSException os case the message can not be dispatched
+     */
+    public void addMessageAsynchronously(Message message, ConfigurationManager configurationManager) throws JMSException
+    {
+        getDispatcher(configurationManager).dispatch(this, message);
+    }
+
+    /**
+     * Waits until all messages that were added with
+     * {@link #addMessageAsynchronously} are delivered.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of <code>timeout</code>
+     * @return <code>true</code> if all messages are delivered,
+     *         <code>false</code> if the timeout elapsed before
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        MessageDispatcher currentDispatcher = getCurrentDispatcher();
+        if(null == currentDispatcher) return true;
+        return currentDispatcher.awaitQuiescence(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Waits until all messages that were added with
+     * {@link #addMessageAsynchronously} are delivered, without timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitQuiescence() throws InterruptedException
+    {
+        MessageDispatcher currentDispatcher = getCurrentDispatcher();
+        if(null == currentDispatcher) return;
+        currentDispatcher.awaitQuiescence(0, false);
+    }
+
+    /**
+     * Returns the number of messages that were added with
+     * {@link #addMessageAsynchronously} since the dispatcher threads
+     * of this destination were started.
+     * @return the number of asynchronously added messages
+     */
+    public long getNumberDispatchedMessages()
+    {
+        MessageDispatcher currentDispatcher = getCurrentDispatcher();
+        if(null == currentDispatcher) return 0;
+        return currentDispatcher.getNumberDispatchedMessages();
+    }
+
+    /**
+     * Stops the dispatcher threads of this destination after the
+     * pending deliveries are finished. The next message added with
+     * {@link #addMessageAsynchronously} starts new dispatcher threads.
+     */
+    public synchronized void shutdownDispatcher()
+    {
+        if(null == dispatcher) return;
+        dispatcher.shutdown();
+        dispatcher = null;
+    }
  
     /**
      * Adds a message to the list of current messages in this
@@ -69,12 +171,14 @@ public abstract class MockDestination implements Destination, Serializable
     }
 
     /**
-     * Clears all current messages and resets the list of received messages.
+     * Clears all current messages, resets the list of received messages
+     * and stops the dispatcher threads (see {@link #shutdownDispatcher}).
      */
     public void reset()
     {
         currentMessages.clear();
         receivedMessages.clear();
+        shutdownDispatcher();
     }
 
     /**
@@ -85,8 +189,7 @@ public abstract class MockDestination implements Destination, Serializable
      */
     public Message getMessage()
     {
-        if(currentMessages.size() <= 0) return null;
-        return (Message)currentMessages.remove(0);
+        return currentMessages.removeFirst();
     }
     
     /**
@@ -98,41 +201,36 @@ public abstract class MockDestination implements Destination, Serializable
      */
     public Message getMatchingMessage(Filter filter)
     {
-        for(int ii = 0; ii < currentMessages.size(); ii++)
+        try
         {
-            Message currentMessage = (Message)currentMessages.get(ii);
-            try
-            {
-                if(filter.matches(currentMessage))
-                {
-                    currentMessages.remove(ii);
-                    return currentMessage;
-                }
-            }
-            catch(JMSException exc)
-            {
-                throw new NestedApplicationException(exc);
-            }
+            return currentMessages.removeFirstMatching(filter);
+        }
+        catch(JMSException exc)
+        {
+            throw new NestedApplicationException(exc);
         }
-        return null;
     }
 
     /**
      * Returns a <code>List</code> of all current messages.
+     * The <code>List</code> is a read only view that reflects
+     * later changes. Iterators work on a snapshot of the messages.
      * @return the <code>List</code> of messages
      */
-    public List getCurrentMessageList()
+    public List<Message> getCurrentMessageList()
     {
-        return Collections.unmodifiableList(currentMessages);
+        return currentMessages.getListView();
     }
 
     /**
      * Returns a <code>List</code> of all received messages.
+     * The <code>List</code> is a read only view that reflects
+     * later changes. Iterators work on a snapshot of the messages.
      * @return the <code>List</code> of messages
      */
-    public List getReceivedMessageList()
+    public List<Message> getReceivedMessageList()
     {
-        return Collections.unmodifiableList(receivedMessages);
+        return receivedMessages.getListView();
     }
 
     /**
@@ -162,21 +260,339 @@ public abstract class MockDestination implements Destination, Serializable
         return Collections.unmodifiableSet(sessions);
     }
     
+    /**
+     * Returns the metrics of this destination.
+     * @return the metrics
+     */
+    public MessageMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    /**
+     * Adds the messages to the list of received messages in one
+     * step and delivers them to the corresponding consumers like
+     * {@link #addMessage}. Used by transacted sessions to publish
+     * the messages of a transaction on commit.
+     * @param messages the messages
+     * @throws JMSException os case a message can not be added
+     */
+    void addMessages(List<Message> messages) throws JMSException
+    {
+        long enqueueTime = System.nanoTime();
+        for(Message message : messages)
+        {
+            if(message instanceof MockMessage)
+            {
+                ((MockMessage)message).setEnqueueTime(enqueueTime);
+            }
+        }
+        receivedMessages.addAll(messages);
+        for(int ii = 0; ii < messages.size(); ii++)
+        {
+            metrics.messageEnqueued();
+        }
+        for(Message message : messages)
+        {
+            deliverMessage(message);
+        }
+    }
+    
     protected void addReceivedMessage(Message message)
     {
+        if(message instanceof MockMessage)
+        {
+            ((MockMessage)message).setEnqueueTime(System.nanoTime());
+        }
         receivedMessages.add(message);
+        metrics.messageEnqueued();
     }
     
+    /**
+     * Adds a message to the list of current messages. If a consumer
+     * is waiting for a message in {@link #takeMessage}, the message
+     * is handed over to the consumer that waits the longest and
+     * whose filter matches instead. The filters are evaluated without
+     * holding the lock, so a slow or failing selector does not block
+     * the consumers. A filter that fails does not match.
+     * @param message the message
+     */
     protected void addCurrentMessage(Message message)
     {
-        currentMessages.add(message);
+        if(!currentMessages.accepts(message)) return;
+        while(true)
+        {
+            List<Waiter> candidates;
+            int version;
+            receiveLock.lock();
+            try
+            {
+                if(getWaiters().isEmpty())
+                {
+                    currentMessages.add(message);
+                    metrics.depthChanged(currentMessages.size());
+                    return;
+                }
+                candidates = new ArrayList<Waiter>(getWaiters());
+                version = waitersVersion;
+            }
+            finally
+            {
+                receiveLock.unlock();
+            }
+            Waiter matchingWaiter = null;
+            for(Waiter waiter : candidates)
+            {
+                if(waiter.matches(message))
+                {
+                    matchingWaiter = waiter;
+                    break;
+                }
+            }
+            receiveLock.lock();
+            try
+            {
+                if(null != matchingWaiter && getWaiters().remove(matchingWaiter))
+                {
+                    matchingWaiter.message = message;
+                    matchingWaiter.condition.signal();
+                    return;
+                }
+                // no waiter started waiting in the meantime, so none can match
+                if(null == matchingWaiter && version == waitersVersion)
+                {
+                    currentMessages.add(message);
+                    metrics.depthChanged(currentMessages.size());
+                    return;
+                }
+            }
+            finally
+            {
+                receiveLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next message that matches the filter.
+     * If there's no matching message, waits until one is added or
+     * the timeout elapses. Messages are handed over to the waiting
+     * consumers in the order the consumers started waiting.
+     * @param consumer the waiting consumer, used by {@link #cancelWaiting}
+     * @param filter the filter, <code>null</code> matches all messages
+     * @param timeout the timeout in nanoseconds, <code>0</code> or
+     *        less returns immediately
+     * @param timed <code>false</code> to wait without timeout
+     * @return the message or <code>null</code>, if the timeout elapsed,
+     *         the waiting was cancelled or the thread was interrupted
+     */
+    Message takeMessage(MockMessageConsumer consumer, Filter filter, long timeout, boolean timed)
+    {
+        Message message = removeMessage(filter);
+        if(null != message || (timed && timeout <= 0)) return message;
+        receiveLock.lock();
+        try
+        {
+            message = removeMessage(filter);
+            if(null != message) return message;
+            Waiter waiter = new Waiter(consumer, filter, receiveLock.newCondition());
+            getWaiters().add(waiter);
+            waitersVersion++;
+            try
+            {
+                long remaining = timeout;
+                while(null == waiter.message && !waiter.cancelled && !consumer.isClosed())
+                {
+                    if(!timed)
+                    {
+                        waiter.condition.await();
+                    }
+                    else if(remaining > 0)
+                    {
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+            catch(InterruptedException exc)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                getWaiters().remove(waiter);
+            }
+            return waiter.message;
+        }
+        finally
+        {
+            receiveLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the threads that wait for a message in {@link #takeMessage}
+     * for the specified consumer, e.g. because the consumer is closed.
+     * The waiting threads return <code>null</code>.
+     * @param consumer the consumer
+     */
+    void cancelWaiting(MockMessageConsumer consumer)
+    {
+        receiveLock.lock();
+        try
+        {
+            Iterator<Waiter> iterator = getWaiters().iterator();
+            while(iterator.hasNext())
+            {
+                Waiter waiter = iterator.next();
+                if(waiter.consumer == consumer)
+                {
+                    iterator.remove();
+                    waiter.cancelled = true;
+                    waiter.condition.signal();
+                }
+            }
+        }
+        finally
+        {
+            receiveLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the store of the current messages. The current messages
+     * are moved to the new store.
+     * @param store the new store
+     */
+    void setCurrentMessageStore(AbstractMessageStore store)
+    {
+        receiveLock.lock();
+        try
+        {
+            for(Message message : currentMessages.toArray())
+            {
+                store.add(message);
+            }
+            currentMessages = store;
+        }
+        finally
+        {
+            receiveLock.unlock();
+        }
+    }
+
+    AbstractMessageStore getCurrentMessageStore()
+    {
+        return currentMessages;
+    }
+
+    private Message removeMessage(Filter filter)
+    {
+        if(isEmpty()) return null;
+        if(null == filter) return getMessage();
+        return getMatchingMessage(filter);
     }
     
+    /**
+     * Returns the consumers waiting in {@link #takeMessage}.
+     * Created lazily, since the waiters are not serialized.
+     * Must be called with the receive lock held.
+     */
+    private List<Waiter> getWaiters()
+    {
+        if(null == waiters)
+        {
+            waiters = new LinkedList<Waiter>();
+        }
+        return waiters;
+    }
+
+    private synchronized MessageDispatcher getDispatcher(ConfigurationManager configurationManager)
+    {
+        if(null == dispatcher)
+        {
+            dispatcher = new MessageDispatcher(getClass().getSimpleName(), configurationManager);
+        }
+        return dispatcher;
+    }
+
+    private synchronized MessageDispatcher getCurrentDispatcher()
+    {
+        return dispatcher;
+    }
+
+    /**
+     * Counts the delivery of a message to a consumer of the
+     * session in the metrics of this destination and the session.
+     * Called before the message is passed to the consumer, so a
+     * transacted session knows the message, if the message listener
+     * commits or rolls back.
+     * @param message the message
+     * @param session the session
+     */
+    protected void messageDelivered(Message message, MockSession session)
+    {
+        metrics.messageDelivered(message);
+        session.getMetrics().messageDelivered(message);
+        if(session.isStaging())
+        {
+            session.messageConsumed(this, message);
+        }
+    }
+
+    /**
+     * Acknowledges a message delivered to a consumer of the session,
+     * if the session acknowledges messages automatically. Messages
+     * delivered to a session that buffers its messages are
+     * acknowledged when the transaction is committed.
+     * @param message the message
+     * @param session the session
+     * @throws JMSException os case the message can not be acknowledged
+     */
     protected void acknowledgeMessage(Message message, MockSession session) throws JMSException
     {
+        if(session.isStaging()) return;
         if(session.isAutoAcknowledge())
         {
             message.acknowledge();
+            metrics.messageAcknowledged();
+            session.getMetrics().messageAcknowledged();
+        }
+    }
+
+    private static class Waiter
+    {
+        private final MockMessageConsumer consumer;
+        private final Filter filter;
+        private final Condition condition;
+        private Message message;
+        private boolean cancelled;
+
+        private Waiter(MockMessageConsumer consumer, Filter filter, Condition condition)
+        {
+            this.consumer = consumer;
+            this.filter = filter;
+            this.condition = condition;
+        }
+
+        private boolean matches(Message message)
+        {
+            if(null == filter) return true;
+            try
+            {
+                return filter.matches(message);
+            }
+            catch(JMSException exc)
+            {
+                return false;
+            }
+            catch(RuntimeException exc)
+            {
+                return false;
+            }
         }
     }
 }
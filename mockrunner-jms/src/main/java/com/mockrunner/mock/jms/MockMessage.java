@@ -6,6 +6,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
@@ -21,6 +22,8 @@ import com.mockrunner.base.NestedApplicationException;
  */
 public class MockMessage implements Message, Cloneable, Serializable
 {
+    private static final AtomicLong storedMessageChanges = new AtomicLong();
+
     private String messageId;
     private long timestamp;
     private String correlationId;
@@ -35,6 +38,8 @@ public class MockMessage implements Message, Cloneable, Serializable
     private Map properties;
     private boolean isInWriteMode;
     private boolean isInWriteModeProperties;
+    private transient long enqueueTime;
+    private transient volatile boolean stored;
     
     public MockMessage()
     {
@@ -55,6 +60,51 @@ public class MockMessage implements Message, Cloneable, Serializable
         return acknowledged;
     }
     
+    /**
+     * Returns the <code>System.nanoTime()</code> when the message was
+     * added to a destination, used for the latency of {@link MessageMetrics}.
+     * @return the enqueue time or <code>0</code>, if the message
+     *         was not added to a destination
+     */
+    long getEnqueueTime()
+    {
+        return enqueueTime;
+    }
+
+    void setEnqueueTime(long enqueueTime)
+    {
+        this.enqueueTime = enqueueTime;
+    }
+
+    /**
+     * Returns the number of changes of the properties and headers of
+     * messages that were added to a {@link MessageStore} before the change.
+     * Used by the stores to detect stale property indexes.
+     * @return the number of changes
+     */
+    static long getStoredMessageChanges()
+    {
+        return storedMessageChanges.get();
+    }
+
+    /**
+     * Called by {@link MessageStore} when the message is added.
+     * Later changes of the properties and headers are counted
+     * by {@link #getStoredMessageChanges}.
+     */
+    void setStored()
+    {
+        stored = true;
+    }
+
+    private void propertiesChanged()
+    {
+        if(stored)
+        {
+            storedMessageChanges.incrementAndGet();
+        }
+    }
+    
     public String getJMSMessageID() throws JMSException
     {
         return messageId;
@@ -63,6 +113,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSMessageID(String messageId) throws JMSException
     {
         this.messageId = messageId;
+        propertiesChanged();
     }
 
     public long getJMSTimestamp() throws JMSException
@@ -73,6 +124,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSTimestamp(long timestamp) throws JMSException
     {
         this.timestamp = timestamp;
+        propertiesChanged();
     }
 
     public byte[] getJMSCorrelationIDAsBytes() throws JMSException
@@ -105,11 +157,13 @@ public class MockMessage implements Message, Cloneable, Serializable
         {
             throw new JMSException(exc.getMessage());
         }
+        propertiesChanged();
     }
 
     public void setJMSCorrelationID(String correlationId) throws JMSException
     {
         this.correlationId = correlationId;
+        propertiesChanged();
     }
 
     public String getJMSCorrelationID() throws JMSException
@@ -125,6 +179,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSReplyTo(Destination replyTo) throws JMSException
     {
         this.replyTo = replyTo;
+        propertiesChanged();
     }
 
     public Destination getJMSDestination() throws JMSException
@@ -135,6 +190,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSDestination(Destination destination) throws JMSException
     {
         this.destination = destination;
+        propertiesChanged();
     }
 
     public int getJMSDeliveryMode() throws JMSException
@@ -145,6 +201,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSDeliveryMode(int deliveryMode) throws JMSException
     {
         this.deliveryMode = deliveryMode;
+        propertiesChanged();
     }
 
     public boolean getJMSRedelivered() throws JMSException
@@ -155,6 +212,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSRedelivered(boolean redelivered) throws JMSException
     {
         this.redelivered = redelivered;
+        propertiesChanged();
     }
 
     public String getJMSType() throws JMSException
@@ -165,6 +223,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSType(String type) throws JMSException
     {
         this.type = type;
+        propertiesChanged();
     }
 
     public long getJMSExpiration() throws JMSException
@@ -175,6 +234,7 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSExpiration(long expiration) throws JMSException
     {
         this.expiration = expiration;
+        propertiesChanged();
     }
 
     public int getJMSPriority() throws JMSException
@@ -185,12 +245,14 @@ public class MockMessage implements Message, Cloneable, Serializable
     public void setJMSPriority(int priority) throws JMSException
     {
         this.priority = priority;
+        propertiesChanged();
     }
 
     public void clearProperties() throws JMSException
     {
         isInWriteModeProperties = true;
         properties.clear();
+        propertiesChanged();
     }
 
     public boolean propertyExists(String name) throws JMSException
@@ -395,6 +457,7 @@ public class MockMessage implements Message, Cloneable, Serializable
         if((object instanceof String) || (object instanceof Number) || (object instanceof Boolean))
         {
             properties.put(name, object);
+            propertiesChanged();
             return;
         }
         throw new MessageFormatException(object.getClass().getName() + " not a valid type");
@@ -426,6 +489,7 @@ public class MockMessage implements Message, Cloneable, Serializable
         {
             MockMessage clone = (MockMessage)super.clone();
             clone.properties = new HashMap(properties);
+            clone.stored = false;
             return clone;
         }
         catch(CloneNotSupportedException exc)
@@ -1,7 +1,7 @@
 package com.mockrunner.mock.jms;
 
 import java.io.Serializable;
-import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.InvalidSelectorException;
 import javax.jms.JMSException;
@@ -10,7 +10,6 @@ import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
 
 import org.activemq.filter.mockrunner.Filter;
-import org.activemq.selector.mockrunner.SelectorParser;
 
 /**
  * Mock implementation of JMS <code>MessageConsumer</code>.
@@ -42,7 +41,7 @@ public abstract class MockMessageConsumer implements MessageConsumer, Serializab
         {
             try
             {
-                this.messageSelectorFilter = new SelectorParser().parse(messageSelector);
+                this.messageSelectorFilter = SelectorCache.getFilter(messageSelector);
             }
             catch(InvalidSelectorException exc)
             {
@@ -73,6 +72,23 @@ public abstract class MockMessageConsumer implements MessageConsumer, Serializab
         if(isClosed()) return false;
         return matchesMessageSelector(message);
     }
+
+    /**
+     * Returns if this consumer can consume the message, like
+     * {@link #canConsume(Message)}, but uses the specified result
+     * of the message selector instead of evaluating it.
+     * @param message the message
+     * @param selectorResult the result of the message selector
+     *        or <code>null</code>, if it has to be evaluated
+     * @return <code>true</code> if this consumer can consume the message
+     */
+    boolean canConsume(Message message, Boolean selectorResult)
+    {
+        if(null == selectorResult) return canConsume(message);
+        if(messageListener == null) return false;
+        if(isClosed()) return false;
+        return selectorResult;
+    }
     
     /**
      * Adds a message that is immediately propagated to the
@@ -104,54 +120,37 @@ public abstract class MockMessageConsumer implements MessageConsumer, Serializab
         this.messageListener = messageListener;
     }
 
-    /** 
-     * wait until: 
-     * 
-     * * a message is ready
-     * * the timeout elapses
-     * * some other event happens (@see Object.wait)
-     * 
-     * if the timeout is 0, the function will not timeout.
-     * 
-     * @param timeout - max milliseconds to wait. 
+    /**
+     * Removes and returns the next message for this consumer from
+     * the destination. If there's no message, waits until a message
+     * arrives, the timeout elapses or this consumer is closed.
+     * @param timeout the timeout in nanoseconds, <code>0</code> or less
+     *        returns immediately
+     * @param timed <code>false</code> to wait without timeout
+     * @return the message or <code>null</code>, if there's no message
+     * @throws JMSException if this consumer is closed
      */
-    protected abstract void waitOnMessage(long timeout);
+    protected abstract Message takeMessage(long timeout, boolean timed) throws JMSException;
 
-    
     public Message receive(long timeout) throws JMSException
     {
-    	if(timeout == 0) return receive();
-    	getConnection().throwJMSException();
-    	Message message=null; 
-    
-    	Date waitTill = new Date((new Date()).getTime()+timeout);
-    	
-   		for(;;){
-    		message = receiveNoWait();
-   			if(message!=null) return message;
-   			timeout= waitTill.getTime()-(new Date()).getTime();
-   			if(timeout>0)
-   			{
-				waitOnMessage(timeout);
-   			}
-   			else
-   			{
-   				return null;
-   			}
-    	}	
-	}
+        if(timeout == 0) return receive();
+        getConnection().throwJMSException();
+        return takeMessage(TimeUnit.MILLISECONDS.toNanos(timeout), true);
+    }
 
     public Message receive() throws JMSException
     {
-    	getConnection().throwJMSException();
-    	
-    	Message message = null;
-   		for(;;){
-    		message = receiveNoWait();
-   			if(message!=null) return message;   
-   			waitOnMessage(0);
-    	}	
+        getConnection().throwJMSException();
+        return takeMessage(0, false);
+    }
+
+    public Message receiveNoWait() throws JMSException
+    {
+        getConnection().throwJMSException();
+        return takeMessage(0, true);
     }
+
     public void close() throws JMSException
     {
         connection.throwJMSException();
@@ -176,7 +175,31 @@ public abstract class MockMessageConsumer implements MessageConsumer, Serializab
     {
         return messageSelectorFilter;
     }
+
+    /**
+     * Returns the filter that selects the messages this consumer receives,
+     * i.e. <code>null</code> if message selectors are disabled
+     * (see {@link com.mockrunner.jms.ConfigurationManager#setUseMessageSelectors}).
+     * @return the filter or <code>null</code>, if all messages are selected
+     */
+    protected Filter getActiveMessageFilter()
+    {
+        if(!connection.getConfigurationManager().getUseMessageSelectors()) return null;
+        return messageSelectorFilter;
+    }
     
+    /**
+     * Returns the message selector, if this consumer selects messages,
+     * i.e. <code>null</code> if message selectors are disabled or
+     * if this consumer does not have a message selector.
+     * @return the message selector or <code>null</code>
+     */
+    String getActiveMessageSelector()
+    {
+        if(null == getActiveMessageFilter()) return null;
+        return messageSelector;
+    }
+
     protected MockConnection getConnection()
     {
         return connection;
@@ -82,13 +82,29 @@ public class MockMessageProducer implements MessageProducer, Serializable
         {
             setJMSMessageHeaders(message, destination, deliveryMode, priority, timeToLive);
             session.addSessionToQueue((MockQueue)destination);
-            ((MockQueue)destination).addMessage(message);
+            if(session.isStaging())
+            {
+                session.stageMessage((MockQueue)destination, message);
+            }
+            else
+            {
+                addMessage((MockQueue)destination, message);
+                session.getMetrics().messageEnqueued();
+            }
         }
         else if(destination instanceof MockTopic)
         {
             setJMSMessageHeaders(message, destination, deliveryMode, priority, timeToLive);
             session.addSessionToTopic((MockTopic)destination);
-            ((MockTopic)destination).addMessage(message);
+            if(session.isStaging())
+            {
+                session.stageMessage((MockTopic)destination, message);
+            }
+            else
+            {
+                addMessage((MockTopic)destination, message);
+                session.getMetrics().messageEnqueued();
+            }
         }
         else
         {
@@ -96,6 +112,18 @@ public class MockMessageProducer implements MessageProducer, Serializable
         }
     }
     
+    private void addMessage(MockDestination destination, Message message) throws JMSException
+    {
+        if(connection.getConfigurationManager().getUseAsynchronousDelivery())
+        {
+            destination.addMessageAsynchronously(message, connection.getConfigurationManager());
+        }
+        else
+        {
+            destination.addMessage(message);
+        }
+    }
+    
     public Destination getDestination() throws JMSException
     {
         connection.throwJMSException();
@@ -24,6 +24,49 @@ public class MockQueue extends MockDestination implements Queue
     {
         return name;
     }
+
+    /**
+     * Enables or disables priority and expiration aware ordering.
+     * If enabled, the current messages are ordered by their
+     * <code>JMSPriority</code>, i.e. receivers get the messages with
+     * the highest priority first and messages with the same priority
+     * in the order they were sent. Messages whose <code>JMSExpiration</code>
+     * is reached are discarded and not received anymore.
+     * The number of discarded messages is returned by
+     * {@link #getNumberExpiredMessages}.
+     * Default is <code>false</code>, i.e. the messages are received
+     * in the order they were sent and never expire.
+     * The current messages are kept when this setting is changed.
+     * @param usePriorityOrdering should priority and expiration
+     *        aware ordering be used
+     */
+    public void setUsePriorityOrdering(boolean usePriorityOrdering)
+    {
+        if(usePriorityOrdering == getUsePriorityOrdering()) return;
+        setCurrentMessageStore(usePriorityOrdering ? new PriorityMessageStore() : new MessageStore());
+    }
+
+    /**
+     * Returns if priority and expiration aware ordering is enabled.
+     * @return <code>true</code> if priority and expiration aware
+     *         ordering is enabled
+     */
+    public boolean getUsePriorityOrdering()
+    {
+        return getCurrentMessageStore() instanceof PriorityMessageStore;
+    }
+
+    /**
+     * Returns the number of messages that were discarded, because
+     * they expired before they were received. Messages only expire
+     * if priority and expiration aware ordering is enabled
+     * (see {@link #setUsePriorityOrdering}).
+     * @return the number of expired messages
+     */
+    public long getNumberExpiredMessages()
+    {
+        return getCurrentMessageStore().getNumberExpiredMessages();
+    }
     
     /**
      * Adds a message to this <code>Queue</code> that will
@@ -34,7 +77,12 @@ public class MockQueue extends MockDestination implements Queue
      */
     public void addMessage(Message message) throws JMSException
     {
-        addReceivedMessage(message);    
+        addReceivedMessage(message);
+        deliverMessage(message);
+    }
+
+    protected void deliverMessage(Message message) throws JMSException
+    {
         boolean isConsumed = false;
         Iterator sessionsIterator = sessionSet().iterator();
         while(sessionsIterator.hasNext() && !isConsumed)
@@ -43,7 +91,16 @@ public class MockQueue extends MockDestination implements Queue
             MessageListener globalListener = session.getMessageListener();
             if(null != globalListener)
             {
-                globalListener.onMessage(message);
+                messageDelivered(message, session);
+                session.beginDelivery();
+                try
+                {
+                    globalListener.onMessage(message);
+                }
+                finally
+                {
+                    session.endDelivery();
+                }
                 isConsumed = true;
                 acknowledgeMessage(message, session);
             }
@@ -55,7 +112,16 @@ public class MockQueue extends MockDestination implements Queue
                     MockQueueReceiver receiver = (MockQueueReceiver)receivers.get(ii);
                     if(receiver.canConsume(message))
                     {
-                        receiver.receiveMessage(message);
+                        messageDelivered(message, session);
+                        session.beginDelivery();
+                        try
+                        {
+                            receiver.receiveMessage(message);
+                        }
+                        finally
+                        {
+                            session.endDelivery();
+                        }
                         isConsumed = true;
                         acknowledgeMessage(message, session);
                     }
@@ -65,9 +131,6 @@ public class MockQueue extends MockDestination implements Queue
         if(!isConsumed)
         {
             addCurrentMessage(message);
-            synchronized (this){	
-            	this.notify();
-            }
         }
     }
 }
@@ -13,7 +13,6 @@ import javax.jms.Queue;
 import javax.jms.QueueBrowser;
 
 import org.activemq.filter.mockrunner.Filter;
-import org.activemq.selector.mockrunner.SelectorParser;
 
 /**
  * Mock implementation of JMS <code>QueueBrowser</code>.
@@ -50,7 +49,7 @@ public class MockQueueBrowser implements QueueBrowser, Serializable
         {
             try
             {
-                this.messageSelectorFilter = new SelectorParser().parse(messageSelector);
+                this.messageSelectorFilter = SelectorCache.getFilter(messageSelector);
             }
             catch(InvalidSelectorException exc)
             {
@@ -31,36 +31,22 @@ public class MockQueueReceiver extends MockMessageConsumer implements QueueRecei
         return queue;
     }
  
-    public Message receiveNoWait() throws JMSException
+    protected Message takeMessage(long timeout, boolean timed) throws JMSException
     {
-        getConnection().throwJMSException();
         if(isClosed())
         {
             throw new JMSException("Receiver is closed");
         }
-        if(queue.isEmpty()) return null;
-        Message message;
-        if((!getConnection().getConfigurationManager().getUseMessageSelectors()) || (null == getMessageFilter()))
-        {
-            message = queue.getMessage();
-        }
-        else
-        {
-            message = queue.getMatchingMessage(getMessageFilter());
-        }
+        Message message = queue.takeMessage(this, getActiveMessageFilter(), timeout, timed);
         if(null == message) return null;
-        if(session.isAutoAcknowledge()) message.acknowledge();
+        queue.messageDelivered(message, session);
+        queue.acknowledgeMessage(message, session);
         return message;
     }
-    
-    protected void waitOnMessage(long timeout)
+
+    public void close() throws JMSException
     {
-    	try {
-    		//todo, notify on topic. 
-    		synchronized(queue) {
-    			queue.wait(timeout);
-    		}
-		} catch (InterruptedException ignored) {
-		}
+        super.close();
+        queue.cancelWaiting(this);
     }
 }
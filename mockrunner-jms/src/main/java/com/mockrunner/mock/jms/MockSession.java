@@ -4,10 +4,15 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import javax.jms.BytesMessage;
 import javax.jms.Destination;
@@ -32,6 +37,8 @@ import javax.jms.TopicSubscriber;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.mockrunner.base.NestedApplicationException;
+import com.mockrunner.jms.ConfigurationManager;
 import com.mockrunner.jms.GenericTransmissionManager;
 import com.mockrunner.jms.MessageManager;
 import com.mockrunner.jms.QueueTransmissionManager;
@@ -42,19 +49,31 @@ import com.mockrunner.jms.TransmissionManagerWrapper;
  * Mock implementation of JMS <code>Session</code>.
  * 
  * Please note that this implementation does not
- * implement transaction isolation at the moment.
+ * implement transaction isolation by default.
  * Messages are immediately sent. If acknowledge
  * mode is AUTO_ACKNOWLEDGE or DUPS_OK_ACKNOWLEDGE,
  * the message will be automatically acknowledged,
  * otherwise, it will not be acknowledged. According
  * to JMS specification, the acknowledged mode must
- * be ignored for transacted sessions. This is currently
- * not implemented, i.e. transacted sessions behave like
+ * be ignored for transacted sessions. This is
+ * not implemented by default, i.e. transacted sessions behave like
  * sessions with acknowledge mode AUTO_ACKNOWLEDGE. 
  * Messages are acknowledged even if the transaction is 
  * rolled back. However, the framework keeps track if a
  * transaction is committed or rolled back, so you can test 
  * this and rely on the container for the rest.
+ * If transactional sessions are enabled with
+ * {@link com.mockrunner.jms.ConfigurationManager#setUseTransactionalSessions},
+ * the messages sent by a transacted session are staged
+ * and added to their destinations in one batch per destination
+ * on {@link #commit}. The messages received by a transacted
+ * session are acknowledged on {@link #commit} and delivered again
+ * with the <code>JMSRedelivered</code> flag on {@link #rollback}.
+ * If a message listener of this session rolls back, the messages
+ * are delivered again after the listener returns. A message that is
+ * rolled back more often than allowed by
+ * {@link com.mockrunner.jms.ConfigurationManager#setMaximumRedeliveries}
+ * is dropped.
  * You can set a <code>MessageListener</code> directly to
  * the session. This is an application server internal feature 
  * and not meant for application use in JMS. 
@@ -75,8 +94,8 @@ public class MockSession implements Session, Serializable
     private TransmissionManagerWrapper transManager;
     private MessageManager messageManager;
     private MessageListener messageListener;
-    private List tempQueues;
-    private List tempTopics;
+    private List<MockTemporaryQueue> tempQueues;
+    private List<MockTemporaryTopic> tempTopics;
     private Set queues;
     private Set topics;
     private boolean transacted;
@@ -84,7 +103,16 @@ public class MockSession implements Session, Serializable
     private int numberCommits;
     private int numberRollbacks;
     private boolean recovered;
+    private final MessageMetrics metrics = new MessageMetrics(null);
     private boolean closed;
+    private transient Semaphore deliveryPermits;
+    private transient ThreadLocal<int[]> heldDeliveryPermits;
+    private List<TransactedMessage> stagedMessages;
+    private Set<TransactedMessage> consumedMessages;
+    private List<TransactedMessage> pendingRedeliveries;
+    private Map<TransactedMessage, Integer> redeliveryCounts;
+    private int deliveryDepth;
+    private boolean redelivering;
     
     public MockSession(MockConnection connection, boolean transacted, int acknowledgeMode)
     {
@@ -96,8 +124,8 @@ public class MockSession implements Session, Serializable
         genericTransManager = new GenericTransmissionManager(connection, this);
         transManager = new TransmissionManagerWrapper(queueTransManager, topicTransManager, genericTransManager);
         messageManager = new MessageManager();
-        tempQueues = new ArrayList();
-        tempTopics = new ArrayList();
+        tempQueues = new ArrayList<MockTemporaryQueue>();
+        tempTopics = new ArrayList<MockTemporaryTopic>();
         queues = new HashSet();
         topics = new HashSet();
         messageListener = null;
@@ -105,6 +133,12 @@ public class MockSession implements Session, Serializable
         numberRollbacks = 0;
         recovered = false;
         closed = false;
+        stagedMessages = new ArrayList<TransactedMessage>();
+        consumedMessages = new LinkedHashSet<TransactedMessage>();
+        pendingRedeliveries = new ArrayList<TransactedMessage>();
+        redeliveryCounts = new HashMap<TransactedMessage, Integer>();
+        deliveryDepth = 0;
+        redelivering = false;
         if(logger.isDebugEnabled())
         	logger.debug("Created new mock session");
     }
@@ -182,7 +216,7 @@ public class MockSession implements Session, Serializable
     public MockTemporaryQueue getTemporaryQueue(int index)
     {
         if(tempQueues.size() <= index || index < 0) return null;
-        return (MockTemporaryQueue)tempQueues.get(index);
+        return tempQueues.get(index);
     }
     
     /**
@@ -204,7 +238,7 @@ public class MockSession implements Session, Serializable
     public MockTemporaryTopic getTemporaryTopic(int index)
     {
         if(tempTopics.size() <= index || index < 0) return null;
-        return (MockTemporaryTopic)tempTopics.get(index);
+        return tempTopics.get(index);
     }
     
     /**
@@ -216,6 +250,17 @@ public class MockSession implements Session, Serializable
         return closed;
     }
 
+    /**
+     * Returns the metrics of this session, i.e. the counters for the
+     * messages sent by the producers and delivered to the consumers
+     * of this session.
+     * @return the metrics
+     */
+    public MessageMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
     /**
      * Returns if this session was recovered.
      * @return <code>true</code> if this session was recovered
@@ -362,6 +407,11 @@ public class MockSession implements Session, Serializable
     public void commit() throws JMSException
     {
         connection.throwJMSException();
+        if(isStaging())
+        {
+            publishStagedMessages();
+            acknowledgeConsumedMessages();
+        }
         numberCommits++;
         if(logger.isDebugEnabled())
         	logger.debug("Mock session commit");
@@ -371,6 +421,10 @@ public class MockSession implements Session, Serializable
     public void rollback() throws JMSException
     {
         connection.throwJMSException();
+        if(isStaging())
+        {
+            rollbackMessages();
+        }
         recover();
         numberRollbacks++;
         if(logger.isDebugEnabled())
@@ -380,17 +434,21 @@ public class MockSession implements Session, Serializable
     public void close() throws JMSException
     {
         connection.throwJMSException();
-        if(getTransacted() && !isCommitted())
-        {
-            rollback();
-        }
         getQueueTransmissionManager().closeAll();
         getTopicTransmissionManager().closeAll();
         getGenericTransmissionManager().closeAll();
+        // leave the destinations first, so the rolled back messages
+        // are not redelivered to the message listener of this session
         removeSessionFromDestinations(tempQueues);
         removeSessionFromDestinations(tempTopics);
         removeSessionFromDestinations(queues);
         removeSessionFromDestinations(topics);
+        if(getTransacted() && (!isCommitted() || hasUncommittedMessages()))
+        {
+            rollback();
+        }
+        shutdownDispatchers(tempQueues);
+        shutdownDispatchers(tempTopics);
         queues.clear();
         topics.clear();
         closed = true;
@@ -406,6 +464,13 @@ public class MockSession implements Session, Serializable
         }
     }
 
+    private void shutdownDispatchers(Collection<? extends MockDestination> destinations)
+    {
+        for (MockDestination currentDestination : destinations) {
+            currentDestination.shutdownDispatcher();
+        }
+    }
+
     public void recover() throws JMSException
     {
         connection.throwJMSException();
@@ -575,8 +640,295 @@ public class MockSession implements Session, Serializable
         }
     }
     
+    /**
+     * Called by the destinations before a message is delivered to
+     * a message listener of this session. If the message is delivered
+     * asynchronously, this method blocks while the maximum number of
+     * concurrent deliveries is reached (see
+     * {@link com.mockrunner.jms.ConfigurationManager#setSessionConcurrency}).
+     * A dispatcher thread that already delivers a message to this session,
+     * e.g. because a message listener adds a message to a destination
+     * directly, does not acquire another permit.
+     */
+    void beginDelivery()
+    {
+        if(MessageDispatcher.isDispatcherThread())
+        {
+            int[] heldPermits = getHeldDeliveryPermits().get();
+            if(heldPermits[0]++ == 0)
+            {
+                getDeliveryPermits().acquireUninterruptibly();
+            }
+        }
+        synchronized(this)
+        {
+            deliveryDepth++;
+        }
+    }
+
+    /**
+     * Called by the destinations after a message was delivered to
+     * a message listener of this session.
+     */
+    void endDelivery()
+    {
+        synchronized(this)
+        {
+            deliveryDepth--;
+        }
+        if(MessageDispatcher.isDispatcherThread())
+        {
+            int[] heldPermits = getHeldDeliveryPermits().get();
+            if(--heldPermits[0] == 0)
+            {
+                getDeliveryPermits().release();
+            }
+        }
+        redeliverPending();
+    }
+
+    /**
+     * Returns if this session is transacted and buffers its messages
+     * until the transaction is committed or rolled back (see
+     * {@link com.mockrunner.jms.ConfigurationManager#setUseTransactionalSessions}).
+     * @return <code>true</code> if this session buffers its messages
+     */
+    public boolean isStaging()
+    {
+        return transacted && connection.getConfigurationManager().getUseTransactionalSessions();
+    }
+
+    /**
+     * Returns the messages sent by this session, which will be added to
+     * their destinations when the transaction is committed. Always empty,
+     * if this session does not buffer its messages (see {@link #isStaging}).
+     * @return the <code>List</code> of staged messages
+     */
+    public synchronized List<Message> getStagedMessageList()
+    {
+        List<Message> messages = new ArrayList<Message>(stagedMessages.size());
+        for(TransactedMessage staged : stagedMessages)
+        {
+            messages.add(staged.message);
+        }
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Called by the producers of this session instead of adding
+     * the message to the destination, if this session buffers
+     * its messages.
+     */
+    synchronized void stageMessage(MockDestination destination, Message message)
+    {
+        stagedMessages.add(new TransactedMessage(destination, message));
+    }
+
+    /**
+     * Called by the destinations after a message was delivered to
+     * a consumer of this session, if this session buffers its messages.
+     * A message delivered to several subscribers of this session
+     * is kept once.
+     */
+    synchronized void messageConsumed(MockDestination destination, Message message)
+    {
+        consumedMessages.add(new TransactedMessage(destination, message));
+    }
+
+    private synchronized boolean hasUncommittedMessages()
+    {
+        return !stagedMessages.isEmpty() || !consumedMessages.isEmpty();
+    }
+
+    private void publishStagedMessages() throws JMSException
+    {
+        List<TransactedMessage> messages;
+        synchronized(this)
+        {
+            messages = new ArrayList<TransactedMessage>(stagedMessages);
+            stagedMessages.clear();
+        }
+        Map<MockDestination, List<Message>> batches = new LinkedHashMap<MockDestination, List<Message>>();
+        for(TransactedMessage staged : messages)
+        {
+            List<Message> batch = batches.get(staged.destination);
+            if(null == batch)
+            {
+                batch = new ArrayList<Message>();
+                batches.put(staged.destination, batch);
+            }
+            batch.add(staged.message);
+        }
+        ConfigurationManager configurationManager = connection.getConfigurationManager();
+        for(Map.Entry<MockDestination, List<Message>> entry : batches.entrySet())
+        {
+            MockDestination destination = entry.getKey();
+            if(configurationManager.getUseAsynchronousDelivery())
+            {
+                for(Message message : entry.getValue())
+                {
+                    destination.addMessageAsynchronously(message, configurationManager);
+                }
+            }
+            else
+            {
+                destination.addMessages(entry.getValue());
+            }
+            for(int ii = 0; ii < entry.getValue().size(); ii++)
+            {
+                metrics.messageEnqueued();
+            }
+        }
+    }
+
+    private void acknowledgeConsumedMessages() throws JMSException
+    {
+        List<TransactedMessage> messages;
+        synchronized(this)
+        {
+            messages = new ArrayList<TransactedMessage>(consumedMessages);
+            consumedMessages.clear();
+            redeliveryCounts.keySet().removeAll(messages);
+        }
+        for(TransactedMessage consumed : messages)
+        {
+            consumed.message.acknowledge();
+            consumed.destination.getMetrics().messageAcknowledged();
+            metrics.messageAcknowledged();
+        }
+    }
+
+    private void rollbackMessages() throws JMSException
+    {
+        int maximumRedeliveries = connection.getConfigurationManager().getMaximumRedeliveries();
+        synchronized(this)
+        {
+            stagedMessages.clear();
+            for(TransactedMessage consumed : consumedMessages)
+            {
+                Integer count = redeliveryCounts.get(consumed);
+                int redeliveries = (null == count) ? 1 : count + 1;
+                if(redeliveries > maximumRedeliveries)
+                {
+                    redeliveryCounts.remove(consumed);
+                    logger.warn("Message rolled back more than " + maximumRedeliveries + " times, dropping it");
+                    continue;
+                }
+                redeliveryCounts.put(consumed, redeliveries);
+                consumed.message.setJMSRedelivered(true);
+                pendingRedeliveries.add(consumed);
+            }
+            consumedMessages.clear();
+        }
+        redeliverPending();
+    }
+
+    /**
+     * Delivers the rolled back messages again, unless a message is
+     * currently delivered to this session. Messages that are rolled
+     * back during the redelivery are delivered by the loop of the
+     * outermost call, so a listener that rolls back does not
+     * recurse.
+     */
+    private void redeliverPending()
+    {
+        synchronized(this)
+        {
+            if(redelivering || deliveryDepth > 0 || pendingRedeliveries.isEmpty()) return;
+            redelivering = true;
+        }
+        try
+        {
+            List<TransactedMessage> redeliveries = takePendingRedeliveries();
+            while(!redeliveries.isEmpty())
+            {
+                redeliver(redeliveries);
+                redeliveries = takePendingRedeliveries();
+            }
+        }
+        finally
+        {
+            synchronized(this)
+            {
+                redelivering = false;
+            }
+        }
+    }
+
+    private synchronized List<TransactedMessage> takePendingRedeliveries()
+    {
+        List<TransactedMessage> redeliveries = new ArrayList<TransactedMessage>(pendingRedeliveries);
+        pendingRedeliveries.clear();
+        return redeliveries;
+    }
+
+    private void redeliver(List<TransactedMessage> redeliveries)
+    {
+        for(TransactedMessage redelivery : redeliveries)
+        {
+            try
+            {
+                redelivery.destination.redeliverMessage(redelivery.message, this);
+            }
+            catch(JMSException exc)
+            {
+                throw new NestedApplicationException(exc);
+            }
+        }
+    }
+
+    private synchronized Semaphore getDeliveryPermits()
+    {
+        if(null == deliveryPermits)
+        {
+            deliveryPermits = new Semaphore(connection.getConfigurationManager().getSessionConcurrency());
+        }
+        return deliveryPermits;
+    }
+
+    private synchronized ThreadLocal<int[]> getHeldDeliveryPermits()
+    {
+        if(null == heldDeliveryPermits)
+        {
+            heldDeliveryPermits = new ThreadLocal<int[]>()
+            {
+                protected int[] initialValue()
+                {
+                    return new int[1];
+                }
+            };
+        }
+        return heldDeliveryPermits;
+    }
+    
     protected MessageProducer createProducerForNullDestination()
     {
         return getGenericTransmissionManager().createMessageProducer();
     }
+
+    private static class TransactedMessage implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final MockDestination destination;
+        private final Message message;
+
+        private TransactedMessage(MockDestination destination, Message message)
+        {
+            this.destination = destination;
+            this.message = message;
+        }
+
+        public boolean equals(Object object)
+        {
+            if(!(object instanceof TransactedMessage)) return false;
+            TransactedMessage other = (TransactedMessage)object;
+            return destination == other.destination && message == other.message;
+        }
+
+        public int hashCode()
+        {
+            return 31 * System.identityHashCode(destination) + System.identityHashCode(message);
+        }
+    }
 }
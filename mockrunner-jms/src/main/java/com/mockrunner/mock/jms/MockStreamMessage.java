@@ -1,9 +1,12 @@
 package com.mockrunner.mock.jms;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Stack;
-import java.util.Vector;
+import java.util.List;
 
 import javax.jms.JMSException;
 import javax.jms.MessageEOFException;
@@ -12,264 +15,221 @@ import javax.jms.MessageNotReadableException;
 import javax.jms.MessageNotWriteableException;
 import javax.jms.StreamMessage;
 
-import com.mockrunner.util.common.ArrayUtil;
-
 /**
  * Mock implementation of JMS <code>StreamMessage</code>.
+ * The values are encoded in a growable <code>ByteBuffer</code>, each
+ * with a tag byte for the type followed by the value, so primitive
+ * values are not boxed. Reading moves a cursor over the encoded values.
+ * A clone shares the encoded values with the original message until
+ * one of them writes to it.
+ * Only the types supported by <code>StreamMessage</code>
+ * can be written, i.e. the primitive wrapper types,
+ * <code>String</code> and <code>byte[]</code>.
  */
 public class MockStreamMessage extends MockMessage implements StreamMessage
 {
-    private Stack data;
+    private static final int MINIMUM_CAPACITY = 64;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte BYTES = 10;
+
+    private transient ByteBuffer buffer;
+    private int length;
+    private int readPosition;
+    private boolean hasRemainingBytes;
+    private int remainingBytesPosition;
+    private int remainingBytesLength;
     private boolean remainingBytesPushed;
-    
+    private transient int valuePosition;
+    private transient int valueLength;
+
     public MockStreamMessage()
     {
-        data = new Stack();
+        buffer = EMPTY_BUFFER;
         remainingBytesPushed = false;
     }
 
     public boolean readBoolean() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("boolean"));
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("boolean"));
+            case BOOLEAN:
+                return buffer.get(valuePosition) != 0;
+            case STRING:
+                return Boolean.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to boolean");
         }
-        if(value instanceof Boolean)
-        {
-            return (Boolean) value;
-        }
-        if(value instanceof String)
-        {
-            return Boolean.valueOf((String) value);
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to boolean");
     }
 
     public byte readByte() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("byte"));
+            case BYTE:
+                return buffer.get(valuePosition);
+            case STRING:
+                return Byte.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to byte");
         }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("byte"));
-        }
-        if(value instanceof Byte)
-        {
-            return (Byte) value;
-        }
-        if(value instanceof String)
-        {
-            return Byte.valueOf((String) value);
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to byte");
     }
 
     public short readShort() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("short"));
-        }
-        if((value instanceof Byte) || (value instanceof Short))
-        {
-            return ((Number)value).shortValue();
-        }
-        if(value instanceof String)
-        {
-            return Short.valueOf((String) value);
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("short"));
+            case BYTE:
+                return buffer.get(valuePosition);
+            case SHORT:
+                return buffer.getShort(valuePosition);
+            case STRING:
+                return Short.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to short");
         }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to short");
     }
 
     public char readChar() throws JMSException
     {
-        if(isInWriteMode())
+        byte tag = readTag();
+        switch(tag)
         {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value)
-        {
-            throw new NullPointerException();
+            case NULL:
+                throw new NullPointerException();
+            case CHAR:
+                return buffer.getChar(valuePosition);
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to char");
         }
-        if(value instanceof Character)
-        {
-            return (Character) value;
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to char");
     }
 
     public int readInt() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("int"));
+            case BYTE:
+                return buffer.get(valuePosition);
+            case SHORT:
+                return buffer.getShort(valuePosition);
+            case INT:
+                return buffer.getInt(valuePosition);
+            case STRING:
+                return Integer.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to int");
         }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("int"));
-        }
-        if((value instanceof Byte) || (value instanceof Short) || (value instanceof Integer))
-        {
-            return ((Number)value).intValue();
-        }
-        if(value instanceof String)
-        {
-            return Integer.valueOf((String) value);
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to int");
     }
 
     public long readLong() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("long"));
+            case BYTE:
+                return buffer.get(valuePosition);
+            case SHORT:
+                return buffer.getShort(valuePosition);
+            case INT:
+                return buffer.getInt(valuePosition);
+            case LONG:
+                return buffer.getLong(valuePosition);
+            case STRING:
+                return Long.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to long");
         }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("long"));
-        }
-        if((value instanceof Byte) || (value instanceof Short) || (value instanceof Integer) || (value instanceof Long))
-        {
-            return ((Number)value).longValue();
-        }
-        if(value instanceof String)
-        {
-            return Long.valueOf((String) value);
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to long");
     }
 
     public float readFloat() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("float"));
-        }
-        if(value instanceof Float)
-        {
-            return (Float) value;
-        }
-        if(value instanceof String)
-        {
-            return Float.valueOf((String) value);
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("float"));
+            case FLOAT:
+                return buffer.getFloat(valuePosition);
+            case STRING:
+                return Float.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to float");
         }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to float");
     }
 
     public double readDouble() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
+        byte tag = readTag();
+        switch(tag)
+        {
+            case NULL:
+                throw new MessageFormatException(getNullDatumMessage("double"));
+            case FLOAT:
+                return buffer.getFloat(valuePosition);
+            case DOUBLE:
+                return buffer.getDouble(valuePosition);
+            case STRING:
+                return Double.valueOf(decodeString());
+            default:
+                throw new MessageFormatException(getTypeName(tag) + " cannot be converted to double");
         }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) {
-            throw new MessageFormatException(getNullDatumMessage("double"));
-        }
-        if((value instanceof Float) || (value instanceof Double))
-        {
-            return ((Number)value).doubleValue();
-        }
-        if(value instanceof String)
-        {
-            return Double.valueOf((String) value);
-        }
-        throw new MessageFormatException(value.getClass().getName() + " cannot be converted to double");
     }
 
     public String readString() throws JMSException
     {
-        if(isInWriteMode())
+        byte tag = readTag();
+        if(NULL == tag) return null;
+        if(BYTES == tag)
         {
-            throw new MessageNotReadableException("Message is in write mode");
+            throw new MessageFormatException(getTypeName(tag) + " cannot be converted to String");
         }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        Object value = readObject();
-        if(null == value) return null;
-        if(value instanceof byte[])
-        {
-            throw new MessageFormatException(value.getClass().getName() + " cannot be converted to String");
-        }
-        return value.toString();
+        if(STRING == tag) return decodeString();
+        return decodeValue(tag).toString();
     }
 
     public int readBytes(byte[] byteData) throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
+        checkReadable();
         if(null == byteData)
         {
             throw new NullPointerException();
         }
-        Object value = readObject();
-        if(null == value)
+        byte tag = readTag();
+        if(NULL == tag)
         {
             remainingBytesPushed = false;
             return -1;
         }
-        if(!(value instanceof byte[]))
+        if(BYTES != tag)
         {
             remainingBytesPushed = false;
-            throw new MessageFormatException(value.getClass().getName() + " cannot be converted to byte[]");
+            throw new MessageFormatException(getTypeName(tag) + " cannot be converted to byte[]");
         }
-        int fieldLength = ((byte[])value).length;
+        int fieldLength = valueLength;
         if(0 == fieldLength)
         {
             if(remainingBytesPushed)
@@ -287,132 +247,118 @@ public class MockStreamMessage extends MockMessage implements StreamMessage
         remainingBytesPushed = false;
         if(fieldLength < byteData.length)
         {
-            System.arraycopy(value, 0, byteData, 0, fieldLength);
+            getBytes(valuePosition, byteData, fieldLength);
             return fieldLength;
         }
-        System.arraycopy(value, 0, byteData, 0, byteData.length);
-        byte[] remaining = new byte[fieldLength - byteData.length];
-        System.arraycopy(value, byteData.length, remaining, 0, remaining.length);
-        data.push(remaining);
+        getBytes(valuePosition, byteData, byteData.length);
+        hasRemainingBytes = true;
+        remainingBytesPosition = valuePosition + byteData.length;
+        remainingBytesLength = fieldLength - byteData.length;
         remainingBytesPushed = true;
         return byteData.length;
     }
 
     public Object readObject() throws JMSException
     {
-        if(isInWriteMode())
-        {
-            throw new MessageNotReadableException("Message is in write mode");
-        }
-        if(data.empty())
-        {
-            throw new MessageEOFException("No more data");
-        }
-        return data.pop();
+        return decodeValue(readTag());
     }
 
     public void writeBoolean(boolean value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(BOOLEAN, 1);
+        buffer.put(position, (byte)(value ? 1 : 0));
     }
 
     public void writeByte(byte value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(BYTE, 1);
+        buffer.put(position, value);
     }
 
     public void writeShort(short value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(SHORT, 2);
+        buffer.putShort(position, value);
     }
 
     public void writeChar(char value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(CHAR, 2);
+        buffer.putChar(position, value);
     }
 
     public void writeInt(int value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(INT, 4);
+        buffer.putInt(position, value);
     }
 
     public void writeLong(long value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(LONG, 8);
+        buffer.putLong(position, value);
     }
 
     public void writeFloat(float value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(FLOAT, 4);
+        buffer.putFloat(position, value);
     }
 
     public void writeDouble(double value) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
-        writeObject(value);
+        int position = startWrite(DOUBLE, 8);
+        buffer.putDouble(position, value);
     }
 
     public void writeString(String value) throws JMSException
     {
-        if(!isInWriteMode())
+        if(null == value)
         {
-            throw new MessageNotWriteableException("Message is in read mode");
+            startWrite(NULL, 0);
+            return;
+        }
+        int numberChars = value.length();
+        if(numberChars > (Integer.MAX_VALUE - 4) / 2)
+        {
+            throw new JMSException("String too large");
+        }
+        int position = startWrite(STRING, 4 + 2 * numberChars);
+        buffer.putInt(position, numberChars);
+        position += 4;
+        for(int ii = 0; ii < numberChars; ii++)
+        {
+            buffer.putChar(position, value.charAt(ii));
+            position += 2;
         }
-        writeObject(value);
     }
 
     public void writeBytes(byte[] data) throws JMSException
     {
-        if(!isInWriteMode())
+        if(null == data)
         {
-            throw new MessageNotWriteableException("Message is in read mode");
+            startWrite(NULL, 0);
+            return;
         }
-        writeObject(data);
+        writeBytes(data, 0, data.length);
     }
 
     public void writeBytes(byte[] data, int offset, int length) throws JMSException
     {
-        if(!isInWriteMode())
-        {
-            throw new MessageNotWriteableException("Message is in read mode");
-        }
         if(null == data)
         {
-            writeObject(null);
+            startWrite(NULL, 0);
             return;
         }
-        writeObject(ArrayUtil.truncateArray(data, offset, length));
+        if(offset < 0 || length < 0 || offset + length > data.length || offset + length < 0)
+        {
+            throw new IndexOutOfBoundsException("Invalid offset " + offset + " or length " + length);
+        }
+        int position = startWrite(BYTES, 4 + length);
+        buffer.putInt(position, length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + 4);
+        target.put(data, offset, length);
     }
 
     public void writeObject(Object object) throws JMSException
@@ -423,56 +369,88 @@ public class MockStreamMessage extends MockMessage implements StreamMessage
         }
         if(null == object)
         {
-            data.push(object);
-            return;
+            startWrite(NULL, 0);
         }
-        if((object instanceof String) || (object instanceof Number) || (object instanceof Character) || (object instanceof Boolean))
+        else if(object instanceof String)
         {
-            data.push(object);
-            return;
+            writeString((String)object);
         }
-        if(object instanceof byte[])
+        else if(object instanceof Integer)
         {
-            byte[] arrayData = ((byte[])object).clone();
-            data.push(arrayData);
-            return;
+            writeInt((Integer)object);
+        }
+        else if(object instanceof Long)
+        {
+            writeLong((Long)object);
+        }
+        else if(object instanceof Double)
+        {
+            writeDouble((Double)object);
+        }
+        else if(object instanceof Float)
+        {
+            writeFloat((Float)object);
+        }
+        else if(object instanceof Short)
+        {
+            writeShort((Short)object);
+        }
+        else if(object instanceof Byte)
+        {
+            writeByte((Byte)object);
+        }
+        else if(object instanceof Character)
+        {
+            writeChar((Character)object);
+        }
+        else if(object instanceof Boolean)
+        {
+            writeBoolean((Boolean)object);
+        }
+        else if(object instanceof byte[])
+        {
+            writeBytes((byte[])object);
+        }
+        else
+        {
+            throw new MessageFormatException(object.getClass() + " not a valid type");
         }
-        throw new MessageFormatException(object.getClass() + " not a valid type");
     }
 
     public void reset() throws JMSException
     {
         setReadOnly(true);
-        Collections.reverse(data);
+        readPosition = 0;
+        hasRemainingBytes = false;
         remainingBytesPushed = false;
     }
 
     public void clearBody() throws JMSException
     {
         super.clearBody();
-        data = new Stack();
+        buffer = EMPTY_BUFFER;
+        length = 0;
+        readPosition = 0;
+        hasRemainingBytes = false;
         remainingBytesPushed = false;
     }
-    
+
     /**
-     * Compares the underlying stream data.
+     * Compares the underlying stream data, i.e. the values that
+     * were not read yet.
      */
     public boolean equals(Object otherObject)
     {
         if(null == otherObject) return false;
         if(!(otherObject instanceof MockStreamMessage)) return false;
         MockStreamMessage otherMessage = (MockStreamMessage)otherObject;
-        if(data.size() != otherMessage.data.size()) return false;
-        Vector otherData = otherMessage.data;
-        if(isInWriteMode() != otherMessage.isInWriteMode())
-        {
-            otherData = new Vector(otherData);
-            Collections.reverse(otherData);
-        }
-        for(int ii = 0; ii < data.size(); ii++)
+        List<Object> values = getRemainingValues();
+        List<Object> otherValues = otherMessage.getRemainingValues();
+        if(values.size() != otherValues.size()) return false;
+        for(int ii = 0; ii < values.size(); ii++)
         {
-            Object nextValue = data.get(ii);
-            Object otherValue = otherData.get(ii);
+            Object nextValue = values.get(ii);
+            Object otherValue = otherValues.get(ii);
             if(null == nextValue)
             {
                 if(null != otherValue) return false;
@@ -494,12 +472,7 @@ public class MockStreamMessage extends MockMessage implements StreamMessage
     public int hashCode()
     {
         int value = 17;
-        Vector theData = new Vector(data);
-        if(isInWriteMode())
-        {
-            Collections.reverse(theData);
-        }
-        for (Object nextValue : theData) {
+        for (Object nextValue : getRemainingValues()) {
             if (nextValue instanceof byte[]) {
                 for (int yy = 0; yy < ((byte[]) nextValue).length; yy++) {
                     value = (31 * value) + ((byte[]) nextValue)[yy];
@@ -510,32 +483,262 @@ public class MockStreamMessage extends MockMessage implements StreamMessage
         }
         return value;
     }
-    
+
     public Object clone()
     {
         MockStreamMessage message = (MockStreamMessage)super.clone();
-        message.data = new Stack();
-        for(int ii = 0; ii < data.size(); ii++)
+        message.buffer = buffer.asReadOnlyBuffer();
+        return message;
+    }
+
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(this.getClass().getName()).append(": [");
+        List<Object> values = getRemainingValues();
+        for(int ii = 0; ii < values.size(); ii++)
+        {
+            Object nextValue = values.get(ii);
+            buffer.append((nextValue instanceof byte[]) ? Arrays.toString((byte[])nextValue) : String.valueOf(nextValue));
+            if(ii < values.size() - 1)
+            {
+                buffer.append(", ");
+            }
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    private void writeObject(ObjectOutputStream stream) throws IOException
+    {
+        stream.defaultWriteObject();
+        byte[] data = new byte[length];
+        getBytes(0, data, length);
+        stream.writeObject(data);
+    }
+
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        buffer = ByteBuffer.wrap((byte[])stream.readObject());
+    }
+
+    private String getNullDatumMessage(String typename) {
+      return String.format("Cannot convert null to a %s.", typename);
+    }
+
+    private void checkReadable() throws JMSException
+    {
+        if(isInWriteMode())
+        {
+            throw new MessageNotReadableException("Message is in write mode");
+        }
+        if(!hasRemainingBytes && readPosition >= length)
+        {
+            throw new MessageEOFException("No more data");
+        }
+    }
+
+    /**
+     * Moves the cursor to the next value and returns its tag. The
+     * position and the length of the value are stored in <code>valuePosition</code>
+     * and <code>valueLength</code>. The rest of a partially read
+     * <code>byte[]</code> is returned as the next value.
+     */
+    private byte readTag() throws JMSException
+    {
+        checkReadable();
+        if(hasRemainingBytes)
         {
-            Object nextValue = data.get(ii);
-            if(nextValue instanceof byte[])
+            hasRemainingBytes = false;
+            valuePosition = remainingBytesPosition;
+            valueLength = remainingBytesLength;
+            return BYTES;
+        }
+        return moveToNextValue();
+    }
+
+    private int getValueSize(byte tag, int position)
+    {
+        switch(tag)
+        {
+            case NULL:
+                return 0;
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case SHORT:
+            case CHAR:
+                return 2;
+            case INT:
+            case FLOAT:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            case STRING:
+                return 4 + 2 * buffer.getInt(position);
+            default:
+                return 4 + buffer.getInt(position);
+        }
+    }
+
+    private Object decodeValue(byte tag)
+    {
+        switch(tag)
+        {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return buffer.get(valuePosition) != 0;
+            case BYTE:
+                return buffer.get(valuePosition);
+            case SHORT:
+                return buffer.getShort(valuePosition);
+            case CHAR:
+                return buffer.getChar(valuePosition);
+            case INT:
+                return buffer.getInt(valuePosition);
+            case LONG:
+                return buffer.getLong(valuePosition);
+            case FLOAT:
+                return buffer.getFloat(valuePosition);
+            case DOUBLE:
+                return buffer.getDouble(valuePosition);
+            case STRING:
+                return decodeString();
+            default:
+                byte[] data = new byte[valueLength];
+                getBytes(valuePosition, data, valueLength);
+                return data;
+        }
+    }
+
+    private String decodeString()
+    {
+        char[] chars = new char[valueLength];
+        for(int ii = 0; ii < valueLength; ii++)
+        {
+            chars[ii] = buffer.getChar(valuePosition + 2 * ii);
+        }
+        return new String(chars);
+    }
+
+    private void getBytes(int position, byte[] data, int numberBytes)
+    {
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(data, 0, numberBytes);
+    }
+
+    private String getTypeName(byte tag)
+    {
+        switch(tag)
+        {
+            case BOOLEAN: return Boolean.class.getName();
+            case BYTE: return Byte.class.getName();
+            case SHORT: return Short.class.getName();
+            case CHAR: return Character.class.getName();
+            case INT: return Integer.class.getName();
+            case LONG: return Long.class.getName();
+            case FLOAT: return Float.class.getName();
+            case DOUBLE: return Double.class.getName();
+            case STRING: return String.class.getName();
+            default: return byte[].class.getName();
+        }
+    }
+
+    /**
+     * Returns the values that were not read yet, without
+     * moving the cursor.
+     */
+    private List<Object> getRemainingValues()
+    {
+        List<Object> values = new ArrayList<Object>();
+        int savedPosition = readPosition;
+        boolean savedHasRemainingBytes = hasRemainingBytes;
+        try
+        {
+            if(isInWriteMode())
             {
-                message.data.add(((byte[])nextValue).clone());
+                readPosition = 0;
+                hasRemainingBytes = false;
             }
-            else
+            while(hasRemainingBytes || readPosition < length)
             {
-                message.data.add(nextValue);
+                if(hasRemainingBytes)
+                {
+                    hasRemainingBytes = false;
+                    valuePosition = remainingBytesPosition;
+                    valueLength = remainingBytesLength;
+                    values.add(decodeValue(BYTES));
+                }
+                else
+                {
+                    values.add(decodeValue(moveToNextValue()));
+                }
             }
         }
-        return message;
+        finally
+        {
+            readPosition = savedPosition;
+            hasRemainingBytes = savedHasRemainingBytes;
+        }
+        return values;
     }
 
-    public String toString()
+    /**
+     * Moves the cursor to the next encoded value and returns its tag.
+     */
+    private byte moveToNextValue()
     {
-        return this.getClass().getName() + ": " + data.toString();
+        byte tag = buffer.get(readPosition);
+        int position = readPosition + 1;
+        int size = getValueSize(tag, position);
+        if(STRING == tag || BYTES == tag)
+        {
+            valueLength = buffer.getInt(position);
+            valuePosition = position + 4;
+        }
+        else
+        {
+            valueLength = size;
+            valuePosition = position;
+        }
+        readPosition = position + size;
+        return tag;
     }
 
-    private String getNullDatumMessage(String typename) {
-      return String.format("Cannot convert null to a %s.", typename);
+    /**
+     * Appends the tag and reserves <code>size</code> bytes for the value.
+     * The buffer is replaced by a bigger one if it is too small,
+     * and by a copy if it is shared with a clone.
+     * @return the position of the value
+     */
+    private int startWrite(byte tag, int size) throws JMSException
+    {
+        if(!isInWriteMode())
+        {
+            throw new MessageNotWriteableException("Message is in read mode");
+        }
+        int required = length + 1 + size;
+        if(required < 0)
+        {
+            throw new JMSException("Message body too large");
+        }
+        if(buffer.isReadOnly() || required > buffer.capacity())
+        {
+            long capacity = Math.max(required, Math.max(MINIMUM_CAPACITY, 2L * buffer.capacity()));
+            ByteBuffer newBuffer = ByteBuffer.allocate((int)Math.min(capacity, Integer.MAX_VALUE - 8));
+            ByteBuffer source = buffer.duplicate();
+            source.limit(length);
+            newBuffer.put(source);
+            newBuffer.clear();
+            buffer = newBuffer;
+        }
+        buffer.put(length, tag);
+        int position = length + 1;
+        length = required;
+        return position;
     }
 }
@@ -1,8 +1,11 @@
 package com.mockrunner.mock.jms;
 
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -11,10 +14,15 @@ import javax.jms.Topic;
 
 /**
  * Mock implementation of JMS <code>Topic</code>.
+ * The message selectors of the subscribers are evaluated
+ * together for each message, so sub expressions that are
+ * common to several selectors are evaluated only once
+ * (see {@link SelectorEvaluator}).
  */
 public class MockTopic extends MockDestination implements Topic
 {
     private String name;
+    private transient SelectorEvaluator selectorEvaluator;
     
     public MockTopic(String name)
     {
@@ -33,39 +41,144 @@ public class MockTopic extends MockDestination implements Topic
      */
     public void addMessage(Message message) throws JMSException
     {
-        addReceivedMessage(message);    
+        addReceivedMessage(message);
+        deliverMessage(message);
+    }
+
+    protected void deliverMessage(Message message) throws JMSException
+    {
         boolean isConsumed = false;
+        Map<String, Boolean> selectorResults = getSelectorEvaluator().evaluate(message);
         for (Object o1 : sessionSet()) {
             MockSession session = (MockSession) o1;
-            MessageListener globalListener = session.getMessageListener();
-            if (null != globalListener) {
+            if (deliverMessage(message, session, selectorResults)) {
+                isConsumed = true;
+            }
+        }
+        if(!isConsumed)
+        {
+            addCurrentMessage(message);
+        }
+    }
+
+    /**
+     * Delivers a rolled back message again to the subscribers of the
+     * session only. If no message listener of the session consumes
+     * the message, e.g. because the subscribers receive their messages
+     * with <code>receive()</code>, the message is added to the current
+     * messages of this topic and can be received again.
+     * @param message the message
+     * @param session the session
+     * @throws JMSException os case the message can not be delivered
+     */
+    void redeliverMessage(Message message, MockSession session) throws JMSException
+    {
+        if (session.isClosed()) return;
+        if (!deliverMessage(message, session, Collections.<String, Boolean>emptyMap()))
+        {
+            addCurrentMessage(message);
+        }
+    }
+
+    private boolean deliverMessage(Message message, MockSession session, Map<String, Boolean> selectorResults) throws JMSException
+    {
+        boolean isConsumed = false;
+        MessageListener globalListener = session.getMessageListener();
+        if (null != globalListener) {
+            messageDelivered(message, session);
+            session.beginDelivery();
+            try {
                 globalListener.onMessage(message);
+            } finally {
+                session.endDelivery();
+            }
+            acknowledgeMessage(message, session);
+            return true;
+        }
+        List<MockTopicSubscriber> subscribers = session.getTopicTransmissionManager().getTopicSubscriberList(name);
+        for (MockTopicSubscriber subscriber : subscribers) {
+            if (canConsume(subscriber, message, selectorResults)) {
+                messageDelivered(message, session);
+                session.beginDelivery();
+                try {
+                    subscriber.receiveMessage(message);
+                } finally {
+                    session.endDelivery();
+                }
                 isConsumed = true;
                 acknowledgeMessage(message, session);
-            } else {
-                List subscribers = session.getTopicTransmissionManager().getTopicSubscriberList(name);
-                for (Object subscriber1 : subscribers) {
-                    MockTopicSubscriber subscriber = (MockTopicSubscriber) subscriber1;
-                    if (subscriber.canConsume(message)) {
-                        subscriber.receiveMessage(message);
-                        isConsumed = true;
-                        acknowledgeMessage(message, session);
-                    }
-                }
-                Map durableSubscribers = session.getTopicTransmissionManager().getDurableTopicSubscriberMap(name);
-                for (Object o : durableSubscribers.keySet()) {
-                    MockTopicSubscriber subscriber = (MockTopicSubscriber) durableSubscribers.get(o);
-                    if (subscriber.canConsume(message)) {
-                        subscriber.receiveMessage(message);
-                        isConsumed = true;
-                        acknowledgeMessage(message, session);
-                    }
+            }
+        }
+        Map<String, MockTopicSubscriber> durableSubscribers = session.getTopicTransmissionManager().getDurableTopicSubscriberMap(name);
+        for (MockTopicSubscriber subscriber : durableSubscribers.values()) {
+            if (canConsume(subscriber, message, selectorResults)) {
+                messageDelivered(message, session);
+                session.beginDelivery();
+                try {
+                    subscriber.receiveMessage(message);
+                } finally {
+                    session.endDelivery();
                 }
+                isConsumed = true;
+                acknowledgeMessage(message, session);
             }
         }
-        if(!isConsumed)
+        return isConsumed;
+    }
+
+    /**
+     * Discards the evaluator for the message selectors of the
+     * subscribers, e.g. because a subscriber was closed. The
+     * evaluator is created again, when the next message is delivered.
+     */
+    synchronized void subscriptionsChanged()
+    {
+        selectorEvaluator = null;
+    }
+
+    private boolean canConsume(MockTopicSubscriber subscriber, Message message, Map<String, Boolean> selectorResults) throws JMSException
+    {
+        String selector = subscriber.getActiveMessageSelector();
+        if(null == selector) return subscriber.canConsume(message);
+        if(!getSelectorEvaluator().contains(selector))
         {
-            addCurrentMessage(message);
+            // the subscriber was created after the evaluator
+            subscriptionsChanged();
+        }
+        return subscriber.canConsume(message, selectorResults.get(selector));
+    }
+
+    private synchronized SelectorEvaluator getSelectorEvaluator() throws JMSException
+    {
+        if(null == selectorEvaluator)
+        {
+            selectorEvaluator = new SelectorEvaluator(getActiveMessageSelectors());
+        }
+        return selectorEvaluator;
+    }
+
+    private Collection<String> getActiveMessageSelectors() throws JMSException
+    {
+        Set<String> selectors = new LinkedHashSet<String>();
+        for (Object o1 : sessionSet()) {
+            MockSession session = (MockSession) o1;
+            if (null != session.getMessageListener()) continue;
+            List<MockTopicSubscriber> subscribers = session.getTopicTransmissionManager().getTopicSubscriberList(name);
+            for (MockTopicSubscriber subscriber : subscribers) {
+                addActiveMessageSelector(selectors, subscriber);
+            }
+            Map<String, MockTopicSubscriber> durableSubscribers = session.getTopicTransmissionManager().getDurableTopicSubscriberMap(name);
+            for (MockTopicSubscriber subscriber : durableSubscribers.values()) {
+                addActiveMessageSelector(selectors, subscriber);
+            }
         }
+        return selectors;
+    }
+
+    private void addActiveMessageSelector(Set<String> selectors, MockTopicSubscriber subscriber)
+    {
+        if (subscriber.isClosed()) return;
+        String selector = subscriber.getActiveMessageSelector();
+        if (null != selector) selectors.add(selector);
     }
 }
@@ -81,37 +81,23 @@ public class MockTopicSubscriber extends MockMessageConsumer implements TopicSub
         return noLocal;
     }
 
-    public Message receiveNoWait() throws JMSException
+    protected Message takeMessage(long timeout, boolean timed) throws JMSException
     {
-        getConnection().throwJMSException();
         if(isClosed())
         {
             throw new JMSException("Subscriber is closed");
         }
-        if(topic.isEmpty()) return null;
-        Message message;
-        if((!getConnection().getConfigurationManager().getUseMessageSelectors()) || (null == getMessageFilter()))
-        {
-            message = topic.getMessage();
-        }
-        else
-        {
-            message = topic.getMatchingMessage(getMessageFilter());
-        }
+        Message message = topic.takeMessage(this, getActiveMessageFilter(), timeout, timed);
         if(null == message) return null;
-        if(session.isAutoAcknowledge()) message.acknowledge();
+        topic.messageDelivered(message, session);
+        topic.acknowledgeMessage(message, session);
         return message;
     }
-    
-    protected void waitOnMessage(long timeout)
+
+    public void close() throws JMSException
     {
-    	try {
-    		synchronized(topic) {
-        		//TODO: notify on topic, wait on timeout
-    			// this behavior causes a 10 ms poll, as opposed to a wait. 
-    			topic.wait(10);
-    		}
-		} catch (InterruptedException ignored) {
-		}
+        super.close();
+        topic.cancelWaiting(this);
+        topic.subscriptionsChanged();
     }
 }
@@ -0,0 +1,266 @@
+package com.mockrunner.mock.jms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.activemq.filter.mockrunner.Filter;
+
+/**
+ * Store for the messages of a {@link MockQueue} that orders the messages
+ * by their <code>JMSPriority</code> and discards expired messages.
+ * The messages are kept in one {@link MessageStore} per priority, i.e.
+ * messages with a higher priority are removed first and messages with
+ * the same priority in FIFO order. Priorities outside of the range
+ * 0 to 9 are treated like 0 or 9.
+ * Messages with a <code>JMSExpiration</code> are registered in a hashed
+ * timer wheel with {@link #WHEEL_SIZE} slots of {@link #TICK_MILLIS}
+ * milliseconds each. Every method advances the wheel to the current time
+ * first and discards the messages of the passed slots that are expired,
+ * so expired messages are never returned. Messages that are already
+ * expired when they are added are discarded immediately.
+ * All methods lock the store, so it can be used by multiple threads.
+ */
+class PriorityMessageStore extends AbstractMessageStore
+{
+    private static final long serialVersionUID = 1L;
+
+    static final int NUMBER_PRIORITIES = 10;
+    static final int TICK_MILLIS = 10;
+    static final int WHEEL_SIZE = 256;
+
+    private final MessageStore[] stores = new MessageStore[NUMBER_PRIORITIES];
+    private List<Timeout>[] wheel;
+    private long currentTick = -1;
+    private long numberExpiredMessages;
+
+    PriorityMessageStore()
+    {
+        for(int ii = 0; ii < NUMBER_PRIORITIES; ii++)
+        {
+            stores[ii] = new MessageStore();
+        }
+    }
+
+    /**
+     * Returns <code>false</code> and counts the message as
+     * expired, if the message is expired.
+     * @param message the message
+     * @return <code>true</code> if the message is not expired
+     */
+    synchronized boolean accepts(Message message)
+    {
+        long expiration = getExpiration(message);
+        if(expiration == 0 || expiration > System.currentTimeMillis()) return true;
+        numberExpiredMessages++;
+        return false;
+    }
+
+    /**
+     * Adds the message, unless it is already expired.
+     * @param message the message
+     * @return a handle for the message or <code>null</code>,
+     *         if the message is expired
+     */
+    synchronized Object add(Message message)
+    {
+        long now = System.currentTimeMillis();
+        expire(now);
+        long expiration = getExpiration(message);
+        if(expiration != 0 && expiration <= now)
+        {
+            numberExpiredMessages++;
+            return null;
+        }
+        MessageStore store = stores[getPriority(message)];
+        Object handle = store.add(message);
+        if(expiration != 0)
+        {
+            schedule(new Timeout(expiration, store, handle));
+        }
+        return handle;
+    }
+
+    synchronized Message removeFirst()
+    {
+        expire(System.currentTimeMillis());
+        for(int ii = NUMBER_PRIORITIES - 1; ii >= 0; ii--)
+        {
+            Message message = stores[ii].removeFirst();
+            if(null != message) return message;
+        }
+        return null;
+    }
+
+    synchronized Message removeFirstMatching(Filter filter) throws JMSException
+    {
+        expire(System.currentTimeMillis());
+        for(int ii = NUMBER_PRIORITIES - 1; ii >= 0; ii--)
+        {
+            Message message = stores[ii].removeFirstMatching(filter);
+            if(null != message) return message;
+        }
+        return null;
+    }
+
+    synchronized Message get(int index)
+    {
+        expire(System.currentTimeMillis());
+        int remaining = index;
+        for(int ii = NUMBER_PRIORITIES - 1; ii >= 0 && remaining >= 0; ii--)
+        {
+            int size = stores[ii].size();
+            if(remaining < size) return stores[ii].get(remaining);
+            remaining -= size;
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    synchronized int size()
+    {
+        expire(System.currentTimeMillis());
+        int size = 0;
+        for(MessageStore store : stores)
+        {
+            size += store.size();
+        }
+        return size;
+    }
+
+    synchronized void clear()
+    {
+        for(MessageStore store : stores)
+        {
+            store.clear();
+        }
+        wheel = null;
+        currentTick = -1;
+    }
+
+    synchronized Message[] toArray()
+    {
+        Message[] array = new Message[size()];
+        int position = 0;
+        for(int ii = NUMBER_PRIORITIES - 1; ii >= 0; ii--)
+        {
+            Message[] messages = stores[ii].toArray();
+            System.arraycopy(messages, 0, array, position, messages.length);
+            position += messages.length;
+        }
+        return array;
+    }
+
+    /**
+     * Returns the number of messages that were discarded,
+     * because they expired.
+     * @return the number of expired messages
+     */
+    synchronized long getNumberExpiredMessages()
+    {
+        expire(System.currentTimeMillis());
+        return numberExpiredMessages;
+    }
+
+    private void schedule(Timeout timeout)
+    {
+        if(null == wheel)
+        {
+            wheel = createWheel();
+        }
+        int slot = (int)((timeout.expiration / TICK_MILLIS) & (WHEEL_SIZE - 1));
+        if(null == wheel[slot])
+        {
+            wheel[slot] = new ArrayList<Timeout>();
+        }
+        wheel[slot].add(timeout);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Timeout>[] createWheel()
+    {
+        return new List[WHEEL_SIZE];
+    }
+
+    /**
+     * Discards the expired messages of the slots from the current
+     * tick up to the tick of <code>now</code>. The slot of the current
+     * tick is checked again, because it may contain messages that
+     * expire later in the tick. Timeouts of messages that were
+     * removed before they expired are dropped when their slot is checked.
+     */
+    private void expire(long now)
+    {
+        long tick = now / TICK_MILLIS;
+        if(null == wheel)
+        {
+            currentTick = tick;
+            return;
+        }
+        long firstTick = (currentTick < 0 || tick - currentTick >= WHEEL_SIZE) ? tick - WHEEL_SIZE + 1 : currentTick;
+        for(long nextTick = firstTick; nextTick <= tick; nextTick++)
+        {
+            List<Timeout> timeouts = wheel[(int)(nextTick & (WHEEL_SIZE - 1))];
+            if(null == timeouts) continue;
+            Iterator<Timeout> iterator = timeouts.iterator();
+            while(iterator.hasNext())
+            {
+                Timeout timeout = iterator.next();
+                if(timeout.expiration <= now)
+                {
+                    iterator.remove();
+                    if(timeout.store.remove(timeout.handle))
+                    {
+                        numberExpiredMessages++;
+                    }
+                }
+            }
+        }
+        currentTick = tick;
+    }
+
+    private static int getPriority(Message message)
+    {
+        int priority;
+        try
+        {
+            priority = message.getJMSPriority();
+        }
+        catch(JMSException exc)
+        {
+            return 4;
+        }
+        return Math.max(0, Math.min(NUMBER_PRIORITIES - 1, priority));
+    }
+
+    private static long getExpiration(Message message)
+    {
+        try
+        {
+            return message.getJMSExpiration();
+        }
+        catch(JMSException exc)
+        {
+            return 0;
+        }
+    }
+
+    private static class Timeout implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long expiration;
+        private final MessageStore store;
+        private final Object handle;
+
+        private Timeout(long expiration, MessageStore store, Object handle)
+        {
+            this.expiration = expiration;
+            this.store = store;
+            this.handle = handle;
+        }
+    }
+}
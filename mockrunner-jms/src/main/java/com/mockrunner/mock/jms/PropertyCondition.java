@@ -0,0 +1,124 @@
+package com.mockrunner.mock.jms;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.activemq.filter.mockrunner.ComparisonExpression;
+import org.activemq.filter.mockrunner.ConstantExpression;
+import org.activemq.filter.mockrunner.Expression;
+import org.activemq.filter.mockrunner.ExpressionFilter;
+import org.activemq.filter.mockrunner.Filter;
+import org.activemq.filter.mockrunner.LogicExpression;
+import org.activemq.filter.mockrunner.PropertyExpression;
+
+/**
+ * An equality condition on a message property or header
+ * (e.g. <code>JMSType</code>) that a message must fulfill
+ * to match a selector, like <code>type = 'order'</code> in
+ * <code>type = 'order' AND amount &gt; 100</code>.
+ * Used by {@link MessageStore} to look up the messages that may
+ * match a selector in an index instead of checking all messages.
+ * Only conditions with a string or integer literal are extracted.
+ * The index keys are normalized, i.e. all integer types map to the
+ * same key, so the messages with a key are a superset of the messages
+ * fulfilling the condition. Property values that are not strings
+ * or integers map to {@link #OTHER_VALUE}, i.e. the messages with
+ * such values must always be checked.
+ */
+class PropertyCondition
+{
+    static final Object OTHER_VALUE = new Object();
+
+    private final String name;
+    private final Object key;
+
+    private PropertyCondition(String name, Object key)
+    {
+        this.name = name;
+        this.key = key;
+    }
+
+    /**
+     * Returns the name of the property or header.
+     * @return the name
+     */
+    String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the index key a message must have to fulfill this condition.
+     * @return the index key
+     */
+    Object getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Extracts an equality condition from the selector filter.
+     * @param filter the filter
+     * @return the condition or <code>null</code>, if the filter
+     *         does not require an indexable equality
+     */
+    static PropertyCondition extract(Filter filter)
+    {
+        if(!(filter instanceof ExpressionFilter)) return null;
+        return extract(((ExpressionFilter)filter).getExpression());
+    }
+
+    private static PropertyCondition extract(Expression expression)
+    {
+        if(expression instanceof LogicExpression)
+        {
+            LogicExpression logicExpression = (LogicExpression)expression;
+            if(!"AND".equals(logicExpression.getExpressionSymbol())) return null;
+            PropertyCondition condition = extract(logicExpression.getLeft());
+            if(null != condition) return condition;
+            return extract(logicExpression.getRight());
+        }
+        if(expression instanceof ComparisonExpression)
+        {
+            ComparisonExpression comparison = (ComparisonExpression)expression;
+            if(!"=".equals(comparison.getExpressionSymbol())) return null;
+            PropertyCondition condition = create(comparison.getLeft(), comparison.getRight());
+            if(null != condition) return condition;
+            return create(comparison.getRight(), comparison.getLeft());
+        }
+        return null;
+    }
+
+    private static PropertyCondition create(Expression property, Expression constant)
+    {
+        if(!(property instanceof PropertyExpression) || !(constant instanceof ConstantExpression)) return null;
+        Object key = getKeyForValue(((ConstantExpression)constant).getValue());
+        if(null == key || OTHER_VALUE == key) return null;
+        return new PropertyCondition(((PropertyExpression)property).getName(), key);
+    }
+
+    /**
+     * Returns the index key of the property or header with the
+     * specified name of a message.
+     * @param message the message
+     * @param name the name of the property or header
+     * @return the index key, <code>null</code> if the message doesn't
+     *         have the property or {@link #OTHER_VALUE}
+     * @throws JMSException if the property can not be read
+     */
+    static Object getKey(Message message, String name) throws JMSException
+    {
+        return getKeyForValue(new PropertyExpression(name).evaluate(message));
+    }
+
+    private static Object getKeyForValue(Object value)
+    {
+        if(null == value) return null;
+        if(value instanceof String) return value;
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+        {
+            return ((Number)value).longValue();
+        }
+        return OTHER_VALUE;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mockrunner.mock.jms;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.InvalidSelectorException;
+
+import org.activemq.filter.mockrunner.Filter;
+import org.activemq.selector.mockrunner.SelectorParser;
+
+/**
+ * Caches the parsed message selectors of all consumers and browsers,
+ * so consumers with the same selector share one {@link Filter}
+ * and the selector is parsed only once. The cache keeps at most
+ * {@link #MAXIMUM_SIZE} filters and discards the least recently
+ * used ones first. Invalid selectors are not cached.
+ */
+class SelectorCache
+{
+    static final int MAXIMUM_SIZE = 1024;
+
+    private static final Map<String, Filter> filters = new LinkedHashMap<String, Filter>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest)
+        {
+            return size() > MAXIMUM_SIZE;
+        }
+    };
+
+    private SelectorCache()
+    {
+
+    }
+
+    /**
+     * Returns the filter for the specified selector.
+     * @param messageSelector the selector
+     * @return the filter
+     * @throws InvalidSelectorException if the selector is invalid
+     */
+    static Filter getFilter(String messageSelector) throws InvalidSelectorException
+    {
+        Filter filter;
+        synchronized(filters)
+        {
+            filter = filters.get(messageSelector);
+        }
+        if(null == filter)
+        {
+            // parse outside the lock, parsing a selector twice is harmless
+            filter = new SelectorParser().parse(messageSelector);
+            synchronized(filters)
+            {
+                filters.put(messageSelector, filter);
+            }
+        }
+        return filter;
+    }
+
+    static void clear()
+    {
+        synchronized(filters)
+        {
+            filters.clear();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.mockrunner.mock.jms;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jms.InvalidSelectorException;
+import javax.jms.Message;
+
+import org.activemq.filter.mockrunner.Expression;
+import org.activemq.filter.mockrunner.ExpressionFilter;
+import org.activemq.filter.mockrunner.Filter;
+import org.activemq.filter.mockrunner.MultiExpressionEvaluator;
+import org.activemq.selector.mockrunner.SelectorParser;
+
+/**
+ * Evaluates the message selectors of the subscribers of a {@link MockTopic}
+ * with one {@link MultiExpressionEvaluator}, i.e. sub expressions that
+ * are common to several selectors, like <code>region = 'EU'</code> in
+ * <code>region = 'EU' AND amount &gt; 100</code> and
+ * <code>region = 'EU' AND amount &lt;= 100</code>, are evaluated only
+ * once per message. The selectors are parsed again, because the
+ * {@link MultiExpressionEvaluator} modifies the expressions, i.e.
+ * the filters of the {@link SelectorCache} can not be used.
+ * With less than two selectors nothing can be shared, so
+ * {@link #evaluate} does not evaluate anything in this case.
+ * {@link #evaluate} is synchronized, because the cached
+ * results of the {@link MultiExpressionEvaluator} are
+ * not thread safe.
+ */
+class SelectorEvaluator
+{
+    private final Set<String> selectors;
+    private final MultiExpressionEvaluator evaluator;
+    private final Map<String, Boolean> results = new HashMap<String, Boolean>();
+
+    SelectorEvaluator(Collection<String> selectors)
+    {
+        this.selectors = new LinkedHashSet<String>(selectors);
+        this.evaluator = (this.selectors.size() < 2) ? null : createEvaluator();
+    }
+
+    private MultiExpressionEvaluator createEvaluator()
+    {
+        MultiExpressionEvaluator evaluator = new MultiExpressionEvaluator();
+        for(String selector : selectors)
+        {
+            Filter filter;
+            try
+            {
+                filter = new SelectorParser().parse(selector);
+            }
+            catch(InvalidSelectorException exc)
+            {
+                continue;
+            }
+            if(filter instanceof ExpressionFilter)
+            {
+                evaluator.addExpressionListner(((ExpressionFilter)filter).getExpression(), new ResultListener(selector));
+            }
+        }
+        return evaluator;
+    }
+
+    /**
+     * Returns if the specified selector was known when this
+     * evaluator was created.
+     * @param selector the selector
+     * @return <code>true</code> if the selector is known
+     */
+    boolean contains(String selector)
+    {
+        return selectors.contains(selector);
+    }
+
+    /**
+     * Evaluates all selectors for the message. The returned <code>Map</code>
+     * contains the result for each selector that could be evaluated. It does
+     * not contain selectors that threw an exception, and it is empty if this
+     * evaluator knows less than two selectors.
+     * @param message the message
+     * @return the results by selector
+     */
+    synchronized Map<String, Boolean> evaluate(Message message)
+    {
+        if(null == evaluator) return Collections.emptyMap();
+        results.clear();
+        evaluator.evaluate(message);
+        return new HashMap<String, Boolean>(results);
+    }
+
+    private class ResultListener implements MultiExpressionEvaluator.ExpressionListener
+    {
+        private final String selector;
+
+        private ResultListener(String selector)
+        {
+            this.selector = selector;
+        }
+
+        public void evaluateResultEvent(Expression expression, Message message, Object result)
+        {
+            results.put(selector, Boolean.TRUE.equals(result));
+        }
+    }
+}
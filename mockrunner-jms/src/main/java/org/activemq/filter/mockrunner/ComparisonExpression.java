@@ -18,20 +18,15 @@
  */
 package org.activemq.filter.mockrunner;
 
-import java.util.HashSet;
 import java.util.List;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
 
-import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
-
 /**
  * Alwin Ibba: Changed package
  * Alwin Ibba: Modification to be Java 1.3 compatible
+ * Mockrunner: LIKE uses LikePattern instead of ORO
  * 
  * A filter performing a comparison of two objects
  * 
@@ -47,34 +42,11 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
         return LogicExpression.createOR(createLessThan(value, left), createGreaterThan(value, right));
     }
 
-    static final private HashSet REGEXP_CONTROL_CHARS = new HashSet();
-
-    static {
-        REGEXP_CONTROL_CHARS.add('.');
-        REGEXP_CONTROL_CHARS.add('\\');
-        REGEXP_CONTROL_CHARS.add('[');
-        REGEXP_CONTROL_CHARS.add(']');
-        REGEXP_CONTROL_CHARS.add('^');
-        REGEXP_CONTROL_CHARS.add('$');
-        REGEXP_CONTROL_CHARS.add('?');
-        REGEXP_CONTROL_CHARS.add('*');
-        REGEXP_CONTROL_CHARS.add('+');
-        REGEXP_CONTROL_CHARS.add('{');
-        REGEXP_CONTROL_CHARS.add('}');
-        REGEXP_CONTROL_CHARS.add('|');
-        REGEXP_CONTROL_CHARS.add('(');
-        REGEXP_CONTROL_CHARS.add(')');
-        REGEXP_CONTROL_CHARS.add(':');
-        REGEXP_CONTROL_CHARS.add('&');
-        REGEXP_CONTROL_CHARS.add('<');
-        REGEXP_CONTROL_CHARS.add('>');
-        REGEXP_CONTROL_CHARS.add('=');
-        REGEXP_CONTROL_CHARS.add('!');
-    }
-
     static class LikeExpression extends UnaryExpression implements BooleanExpression {
 
-        Pattern likePattern;
+        private final String like;
+        private final int escape;
+        private final LikePattern likePattern;
 
         /**
          *
@@ -84,47 +56,9 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
          */
         public LikeExpression(Expression right, String like, int escape) {
             super(right);
-
-            StringBuilder regexp = new StringBuilder(like.length() * 2);
-            regexp.append("\\A"); // The beginning of the input
-            for (int i = 0; i < like.length(); i++) {
-                char c = like.charAt(i);
-                if (escape == (0xFFFF & c)) {
-                    i++;
-                    if (i >= like.length()) {
-                        // nothing left to escape...
-                        break;
-                    }
-
-                    char t = like.charAt(i);
-                    regexp.append("\\x");
-                    regexp.append(Integer.toHexString(0xFFFF & t));
-                }
-                else if (c == '%') {
-                    regexp.append(".*?"); // Do a non-greedy match 
-                }
-                else if (c == '_') {
-                    regexp.append("."); // match one 
-                }
-                else if (REGEXP_CONTROL_CHARS.contains(c)) {
-                    regexp.append("\\x");
-                    regexp.append(Integer.toHexString(0xFFFF & c));
-                }
-                else {
-                    regexp.append(c);
-                }
-            }
-            regexp.append("\\Z"); // The end of the input
-
-            try
-            {
-                likePattern = new Perl5Compiler().compile(regexp.toString(), Perl5Compiler.EXTENDED_MASK | Perl5Compiler.SINGLELINE_MASK);
-            }
-            catch(MalformedPatternException exc)
-            {
-                throw new RuntimeException(exc.getMessage());
-            }
-
+            this.like = like;
+            this.escape = escape;
+            likePattern = new LikePattern(like, escape);
         }
 
         public String getExpressionSymbol() {
@@ -144,7 +78,22 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
                 //throw new RuntimeException("LIKE can only operate on String identifiers.  LIKE attemped on: '" + rv.getClass());
             }
 
-            return (new Perl5Matcher().matches((String)rv, likePattern)) ? Boolean.TRUE : Boolean.FALSE;
+            return likePattern.matches((String)rv) ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        /**
+         * Mockrunner: Includes the pattern, expressions are compared by their string
+         */
+        public String toString() {
+            StringBuilder answer = new StringBuilder();
+            answer.append(getRight());
+            answer.append(" LIKE ");
+            answer.append(ConstantExpression.encodeString(like));
+            if (escape != -1) {
+                answer.append(" ESCAPE ");
+                answer.append(ConstantExpression.encodeString(String.valueOf((char) escape)));
+            }
+            return answer.toString();
         }
 
     }
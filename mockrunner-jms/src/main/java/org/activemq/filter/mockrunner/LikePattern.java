@@ -0,0 +1,180 @@
+package org.activemq.filter.mockrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mockrunner: Replaces the ORO regular expression of the
+ * LIKE expression.
+ *
+ * A compiled LIKE pattern. The pattern is split at the <code>%</code>
+ * wildcards into parts of fixed length, which may contain <code>_</code>
+ * wildcards. The first part must match at the beginning of the string, the
+ * last part at the end and the parts between are searched from left to right,
+ * so matching a string takes linear time per part and does not allocate.
+ * Patterns without <code>_</code> and with at most two <code>%</code>
+ * at the beginning or the end are matched with <code>equals</code>,
+ * <code>startsWith</code>, <code>endsWith</code> and <code>indexOf</code>.
+ */
+class LikePattern {
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int SUFFIX = 2;
+    private static final int CONTAINS = 3;
+    private static final int GENERAL = 4;
+
+    private final char[][] parts;
+    private final boolean[][] wildcards;
+    private final int minimumLength;
+    private final int kind;
+    private final String literal;
+
+    /**
+     * @param like the LIKE pattern
+     * @param escape the escape character or -1
+     */
+    LikePattern(String like, int escape) {
+        List<char[]> partList = new ArrayList<char[]>();
+        List<boolean[]> wildcardList = new ArrayList<boolean[]>();
+        StringBuilder part = new StringBuilder();
+        StringBuilder partWildcards = new StringBuilder();
+        boolean hasWildcard = false;
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (escape == (0xFFFF & c)) {
+                i++;
+                if (i >= like.length()) {
+                    // nothing left to escape...
+                    break;
+                }
+                part.append(like.charAt(i));
+                partWildcards.append('0');
+            }
+            else if (c == '%') {
+                addPart(partList, wildcardList, part, partWildcards);
+            }
+            else if (c == '_') {
+                part.append(c);
+                partWildcards.append('1');
+                hasWildcard = true;
+            }
+            else {
+                part.append(c);
+                partWildcards.append('0');
+            }
+        }
+        addPart(partList, wildcardList, part, partWildcards);
+        parts = partList.toArray(new char[partList.size()][]);
+        wildcards = wildcardList.toArray(new boolean[wildcardList.size()][]);
+        int length = 0;
+        for (char[] nextPart : parts) {
+            length += nextPart.length;
+        }
+        minimumLength = length;
+        kind = getKind(hasWildcard);
+        literal = (kind == GENERAL) ? null : new String(parts[kind == SUFFIX || kind == CONTAINS ? 1 : 0]);
+    }
+
+    private static void addPart(List<char[]> partList, List<boolean[]> wildcardList, StringBuilder part, StringBuilder partWildcards) {
+        char[] chars = new char[part.length()];
+        boolean[] flags = new boolean[part.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = part.charAt(i);
+            flags[i] = partWildcards.charAt(i) == '1';
+        }
+        partList.add(chars);
+        wildcardList.add(flags);
+        part.setLength(0);
+        partWildcards.setLength(0);
+    }
+
+    private int getKind(boolean hasWildcard) {
+        if (hasWildcard) {
+            return GENERAL;
+        }
+        if (parts.length == 1) {
+            return EXACT;
+        }
+        if (parts.length == 2) {
+            if (parts[1].length == 0) {
+                return PREFIX;
+            }
+            if (parts[0].length == 0) {
+                return SUFFIX;
+            }
+        }
+        if (parts.length == 3 && parts[0].length == 0 && parts[2].length == 0) {
+            return CONTAINS;
+        }
+        return GENERAL;
+    }
+
+    /**
+     * Returns if the whole string matches this pattern.
+     * @param value the string
+     * @return <code>true</code> if the string matches
+     */
+    boolean matches(String value) {
+        switch (kind) {
+            case EXACT:
+                return value.equals(literal);
+            case PREFIX:
+                return value.startsWith(literal);
+            case SUFFIX:
+                return value.endsWith(literal);
+            case CONTAINS:
+                return value.contains(literal);
+            default:
+                return matchesParts(value);
+        }
+    }
+
+    private boolean matchesParts(String value) {
+        int length = value.length();
+        if (length < minimumLength) {
+            return false;
+        }
+        int last = parts.length - 1;
+        if (last == 0) {
+            return length == parts[0].length && matchesPart(value, 0, 0);
+        }
+        if (!matchesPart(value, 0, 0)) {
+            return false;
+        }
+        int start = parts[0].length;
+        int end = length - parts[last].length;
+        if (!matchesPart(value, end, last)) {
+            return false;
+        }
+        for (int i = 1; i < last; i++) {
+            int position = indexOfPart(value, i, start, end);
+            if (position < 0) {
+                return false;
+            }
+            start = position + parts[i].length;
+        }
+        return true;
+    }
+
+    private int indexOfPart(String value, int index, int start, int end) {
+        int lastPosition = end - parts[index].length;
+        for (int position = start; position <= lastPosition; position++) {
+            if (matchesPart(value, position, index)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matchesPart(String value, int offset, int index) {
+        char[] part = parts[index];
+        boolean[] partWildcards = wildcards[index];
+        for (int i = 0; i < part.length; i++) {
+            if (!partWildcards[i] && value.charAt(offset + i) != part[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
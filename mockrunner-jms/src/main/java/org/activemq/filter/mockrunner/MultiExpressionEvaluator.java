@@ -68,9 +68,15 @@ import java.util.Iterator;
  * threaded, chache invalidation is done quickly by incrementing a 'view' counter.
  * When a CacheExpressionnotices it's last cached value was generated in an old 'view',
  * it invalidates its cached value.
+ * - The added Expressions are modified, i.e. an Expression must not be used
+ * elsewhere after it was added.
  *
  * Alwin Ibba: Changed package
  *
+ * Mockrunner: The view is incremented for each evaluated message, left sub expressions
+ * are uncached, ExpressionListener is public and expressions that can not be
+ * evaluated are skipped silently.
+ *
  * @version $Revision: 1.3 $ $Date: 2005/10/27 16:38:12 $
  */
 public class MultiExpressionEvaluator {
@@ -142,7 +148,7 @@ public class MultiExpressionEvaluator {
      * Objects that are interested in the results of an expression
      * should implement this interface.
      */
-    interface ExpressionListener {
+    public interface ExpressionListener {
         void evaluateResultEvent(Expression selector, Message message, Object result);
     }
 
@@ -250,6 +256,7 @@ public class MultiExpressionEvaluator {
         if (realExpr instanceof BinaryExpression) {
             BinaryExpression bn = (BinaryExpression) realExpr;
             removeFromCache((CacheExpression) bn.getRight());
+            removeFromCache((CacheExpression) bn.getLeft());
         }
     }
 
@@ -261,6 +268,7 @@ public class MultiExpressionEvaluator {
      * @param message the message
      */
     public void evaluate(Message message) {
+        view++;
         Collection expressionListeners = rootExpressions.values();
         for (Object expressionListener : expressionListeners) {
             ExpressionListenerSet els = (ExpressionListenerSet) expressionListener;
@@ -270,8 +278,8 @@ public class MultiExpressionEvaluator {
                     ExpressionListener l = (ExpressionListener) listener;
                     l.evaluateResultEvent(els.expression, message, result);
                 }
-            } catch (Throwable e) {
-                e.printStackTrace();
+            } catch (Exception e) {
+                // the listeners of an expression that can not be evaluated are not notified
             }
         }
     }
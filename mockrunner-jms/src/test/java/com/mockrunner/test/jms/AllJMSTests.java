@@ -13,7 +13,8 @@ import org.junit.runners.Suite;
 	MockQueueTest.class, MockTopicTest.class, TransmissionManagerTest.class,
 	JMSTestModuleTest.class, MessageSelectorTest.class, MockMessageConsumerTest.class,
 	MockDestinationTest.class, BasicJMSTestCaseAdapterTest.class,
-	JMSMockObjectFactoryTest.class, MockQueueBrowserTest.class, ConcurrencyTest.class
+	JMSMockObjectFactoryTest.class, MockQueueBrowserTest.class, ConcurrencyTest.class,
+	AsynchronousDeliveryTest.class, MessageMetricsTest.class
 })
 public class AllJMSTests
 {
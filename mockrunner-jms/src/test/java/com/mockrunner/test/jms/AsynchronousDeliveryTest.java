@@ -0,0 +1,306 @@
+package com.mockrunner.test.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mockrunner.jms.ConfigurationManager;
+import com.mockrunner.jms.DestinationManager;
+import com.mockrunner.mock.jms.MockConnection;
+import com.mockrunner.mock.jms.MockConnectionFactory;
+import com.mockrunner.mock.jms.MockQueue;
+import com.mockrunner.mock.jms.MockTopic;
+
+public class AsynchronousDeliveryTest
+{
+    private ConfigurationManager configurationManager;
+    private DestinationManager destinationManager;
+    private MockConnection connection;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        configurationManager = new ConfigurationManager();
+        configurationManager.setUseAsynchronousDelivery(true);
+        destinationManager = new DestinationManager();
+        connection = (MockConnection)new MockConnectionFactory(destinationManager, configurationManager).createConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        destinationManager.drain();
+    }
+
+    @Test
+    public void testSendReturnsBeforeDelivery() throws Exception
+    {
+        MockQueue queue = destinationManager.createQueue("queue");
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger numberMessages = new AtomicInteger();
+        session.createConsumer(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                awaitLatch(latch);
+                numberMessages.incrementAndGet();
+            }
+        });
+        MessageProducer producer = session.createProducer(queue);
+        for(int ii = 0; ii < 10; ii++)
+        {
+            producer.send(session.createTextMessage(String.valueOf(ii)));
+        }
+        assertEquals(10, queue.getReceivedMessageList().size());
+        assertEquals(0, numberMessages.get());
+        assertFalse(destinationManager.awaitQuiescence(50, TimeUnit.MILLISECONDS));
+        latch.countDown();
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(10, numberMessages.get());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSessionConcurrency() throws Exception
+    {
+        configurationManager.setNumberDispatcherThreads(4);
+        assertEquals(1, doTestMaximumConcurrentDeliveries());
+        destinationManager.drain();
+        configurationManager.setSessionConcurrency(4);
+        assertEquals(4, doTestMaximumConcurrentDeliveries());
+    }
+
+    private int doTestMaximumConcurrentDeliveries() throws Exception
+    {
+        MockQueue queue = destinationManager.createQueue("queue");
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final CountDownLatch latch = new CountDownLatch(4);
+        final AtomicInteger currentDeliveries = new AtomicInteger();
+        final AtomicInteger maximumDeliveries = new AtomicInteger();
+        session.createConsumer(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                int deliveries = currentDeliveries.incrementAndGet();
+                while(maximumDeliveries.get() < deliveries)
+                {
+                    maximumDeliveries.compareAndSet(maximumDeliveries.get(), deliveries);
+                }
+                latch.countDown();
+                try
+                {
+                    latch.await(100, TimeUnit.MILLISECONDS);
+                }
+                catch(InterruptedException exc)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                currentDeliveries.decrementAndGet();
+            }
+        });
+        MessageProducer producer = session.createProducer(queue);
+        for(int ii = 0; ii < 8; ii++)
+        {
+            producer.send(session.createTextMessage(String.valueOf(ii)));
+        }
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        session.close();
+        return maximumDeliveries.get();
+    }
+
+    @Test
+    public void testDrainWaitsForForwardedMessages() throws Exception
+    {
+        MockQueue queue = destinationManager.createQueue("queue");
+        final MockTopic topic = destinationManager.createTopic("topic");
+        final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageProducer topicProducer = session.createProducer(topic);
+        final AtomicInteger numberMessages = new AtomicInteger();
+        session.createConsumer(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                try
+                {
+                    Thread.sleep(1);
+                    topicProducer.send(message);
+                }
+                catch(Exception exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+            }
+        });
+        Session topicSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        topicSession.createConsumer(topic).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                numberMessages.incrementAndGet();
+            }
+        });
+        MessageProducer producer = session.createProducer(queue);
+        for(int ii = 0; ii < 20; ii++)
+        {
+            producer.send(session.createTextMessage(String.valueOf(ii)));
+        }
+        destinationManager.drain();
+        assertEquals(20, numberMessages.get());
+        assertEquals(20, topic.getReceivedMessageList().size());
+        assertEquals(0, queue.getNumberDispatchedMessages());
+    }
+
+    @Test
+    public void testMaximumPendingDeliveries() throws Exception
+    {
+        configurationManager.setMaximumPendingDeliveries(2);
+        MockQueue queue = destinationManager.createQueue("queue");
+        final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final CountDownLatch latch = new CountDownLatch(1);
+        session.createConsumer(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                awaitLatch(latch);
+            }
+        });
+        final MessageProducer producer = session.createProducer(queue);
+        producer.send(session.createTextMessage("1"));
+        producer.send(session.createTextMessage("2"));
+        final CountDownLatch sent = new CountDownLatch(1);
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    producer.send(session.createTextMessage("3"));
+                    sent.countDown();
+                }
+                catch(Exception exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+            }
+        };
+        thread.start();
+        assertFalse(sent.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.getReceivedMessageList().size());
+        latch.countDown();
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(3, queue.getReceivedMessageList().size());
+    }
+
+    @Test
+    public void testNestedDeliveryToSameSession() throws Exception
+    {
+        MockQueue queue = destinationManager.createQueue("queue");
+        final MockTopic topic = destinationManager.createTopic("topic");
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final AtomicInteger numberMessages = new AtomicInteger();
+        session.createConsumer(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                try
+                {
+                    topic.addMessage(message);
+                }
+                catch(Exception exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+            }
+        });
+        session.createConsumer(topic).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                numberMessages.incrementAndGet();
+            }
+        });
+        MessageProducer producer = session.createProducer(queue);
+        for(int ii = 0; ii < 5; ii++)
+        {
+            producer.send(session.createTextMessage(String.valueOf(ii)));
+        }
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(5, numberMessages.get());
+    }
+
+    @Test
+    public void testDispatcherThreadsStop() throws Exception
+    {
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        configurationManager.setDispatcherThreadFactory(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                threads.add(thread);
+                return thread;
+            }
+        });
+        MockQueue queue = destinationManager.createQueue("queue");
+        MockTopic topic = destinationManager.createTopic("topic");
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createProducer(queue).send(session.createTextMessage("1"));
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(1, threads.size());
+        queue.reset();
+        assertStopped(threads);
+        session.createProducer(topic).send(session.createTextMessage("2"));
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(2, threads.size());
+        connection.close();
+        assertStopped(threads);
+        threads.clear();
+        connection = (MockConnection)new MockConnectionFactory(destinationManager, configurationManager).createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createProducer(queue).send(session.createTextMessage("3"));
+        assertTrue(destinationManager.awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(1, threads.size());
+        assertStopped(threads);
+    }
+
+    private static void assertStopped(List<Thread> threads) throws InterruptedException
+    {
+        for(Thread thread : threads)
+        {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.mockrunner.test.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mockrunner.jms.ConfigurationManager;
+import com.mockrunner.jms.DestinationManager;
+import com.mockrunner.mock.jms.LatencyHistogram;
+import com.mockrunner.mock.jms.MessageMetrics;
+import com.mockrunner.mock.jms.MockMessageProducer;
+import com.mockrunner.mock.jms.MockQueue;
+import com.mockrunner.mock.jms.MockQueueConnection;
+import com.mockrunner.mock.jms.MockQueueReceiver;
+import com.mockrunner.mock.jms.MockQueueSession;
+import com.mockrunner.mock.jms.MockTextMessage;
+import com.mockrunner.mock.jms.MockTopic;
+import com.mockrunner.mock.jms.MockTopicConnection;
+import com.mockrunner.mock.jms.MockTopicSession;
+import com.mockrunner.mock.jms.MockTopicSubscriber;
+
+public class MessageMetricsTest
+{
+    private DestinationManager destManager;
+    private ConfigurationManager confManager;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        destManager = new DestinationManager();
+        confManager = new ConfigurationManager();
+    }
+
+    @Test
+    public void testQueueMetrics() throws Exception
+    {
+        MockQueueConnection connection = new MockQueueConnection(destManager, confManager);
+        MockQueueSession session = (MockQueueSession)connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+        MockQueue queue = destManager.createQueue("Queue");
+        MockMessageProducer producer = (MockMessageProducer)session.createProducer(queue);
+        producer.send(new MockTextMessage("test1"));
+        producer.send(new MockTextMessage("test2"));
+        MockTextMessage redelivered = new MockTextMessage("test3");
+        redelivered.setJMSRedelivered(true);
+        producer.send(redelivered);
+        MessageMetrics metrics = destManager.getQueueMetrics("Queue");
+        assertSame(queue.getMetrics(), metrics);
+        assertEquals(3, metrics.getNumberEnqueuedMessages());
+        assertEquals(0, metrics.getNumberDeliveredMessages());
+        assertEquals(3, metrics.getCurrentDepth());
+        assertEquals(3, metrics.getMaximumDepth());
+        MockQueueReceiver receiver = (MockQueueReceiver)session.createReceiver(queue);
+        assertEquals(new MockTextMessage("test1"), receiver.receiveNoWait());
+        assertEquals(new MockTextMessage("test2"), receiver.receiveNoWait());
+        assertEquals(new MockTextMessage("test3"), receiver.receiveNoWait());
+        assertNull(receiver.receiveNoWait());
+        assertEquals(3, metrics.getNumberDeliveredMessages());
+        assertEquals(3, metrics.getNumberAcknowledgedMessages());
+        assertEquals(1, metrics.getNumberRedeliveredMessages());
+        assertEquals(0, metrics.getCurrentDepth());
+        assertEquals(3, metrics.getMaximumDepth());
+        assertEquals(3, metrics.getLatencyHistogram().getCount());
+        assertTrue(metrics.getLatencyHistogram().getPercentile(50) <= metrics.getLatencyHistogram().getMaximum());
+        MessageMetrics sessionMetrics = session.getMetrics();
+        assertEquals(3, sessionMetrics.getNumberEnqueuedMessages());
+        assertEquals(3, sessionMetrics.getNumberDeliveredMessages());
+        assertEquals(3, sessionMetrics.getNumberAcknowledgedMessages());
+        assertEquals(0, sessionMetrics.getCurrentDepth());
+        metrics.reset();
+        assertEquals(0, metrics.getNumberEnqueuedMessages());
+        assertEquals(0, metrics.getNumberDeliveredMessages());
+        assertEquals(0, metrics.getMaximumDepth());
+        assertEquals(0, metrics.getLatencyHistogram().getCount());
+        assertNull(destManager.getQueueMetrics("Other"));
+    }
+
+    @Test
+    public void testTopicMetricsClientAcknowledge() throws Exception
+    {
+        MockTopicConnection connection = new MockTopicConnection(destManager, confManager);
+        MockTopicSession session = (MockTopicSession)connection.createTopicSession(false, Session.CLIENT_ACKNOWLEDGE);
+        MockTopic topic = destManager.createTopic("Topic");
+        MockTopicSubscriber subscriber1 = (MockTopicSubscriber)session.createSubscriber(topic);
+        MockTopicSubscriber subscriber2 = (MockTopicSubscriber)session.createSubscriber(topic);
+        subscriber1.setMessageListener(new TestMessageListener());
+        subscriber2.setMessageListener(new TestMessageListener());
+        session.createPublisher(topic).publish(new MockTextMessage("test"));
+        MessageMetrics metrics = destManager.getTopicMetrics("Topic");
+        assertEquals(1, metrics.getNumberEnqueuedMessages());
+        assertEquals(2, metrics.getNumberDeliveredMessages());
+        assertEquals(0, metrics.getNumberAcknowledgedMessages());
+        assertEquals(0, metrics.getCurrentDepth());
+        assertEquals(0, metrics.getMaximumDepth());
+        assertEquals(2, metrics.getLatencyHistogram().getCount());
+        assertEquals(2, session.getMetrics().getNumberDeliveredMessages());
+    }
+
+    @Test
+    public void testExpiredMessages() throws Exception
+    {
+        MockQueue queue = destManager.createQueue("Queue");
+        queue.setUsePriorityOrdering(true);
+        MockTextMessage message = new MockTextMessage("test");
+        message.setJMSExpiration(System.currentTimeMillis() - 1000);
+        queue.addMessage(message);
+        assertEquals(1, queue.getMetrics().getNumberEnqueuedMessages());
+        assertEquals(1, queue.getMetrics().getNumberExpiredMessages());
+        assertEquals(0, queue.getMetrics().getMaximumDepth());
+    }
+
+    @Test
+    public void testLatencyHistogram() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+        for(int ii = 1; ii <= 100; ii++)
+        {
+            histogram.record(ii * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(101, histogram.getCount());
+        assertEquals(100000, histogram.getMaximum());
+        assertEquals(5050000 / 101, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(0));
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 50000 && median < 100000);
+        assertEquals(100000, histogram.getPercentile(100));
+        assertTrue(histogram.getPercentile(99) >= 99000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaximum());
+    }
+
+    @Test
+    public void testRegisterMBeans() throws Exception
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        destManager.createQueue("Queue1");
+        destManager.registerMBeans(server);
+        destManager.createTopic("Topic1");
+        ObjectName queueName = DestinationManager.getMBeanName("Queue", "Queue1");
+        ObjectName topicName = DestinationManager.getMBeanName("Topic", "Topic1");
+        assertTrue(server.isRegistered(queueName));
+        assertTrue(server.isRegistered(topicName));
+        destManager.getQueue("Queue1").addMessage(new MockTextMessage("test"));
+        assertEquals(1L, server.getAttribute(queueName, "NumberEnqueuedMessages"));
+        assertEquals(1L, server.getAttribute(queueName, "CurrentDepth"));
+        destManager.removeTopic("Topic1");
+        assertFalse(server.isRegistered(topicName));
+        destManager.unregisterMBeans();
+        assertFalse(server.isRegistered(queueName));
+        destManager.createQueue("Queue2");
+        assertFalse(server.isRegistered(DestinationManager.getMBeanName("Queue", "Queue2")));
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(queueName));
+    }
+
+    private static class TestMessageListener implements MessageListener
+    {
+        public void onMessage(Message message)
+        {
+
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.mockrunner.test.jms;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.activemq.filter.mockrunner.Filter;
@@ -90,4 +92,51 @@ public class MessageSelectorTest
         message.setStringProperty("stringProperty", "\nbxyz");
         assertTrue(wildcardFilter.matches(message));
     }
+    
+    @Test
+    public void testLikeExpression() throws Exception
+    {
+        assertLike("abc", "abc", true);
+        assertLike("abc", "abcd", false);
+        assertLike("abc%", "abcd", true);
+        assertLike("abc%", "ab", false);
+        assertLike("%abc", "xxabc", true);
+        assertLike("%abc", "abcx", false);
+        assertLike("%abc%", "xabcx", true);
+        assertLike("%abc%", "xabx", false);
+        assertLike("%", "", true);
+        assertLike("%%", "a", true);
+        assertLike("a%b%c", "abc", true);
+        assertLike("a%b%c", "axxbxxc", true);
+        assertLike("a%b%c", "axxcxxb", false);
+        assertLike("a%bc%bc", "abcbc", true);
+        assertLike("a%bc%bc", "abc", false);
+        assertLike("%ab_%ab", "xxabcabdab", true);
+        assertLike("%ab_%ab", "abab", false);
+        assertLike("a_c", "a\nc", true);
+        assertLike("a_c", "a.c", true);
+        assertLike("a.c", "abc", false);
+        assertLike("a*c", "a*c", true);
+        assertLike("(a|b)%", "(a|b)c", true);
+        Filter escapeFilter = parser.parse("stringProperty LIKE 'a!%b!_%' ESCAPE '!'");
+        message.setStringProperty("stringProperty", "a%b_c");
+        assertTrue(escapeFilter.matches(message));
+        message.setStringProperty("stringProperty", "axbyc");
+        assertFalse(escapeFilter.matches(message));
+    }
+    
+    @Test
+    public void testLikeExpressionToString() throws Exception
+    {
+        assertEquals(parser.parse("stringProperty LIKE 'a%'").toString(), parser.parse("stringProperty LIKE 'a%'").toString());
+        assertNotEquals(parser.parse("stringProperty LIKE 'a%'").toString(), parser.parse("stringProperty LIKE 'b%'").toString());
+        assertNotEquals(parser.parse("stringProperty LIKE 'a!%' ESCAPE '!'").toString(), parser.parse("stringProperty LIKE 'a!%'").toString());
+    }
+    
+    private void assertLike(String pattern, String value, boolean expected) throws Exception
+    {
+        Filter likeFilter = parser.parse("stringProperty LIKE '" + pattern + "'");
+        message.setStringProperty("stringProperty", value);
+        assertEquals(pattern + " LIKE " + value, expected, likeFilter.matches(message));
+    }
 }
@@ -6,6 +6,11 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import javax.jms.JMSException;
@@ -254,4 +259,65 @@ public class MockBytesMessageTest
         message.writeBytes(new byte[] {1 , 2, 3});
         assertEquals(MockBytesMessage.class.getName() + ": [1, 1, 2, 3]", message.toString());
     }
+    
+	@Test
+    public void testLargeBody() throws Exception
+    {
+        byte[] data = new byte[3 * 1024 * 1024];
+        for(int ii = 0; ii < data.length; ii++)
+        {
+            data[ii] = (byte)ii;
+        }
+        MockBytesMessage message = new MockBytesMessage(true);
+        message.writeInt(42);
+        message.writeBytes(data);
+        message.writeBytes(data, 10, 20);
+        message.reset();
+        assertEquals(4 + data.length + 20, message.getBodyLength());
+        assertEquals(42, message.readInt());
+        byte[] readData = new byte[data.length];
+        assertEquals(data.length, message.readBytes(readData));
+        assertTrue(Arrays.equals(data, readData));
+        readData = new byte[30];
+        assertEquals(20, message.readBytes(readData));
+        assertEquals(10, readData[0]);
+        assertEquals(-1, message.readBytes(readData));
+        message.reset();
+        assertEquals(42, message.readInt());
+    }
+    
+	@Test
+    public void testCloneSharesBody() throws Exception
+    {
+        MockBytesMessage message = new MockBytesMessage();
+        message.writeBytes(new byte[] {1, 2, 3});
+        MockBytesMessage newMessage = (MockBytesMessage)message.clone();
+        message.writeByte((byte)4);
+        newMessage.writeByte((byte)5);
+        newMessage.writeByte((byte)6);
+        message.writeByte((byte)7);
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3, 4, 7}, message.getBytes()));
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3, 5, 6}, newMessage.getBytes()));
+        ByteBuffer body = message.getBodyBuffer();
+        assertTrue(body.isReadOnly());
+        assertEquals(5, body.remaining());
+        message.clearBody();
+        message.writeByte((byte)8);
+        assertEquals(5, body.remaining());
+        assertEquals(1, body.get(0));
+    }
+    
+	@Test
+    public void testUTFCompatibleWithDataStreams() throws Exception
+    {
+        String text = "a\u0000b\u00e4\u20ac\ud83d\ude00";
+        MockBytesMessage message = new MockBytesMessage();
+        message.writeUTF(text);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        new DataOutputStream(byteStream).writeUTF(text);
+        assertTrue(Arrays.equals(byteStream.toByteArray(), message.getBytes()));
+        message.reset();
+        assertEquals(text, message.readUTF());
+        assertEquals(text, new DataInputStream(new ByteArrayInputStream(message.getBytes())).readUTF());
+    }
 }
@@ -1,9 +1,14 @@
 package com.mockrunner.test.jms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import java.util.List;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -77,6 +82,154 @@ public class MockDestinationTest
         assertNull(message);
     }
     
+    @Test
+    public void testMessageOrderWithManyMessages() throws Exception
+    {
+        MockQueue queue = new MockQueue("Queue");
+        for(int ii = 0; ii < 10000; ii++)
+        {
+            MockTextMessage message = new MockTextMessage(String.valueOf(ii));
+            if(ii % 100 == 0) message.setIntProperty("number", 1);
+            queue.addMessage(message);
+            if(ii % 3 == 0)
+            {
+                assertEquals(String.valueOf(ii / 3), ((MockTextMessage)queue.getMessage()).getText());
+            }
+        }
+        assertEquals(10000, queue.getReceivedMessageList().size());
+        assertEquals("9999", ((MockTextMessage)queue.getReceivedMessageList().get(9999)).getText());
+        assertEquals("3400", ((MockTextMessage)queue.getMatchingMessage(filter)).getText());
+        List<Message> currentMessages = queue.getCurrentMessageList();
+        assertEquals(10000 - 3334 - 1, currentMessages.size());
+        assertEquals("3334", ((MockTextMessage)currentMessages.get(0)).getText());
+        assertEquals("3401", ((MockTextMessage)currentMessages.get(66)).getText());
+        int expected = 3334;
+        while(!queue.isEmpty())
+        {
+            if(expected == 3400) expected++;
+            assertEquals(String.valueOf(expected++), ((MockTextMessage)queue.getMessage()).getText());
+        }
+        assertEquals(10000, expected);
+        assertNull(queue.getMessage());
+    }
+
+    @Test
+    public void testGetMatchingMessageWithIndexedProperty() throws Exception
+    {
+        SelectorParser parser = new SelectorParser();
+        MockQueue queue = new MockQueue("Queue");
+        for(int ii = 0; ii < 1000; ii++)
+        {
+            MockTextMessage message = new MockTextMessage(String.valueOf(ii));
+            message.setIntProperty("number", ii % 10);
+            message.setStringProperty("type", (ii % 2 == 0) ? "even" : "odd");
+            message.setJMSType("type" + (ii % 3));
+            queue.addMessage(message);
+        }
+        MockTextMessage longMessage = new MockTextMessage("long");
+        longMessage.setLongProperty("number", 7);
+        queue.addMessage(longMessage);
+        MockTextMessage doubleMessage = new MockTextMessage("double");
+        doubleMessage.setDoubleProperty("number", 3.0);
+        queue.addMessage(doubleMessage);
+        Filter numberFilter = parser.parse("number = 3");
+        for(int ii = 3; ii < 1000; ii += 10)
+        {
+            assertEquals(String.valueOf(ii), ((MockTextMessage)queue.getMatchingMessage(numberFilter)).getText());
+        }
+        assertEquals("double", ((MockTextMessage)queue.getMatchingMessage(numberFilter)).getText());
+        assertNull(queue.getMatchingMessage(numberFilter));
+        Filter andFilter = parser.parse("7 = number AND type = 'odd'");
+        assertEquals("7", ((MockTextMessage)queue.getMatchingMessage(andFilter)).getText());
+        Filter typeFilter = parser.parse("JMSType = 'type2' AND number > 4");
+        assertEquals("5", ((MockTextMessage)queue.getMatchingMessage(typeFilter)).getText());
+        assertEquals("8", ((MockTextMessage)queue.getMatchingMessage(typeFilter)).getText());
+        queue.addMessage(new MockTextMessage("new"));
+        assertEquals("0", ((MockTextMessage)queue.getMessage()).getText());
+        assertEquals("1", ((MockTextMessage)queue.getMessage()).getText());
+        assertEquals("2", ((MockTextMessage)queue.getCurrentMessageList().get(0)).getText());
+        assertEquals("4", ((MockTextMessage)queue.getCurrentMessageList().get(1)).getText());
+        int numberMessages = queue.getCurrentMessageList().size();
+        int numberSevens = 0;
+        while(null != queue.getMatchingMessage(parser.parse("number = 7")))
+        {
+            numberSevens++;
+        }
+        assertEquals(100, numberSevens);
+        assertEquals(numberMessages - 100, queue.getCurrentMessageList().size());
+        assertEquals("new", ((MockTextMessage)queue.getMatchingMessage(parser.parse("number IS NULL"))).getText());
+        queue.clear();
+        assertNull(queue.getMatchingMessage(numberFilter));
+    }
+
+    @Test
+    public void testGetMatchingMessagePropertyChangedAfterAdd() throws Exception
+    {
+        SelectorParser parser = new SelectorParser();
+        MockQueue queue = new MockQueue("Queue");
+        MockTextMessage changed = new MockTextMessage("changed");
+        changed.setIntProperty("number", 1);
+        queue.addMessage(changed);
+        MockTextMessage added = new MockTextMessage("added");
+        queue.addMessage(added);
+        MockTextMessage unchanged = new MockTextMessage("unchanged");
+        unchanged.setIntProperty("number", 2);
+        queue.addMessage(unchanged);
+        assertNull(queue.getMatchingMessage(parser.parse("number = 3")));
+        changed.clearProperties();
+        changed.setIntProperty("number", 2);
+        added.setIntProperty("number", 2);
+        assertNull(queue.getMatchingMessage(parser.parse("number = 1")));
+        assertEquals("changed", ((MockTextMessage)queue.getMatchingMessage(parser.parse("number = 2"))).getText());
+        assertEquals("added", ((MockTextMessage)queue.getMatchingMessage(parser.parse("number = 2"))).getText());
+        assertEquals("unchanged", ((MockTextMessage)queue.getMatchingMessage(parser.parse("number = 2"))).getText());
+        MockTextMessage reused = new MockTextMessage("reused");
+        reused.setStringProperty("type", "first");
+        queue.addMessage(reused);
+        assertNull(queue.getMatchingMessage(parser.parse("type = 'second'")));
+        reused.setStringProperty("type", "second");
+        queue.addMessage(reused);
+        assertSame(reused, queue.getMatchingMessage(parser.parse("type = 'second'")));
+        assertSame(reused, queue.getMatchingMessage(parser.parse("type = 'second'")));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testMessageListViews() throws Exception
+    {
+        MockQueue queue = new MockQueue("Queue");
+        List<Message> currentMessages = queue.getCurrentMessageList();
+        List<Message> receivedMessages = queue.getReceivedMessageList();
+        MockTextMessage message1 = new MockTextMessage("1");
+        MockTextMessage message2 = new MockTextMessage("2");
+        queue.addMessage(message1);
+        queue.addMessage(message2);
+        assertEquals(2, currentMessages.size());
+        assertSame(message2, currentMessages.get(1));
+        assertTrue(currentMessages.contains(message1));
+        Iterator<Message> iterator = currentMessages.iterator();
+        queue.getMessage();
+        queue.addMessage(new MockTextMessage("3"));
+        assertSame(message1, iterator.next());
+        assertSame(message2, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(2, currentMessages.size());
+        assertSame(message2, currentMessages.get(0));
+        assertEquals(3, receivedMessages.size());
+        try
+        {
+            currentMessages.add(message1);
+            fail();
+        }
+        catch(UnsupportedOperationException exc)
+        {
+            //should throw exception
+        }
+        queue.reset();
+        assertTrue(currentMessages.isEmpty());
+        assertTrue(receivedMessages.isEmpty());
+    }
+
     private static class TestTrueFilter implements Filter
     {
         public boolean matches(Message message) throws JMSException
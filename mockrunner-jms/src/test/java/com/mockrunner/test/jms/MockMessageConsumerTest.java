@@ -7,6 +7,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -17,6 +23,7 @@ import org.junit.Test;
 
 import com.mockrunner.jms.ConfigurationManager;
 import com.mockrunner.jms.DestinationManager;
+import com.mockrunner.mock.jms.MockDestination;
 import com.mockrunner.mock.jms.MockMapMessage;
 import com.mockrunner.mock.jms.MockMessageConsumer;
 import com.mockrunner.mock.jms.MockObjectMessage;
@@ -24,6 +31,7 @@ import com.mockrunner.mock.jms.MockQueue;
 import com.mockrunner.mock.jms.MockQueueConnection;
 import com.mockrunner.mock.jms.MockQueueReceiver;
 import com.mockrunner.mock.jms.MockQueueSession;
+import com.mockrunner.mock.jms.MockTextMessage;
 import com.mockrunner.mock.jms.MockTopic;
 import com.mockrunner.mock.jms.MockTopicConnection;
 import com.mockrunner.mock.jms.MockTopicSession;
@@ -181,6 +189,156 @@ public class MockMessageConsumerTest
         assertTrue(consumer.canConsume(message));
     }
     
+    @Test
+    public void testReceiveWaitsForMessageQueueReceiver() throws Exception
+    {
+        List<MockMessageConsumer> consumers = new ArrayList<MockMessageConsumer>();
+        for(int ii = 0; ii < 4; ii++)
+        {
+            consumers.add(new MockQueueReceiver(queueConnection, queueSession, queue, "number = " + ii));
+        }
+        doTestReceiveWaitsForMessage(queue, consumers);
+    }
+
+    @Test
+    public void testReceiveWaitsForMessageTopicSubscriber() throws Exception
+    {
+        List<MockMessageConsumer> consumers = new ArrayList<MockMessageConsumer>();
+        for(int ii = 0; ii < 4; ii++)
+        {
+            consumers.add(new MockTopicSubscriber(topicConnection, topicSession, topic, "number = " + ii, false));
+        }
+        doTestReceiveWaitsForMessage(topic, consumers);
+    }
+
+    private void doTestReceiveWaitsForMessage(MockDestination destination, List<MockMessageConsumer> consumers) throws Exception
+    {
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch finished = new CountDownLatch(consumers.size());
+        for(int ii = 0; ii < consumers.size(); ii++)
+        {
+            final MockMessageConsumer consumer = consumers.get(ii);
+            final boolean timed = (ii % 2 == 0);
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        MockTextMessage message = (MockTextMessage)(timed ? consumer.receive(10000) : consumer.receive());
+                        received.add(message.getText() + "=" + message.getIntProperty("number"));
+                    }
+                    catch(Exception exc)
+                    {
+                        received.add(exc.toString());
+                    }
+                    finally
+                    {
+                        finished.countDown();
+                    }
+                }
+            }.start();
+        }
+        Thread.sleep(50);
+        for(int ii = consumers.size() - 1; ii >= 0; ii--)
+        {
+            MockTextMessage message = new MockTextMessage("message" + ii);
+            message.setIntProperty("number", ii);
+            destination.addMessage(message);
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        Collections.sort(received);
+        assertEquals("[message0=0, message1=1, message2=2, message3=3]", received.toString());
+        assertTrue(destination.isEmpty());
+    }
+
+    @Test
+    public void testFailingSelectorDoesNotMatchWaitingConsumer() throws Exception
+    {
+        final MockQueueReceiver receiver = new MockQueueReceiver(queueConnection, queueSession, queue, "number = 1");
+        final CountDownLatch finished = new CountDownLatch(1);
+        final List<Message> received = Collections.synchronizedList(new ArrayList<Message>());
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    received.add(receiver.receive(10000));
+                }
+                catch(JMSException exc)
+                {
+                    received.add(null);
+                }
+                finished.countDown();
+            }
+        }.start();
+        assertFalse(finished.await(50, TimeUnit.MILLISECONDS));
+        MockTextMessage failingMessage = new MockTextMessage("failing")
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Object getObjectProperty(String name) throws JMSException
+            {
+                throw new JMSException("property not available");
+            }
+        };
+        queue.addMessage(failingMessage);
+        assertEquals(1, queue.getCurrentMessageList().size());
+        MockTextMessage message = new MockTextMessage("matching");
+        message.setIntProperty("number", 1);
+        queue.addMessage(message);
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertEquals("matching", ((MockTextMessage)received.get(0)).getText());
+        assertEquals(1, queue.getCurrentMessageList().size());
+    }
+
+    @Test
+    public void testReceiveTimeout() throws Exception
+    {
+        MockQueueReceiver receiver = new MockQueueReceiver(queueConnection, queueSession, queue);
+        long start = System.nanoTime();
+        assertNull(receiver.receive(50));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        queue.addMessage(new MockTextMessage("text"));
+        assertNotNull(receiver.receive(50));
+    }
+
+    @Test
+    public void testCloseWakesUpReceive() throws Exception
+    {
+        final MockTopicSubscriber subscriber = new MockTopicSubscriber(topicConnection, topicSession, topic);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final List<Message> received = Collections.synchronizedList(new ArrayList<Message>());
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    received.add(subscriber.receive());
+                }
+                catch(JMSException exc)
+                {
+                    received.add(null);
+                }
+                finished.countDown();
+            }
+        }.start();
+        assertFalse(finished.await(50, TimeUnit.MILLISECONDS));
+        subscriber.close();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertNull(received.get(0));
+        topic.addMessage(new MockTextMessage("text"));
+        assertEquals(1, topic.getCurrentMessageList().size());
+    }
+
     private void doTestReceiveWithoutSelector(MockMessageConsumer consumer) throws JMSException
     {
         assertNotNull(consumer.receive());
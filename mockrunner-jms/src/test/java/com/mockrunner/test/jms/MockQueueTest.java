@@ -146,6 +146,72 @@ public class MockQueueTest
         assertEquals(new MockTextMessage("test"), queue.getMessage());
     }
     
+    @Test
+    public void testPriorityOrdering() throws Exception
+    {
+        assertFalse(queue.getUsePriorityOrdering());
+        queue.addMessage(createMessage("1", 4, 0));
+        queue.addMessage(createMessage("2", 9, 0));
+        queue.setUsePriorityOrdering(true);
+        assertTrue(queue.getUsePriorityOrdering());
+        assertEquals(2, queue.getCurrentMessageList().size());
+        queue.addMessage(createMessage("3", 4, 0));
+        queue.addMessage(createMessage("4", 0, 0));
+        queue.addMessage(createMessage("5", 7, 0));
+        queue.addMessage(createMessage("6", 9, 0));
+        queue.addMessage(createMessage("7", 42, 0));
+        assertEquals(7, queue.getCurrentMessageList().size());
+        assertEquals(new MockTextMessage("2"), queue.getCurrentMessageList().get(0));
+        assertEquals(new MockTextMessage("4"), queue.getCurrentMessageList().get(6));
+        String[] expected = {"2", "6", "7", "5", "1", "3", "4"};
+        for(String text : expected)
+        {
+            assertEquals(new MockTextMessage(text), queue.getMessage());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(7, queue.getReceivedMessageList().size());
+        queue.addMessage(createMessage("8", 4, 0));
+        queue.setUsePriorityOrdering(false);
+        assertEquals(new MockTextMessage("8"), queue.getMessage());
+    }
+
+    @Test
+    public void testPriorityOrderingExpiration() throws Exception
+    {
+        queue.setUsePriorityOrdering(true);
+        long now = System.currentTimeMillis();
+        queue.addMessage(createMessage("1", 4, now - 1));
+        queue.addMessage(createMessage("2", 4, now + 50));
+        queue.addMessage(createMessage("3", 4, now + 100000));
+        queue.addMessage(createMessage("4", 4, 0));
+        assertEquals(3, queue.getCurrentMessageList().size());
+        assertEquals(1, queue.getNumberExpiredMessages());
+        Thread.sleep(100);
+        assertEquals(2, queue.getCurrentMessageList().size());
+        assertEquals(2, queue.getNumberExpiredMessages());
+        assertEquals(new MockTextMessage("3"), queue.getMessage());
+        assertEquals(new MockTextMessage("4"), queue.getMessage());
+        assertNull(queue.getMessage());
+        assertEquals(4, queue.getReceivedMessageList().size());
+        MockQueueSession session = new MockQueueSession(connection, false, Session.AUTO_ACKNOWLEDGE);
+        queue.addSession(session);
+        MockQueueReceiver receiver = (MockQueueReceiver)session.createReceiver(queue);
+        queue.addMessage(createMessage("5", 4, System.currentTimeMillis() + 20));
+        Thread.sleep(50);
+        assertNull(receiver.receiveNoWait());
+        assertEquals(3, queue.getNumberExpiredMessages());
+        queue.setUsePriorityOrdering(false);
+        assertEquals(0, queue.getNumberExpiredMessages());
+    }
+
+    private MockTextMessage createMessage(String text, int priority, long expiration) throws Exception
+    {
+        MockTextMessage message = new MockTextMessage(text);
+        message.setJMSPriority(priority);
+        message.setJMSExpiration(expiration);
+        return message;
+    }
+
     @Test
     public void testAddMessageAutoAcknowledge() throws Exception
     {
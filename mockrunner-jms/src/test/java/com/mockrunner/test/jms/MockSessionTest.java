@@ -292,6 +292,217 @@ public class MockSessionTest
         }
     }
 
+    @Test
+    public void testTransactedSessionStagesMessages() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        MockQueueConnection connection = new MockQueueConnection(destManager, confManager);
+        MockQueueSession session = (MockQueueSession)connection.createQueueSession(true, Session.AUTO_ACKNOWLEDGE);
+        assertTrue(session.isStaging());
+        MockQueue queue = destManager.createQueue("Queue");
+        QueueSender sender = session.createSender(queue);
+        sender.send(new MockTextMessage("Text1"));
+        sender.send(new MockTextMessage("Text2"));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getReceivedMessageList().size());
+        assertEquals(2, session.getStagedMessageList().size());
+        session.rollback();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, session.getStagedMessageList().size());
+        sender.send(new MockTextMessage("Text3"));
+        sender.send(new MockTextMessage("Text4"));
+        session.commit();
+        assertEquals(0, session.getStagedMessageList().size());
+        assertEquals(2, queue.getReceivedMessageList().size());
+        assertEquals(new MockTextMessage("Text3"), queue.getMessage());
+        assertEquals(new MockTextMessage("Text4"), queue.getMessage());
+        assertEquals(2, session.getMetrics().getNumberEnqueuedMessages());
+        MockQueueSession otherSession = (MockQueueSession)connection.createQueueSession(true, Session.AUTO_ACKNOWLEDGE);
+        confManager.setUseTransactionalSessions(false);
+        assertFalse(otherSession.isStaging());
+        otherSession.createSender(queue).send(new MockTextMessage("Text5"));
+        assertEquals(new MockTextMessage("Text5"), queue.getMessage());
+    }
+
+    @Test
+    public void testTransactedSessionRedeliversOnRollback() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        MockQueueConnection connection = new MockQueueConnection(destManager, confManager);
+        MockQueueSession session = (MockQueueSession)connection.createQueueSession(true, Session.AUTO_ACKNOWLEDGE);
+        MockQueue queue = destManager.createQueue("Queue");
+        MockTextMessage message = new MockTextMessage("Text");
+        queue.addMessage(message);
+        MockQueueReceiver receiver = (MockQueueReceiver)session.createReceiver(queue);
+        assertEquals(message, receiver.receiveNoWait());
+        assertFalse(message.isAcknowledged());
+        assertFalse(message.getJMSRedelivered());
+        session.rollback();
+        assertTrue(message.getJMSRedelivered());
+        assertEquals(1, queue.getCurrentMessageList().size());
+        assertEquals(message, receiver.receiveNoWait());
+        session.commit();
+        assertTrue(message.isAcknowledged());
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.getMetrics().getNumberRedeliveredMessages());
+        assertEquals(1, queue.getMetrics().getNumberAcknowledgedMessages());
+    }
+
+    @Test
+    public void testTransactedSessionTopicReceiveRollback() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        MockTopicConnection connection = new MockTopicConnection(destManager, confManager);
+        MockTopicSession session = (MockTopicSession)connection.createTopicSession(true, Session.AUTO_ACKNOWLEDGE);
+        MockTopic topic = destManager.createTopic("Topic");
+        MockTopicSubscriber subscriber = (MockTopicSubscriber)session.createSubscriber(topic);
+        MockTextMessage message = new MockTextMessage("Text");
+        topic.addMessage(message);
+        assertEquals(message, subscriber.receiveNoWait());
+        assertTrue(topic.isEmpty());
+        session.rollback();
+        assertTrue(message.getJMSRedelivered());
+        assertEquals(1, topic.getCurrentMessageList().size());
+        assertEquals(message, subscriber.receiveNoWait());
+        assertFalse(message.isAcknowledged());
+        session.commit();
+        assertTrue(message.isAcknowledged());
+        assertTrue(topic.isEmpty());
+        assertNull(subscriber.receiveNoWait());
+    }
+
+    @Test
+    public void testTransactedSessionListenerRollback() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        MockTopicConnection connection = new MockTopicConnection(destManager, confManager);
+        final MockTopicSession session = (MockTopicSession)connection.createTopicSession(true, Session.AUTO_ACKNOWLEDGE);
+        MockTopicSession otherSession = (MockTopicSession)connection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
+        MockTopic topic = destManager.createTopic("Topic");
+        final List<Boolean> redelivered = new java.util.ArrayList<Boolean>();
+        MessageListener listener = new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                try
+                {
+                    redelivered.add(message.getJMSRedelivered());
+                    if(message.getJMSRedelivered())
+                    {
+                        session.commit();
+                    }
+                    else
+                    {
+                        session.rollback();
+                    }
+                }
+                catch(Exception exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+            }
+        };
+        session.createSubscriber(topic).setMessageListener(listener);
+        TestMessageListener otherListener = new TestMessageListener();
+        otherSession.createSubscriber(topic).setMessageListener(otherListener);
+        MockTextMessage message = new MockTextMessage("Text");
+        otherSession.createPublisher(topic).publish(message);
+        assertEquals(2, redelivered.size());
+        assertFalse(redelivered.get(0));
+        assertTrue(redelivered.get(1));
+        assertTrue(message.isAcknowledged());
+        assertEquals(1, session.getNumberRollbacks());
+        assertEquals(1, session.getNumberCommits());
+        assertEquals(3, topic.getMetrics().getNumberDeliveredMessages());
+    }
+
+    @Test
+    public void testTransactedSessionCloseDoesNotRedeliverToItself() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        MockQueueConnection connection = new MockQueueConnection(destManager, confManager);
+        MockQueueSession session = (MockQueueSession)connection.createQueueSession(true, Session.AUTO_ACKNOWLEDGE);
+        MockQueueSession otherSession = (MockQueueSession)connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+        MockQueue queue = destManager.createQueue("Queue");
+        session.createReceiver(queue);
+        final List<Message> received = new java.util.ArrayList<Message>();
+        session.setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                received.add(message);
+            }
+        });
+        MockTextMessage message = new MockTextMessage("Text");
+        otherSession.createSender(queue).send(message);
+        assertEquals(1, received.size());
+        session.close();
+        assertEquals(1, received.size());
+        assertTrue(message.getJMSRedelivered());
+        assertEquals(1, queue.getCurrentMessageList().size());
+        assertFalse(message.isAcknowledged());
+    }
+
+    @Test
+    public void testTransactedSessionMaximumRedeliveries() throws Exception
+    {
+        DestinationManager destManager = new DestinationManager();
+        ConfigurationManager confManager = new ConfigurationManager();
+        confManager.setUseTransactionalSessions(true);
+        confManager.setMaximumRedeliveries(3);
+        MockQueueConnection connection = new MockQueueConnection(destManager, confManager);
+        final MockQueueSession session = (MockQueueSession)connection.createQueueSession(true, Session.AUTO_ACKNOWLEDGE);
+        MockQueueSession otherSession = (MockQueueSession)connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+        MockQueue queue = destManager.createQueue("Queue");
+        final List<Boolean> redelivered = new java.util.ArrayList<Boolean>();
+        session.createReceiver(queue).setMessageListener(new MessageListener()
+        {
+            public void onMessage(Message message)
+            {
+                try
+                {
+                    redelivered.add(message.getJMSRedelivered());
+                    session.rollback();
+                }
+                catch(Exception exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+            }
+        });
+        MockTextMessage message = new MockTextMessage("Text");
+        otherSession.createSender(queue).send(message);
+        assertEquals(4, redelivered.size());
+        assertFalse(redelivered.get(0));
+        assertTrue(redelivered.get(3));
+        assertEquals(4, session.getNumberRollbacks());
+        assertFalse(message.isAcknowledged());
+        assertTrue(queue.isEmpty());
+        confManager.setMaximumRedeliveries(0);
+        redelivered.clear();
+        otherSession.createSender(queue).send(new MockTextMessage("Text"));
+        assertEquals(1, redelivered.size());
+        try
+        {
+            confManager.setMaximumRedeliveries(-1);
+            fail();
+        }
+        catch(IllegalArgumentException exc)
+        {
+            //should throw exception
+        }
+    }
+
     public static class TestMessageListener implements MessageListener
     {
         private Message message;
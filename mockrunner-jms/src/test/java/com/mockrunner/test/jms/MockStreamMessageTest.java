@@ -7,6 +7,11 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
 import java.util.Arrays;
 
 import javax.jms.JMSException;
@@ -444,4 +449,87 @@ public class MockStreamMessageTest
         message.writeString("abc");
         assertEquals(MockStreamMessage.class.getName() + ": [12, abc]", message.toString());
     }
+    
+	@Test
+    public void testManyValues() throws Exception
+    {
+        MockStreamMessage message = new MockStreamMessage();
+        for(int ii = 0; ii < 50000; ii++)
+        {
+            message.writeInt(ii);
+            message.writeDouble(ii / 2.0);
+        }
+        message.writeString("end");
+        message.reset();
+        for(int ii = 0; ii < 50000; ii++)
+        {
+            assertEquals(ii, message.readLong());
+            assertEquals(ii / 2.0, message.readDouble(), 0);
+        }
+        assertEquals("end", message.readString());
+        message.reset();
+        assertEquals(0, message.readInt());
+    }
+    
+	@Test
+    public void testCloneSharesValues() throws Exception
+    {
+        MockStreamMessage message = new MockStreamMessage();
+        message.writeInt(1);
+        message.writeString("test");
+        MockStreamMessage newMessage = (MockStreamMessage)message.clone();
+        message.writeInt(2);
+        newMessage.writeInt(3);
+        message.writeBytes(new byte[] {1, 2});
+        message.reset();
+        newMessage.reset();
+        assertEquals(1, message.readInt());
+        assertEquals("test", message.readString());
+        assertEquals(2, message.readInt());
+        assertTrue(Arrays.equals(new byte[] {1, 2}, (byte[])message.readObject()));
+        assertEquals(1, newMessage.readInt());
+        assertEquals("test", newMessage.readString());
+        assertEquals(3, newMessage.readInt());
+        try
+        {
+            newMessage.readInt();
+            fail();
+        }
+        catch(MessageEOFException exc)
+        {
+            //should throw exception
+        }
+    }
+    
+	@Test
+    public void testSerialization() throws Exception
+    {
+        MockStreamMessage message = new MockStreamMessage();
+        message.writeChar('a');
+        message.writeObject(null);
+        message.writeBytes(new byte[] {1, 2, 3});
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        new ObjectOutputStream(byteStream).writeObject(message);
+        MockStreamMessage newMessage = (MockStreamMessage)new ObjectInputStream(new ByteArrayInputStream(byteStream.toByteArray())).readObject();
+        assertEquals(message, newMessage);
+        newMessage.reset();
+        assertEquals('a', newMessage.readChar());
+        assertNull(newMessage.readObject());
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, (byte[])newMessage.readObject()));
+    }
+    
+	@Test
+    public void testInvalidType() throws Exception
+    {
+        MockStreamMessage message = new MockStreamMessage();
+        try
+        {
+            message.writeObject(new BigDecimal(1));
+            fail();
+        }
+        catch(MessageFormatException exc)
+        {
+            //should throw exception
+        }
+    }
 }
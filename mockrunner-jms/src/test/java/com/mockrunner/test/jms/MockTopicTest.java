@@ -5,6 +5,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.Session;
@@ -195,6 +199,93 @@ public class MockTopicTest
         assertTrue(message.isAcknowledged());
     }
     
+    @Test
+    public void testAddMessageWithManySelectors() throws Exception
+    {
+        MockTopicSession session = new MockTopicSession(connection, false, Session.AUTO_ACKNOWLEDGE);
+        topic.addSession(session);
+        List<TestMessageListener> listeners = new ArrayList<TestMessageListener>();
+        List<MockTopicSubscriber> subscribers = new ArrayList<MockTopicSubscriber>();
+        for(int ii = 0; ii < 10; ii++)
+        {
+            MockTopicSubscriber subscriber = (MockTopicSubscriber)session.createSubscriber(topic, "region = 'EU' AND amount > " + ii, false);
+            TestMessageListener listener = new TestMessageListener();
+            subscriber.setMessageListener(listener);
+            listeners.add(listener);
+            subscribers.add(subscriber);
+        }
+        PropertyCountingMessage message = new PropertyCountingMessage("EU", 5);
+        topic.addMessage(message);
+        assertEquals(2, message.getNumberPropertyReads());
+        for(int ii = 0; ii < 10; ii++)
+        {
+            assertEquals(ii < 5, null != listeners.get(ii).getMessage());
+            listeners.get(ii).reset();
+        }
+        message = new PropertyCountingMessage("US", 5);
+        topic.addMessage(message);
+        assertEquals(1, message.getNumberPropertyReads());
+        for(int ii = 0; ii < 10; ii++)
+        {
+            assertNull(listeners.get(ii).getMessage());
+        }
+        subscribers.get(0).close();
+        TestMessageListener newListener = new TestMessageListener();
+        session.createSubscriber(topic, "amount = 8", false).setMessageListener(newListener);
+        topic.addMessage(new PropertyCountingMessage("EU", 8));
+        assertNull(listeners.get(0).getMessage());
+        for(int ii = 1; ii < 10; ii++)
+        {
+            assertEquals(ii < 8, null != listeners.get(ii).getMessage());
+        }
+        assertTrue(null != newListener.getMessage());
+        message = new PropertyCountingMessage("EU", 8);
+        topic.addMessage(message);
+        assertEquals(2, message.getNumberPropertyReads());
+    }
+
+    @Test
+    public void testAddMessageWithManySelectorsDisabled() throws Exception
+    {
+        connection.getConfigurationManager().setUseMessageSelectors(false);
+        MockTopicSession session = new MockTopicSession(connection, false, Session.AUTO_ACKNOWLEDGE);
+        topic.addSession(session);
+        TestMessageListener listener1 = new TestMessageListener();
+        TestMessageListener listener2 = new TestMessageListener();
+        session.createSubscriber(topic, "amount = 1", false).setMessageListener(listener1);
+        session.createSubscriber(topic, "amount = 2", false).setMessageListener(listener2);
+        PropertyCountingMessage message = new PropertyCountingMessage("EU", 3);
+        topic.addMessage(message);
+        assertEquals(0, message.getNumberPropertyReads());
+        assertEquals(message, listener1.getMessage());
+        assertEquals(message, listener2.getMessage());
+    }
+
+    private static class PropertyCountingMessage extends MockTextMessage
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int numberPropertyReads;
+
+        public PropertyCountingMessage(String region, int amount) throws JMSException
+        {
+            setStringProperty("region", region);
+            setIntProperty("amount", amount);
+        }
+
+        public int getNumberPropertyReads()
+        {
+            return numberPropertyReads;
+        }
+
+        @Override
+        public Object getObjectProperty(String name) throws JMSException
+        {
+            numberPropertyReads++;
+            return super.getObjectProperty(name);
+        }
+    }
+
     public static class TestMessageListener implements MessageListener
     {
         private Message message;
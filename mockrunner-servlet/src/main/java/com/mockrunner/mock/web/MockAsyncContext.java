@@ -0,0 +1,422 @@
+package com.mockrunner.mock.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.mockrunner.base.NestedApplicationException;
+
+/**
+ * Mock implementation of an asynchronous request processing context.
+ * Mirrors the <code>AsyncContext</code> of the Servlet 3.0 API, which is
+ * not available with the Servlet 2.5 API Mockrunner is built against.
+ * Instances are created by {@link MockHttpServletRequest#startAsync}.
+ * <br>
+ * Tasks passed to {@link #start} are run by the <code>Executor</code> of
+ * the request (see {@link MockHttpServletRequest#setAsyncExecutor}). By
+ * default, every task runs in a new thread. Tests can use an <code>Executor</code>
+ * that runs the tasks in the calling thread to make the processing
+ * deterministic. An exception thrown by a task is reported to the
+ * {@link MockAsyncListener#onError} method of the listeners and completes
+ * the context. {@link #dispatch} forwards the request to the
+ * <code>RequestDispatcher</code> for the path, which is a
+ * {@link MockRequestDispatcher} by default, and completes the context
+ * afterwards. Use {@link #awaitCompletion} to wait until the asynchronous
+ * processing is completed.
+ */
+public class MockAsyncContext
+{
+    private final static long DEFAULT_TIMEOUT = 30000;
+    private final static ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    private final ServletRequest request;
+    private final ServletResponse response;
+    private final boolean originalRequestAndResponse;
+    private final Executor executor;
+    private final List<ListenerEntry> listeners;
+    private final CountDownLatch completionLatch;
+    private final AtomicBoolean completed;
+    private volatile boolean timedOut;
+    private volatile long timeout;
+    private volatile String dispatchedPath;
+    private ScheduledFuture<?> timeoutFuture;
+    private boolean timeoutStarted;
+
+    public MockAsyncContext(ServletRequest request, ServletResponse response)
+    {
+        this(request, response, true, null);
+    }
+
+    public MockAsyncContext(ServletRequest request, ServletResponse response, boolean originalRequestAndResponse, Executor executor)
+    {
+        this.request = request;
+        this.response = response;
+        this.originalRequestAndResponse = originalRequestAndResponse;
+        this.executor = (null != executor) ? executor : new ThreadPerTaskExecutor();
+        listeners = new ArrayList<ListenerEntry>();
+        completionLatch = new CountDownLatch(1);
+        completed = new AtomicBoolean(false);
+        timedOut = false;
+        timeout = DEFAULT_TIMEOUT;
+    }
+
+    public ServletRequest getRequest()
+    {
+        return request;
+    }
+
+    public ServletResponse getResponse()
+    {
+        return response;
+    }
+
+    public boolean hasOriginalRequestAndResponse()
+    {
+        return originalRequestAndResponse;
+    }
+
+    public synchronized void addListener(MockAsyncListener listener)
+    {
+        addListener(listener, request, response);
+    }
+
+    public synchronized void addListener(MockAsyncListener listener, ServletRequest request, ServletResponse response)
+    {
+        if(completed.get())
+        {
+            throw new IllegalStateException("AsyncContext is already completed");
+        }
+        listeners.add(new ListenerEntry(listener, request, response));
+    }
+
+    /**
+     * Sets the timeout in milliseconds. A timeout of <code>0</code> or
+     * less means, that the asynchronous processing never times out.
+     * Default is 30 seconds. The timeout starts with
+     * {@link MockHttpServletRequest#startAsync}. Changing the timeout
+     * afterwards restarts it with the new value.
+     * @param timeout the timeout in milliseconds
+     */
+    public synchronized void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+        if(null != timeoutFuture)
+        {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+        if(timeoutStarted)
+        {
+            scheduleTimeout();
+        }
+    }
+
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    public void start(final Runnable task)
+    {
+        if(completed.get())
+        {
+            throw new IllegalStateException("AsyncContext is already completed");
+        }
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                catch(RuntimeException exc)
+                {
+                    error(exc);
+                }
+                catch(Error exc)
+                {
+                    error(exc);
+                }
+            }
+        });
+    }
+
+    /**
+     * Dispatches the request to the URI of the request, i.e. the servlet path
+     * and the path info of an <code>HttpServletRequest</code>.
+     */
+    public void dispatch()
+    {
+        String path = "";
+        if(request instanceof HttpServletRequest)
+        {
+            HttpServletRequest httpRequest = (HttpServletRequest)request;
+            path = (null != httpRequest.getServletPath()) ? httpRequest.getServletPath() : "";
+            if(null != httpRequest.getPathInfo()) path += httpRequest.getPathInfo();
+        }
+        dispatch(path);
+    }
+
+    public void dispatch(String path)
+    {
+        dispatch(null, path);
+    }
+
+    /**
+     * Dispatches the request to the specified path. The <code>RequestDispatcher</code>
+     * is taken from the specified <code>ServletContext</code> or, if it is
+     * <code>null</code>, from the request. The context is completed after
+     * the request was forwarded.
+     * @param context the <code>ServletContext</code>, may be <code>null</code>
+     * @param path the path
+     */
+    public void dispatch(final ServletContext context, final String path)
+    {
+        if(completed.get())
+        {
+            throw new IllegalStateException("AsyncContext is already completed");
+        }
+        dispatchedPath = path;
+        start(new Runnable()
+        {
+            public void run()
+            {
+                RequestDispatcher dispatcher = (null != context) ? context.getRequestDispatcher(path) : request.getRequestDispatcher(path);
+                try
+                {
+                    dispatcher.forward(request, response);
+                }
+                catch(Exception exc)
+                {
+                    throw new NestedApplicationException(exc);
+                }
+                complete();
+            }
+        });
+    }
+
+    /**
+     * Returns the path of the last dispatch or <code>null</code>,
+     * if the request was not dispatched.
+     * @return the dispatched path
+     */
+    public String getDispatchedPath()
+    {
+        return dispatchedPath;
+    }
+
+    /**
+     * Completes the asynchronous processing and notifies the listeners.
+     * Subsequent calls are ignored.
+     */
+    public void complete()
+    {
+        if(!completed.compareAndSet(false, true)) return;
+        try
+        {
+            cancelTimeout();
+            for(ListenerEntry entry : getListeners())
+            {
+                try
+                {
+                    entry.listener.onComplete(entry.createEvent(this, null));
+                }
+                catch(IOException exc)
+                {
+                    throw new NestedApplicationException(exc);
+                }
+            }
+        }
+        finally
+        {
+            completionLatch.countDown();
+        }
+    }
+
+    public boolean isCompleted()
+    {
+        return completed.get();
+    }
+
+    /**
+     * Returns if the asynchronous processing timed out.
+     * @return <code>true</code> if the processing timed out
+     */
+    public boolean isTimedOut()
+    {
+        return timedOut;
+    }
+
+    /**
+     * Waits until the asynchronous processing is completed.
+     * @param waitTime the maximum time to wait
+     * @param unit the unit of <code>waitTime</code>
+     * @return <code>true</code> if the processing is completed,
+     *         <code>false</code> if the waiting time elapsed before
+     */
+    public boolean awaitCompletion(long waitTime, TimeUnit unit)
+    {
+        try
+        {
+            return completionLatch.await(waitTime, unit);
+        }
+        catch(InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Notifies the listeners, that a new asynchronous cycle was started.
+     * Called by {@link MockHttpServletRequest#startAsync}.
+     */
+    void fireStartAsync(MockAsyncContext newContext)
+    {
+        for(ListenerEntry entry : getListeners())
+        {
+            try
+            {
+                entry.listener.onStartAsync(entry.createEvent(newContext, null));
+            }
+            catch(IOException exc)
+            {
+                throw new NestedApplicationException(exc);
+            }
+        }
+    }
+
+    /**
+     * Starts the timeout. Called by {@link MockHttpServletRequest#startAsync}.
+     */
+    synchronized void startTimeout()
+    {
+        timeoutStarted = true;
+        scheduleTimeout();
+    }
+
+    private void scheduleTimeout()
+    {
+        if(timeout <= 0 || null != timeoutFuture || completed.get()) return;
+        timeoutFuture = timer.schedule(new Runnable()
+        {
+            public void run()
+            {
+                timeout();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the pending timeout without notifying the listeners.
+     * Called when the request is reset.
+     */
+    synchronized void cancelTimeout()
+    {
+        timeoutStarted = false;
+        if(null != timeoutFuture)
+        {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+    }
+
+    private void timeout()
+    {
+        if(completed.get()) return;
+        timedOut = true;
+        try
+        {
+            for(ListenerEntry entry : getListeners())
+            {
+                entry.listener.onTimeout(entry.createEvent(this, null));
+            }
+        }
+        catch(IOException exc)
+        {
+            throw new NestedApplicationException(exc);
+        }
+        finally
+        {
+            complete();
+        }
+    }
+
+    private void error(Throwable throwable)
+    {
+        try
+        {
+            for(ListenerEntry entry : getListeners())
+            {
+                entry.listener.onError(entry.createEvent(this, throwable));
+            }
+        }
+        catch(IOException exc)
+        {
+            throw new NestedApplicationException(exc);
+        }
+        finally
+        {
+            complete();
+        }
+    }
+
+    private synchronized List<ListenerEntry> getListeners()
+    {
+        return new ArrayList<ListenerEntry>(listeners);
+    }
+
+    private static class ListenerEntry
+    {
+        private final MockAsyncListener listener;
+        private final ServletRequest request;
+        private final ServletResponse response;
+
+        private ListenerEntry(MockAsyncListener listener, ServletRequest request, ServletResponse response)
+        {
+            this.listener = listener;
+            this.request = request;
+            this.response = response;
+        }
+
+        private MockAsyncEvent createEvent(MockAsyncContext context, Throwable throwable)
+        {
+            return new MockAsyncEvent(context, request, response, throwable);
+        }
+    }
+
+    private static class ThreadPerTaskExecutor implements Executor
+    {
+        private final ThreadFactory factory = new DaemonThreadFactory();
+
+        public void execute(Runnable task)
+        {
+            factory.newThread(task).start();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory
+    {
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "MockAsyncContext");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
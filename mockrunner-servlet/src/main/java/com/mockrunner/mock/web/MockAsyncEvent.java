@@ -0,0 +1,44 @@
+package com.mockrunner.mock.web;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Event of a {@link MockAsyncContext}, passed to the
+ * {@link MockAsyncListener} objects.
+ */
+public class MockAsyncEvent
+{
+    private MockAsyncContext context;
+    private ServletRequest request;
+    private ServletResponse response;
+    private Throwable throwable;
+
+    public MockAsyncEvent(MockAsyncContext context, ServletRequest request, ServletResponse response, Throwable throwable)
+    {
+        this.context = context;
+        this.request = request;
+        this.response = response;
+        this.throwable = throwable;
+    }
+
+    public MockAsyncContext getAsyncContext()
+    {
+        return context;
+    }
+
+    public ServletRequest getSuppliedRequest()
+    {
+        return request;
+    }
+
+    public ServletResponse getSuppliedResponse()
+    {
+        return response;
+    }
+
+    public Throwable getThrowable()
+    {
+        return throwable;
+    }
+}
@@ -0,0 +1,42 @@
+package com.mockrunner.mock.web;
+
+import java.io.IOException;
+
+/**
+ * Listener for the events of a {@link MockAsyncContext}. Mirrors
+ * the <code>AsyncListener</code> of the Servlet 3.0 API, which is
+ * not available with the Servlet 2.5 API Mockrunner is built against.
+ */
+public interface MockAsyncListener
+{
+    /**
+     * Called when the asynchronous operation is completed.
+     * @param event the event
+     * @throws IOException if an I/O error occurs
+     */
+    public void onComplete(MockAsyncEvent event) throws IOException;
+
+    /**
+     * Called when the asynchronous operation times out.
+     * @param event the event
+     * @throws IOException if an I/O error occurs
+     */
+    public void onTimeout(MockAsyncEvent event) throws IOException;
+
+    /**
+     * Called when a task started with {@link MockAsyncContext#start}
+     * or a dispatch throws an exception.
+     * @param event the event, {@link MockAsyncEvent#getThrowable}
+     *        returns the exception
+     * @throws IOException if an I/O error occurs
+     */
+    public void onError(MockAsyncEvent event) throws IOException;
+
+    /**
+     * Called when a new asynchronous cycle is started with
+     * <code>startAsync</code> on the request.
+     * @param event the event
+     * @throws IOException if an I/O error occurs
+     */
+    public void onStartAsync(MockAsyncEvent event) throws IOException;
+}
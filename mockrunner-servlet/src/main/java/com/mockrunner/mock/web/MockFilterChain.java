@@ -20,9 +20,9 @@ import com.mockrunner.base.NestedApplicationException;
  */
 public class MockFilterChain implements FilterChain
 {
-    private List filters = new ArrayList();
+    private List<Filter> filters = new ArrayList<Filter>();
     private Servlet servlet;
-    private Iterator iterator;
+    private Iterator<Filter> iterator;
     private List requestList = new ArrayList();
     private List responseList = new ArrayList();
     
@@ -36,7 +36,7 @@ public class MockFilterChain implements FilterChain
         }
         if(iterator.hasNext())
         {
-            Filter nextFilter = (Filter)iterator.next();
+            Filter nextFilter = iterator.next();
             nextFilter.doFilter(request, response, this);
         }
         else
@@ -79,7 +79,7 @@ public class MockFilterChain implements FilterChain
         }
         try
         {
-            filters.add(filterClass.newInstance());
+            filters.add((Filter)filterClass.newInstance());
         }
         catch(Exception exc)
         {
@@ -87,6 +87,15 @@ public class MockFilterChain implements FilterChain
         }
     }
     
+    /**
+     * Returns the list of filters of this chain.
+     * @return the filter list
+     */
+    public List<Filter> getFilters()
+    {
+        return Collections.unmodifiableList(filters);
+    }
+    
     /**
      * Sets the servlet that is called at the end of the chain.
      * @param servlet the servlet
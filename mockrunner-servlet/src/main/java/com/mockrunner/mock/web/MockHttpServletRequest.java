@@ -16,12 +16,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
 import javax.servlet.ServletRequestAttributeEvent;
 import javax.servlet.ServletRequestAttributeListener;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -64,6 +67,7 @@ public class MockHttpServletRequest implements HttpServletRequest
     private String contentType;
     private List cookies;
     private MockServletInputStream bodyContent;
+    private MockNonBlockingIOLoop eventLoop;
     private String localAddr;
     private String localName;
     private int localPort;
@@ -71,6 +75,10 @@ public class MockHttpServletRequest implements HttpServletRequest
     private boolean sessionCreated;
     private List attributeListener;
     private boolean isAsyncSupported;
+    private ServletResponse asyncResponse;
+    private Executor asyncExecutor;
+    private MockAsyncContext asyncContext;
+    private boolean isAsyncStarted;
     
     public MockHttpServletRequest()
     {
@@ -87,7 +95,7 @@ public class MockHttpServletRequest implements HttpServletRequest
         locales = new Vector();
         requestDispatchers = new HashMap();
         method = "GET";
-        headers = new CaseAwareMap();
+        headers = new CaseAwareMap<String, List<String>>();
         requestedSessionIdIsFromCookie = true;
         protocol = "HTTP/1.1";
         serverName = "localhost";
@@ -105,7 +113,11 @@ public class MockHttpServletRequest implements HttpServletRequest
         sessionCreated = false;
         attributeListener = new ArrayList();
         bodyContent = new MockServletInputStream(new byte[0]);
+        if(null != eventLoop) bodyContent.setEventLoop(eventLoop);
         isAsyncSupported = false;
+        if(null != asyncContext) asyncContext.cancelTimeout();
+        asyncContext = null;
+        isAsyncStarted = false;
     }
 
     public void addAttributeListener(ServletRequestAttributeListener listener)
@@ -641,6 +653,20 @@ public class MockHttpServletRequest implements HttpServletRequest
     public void setBodyContent(byte[] data)
     {
         bodyContent = new MockServletInputStream(data); 
+        if(null != eventLoop) bodyContent.setEventLoop(eventLoop);
+    }
+    
+    /**
+     * Sets the loop that drives the body content in non-blocking mode,
+     * i.e. after a {@link MockReadListener} was set on the
+     * {@link MockServletInputStream}. Use the same loop for the
+     * response to control reading and writing with one loop.
+     * @param eventLoop the loop
+     */
+    public void setEventLoop(MockNonBlockingIOLoop eventLoop)
+    {
+        this.eventLoop = eventLoop;
+        bodyContent.setEventLoop(eventLoop);
     }
     
     public void setBodyContent(String bodyContent)
@@ -720,6 +746,94 @@ public class MockHttpServletRequest implements HttpServletRequest
         this.isAsyncSupported = isAsyncSupported;
     }
 
+    /**
+     * Sets the response that is used by {@link #startAsync()}.
+     * The {@link WebMockObjectFactory} sets its <code>MockHttpServletResponse</code>.
+     * @param asyncResponse the response
+     */
+    public void setAsyncResponse(ServletResponse asyncResponse)
+    {
+        this.asyncResponse = asyncResponse;
+    }
+
+    /**
+     * Sets the <code>Executor</code> that runs the tasks passed to
+     * {@link MockAsyncContext#start}. If no <code>Executor</code> is
+     * set, every task runs in a new thread.
+     * @param asyncExecutor the <code>Executor</code>
+     */
+    public void setAsyncExecutor(Executor asyncExecutor)
+    {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Starts the asynchronous processing of this request with the
+     * response set by {@link #setAsyncResponse}.
+     * @return the {@link MockAsyncContext}
+     * @throws IllegalStateException if asynchronous processing is not supported
+     */
+    public MockAsyncContext startAsync()
+    {
+        return startAsync(this, asyncResponse, true);
+    }
+
+    /**
+     * Starts the asynchronous processing of this request with the
+     * specified request and response, e.g. wrappers.
+     * @param request the request
+     * @param response the response
+     * @return the {@link MockAsyncContext}
+     * @throws IllegalStateException if asynchronous processing is not supported
+     */
+    public MockAsyncContext startAsync(ServletRequest request, ServletResponse response)
+    {
+        return startAsync(request, response, request == this && response == asyncResponse);
+    }
+
+    private synchronized MockAsyncContext startAsync(ServletRequest request, ServletResponse response, boolean originalRequestAndResponse)
+    {
+        if(!isAsyncSupported)
+        {
+            throw new IllegalStateException("Asynchronous processing is not supported");
+        }
+        if(null != asyncContext && !asyncContext.isCompleted() && isAsyncStarted)
+        {
+            throw new IllegalStateException("Asynchronous processing is already started");
+        }
+        MockAsyncContext oldContext = asyncContext;
+        asyncContext = new MockAsyncContext(request, response, originalRequestAndResponse, asyncExecutor);
+        isAsyncStarted = true;
+        if(null != oldContext) oldContext.fireStartAsync(asyncContext);
+        asyncContext.startTimeout();
+        return asyncContext;
+    }
+
+    /**
+     * Returns if the asynchronous processing was started and
+     * is not completed.
+     * @return <code>true</code> if the asynchronous processing was started
+     */
+    public synchronized boolean isAsyncStarted()
+    {
+        return isAsyncStarted && null != asyncContext && !asyncContext.isCompleted();
+    }
+
+    /**
+     * Returns the {@link MockAsyncContext} created by the last call
+     * of {@link #startAsync}.
+     * @return the {@link MockAsyncContext}
+     * @throws IllegalStateException if the asynchronous processing was not started
+     */
+    public synchronized MockAsyncContext getAsyncContext()
+    {
+        if(null == asyncContext)
+        {
+            throw new IllegalStateException("Asynchronous processing was not started");
+        }
+        return asyncContext;
+    }
+
     private void handleAttributeListenerCalls(String key, Object value, Object oldValue)
     {
         if(null != oldValue)
@@ -1,10 +1,12 @@
 package com.mockrunner.mock.web;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,6 +39,8 @@ public class MockHttpServletResponse implements HttpServletResponse
     private int errorCode;
     private int statusCode;
     private List cookies;
+    private MockNonBlockingIOLoop eventLoop;
+    private boolean commitSimulated;
 
     public MockHttpServletResponse()
     {
@@ -48,7 +52,7 @@ public class MockHttpServletResponse implements HttpServletResponse
      */
     public void resetAll()
     {
-        headers = new CaseAwareMap();
+        headers = new CaseAwareMap<String, List<String>>();
         characterEncoding = "ISO-8859-1";
         bufferSize = 8192;
         wasErrorSent = false;
@@ -56,7 +60,9 @@ public class MockHttpServletResponse implements HttpServletResponse
         errorCode = SC_OK;
         statusCode = SC_OK;
         cookies = new ArrayList();
+        commitSimulated = false;
         outputStream = new MockServletOutputStream(characterEncoding);
+        if(null != eventLoop) outputStream.setEventLoop(eventLoop);
         try
         {
             writer = new PrintWriter(new OutputStreamWriter(outputStream, characterEncoding), true);
@@ -97,11 +103,55 @@ public class MockHttpServletResponse implements HttpServletResponse
         return outputStream;
     }
 
+    /**
+     * Sets the loop that drives the output stream in non-blocking mode,
+     * i.e. after a {@link MockWriteListener} was set on the
+     * {@link MockServletOutputStream}. Use the same loop for the
+     * request to control reading and writing with one loop.
+     * @param eventLoop the loop
+     */
+    public void setEventLoop(MockNonBlockingIOLoop eventLoop)
+    {
+        this.eventLoop = eventLoop;
+        outputStream.setEventLoop(eventLoop);
+    }
+
     public String getOutputStreamContent()
     {
         return outputStream.getContent();
     }
 
+    /**
+     * Returns a copy of the binary content of the output stream.
+     * @return the binary content
+     */
+    public byte[] getOutputStreamBinaryContent()
+    {
+        return outputStream.getBinaryContent();
+    }
+
+    /**
+     * Returns an <code>InputStream</code> that reads the content
+     * of the output stream without copying it, see
+     * {@link MockServletOutputStream#getContentAsInputStream}.
+     * @return the content as <code>InputStream</code>
+     */
+    public InputStream getOutputStreamContentAsInputStream()
+    {
+        return outputStream.getContentAsInputStream();
+    }
+
+    /**
+     * Returns read only <code>ByteBuffer</code> views of the content
+     * of the output stream, see
+     * {@link MockServletOutputStream#getContentAsByteBuffers}.
+     * @return the content as <code>ByteBuffer</code> array
+     */
+    public ByteBuffer[] getOutputStreamContentAsByteBuffers()
+    {
+        return outputStream.getContentAsByteBuffers();
+    }
+
     public void addCookie(Cookie cookie)
     {
         cookies.add(cookie);
@@ -185,6 +235,7 @@ public class MockHttpServletResponse implements HttpServletResponse
     {
         writer.flush();
         outputStream.flush();
+        if(commitSimulated) outputStream.commit();
     }
 
     public int getBufferSize()
@@ -221,13 +272,34 @@ public class MockHttpServletResponse implements HttpServletResponse
         this.locale = locale;
     }
 
+    /**
+     * Enables or disables the simulation of the commit state. If enabled,
+     * the response is committed when the content exceeds the buffer size or
+     * when {@link #flushBuffer} is called, and {@link #reset}, {@link #resetBuffer}
+     * and {@link #setBufferSize} throw an <code>IllegalStateException</code>
+     * like a real container does. Default is <code>false</code>, i.e. the
+     * response is never committed and the output can always be cleared.
+     * @param commitSimulated <code>true</code> to simulate the commit state
+     */
+    public void setCommitSimulated(boolean commitSimulated)
+    {
+        this.commitSimulated = commitSimulated;
+        outputStream.setBufferSize(commitSimulated ? bufferSize : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns if the response is committed. Always returns <code>false</code>,
+     * unless the commit state is simulated (see {@link #setCommitSimulated}).
+     * @return <code>true</code> if the response is committed
+     */
     public boolean isCommitted()
     {
-        return false;
+        return commitSimulated && outputStream.isCommitted();
     }
     
     public void reset()
     {
+        checkNotCommitted();
         errorCode = SC_OK;
         statusCode = SC_OK;
         clearHeaders();
@@ -236,6 +308,7 @@ public class MockHttpServletResponse implements HttpServletResponse
 
     public void resetBuffer()
     {
+        checkNotCommitted();
         outputStream.clearContent();
     }
     
@@ -246,7 +319,20 @@ public class MockHttpServletResponse implements HttpServletResponse
 
     public void setBufferSize(int size)
     {
+        if(commitSimulated && outputStream.getContentLength() > 0)
+        {
+            throw new IllegalStateException("Content has already been written");
+        }
         bufferSize = size;
+        if(commitSimulated) outputStream.setBufferSize(size);
+    }
+    
+    private void checkNotCommitted()
+    {
+        if(isCommitted())
+        {
+            throw new IllegalStateException("Response has already been committed");
+        }
     }
 
     public void setContentLength(int length)
@@ -2,11 +2,11 @@ package com.mockrunner.mock.web;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
@@ -17,17 +17,24 @@ import javax.servlet.http.HttpSessionContext;
 
 /**
  * Mock implementation of <code>HttpSession</code>.
+ * Like {@link MockServletContext}, the attributes are kept in a
+ * <code>ConcurrentHashMap</code> and the attribute methods are not
+ * synchronized, so requests that share a session
+ * (see {@link com.mockrunner.servlet.ServletLoadDriver}) do not contend
+ * on this object when accessing attributes. The binding and attribute
+ * listeners are called in the thread that changes the attribute.
+ * <code>null</code> is not allowed as attribute name.
  */
 public class MockHttpSession implements HttpSession
 {
-    private HashMap attributes;
+    private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
     private String sessionId;
     private boolean isNew;
-    private boolean isValid;
+    private volatile boolean isValid;
     private long creationTime;
     private ServletContext servletContext;
     private int maxInactiveInterval;
-    private List attributeListener;
+    private final List<HttpSessionAttributeListener> attributeListener = new CopyOnWriteArrayList<HttpSessionAttributeListener>();
 
     public MockHttpSession()
     {
@@ -39,15 +46,15 @@ public class MockHttpSession implements HttpSession
      */
     public synchronized void resetAll()
     {
-        attributes = new HashMap();
+        attributes.clear();
         isValid = true;
         creationTime = System.currentTimeMillis();
         sessionId = Double.toString(Math.random());
         maxInactiveInterval = -1;
-        attributeListener = new ArrayList();
+        attributeListener.clear();
     }
 
-    public synchronized void addAttributeListener(HttpSessionAttributeListener listener)
+    public void addAttributeListener(HttpSessionAttributeListener listener)
     {
         attributeListener.add(listener);
     }
@@ -66,7 +73,7 @@ public class MockHttpSession implements HttpSession
         return servletContext;
     }
     
-    public synchronized boolean isValid()
+    public boolean isValid()
     {
         return isValid;
     }
@@ -91,10 +98,9 @@ public class MockHttpSession implements HttpSession
     {
         if (!isValid) throw new IllegalStateException("session invalid");
         isValid = false;
-        Map clone = new HashMap(attributes);
-        for (Object o : clone.keySet()) {
-            doRemoveAttribute((String) o);
-        } 
+        for (String key : new ArrayList<String>(attributes.keySet())) {
+            doRemoveAttribute(key);
+        }
     }
 
     public synchronized String getId()
@@ -102,59 +108,63 @@ public class MockHttpSession implements HttpSession
         return sessionId;
     }
 
-    public synchronized Object getValue(String key)
+    @SuppressWarnings("deprecation")
+    public Object getValue(String key)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
         return getAttribute(key);
     }
 
-    public synchronized String[] getValueNames()
+    @SuppressWarnings("deprecation")
+    public String[] getValueNames()
     {
         if (!isValid) throw new IllegalStateException("session invalid");
-        Vector attKeys = new Vector(attributes.keySet());
-        return (String[]) attKeys.toArray();
+        return attributes.keySet().toArray(new String[0]);
     }
 
-    public synchronized void putValue(String key, Object value)
+    @SuppressWarnings("deprecation")
+    public void putValue(String key, Object value)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
         setAttribute(key, value);
     }
 
-    public synchronized void removeValue(String key)
+    @SuppressWarnings("deprecation")
+    public void removeValue(String key)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
         removeAttribute(key);
     }
     
-    public synchronized void clearAttributes()
+    public void clearAttributes()
     {
         attributes.clear();
     }
 
-    public synchronized Object getAttribute(String key)
+    public Object getAttribute(String key)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
+        if (null == key) return null;
         return attributes.get(key);
     }
 
-    public synchronized Enumeration getAttributeNames()
+    public Enumeration<String> getAttributeNames()
     {
         if (!isValid) throw new IllegalStateException("session invalid");
-        Vector attKeys = new Vector(attributes.keySet());
+        Vector<String> attKeys = new Vector<String>(attributes.keySet());
         return attKeys.elements();
     }
 
-    public synchronized void removeAttribute(String key)
+    public void removeAttribute(String key)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
+        if (null == key) return;
         doRemoveAttribute(key);
     }
 
     private void doRemoveAttribute(String key)
     {
-        Object value = attributes.get(key);
-        attributes.remove(key);
+        Object value = attributes.remove(key);
         if(null != value)
         {
             callValueUnboundMethod(key, value);
@@ -162,23 +172,27 @@ public class MockHttpSession implements HttpSession
         }
     }
 
-    public synchronized void setAttribute(String key, Object value)
+    public void setAttribute(String key, Object value)
     {
         if (!isValid) throw new IllegalStateException("session invalid");
-        Object oldValue = attributes.get(key); 
+        if (null == key)
+        {
+            throw new IllegalArgumentException("Attribute name must not be null");
+        }
+        Object oldValue;
         if(null == value)
         {
-            attributes.remove(key);
+            oldValue = attributes.remove(key);
         }
         else
         {
-            attributes.put(key, value);
+            oldValue = attributes.put(key, value);
         }
         handleBindingListenerCalls(key, value, oldValue);
         handleAttributeListenerCalls(key, value, oldValue);
     }
 
-    private synchronized void handleBindingListenerCalls(String key, Object value, Object oldValue)
+    private void handleBindingListenerCalls(String key, Object value, Object oldValue)
     {
         if(oldValue != null)
         {
@@ -190,7 +204,7 @@ public class MockHttpSession implements HttpSession
         }
     }
 
-    private synchronized void handleAttributeListenerCalls(String key, Object value, Object oldValue)
+    private void handleAttributeListenerCalls(String key, Object value, Object oldValue)
     {
         if(null != oldValue)
         {
@@ -228,36 +242,37 @@ public class MockHttpSession implements HttpSession
         return maxInactiveInterval;
     }
 
+    @SuppressWarnings("deprecation")
     public synchronized HttpSessionContext getSessionContext()
     {
         return new MockSessionContext();
     }
     
-    private synchronized void callAttributeListenersAddedMethod(String key, Object value)
+    private void callAttributeListenersAddedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (HttpSessionAttributeListener anAttributeListener : attributeListener) {
             HttpSessionBindingEvent event = new HttpSessionBindingEvent(this, key, value);
-            ((HttpSessionAttributeListener) anAttributeListener).attributeAdded(event);
+            anAttributeListener.attributeAdded(event);
         }
     }
 
-    private synchronized void callAttributeListenersReplacedMethod(String key, Object value)
+    private void callAttributeListenersReplacedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (HttpSessionAttributeListener anAttributeListener : attributeListener) {
             HttpSessionBindingEvent event = new HttpSessionBindingEvent(this, key, value);
-            ((HttpSessionAttributeListener) anAttributeListener).attributeReplaced(event);
+            anAttributeListener.attributeReplaced(event);
         }
     }
 
-    private synchronized void callAttributeListenersRemovedMethod(String key, Object value)
+    private void callAttributeListenersRemovedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (HttpSessionAttributeListener anAttributeListener : attributeListener) {
             HttpSessionBindingEvent event = new HttpSessionBindingEvent(this, key, value);
-            ((HttpSessionAttributeListener) anAttributeListener).attributeRemoved(event);
+            anAttributeListener.attributeRemoved(event);
         }
     }
 
-    private synchronized void callValueBoundMethod(String key, Object value)
+    private void callValueBoundMethod(String key, Object value)
     {
         if (value instanceof HttpSessionBindingListener)
         {
@@ -266,7 +281,7 @@ public class MockHttpSession implements HttpSession
         }
     }
 
-    private synchronized void callValueUnboundMethod(String key, Object value)
+    private void callValueUnboundMethod(String key, Object value)
     {
         if (value instanceof HttpSessionBindingListener)
         {
@@ -0,0 +1,93 @@
+package com.mockrunner.mock.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event loop for the non-blocking mode of {@link MockServletInputStream}
+ * and {@link MockServletOutputStream}. A stream switches to non-blocking
+ * mode when a listener is set and is then driven by its loop. Nothing
+ * happens until the test calls {@link #step} or {@link #run}, i.e. the
+ * test controls when request data arrives and when the simulated client
+ * accepts response data. Each step delivers the next chunk of the request
+ * body and the next write capacity of the response to every registered
+ * stream and calls the listeners, if data can be read or written.
+ * <br>
+ * The loop is not thread safe. It is meant to be stepped by the
+ * test thread.
+ */
+public class MockNonBlockingIOLoop
+{
+    private List<NonBlockingStream> streams;
+    private int stepCount;
+
+    public MockNonBlockingIOLoop()
+    {
+        streams = new ArrayList<NonBlockingStream>();
+        stepCount = 0;
+    }
+
+    /**
+     * Performs one step for every registered stream.
+     * Streams that get work during the step, e.g. because a read
+     * listener writes to the response, are stepped with the next step.
+     * @return <code>true</code> if at least one stream has more work
+     *         to do, <code>false</code> if the loop is idle
+     */
+    public boolean step()
+    {
+        stepCount++;
+        for(NonBlockingStream stream : new ArrayList<NonBlockingStream>(streams))
+        {
+            if(!stream.step())
+            {
+                streams.remove(stream);
+            }
+        }
+        return !streams.isEmpty();
+    }
+
+    /**
+     * Performs steps until the loop is idle or until <code>maxSteps</code>
+     * steps are performed. The limit prevents endless loops, if a listener
+     * never reads or if the simulated client stalls forever.
+     * @param maxSteps the maximum number of steps
+     * @return the number of performed steps
+     */
+    public int run(int maxSteps)
+    {
+        int steps = 0;
+        while(steps < maxSteps)
+        {
+            steps++;
+            if(!step()) break;
+        }
+        return steps;
+    }
+
+    /**
+     * Returns if no registered stream has work to do.
+     * @return <code>true</code> if the loop is idle
+     */
+    public boolean isIdle()
+    {
+        return streams.isEmpty();
+    }
+
+    /**
+     * Returns the number of steps performed by this loop.
+     * @return the number of steps
+     */
+    public int getStepCount()
+    {
+        return stepCount;
+    }
+
+    void register(NonBlockingStream stream)
+    {
+        if(!streams.contains(stream))
+        {
+            streams.add(stream);
+        }
+    }
+}
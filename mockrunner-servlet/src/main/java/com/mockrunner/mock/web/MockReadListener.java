@@ -0,0 +1,32 @@
+package com.mockrunner.mock.web;
+
+import java.io.IOException;
+
+/**
+ * Listener for the non-blocking read mode of {@link MockServletInputStream}.
+ * Mirrors the <code>ReadListener</code> of the Servlet 3.1 API, which is
+ * not available with the Servlet 2.5 API Mockrunner is built against.
+ * The methods are called by {@link MockNonBlockingIOLoop#step}.
+ */
+public interface MockReadListener
+{
+    /**
+     * Called when data can be read after <code>isReady()</code>
+     * returned <code>false</code> or after the listener was set.
+     * @throws IOException if an I/O error occurs
+     */
+    public void onDataAvailable() throws IOException;
+
+    /**
+     * Called when all data of the request body was read.
+     * @throws IOException if an I/O error occurs
+     */
+    public void onAllDataRead() throws IOException;
+
+    /**
+     * Called when one of the other methods throws an exception or
+     * when an error was simulated with {@link MockServletInputStream#simulateError}.
+     * @param throwable the error
+     */
+    public void onError(Throwable throwable);
+}
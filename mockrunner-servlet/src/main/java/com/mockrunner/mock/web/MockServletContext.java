@@ -14,6 +14,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.Servlet;
@@ -26,10 +29,16 @@ import com.mockrunner.util.common.StreamUtil;
 
 /**
  * Mock implementation of <code>ServletContext</code>.
+ * The attributes are kept in a <code>ConcurrentHashMap</code> and the
+ * attribute methods are not synchronized, so concurrent requests
+ * (see {@link com.mockrunner.servlet.ServletLoadDriver}) do not contend
+ * on this object when accessing attributes. The attribute listeners are
+ * called in the thread that changes the attribute. <code>null</code>
+ * is not allowed as attribute name.
  */
 public class MockServletContext implements ServletContext
 {
-    private Map attributes;
+    private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
     private Map requestDispatchers;
     private Map contexts;
     private Map initParameters;
@@ -41,7 +50,7 @@ public class MockServletContext implements ServletContext
     private String servletContextName;
     private String contextPath;
     //private JspConfigDescriptor jspConfigDescriptor;
-    private List attributeListener;
+    private final List<ServletContextAttributeListener> attributeListener = new CopyOnWriteArrayList<ServletContextAttributeListener>();
     private int majorVersion;
     private int minorVersion;
     private int effectiveMajorVersion;
@@ -57,7 +66,7 @@ public class MockServletContext implements ServletContext
      */
     public synchronized void resetAll()
     {
-        attributes = new HashMap();
+        attributes.clear();
         requestDispatchers = new HashMap();
         contexts = new HashMap();
         initParameters = new HashMap();
@@ -67,54 +76,59 @@ public class MockServletContext implements ServletContext
         resourcePaths = new HashMap();
         resourceStreams = new HashMap();
         //jspConfigDescriptor = new MockJspConfigDescriptor();
-        attributeListener = new ArrayList();
+        attributeListener.clear();
         majorVersion = 2;
         minorVersion = 5;
         effectiveMajorVersion = 2;
         effectiveMinorVersion = 5;
     }
 
-    public synchronized void addAttributeListener(ServletContextAttributeListener listener)
+    public void addAttributeListener(ServletContextAttributeListener listener)
     {
         attributeListener.add(listener);
     }
     
-    public synchronized void clearAttributes()
+    public void clearAttributes()
     {
         attributes.clear();
     }
         
-    public synchronized Object getAttribute(String key)
+    public Object getAttribute(String key)
     {
+        if(null == key) return null;
         return attributes.get(key);
     }
 
-    public synchronized Enumeration getAttributeNames()
+    public Enumeration<String> getAttributeNames()
     {
-        Vector attKeys = new Vector(attributes.keySet());
+        Vector<String> attKeys = new Vector<String>(attributes.keySet());
         return attKeys.elements();
     }
 
-    public synchronized void removeAttribute(String key)
+    public void removeAttribute(String key)
     {
-        Object value = attributes.get(key);
-        attributes.remove(key);
+        if(null == key) return;
+        Object value = attributes.remove(key);
         if(null != value)
         {
             callAttributeListenersRemovedMethod(key, value);
         }
     }
 
-    public synchronized void setAttribute(String key, Object value)
+    public void setAttribute(String key, Object value)
     {
-        Object oldValue = attributes.get(key);
+        if(null == key)
+        {
+            throw new IllegalArgumentException("Attribute name must not be null");
+        }
+        Object oldValue;
         if(null == value)
         {
-            attributes.remove(key);
+            oldValue = attributes.remove(key);
         }
         else
         {
-            attributes.put(key, value);
+            oldValue = attributes.put(key, value);
         }
         handleAttributeListenerCalls(key, value, oldValue);
     }
@@ -409,7 +423,7 @@ public class MockServletContext implements ServletContext
 
     }
     
-    private synchronized void handleAttributeListenerCalls(String key, Object value, Object oldValue)
+    private void handleAttributeListenerCalls(String key, Object value, Object oldValue)
     {
         if(null != oldValue)
         {
@@ -432,27 +446,27 @@ public class MockServletContext implements ServletContext
         }
     }
     
-    private synchronized void callAttributeListenersAddedMethod(String key, Object value)
+    private void callAttributeListenersAddedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (ServletContextAttributeListener anAttributeListener : attributeListener) {
             ServletContextAttributeEvent event = new ServletContextAttributeEvent(this, key, value);
-            ((ServletContextAttributeListener) anAttributeListener).attributeAdded(event);
+            anAttributeListener.attributeAdded(event);
         }
     }
 
-    private synchronized void callAttributeListenersReplacedMethod(String key, Object value)
+    private void callAttributeListenersReplacedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (ServletContextAttributeListener anAttributeListener : attributeListener) {
             ServletContextAttributeEvent event = new ServletContextAttributeEvent(this, key, value);
-            ((ServletContextAttributeListener) anAttributeListener).attributeReplaced(event);
+            anAttributeListener.attributeReplaced(event);
         }
     }
 
-    private synchronized void callAttributeListenersRemovedMethod(String key, Object value)
+    private void callAttributeListenersRemovedMethod(String key, Object value)
     {
-        for (Object anAttributeListener : attributeListener) {
+        for (ServletContextAttributeListener anAttributeListener : attributeListener) {
             ServletContextAttributeEvent event = new ServletContextAttributeEvent(this, key, value);
-            ((ServletContextAttributeListener) anAttributeListener).attributeRemoved(event);
+            anAttributeListener.attributeRemoved(event);
         }
     }
 }
@@ -1,24 +1,241 @@
 package com.mockrunner.mock.web;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import javax.servlet.ServletInputStream;
 
 /**
  * Mock implementation of <code>ServletInputStream</code>.
+ * <br>
+ * The stream switches to a simulated non-blocking mode when a
+ * {@link MockReadListener} is set. In this mode, the data arrives in
+ * chunks (see {@link #setChunkSize} and {@link #setChunkSizes}), one
+ * chunk with every step of the {@link MockNonBlockingIOLoop}, and
+ * {@link #isReady} returns <code>false</code> when the data that has
+ * arrived so far is read. Reading in this state throws an
+ * <code>IllegalStateException</code>, like a real container does.
+ * Without a listener, the chunk sizes are ignored and the whole
+ * data can be read at once.
  */
 public class MockServletInputStream extends ServletInputStream
 {
-    private ByteArrayInputStream stream;
-    
+    private final NonBlockingStream nonBlockingStream = new NonBlockingStream()
+    {
+        public boolean step()
+        {
+            return doStep();
+        }
+    };
+    private byte[] data;
+    private int position;
+    private int arrivedLength;
+    private int chunkSize;
+    private int[] chunkSizes;
+    private int nextChunk;
+    private MockNonBlockingIOLoop eventLoop;
+    private MockReadListener readListener;
+    private boolean dataAvailableCallbackPending;
+    private boolean allDataReadCalled;
+    private Throwable error;
+    private boolean errorCalled;
+
     public MockServletInputStream(byte[] data)
     {
-        stream = new ByteArrayInputStream(data);
+        this.data = data;
+        position = 0;
+        arrivedLength = data.length;
+        chunkSize = -1;
+        chunkSizes = new int[0];
+        nextChunk = 0;
+    }
+
+    /**
+     * Sets the size of the chunks, in which the data arrives in
+     * non-blocking mode. Default is <code>-1</code>, i.e. the data
+     * arrives at once. Applies to the chunks after the ones
+     * set with {@link #setChunkSizes}.
+     * @param chunkSize the chunk size
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the sizes of the next chunks, in which the data arrives in
+     * non-blocking mode. A size of <code>0</code> simulates a client,
+     * that does not send data in this step. After the scripted chunks,
+     * the data arrives in chunks of the size set with {@link #setChunkSize}.
+     * @param chunkSizes the chunk sizes
+     */
+    public void setChunkSizes(int... chunkSizes)
+    {
+        this.chunkSizes = chunkSizes.clone();
+        nextChunk = 0;
+    }
+
+    /**
+     * Sets the loop that drives this stream in non-blocking mode.
+     * If no loop is set, the stream creates its own loop.
+     * @param eventLoop the loop
+     */
+    public void setEventLoop(MockNonBlockingIOLoop eventLoop)
+    {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Returns the loop that drives this stream in non-blocking mode.
+     * @return the loop
+     */
+    public MockNonBlockingIOLoop getEventLoop()
+    {
+        if(null == eventLoop)
+        {
+            eventLoop = new MockNonBlockingIOLoop();
+        }
+        return eventLoop;
+    }
+
+    /**
+     * Switches the stream to non-blocking mode. No data has arrived
+     * yet. The first step of the loop delivers the first chunk and
+     * calls {@link MockReadListener#onDataAvailable}.
+     * @param readListener the listener
+     * @throws IllegalStateException if a listener is already set
+     */
+    public void setReadListener(MockReadListener readListener)
+    {
+        if(null == readListener)
+        {
+            throw new NullPointerException("readListener must not be null");
+        }
+        if(null != this.readListener)
+        {
+            throw new IllegalStateException("ReadListener is already set");
+        }
+        this.readListener = readListener;
+        arrivedLength = position;
+        dataAvailableCallbackPending = true;
+        getEventLoop().register(nonBlockingStream);
+    }
+
+    /**
+     * Simulates an error of the connection, e.g. a client that aborts
+     * the request. The listener is notified with the next step of the loop.
+     * @param error the error
+     */
+    public void simulateError(Throwable error)
+    {
+        this.error = error;
+        if(null != readListener) getEventLoop().register(nonBlockingStream);
+    }
+
+    /**
+     * Returns if data can be read without blocking. Returns
+     * <code>true</code> if all data was read.
+     * @return <code>true</code> if data can be read
+     */
+    public boolean isReady()
+    {
+        if(position < arrivedLength || arrivedLength >= data.length) return true;
+        dataAvailableCallbackPending = true;
+        getEventLoop().register(nonBlockingStream);
+        return false;
     }
-        
+
+    /**
+     * Returns if all data was read.
+     * @return <code>true</code> if all data was read
+     */
+    public boolean isFinished()
+    {
+        return position >= data.length;
+    }
+
     public int read() throws IOException
     {
-        return stream.read();
+        checkNotBlocking();
+        if(position >= data.length) return -1;
+        return data[position++] & 0xFF;
+    }
+
+    public int read(byte[] buffer, int offset, int len) throws IOException
+    {
+        if(offset < 0 || len < 0 || offset + len > buffer.length)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        if(len == 0) return 0;
+        checkNotBlocking();
+        if(position >= data.length) return -1;
+        int count = Math.min(len, arrivedLength - position);
+        System.arraycopy(data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    public int available() throws IOException
+    {
+        return arrivedLength - position;
+    }
+
+    public long skip(long number) throws IOException
+    {
+        long count = Math.max(0, Math.min(number, arrivedLength - position));
+        position += count;
+        return count;
+    }
+
+    private boolean doStep()
+    {
+        if(null == readListener || errorCalled) return false;
+        try
+        {
+            if(null != error)
+            {
+                errorCalled = true;
+                readListener.onError(error);
+                return false;
+            }
+            if(arrivedLength < data.length)
+            {
+                arrivedLength += Math.min(data.length - arrivedLength, nextChunkSize());
+            }
+            if(dataAvailableCallbackPending && position < arrivedLength)
+            {
+                dataAvailableCallbackPending = false;
+                readListener.onDataAvailable();
+            }
+            if(!allDataReadCalled && position >= data.length)
+            {
+                allDataReadCalled = true;
+                readListener.onAllDataRead();
+            }
+        }
+        catch(Exception exc)
+        {
+            errorCalled = true;
+            readListener.onError(exc);
+            return false;
+        }
+        return !allDataReadCalled && (arrivedLength < data.length || dataAvailableCallbackPending);
+    }
+
+    private int nextChunkSize()
+    {
+        if(nextChunk < chunkSizes.length)
+        {
+            return chunkSizes[nextChunk++];
+        }
+        return (chunkSize > 0) ? chunkSize : data.length;
+    }
+
+    private void checkNotBlocking()
+    {
+        if(position >= arrivedLength && arrivedLength < data.length)
+        {
+            throw new IllegalStateException("No data available, isReady() returned false");
+        }
     }
 }
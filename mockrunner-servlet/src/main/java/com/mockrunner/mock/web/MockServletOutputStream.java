@@ -1,7 +1,14 @@
 package com.mockrunner.mock.web;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletOutputStream;
 
@@ -9,61 +16,501 @@ import com.mockrunner.base.NestedApplicationException;
 
 /**
  * Mock implementation of <code>ServletOutputStream</code>.
+ * The content is kept in chunks of {@link #CHUNK_SIZE} bytes, i.e. large
+ * content is never copied to grow the buffer. The chunks are taken from
+ * a pool, which is shared by all streams, and returned to the pool by
+ * {@link #clearContent}. {@link #getContentAsInputStream} and
+ * {@link #getContentAsByteBuffers} return views of the chunks without
+ * copying the content. Chunks that were exposed by a view are not
+ * returned to the pool, so the views stay valid after the content
+ * is cleared. The <code>String</code> returned by {@link #getContent}
+ * is cached until the next write.
+ * The stream is committed, if the content exceeds the buffer size
+ * (see {@link #setBufferSize}) or if the response is flushed with
+ * {@link MockHttpServletResponse#flushBuffer}. Calling
+ * <code>flush()</code> on the stream does not commit it, because the
+ * writer of {@link MockHttpServletResponse} flushes automatically.
+ * <br>
+ * The stream switches to a simulated non-blocking mode when a
+ * {@link MockWriteListener} is set. In this mode, the simulated client
+ * accepts a number of bytes with every step of the {@link MockNonBlockingIOLoop}
+ * (see {@link #setWriteCapacity} and {@link #setWriteCapacities}).
+ * If more bytes are written than the client accepted, {@link #isReady}
+ * returns <code>false</code> until the client accepted the pending bytes.
+ * Writing in this state throws an <code>IllegalStateException</code>, like
+ * a real container does. The content contains all written bytes, regardless
+ * of whether they were accepted.
  */
 public class MockServletOutputStream extends ServletOutputStream
 {
-    private ByteArrayOutputStream buffer;
+    public final static int CHUNK_SIZE = 8192;
+    private final static int MAXIMUM_POOLED_CHUNKS = 256;
+    private final static Queue<byte[]> chunkPool = new ConcurrentLinkedQueue<byte[]>();
+    private final static AtomicInteger numberPooledChunks = new AtomicInteger();
+
+    private List<byte[]> chunks;
+    private boolean chunksExposed;
+    private long length;
     private String encoding;
-    
+    private String content;
+    private int bufferSize;
+    private boolean committed;
+    private final NonBlockingStream nonBlockingStream = new NonBlockingStream()
+    {
+        public boolean step()
+        {
+            return doStep();
+        }
+    };
+    private long writeCapacity;
+    private int[] writeCapacities;
+    private int nextCapacity;
+    private long remainingCapacity;
+    private long pendingLength;
+    private MockNonBlockingIOLoop eventLoop;
+    private MockWriteListener writeListener;
+    private boolean ready;
+    private boolean writePossibleCallbackPending;
+    private Throwable error;
+    private boolean errorCalled;
+
     public MockServletOutputStream()
     {
         this("ISO-8859-1");
     }
-    
+
     public MockServletOutputStream(String encoding)
     {
-        buffer = new ByteArrayOutputStream();
+        chunks = new ArrayList<byte[]>();
+        length = 0;
         this.encoding = encoding;
+        content = null;
+        bufferSize = Integer.MAX_VALUE;
+        committed = false;
+        writeCapacity = -1;
+        writeCapacities = new int[0];
+        nextCapacity = 0;
+        ready = true;
     }
-    
+
     public void setEncoding(String encoding)
     {
         this.encoding = encoding;
+        content = null;
     }
-    
+
     public void write(int value) throws IOException
     {
-        buffer.write(value);
+        checkReady();
+        int offset = (int)(length % CHUNK_SIZE);
+        if(offset == 0 && length / CHUNK_SIZE == chunks.size())
+        {
+            chunks.add(takeChunk());
+        }
+        chunks.get((int)(length / CHUNK_SIZE))[offset] = (byte)value;
+        written(1);
+    }
+
+    public void write(byte[] data, int offset, int len) throws IOException
+    {
+        if(offset < 0 || len < 0 || offset + len > data.length)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        checkReady();
+        int remaining = len;
+        int position = offset;
+        while(remaining > 0)
+        {
+            int chunkOffset = (int)(length % CHUNK_SIZE);
+            if(chunkOffset == 0 && length / CHUNK_SIZE == chunks.size())
+            {
+                chunks.add(takeChunk());
+            }
+            int count = Math.min(remaining, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(data, position, chunks.get((int)(length / CHUNK_SIZE)), chunkOffset, count);
+            position += count;
+            remaining -= count;
+            written(count);
+        }
     }
-    
+
+    /**
+     * Returns the content decoded with the encoding of this stream.
+     * The decoded content is cached until the next write.
+     * @return the content
+     */
     public String getContent()
     {
+        if(null != content) return content;
         try
         {
-            buffer.flush();
-            return buffer.toString(encoding);
-        } 
-        catch(IOException exc)
+            content = new String(getBinaryContent(), encoding);
+            return content;
+        }
+        catch(UnsupportedEncodingException exc)
         {
             throw new NestedApplicationException(exc);
         }
     }
-    
+
+    /**
+     * Returns a copy of the content.
+     * @return the content
+     */
     public byte[] getBinaryContent()
     {
-        try
+        if(length > Integer.MAX_VALUE)
         {
-            buffer.flush();
-            return buffer.toByteArray();
-        } 
-        catch(IOException exc)
+            throw new IllegalStateException("content is too large for an array");
+        }
+        byte[] data = new byte[(int)length];
+        int position = 0;
+        for(byte[] chunk : chunks)
         {
-            throw new NestedApplicationException(exc);
+            int count = (int)Math.min(CHUNK_SIZE, length - position);
+            System.arraycopy(chunk, 0, data, position, count);
+            position += count;
+        }
+        return data;
+    }
+
+    /**
+     * Returns the number of bytes written to this stream.
+     * @return the content length
+     */
+    public long getContentLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns an <code>InputStream</code> that reads the current
+     * content without copying it. Bytes written afterwards are
+     * not read.
+     * @return the content as <code>InputStream</code>
+     */
+    public InputStream getContentAsInputStream()
+    {
+        chunksExposed = true;
+        return new ChunkInputStream(new ArrayList<byte[]>(chunks), length);
+    }
+
+    /**
+     * Returns read only <code>ByteBuffer</code> views of the chunks
+     * of the current content. The content is not copied.
+     * @return the content as <code>ByteBuffer</code> array
+     */
+    public ByteBuffer[] getContentAsByteBuffers()
+    {
+        chunksExposed = true;
+        ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+        for(int ii = 0; ii < buffers.length; ii++)
+        {
+            int count = (int)Math.min(CHUNK_SIZE, length - (long)ii * CHUNK_SIZE);
+            buffers[ii] = ByteBuffer.wrap(chunks.get(ii), 0, count).asReadOnlyBuffer();
         }
+        return buffers;
     }
-    
+
+    /**
+     * Clears the content and returns the chunks to the pool,
+     * unless they were exposed by a view.
+     * The commit state is not changed.
+     */
     public void clearContent()
     {
-        buffer = new ByteArrayOutputStream();
+        if(!chunksExposed)
+        {
+            for(byte[] chunk : chunks)
+            {
+                returnChunk(chunk);
+            }
+        }
+        chunks = new ArrayList<byte[]>();
+        chunksExposed = false;
+        length = 0;
+        content = null;
+    }
+
+    /**
+     * Sets the buffer size. The stream is committed when the
+     * content exceeds the buffer size. Default is
+     * <code>Integer.MAX_VALUE</code>.
+     * @param bufferSize the buffer size
+     */
+    public void setBufferSize(int bufferSize)
+    {
+        this.bufferSize = bufferSize;
+        if(length > bufferSize) committed = true;
+    }
+
+    /**
+     * Returns if the content was sent to the client, i.e. if the
+     * content exceeded the buffer size or the response was flushed.
+     * @return <code>true</code> if this stream is committed
+     */
+    public boolean isCommitted()
+    {
+        return committed;
+    }
+
+    /**
+     * Commits this stream, e.g. because the response is flushed.
+     */
+    public void commit()
+    {
+        committed = true;
+    }
+
+    /**
+     * Sets the number of bytes the simulated client accepts with every
+     * step of the loop in non-blocking mode. Default is <code>-1</code>,
+     * i.e. the client accepts all bytes. Applies to the steps after the
+     * ones set with {@link #setWriteCapacities}.
+     * @param writeCapacity the number of bytes per step
+     */
+    public void setWriteCapacity(int writeCapacity)
+    {
+        this.writeCapacity = writeCapacity;
+    }
+
+    /**
+     * Sets the number of bytes the simulated client accepts with the next
+     * steps of the loop in non-blocking mode. A capacity of <code>0</code>
+     * simulates a client, that does not read in this step.
+     * @param writeCapacities the number of bytes for the next steps
+     */
+    public void setWriteCapacities(int... writeCapacities)
+    {
+        this.writeCapacities = writeCapacities.clone();
+        nextCapacity = 0;
+    }
+
+    /**
+     * Sets the loop that drives this stream in non-blocking mode.
+     * If no loop is set, the stream creates its own loop.
+     * @param eventLoop the loop
+     */
+    public void setEventLoop(MockNonBlockingIOLoop eventLoop)
+    {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Returns the loop that drives this stream in non-blocking mode.
+     * @return the loop
+     */
+    public MockNonBlockingIOLoop getEventLoop()
+    {
+        if(null == eventLoop)
+        {
+            eventLoop = new MockNonBlockingIOLoop();
+        }
+        return eventLoop;
+    }
+
+    /**
+     * Switches the stream to non-blocking mode. The first step of
+     * the loop calls {@link MockWriteListener#onWritePossible}.
+     * @param writeListener the listener
+     * @throws IllegalStateException if a listener is already set
+     */
+    public void setWriteListener(MockWriteListener writeListener)
+    {
+        if(null == writeListener)
+        {
+            throw new NullPointerException("writeListener must not be null");
+        }
+        if(null != this.writeListener)
+        {
+            throw new IllegalStateException("WriteListener is already set");
+        }
+        this.writeListener = writeListener;
+        remainingCapacity = 0;
+        writePossibleCallbackPending = true;
+        getEventLoop().register(nonBlockingStream);
+    }
+
+    /**
+     * Simulates an error of the connection, e.g. a client that closes
+     * the connection. The listener is notified with the next step of the loop.
+     * @param error the error
+     */
+    public void simulateError(Throwable error)
+    {
+        this.error = error;
+        if(null != writeListener) getEventLoop().register(nonBlockingStream);
+    }
+
+    /**
+     * Returns if data can be written without blocking, i.e. if the
+     * simulated client accepted all written bytes.
+     * @return <code>true</code> if data can be written
+     */
+    public boolean isReady()
+    {
+        if(ready) return true;
+        writePossibleCallbackPending = true;
+        getEventLoop().register(nonBlockingStream);
+        return false;
+    }
+
+    /**
+     * Returns the number of written bytes, that the simulated client
+     * did not accept yet in non-blocking mode.
+     * @return the number of pending bytes
+     */
+    public long getPendingLength()
+    {
+        return pendingLength;
+    }
+
+    private void checkReady()
+    {
+        if(!ready)
+        {
+            throw new IllegalStateException("Stream is not ready, isReady() returned false");
+        }
+    }
+
+    private void written(int count)
+    {
+        length += count;
+        content = null;
+        if(length > bufferSize) committed = true;
+        if(null != writeListener)
+        {
+            long accepted = Math.min(count, remainingCapacity);
+            remainingCapacity -= accepted;
+            pendingLength += count - accepted;
+            if(pendingLength > 0)
+            {
+                ready = false;
+                getEventLoop().register(nonBlockingStream);
+            }
+        }
+    }
+
+    private boolean doStep()
+    {
+        if(null == writeListener || errorCalled) return false;
+        try
+        {
+            if(null != error)
+            {
+                errorCalled = true;
+                writeListener.onError(error);
+                return false;
+            }
+            remainingCapacity = nextCapacity();
+            long accepted = Math.min(pendingLength, remainingCapacity);
+            pendingLength -= accepted;
+            remainingCapacity -= accepted;
+            if(pendingLength == 0) ready = true;
+            if(ready && writePossibleCallbackPending)
+            {
+                writePossibleCallbackPending = false;
+                writeListener.onWritePossible();
+            }
+        }
+        catch(Exception exc)
+        {
+            errorCalled = true;
+            writeListener.onError(exc);
+            return false;
+        }
+        return pendingLength > 0 || writePossibleCallbackPending;
+    }
+
+    private long nextCapacity()
+    {
+        if(nextCapacity < writeCapacities.length)
+        {
+            return writeCapacities[nextCapacity++];
+        }
+        return (writeCapacity >= 0) ? writeCapacity : Long.MAX_VALUE;
+    }
+
+    private static byte[] takeChunk()
+    {
+        byte[] chunk = chunkPool.poll();
+        if(null == chunk) return new byte[CHUNK_SIZE];
+        numberPooledChunks.decrementAndGet();
+        return chunk;
+    }
+
+    private static void returnChunk(byte[] chunk)
+    {
+        if(numberPooledChunks.incrementAndGet() > MAXIMUM_POOLED_CHUNKS)
+        {
+            numberPooledChunks.decrementAndGet();
+            return;
+        }
+        chunkPool.offer(chunk);
+    }
+
+    private static class ChunkInputStream extends InputStream
+    {
+        private final List<byte[]> chunks;
+        private final long length;
+        private long position;
+        private long mark;
+
+        private ChunkInputStream(List<byte[]> chunks, long length)
+        {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        public int read()
+        {
+            if(position >= length) return -1;
+            int value = chunks.get((int)(position / CHUNK_SIZE))[(int)(position % CHUNK_SIZE)] & 0xFF;
+            position++;
+            return value;
+        }
+
+        public int read(byte[] data, int offset, int len)
+        {
+            if(offset < 0 || len < 0 || offset + len > data.length)
+            {
+                throw new IndexOutOfBoundsException();
+            }
+            if(len == 0) return 0;
+            if(position >= length) return -1;
+            int chunkOffset = (int)(position % CHUNK_SIZE);
+            int count = (int)Math.min(Math.min(len, CHUNK_SIZE - chunkOffset), length - position);
+            System.arraycopy(chunks.get((int)(position / CHUNK_SIZE)), chunkOffset, data, offset, count);
+            position += count;
+            return count;
+        }
+
+        public long skip(long number)
+        {
+            long count = Math.max(0, Math.min(number, length - position));
+            position += count;
+            return count;
+        }
+
+        public int available()
+        {
+            return (int)Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        public void mark(int readLimit)
+        {
+            mark = position;
+        }
+
+        public void reset()
+        {
+            position = mark;
+        }
     }
 }
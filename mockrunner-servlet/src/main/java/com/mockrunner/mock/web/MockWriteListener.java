@@ -0,0 +1,26 @@
+package com.mockrunner.mock.web;
+
+import java.io.IOException;
+
+/**
+ * Listener for the non-blocking write mode of {@link MockServletOutputStream}.
+ * Mirrors the <code>WriteListener</code> of the Servlet 3.1 API, which is
+ * not available with the Servlet 2.5 API Mockrunner is built against.
+ * The methods are called by {@link MockNonBlockingIOLoop#step}.
+ */
+public interface MockWriteListener
+{
+    /**
+     * Called when data can be written after <code>isReady()</code>
+     * returned <code>false</code> or after the listener was set.
+     * @throws IOException if an I/O error occurs
+     */
+    public void onWritePossible() throws IOException;
+
+    /**
+     * Called when {@link #onWritePossible} throws an exception or
+     * when an error was simulated with {@link MockServletOutputStream#simulateError}.
+     * @param throwable the error
+     */
+    public void onError(Throwable throwable);
+}
@@ -0,0 +1,15 @@
+package com.mockrunner.mock.web;
+
+/**
+ * A stream in non-blocking mode, that is driven by a
+ * {@link MockNonBlockingIOLoop}.
+ */
+interface NonBlockingStream
+{
+    /**
+     * Simulates one step of the client, e.g. the arrival of the next
+     * chunk of data, and calls the listener if necessary.
+     * @return <code>true</code> if the stream has more work to do
+     */
+    public boolean step();
+}
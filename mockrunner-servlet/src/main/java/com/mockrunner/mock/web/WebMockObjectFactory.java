@@ -102,6 +102,7 @@ public class WebMockObjectFactory
     {
         config.setServletContext(context);
         request.setSession(session);
+        request.setAsyncResponse(response);
         session.setupServletContext(context);
         pageContext = createMockPageContext();
         pageContext.setServletConfig(config);
@@ -1,5 +1,8 @@
 package com.mockrunner.servlet;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.Filter;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -294,6 +297,30 @@ public abstract class BasicServletTestCaseAdapter extends BasicHTMLOutputTestCas
         servletTestModule.setDoChain(doChain);
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#setAsyncExecutor}
+     */
+    protected void setAsyncExecutor(Executor executor)
+    {
+        servletTestModule.setAsyncExecutor(executor);
+    }
+
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#isAsyncStarted}
+     */
+    protected boolean isAsyncStarted()
+    {
+        return servletTestModule.isAsyncStarted();
+    }
+
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#awaitAsyncCompletion}
+     */
+    protected boolean awaitAsyncCompletion(long waitTime, TimeUnit unit)
+    {
+        return servletTestModule.awaitAsyncCompletion(waitTime, unit);
+    }
+
     /**
      * Delegates to {@link com.mockrunner.servlet.ServletTestModule#doFilter}
      */
@@ -318,6 +345,14 @@ public abstract class BasicServletTestCaseAdapter extends BasicHTMLOutputTestCas
         return servletTestModule.getFilteredResponse();
     }
 
+    /**
+     * Delegates to {@link com.mockrunner.servlet.ServletTestModule#createLoadDriver}
+     */
+    protected ServletLoadDriver createLoadDriver()
+    {
+        return servletTestModule.createLoadDriver();
+    }
+
     /**
      * Delegates to {@link com.mockrunner.servlet.ServletTestModule#clearOutput}
      */
@@ -0,0 +1,277 @@
+package com.mockrunner.servlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+
+import com.mockrunner.base.NestedApplicationException;
+import com.mockrunner.mock.web.MockFilterChain;
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+import com.mockrunner.mock.web.MockHttpSession;
+import com.mockrunner.mock.web.MockServletContext;
+import com.mockrunner.mock.web.WebMockObjectFactory;
+
+/**
+ * Executes concurrent requests against a servlet and its filters
+ * to find contention and thread safety problems.
+ * Unlike {@link ServletTestModule}, which uses the one request and response
+ * of the {@link WebMockObjectFactory}, every request gets its own
+ * <code>MockHttpServletRequest</code>, <code>MockHttpServletResponse</code>
+ * and <code>MockFilterChain</code>. All requests share the
+ * <code>MockServletContext</code> of the factory and a pool of sessions.
+ * Request number <i>n</i> uses the session <i>n</i> modulo the pool size.
+ * The attribute methods of <code>MockServletContext</code> and
+ * <code>MockHttpSession</code> are not synchronized, so sharing them does
+ * not serialize the requests on the mock objects.
+ * The requests are executed by a pool of threads, which start at the same
+ * time. {@link #run} returns a {@link ServletLoadResult} with the throughput
+ * and the latencies.
+ * <br>
+ * The servlet and the filters are not initialized by this class. Use
+ * {@link ServletTestModule#createLoadDriver} to create a driver with the
+ * servlet and the filters of a <code>ServletTestModule</code>.
+ */
+public class ServletLoadDriver
+{
+    private WebMockObjectFactory mockFactory;
+    private HttpServlet servlet;
+    private List<Filter> filters;
+    private int threadCount;
+    private int sessionPoolSize;
+    private String method;
+    private RequestPreparer requestPreparer;
+    private List<MockHttpSession> sessions;
+
+    public ServletLoadDriver(WebMockObjectFactory mockFactory)
+    {
+        this.mockFactory = mockFactory;
+        filters = new ArrayList<Filter>();
+        threadCount = Runtime.getRuntime().availableProcessors();
+        sessionPoolSize = 1;
+        method = "GET";
+        sessions = new ArrayList<MockHttpSession>();
+    }
+
+    /**
+     * Sets the servlet that is called at the end of the filter chain.
+     * @param servlet the servlet
+     */
+    public void setServlet(HttpServlet servlet)
+    {
+        this.servlet = servlet;
+    }
+
+    /**
+     * Adds a filter to the filter chain of every request.
+     * @param filter the filter
+     */
+    public void addFilter(Filter filter)
+    {
+        filters.add(filter);
+    }
+
+    /**
+     * Sets the number of threads that execute the requests.
+     * Default is the number of available processors.
+     * @param threadCount the number of threads
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if(threadCount <= 0)
+        {
+            throw new IllegalArgumentException("threadCount must be greater than 0");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the number of sessions that are shared by the requests.
+     * Default is <code>1</code>, i.e. all requests use the same session.
+     * @param sessionPoolSize the number of sessions
+     */
+    public void setSessionPoolSize(int sessionPoolSize)
+    {
+        if(sessionPoolSize <= 0)
+        {
+            throw new IllegalArgumentException("sessionPoolSize must be greater than 0");
+        }
+        this.sessionPoolSize = sessionPoolSize;
+    }
+
+    /**
+     * Sets the HTTP method of the requests. Default is <code>GET</code>.
+     * @param method the HTTP method
+     */
+    public void setMethod(String method)
+    {
+        this.method = method;
+    }
+
+    /**
+     * Sets a {@link RequestPreparer}, that is called before every request,
+     * e.g. to set parameters.
+     * @param requestPreparer the {@link RequestPreparer}
+     */
+    public void setRequestPreparer(RequestPreparer requestPreparer)
+    {
+        this.requestPreparer = requestPreparer;
+    }
+
+    /**
+     * Returns the sessions of the last run.
+     * @return the list of sessions
+     */
+    public List<MockHttpSession> getSessions()
+    {
+        return new ArrayList<MockHttpSession>(sessions);
+    }
+
+    /**
+     * Executes the specified number of requests and waits until all
+     * requests are finished. Exceptions thrown by the servlet or the
+     * filters do not stop the run. They are returned by
+     * {@link ServletLoadResult#getFailures}.
+     * @param numberRequests the number of requests
+     * @return the result
+     */
+    public ServletLoadResult run(final int numberRequests)
+    {
+        sessions = createSessions();
+        final long[] latencies = new long[numberRequests];
+        final Throwable[] failures = new Throwable[numberRequests];
+        final MockHttpServletResponse[] responses = new MockHttpServletResponse[numberRequests];
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final AtomicInteger nextRequest = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new LoadThreadFactory());
+        try
+        {
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+            for(int ii = 0; ii < threadCount; ii++)
+            {
+                workers.add(executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        awaitStart(startSignal);
+                        int requestNumber;
+                        while((requestNumber = nextRequest.getAndIncrement()) < numberRequests)
+                        {
+                            executeRequest(requestNumber, latencies, failures, responses);
+                        }
+                    }
+                }));
+            }
+            long start = System.nanoTime();
+            startSignal.countDown();
+            for(Future<?> worker : workers)
+            {
+                worker.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return new ServletLoadResult(elapsed, latencies, failures, responses);
+        }
+        catch(InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            throw new NestedApplicationException(exc);
+        }
+        catch(ExecutionException exc)
+        {
+            throw new NestedApplicationException(exc.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<MockHttpSession> createSessions()
+    {
+        MockServletContext context = mockFactory.getMockServletContext();
+        List<MockHttpSession> newSessions = new ArrayList<MockHttpSession>();
+        for(int ii = 0; ii < sessionPoolSize; ii++)
+        {
+            MockHttpSession session = new MockHttpSession();
+            session.setupServletContext(context);
+            newSessions.add(session);
+        }
+        return newSessions;
+    }
+
+    private void executeRequest(int requestNumber, long[] latencies, Throwable[] failures, MockHttpServletResponse[] responses)
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setMethod(method);
+        request.setSession(sessions.get(requestNumber % sessions.size()));
+        request.setAsyncResponse(response);
+        MockFilterChain chain = new MockFilterChain();
+        for(Filter filter : filters)
+        {
+            chain.addFilter(filter);
+        }
+        chain.setServlet(servlet);
+        long start = System.nanoTime();
+        try
+        {
+            if(null != requestPreparer)
+            {
+                requestPreparer.prepare(request, requestNumber);
+                start = System.nanoTime();
+            }
+            chain.doFilter(request, response);
+            response.getWriter().flush();
+        }
+        catch(Throwable exc)
+        {
+            failures[requestNumber] = exc;
+        }
+        latencies[requestNumber] = System.nanoTime() - start;
+        responses[requestNumber] = response;
+    }
+
+    private void awaitStart(CountDownLatch startSignal)
+    {
+        try
+        {
+            startSignal.await();
+        }
+        catch(InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            throw new NestedApplicationException(exc);
+        }
+    }
+
+    /**
+     * Prepares the request before it is executed, e.g. sets parameters
+     * depending on the request number. Called concurrently by the
+     * threads of the {@link ServletLoadDriver}.
+     */
+    public interface RequestPreparer
+    {
+        public void prepare(MockHttpServletRequest request, int requestNumber);
+    }
+
+    private static class LoadThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "ServletLoadDriver-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mockrunner.servlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+/**
+ * The result of a {@link ServletLoadDriver} run. Contains the
+ * elapsed time, the latency of every request, the exceptions thrown
+ * by the servlet or the filters and the responses.
+ */
+public class ServletLoadResult
+{
+    private final int numberRequests;
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+    private final List<Throwable> failures;
+    private final List<MockHttpServletResponse> responses;
+
+    ServletLoadResult(long elapsedNanos, long[] latencies, Throwable[] failures, MockHttpServletResponse[] responses)
+    {
+        this.numberRequests = latencies.length;
+        this.elapsedNanos = elapsedNanos;
+        sortedLatencies = latencies.clone();
+        Arrays.sort(sortedLatencies);
+        this.failures = new ArrayList<Throwable>();
+        for(Throwable failure : failures)
+        {
+            if(null != failure) this.failures.add(failure);
+        }
+        this.responses = Arrays.asList(responses);
+    }
+
+    /**
+     * Returns the number of executed requests.
+     * @return the number of requests
+     */
+    public int getNumberRequests()
+    {
+        return numberRequests;
+    }
+
+    /**
+     * Returns the number of requests that threw an exception.
+     * @return the number of failed requests
+     */
+    public int getNumberFailures()
+    {
+        return failures.size();
+    }
+
+    /**
+     * Returns the exceptions thrown by the failed requests.
+     * @return the list of exceptions
+     */
+    public List<Throwable> getFailures()
+    {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Returns the responses in the order of the request numbers.
+     * @return the list of responses
+     */
+    public List<MockHttpServletResponse> getResponses()
+    {
+        return Collections.unmodifiableList(responses);
+    }
+
+    /**
+     * Returns the time from the start of the first request until
+     * the end of the last request in milliseconds.
+     * @return the elapsed time in milliseconds
+     */
+    public double getElapsedTimeMillis()
+    {
+        return elapsedNanos / 1000000.0;
+    }
+
+    /**
+     * Returns the number of requests per second.
+     * @return the throughput
+     */
+    public double getThroughput()
+    {
+        if(elapsedNanos <= 0) return 0;
+        return numberRequests * 1000000000.0 / elapsedNanos;
+    }
+
+    /**
+     * Returns the mean latency of the requests in microseconds.
+     * @return the mean latency
+     */
+    public double getMeanLatencyMicros()
+    {
+        if(numberRequests == 0) return 0;
+        double sum = 0;
+        for(long latency : sortedLatencies)
+        {
+            sum += latency;
+        }
+        return sum / numberRequests / 1000.0;
+    }
+
+    /**
+     * Returns the maximum latency of the requests in microseconds.
+     * @return the maximum latency
+     */
+    public double getMaximumLatencyMicros()
+    {
+        if(numberRequests == 0) return 0;
+        return sortedLatencies[numberRequests - 1] / 1000.0;
+    }
+
+    /**
+     * Returns the latency in microseconds, that the specified percentage
+     * of the requests did not exceed, e.g. <code>getLatencyPercentileMicros(99)</code>
+     * returns the 99th percentile.
+     * @param percentile the percentile between <code>0</code> and <code>100</code>
+     * @return the latency
+     * @throws IllegalArgumentException if the percentile is not between
+     *         <code>0</code> and <code>100</code>
+     */
+    public double getLatencyPercentileMicros(double percentile)
+    {
+        if(percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        if(numberRequests == 0) return 0;
+        int rank = (int)Math.ceil(percentile / 100.0 * numberRequests);
+        return sortedLatencies[Math.max(0, rank - 1)] / 1000.0;
+    }
+
+    public String toString()
+    {
+        return "requests: " + numberRequests + ", failures: " + getNumberFailures() +
+               ", throughput: " + getThroughput() + "/s, mean latency: " + getMeanLatencyMicros() +
+               "us, 99th percentile: " + getLatencyPercentileMicros(99) + "us";
+    }
+}
@@ -1,5 +1,8 @@
 package com.mockrunner.servlet;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.Filter;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -189,6 +192,45 @@ public class ServletTestModule extends HTMLOutputModule
         this.doChain = doChain;
     }
     
+    /**
+     * Sets the <code>Executor</code> that runs the tasks of the
+     * {@link com.mockrunner.mock.web.MockAsyncContext}. Set an <code>Executor</code>
+     * that runs the tasks in the calling thread, if the asynchronous
+     * processing should be completed when the servlet method returns.
+     * Please note that asynchronous processing must be enabled with
+     * <code>setAsyncSupported(true)</code> on the request.
+     * @param executor the <code>Executor</code>
+     */
+    public void setAsyncExecutor(Executor executor)
+    {
+        mockFactory.getMockRequest().setAsyncExecutor(executor);
+    }
+    
+    /**
+     * Returns if the current servlet or filter started the asynchronous
+     * processing of the request and the processing is not completed.
+     * @return <code>true</code> if the asynchronous processing is started
+     */
+    public boolean isAsyncStarted()
+    {
+        return mockFactory.getMockRequest().isAsyncStarted();
+    }
+    
+    /**
+     * Waits until the asynchronous processing started by the current
+     * servlet or filter is completed. Returns <code>true</code> immediately,
+     * if the asynchronous processing was not started.
+     * @param waitTime the maximum time to wait
+     * @param unit the unit of <code>waitTime</code>
+     * @return <code>true</code> if the processing is completed,
+     *         <code>false</code> if the waiting time elapsed before
+     */
+    public boolean awaitAsyncCompletion(long waitTime, TimeUnit unit)
+    {
+        if(!mockFactory.getMockRequest().isAsyncStarted()) return true;
+        return mockFactory.getMockRequest().getAsyncContext().awaitCompletion(waitTime, unit);
+    }
+    
     /**
      * Loops through the filter chain and calls the current servlets
      * <code>service</code> method at the end (only if a current servlet
@@ -344,6 +386,28 @@ public class ServletTestModule extends HTMLOutputModule
         return mockFactory.getMockFilterChain().getLastResponse();
     }
     
+    /**
+     * Creates a {@link ServletLoadDriver} that executes concurrent requests
+     * against the current servlet and the filters of the filter chain.
+     * If <i>doChain</i> is <code>false</code> (use {@link #setDoChain}),
+     * the filters are not called. The requests share the
+     * <code>MockServletContext</code> of this module.
+     * @return the {@link ServletLoadDriver}
+     */
+    public ServletLoadDriver createLoadDriver()
+    {
+        ServletLoadDriver driver = new ServletLoadDriver(mockFactory);
+        driver.setServlet(servlet);
+        if(doChain)
+        {
+            for(Object filter : mockFactory.getMockFilterChain().getFilters())
+            {
+                driver.addFilter((Filter)filter);
+            }
+        }
+        return driver;
+    }
+    
     /**
      * Returns the servlet output as a string. Flushes the output
      * before returning it.
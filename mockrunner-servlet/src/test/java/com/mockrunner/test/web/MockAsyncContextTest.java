@@ -0,0 +1,286 @@
+package com.mockrunner.test.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.mock.web.MockAsyncContext;
+import com.mockrunner.mock.web.MockAsyncEvent;
+import com.mockrunner.mock.web.MockAsyncListener;
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+import com.mockrunner.mock.web.MockRequestDispatcher;
+import com.mockrunner.mock.web.WebMockObjectFactory;
+
+public class MockAsyncContextTest extends TestCase
+{
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    protected void setUp()
+    {
+        WebMockObjectFactory factory = new WebMockObjectFactory();
+        request = factory.getMockRequest();
+        response = factory.getMockResponse();
+    }
+
+    public void testStartAsyncNotSupported()
+    {
+        try
+        {
+            request.startAsync();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        assertFalse(request.isAsyncStarted());
+        try
+        {
+            request.getAsyncContext();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+    }
+
+    public void testStartAndComplete()
+    {
+        request.setAsyncSupported(true);
+        request.setAsyncExecutor(new CallerRunsExecutor());
+        MockAsyncContext context = request.startAsync();
+        assertSame(context, request.getAsyncContext());
+        assertSame(request, context.getRequest());
+        assertSame(response, context.getResponse());
+        assertTrue(context.hasOriginalRequestAndResponse());
+        assertTrue(request.isAsyncStarted());
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        final List<String> executed = new ArrayList<String>();
+        context.start(new Runnable()
+        {
+            public void run()
+            {
+                executed.add("task");
+            }
+        });
+        assertEquals(1, executed.size());
+        assertFalse(context.isCompleted());
+        context.complete();
+        context.complete();
+        assertTrue(context.isCompleted());
+        assertFalse(request.isAsyncStarted());
+        assertEquals(1, listener.getCompleteEvents().size());
+        assertSame(context, listener.getCompleteEvents().get(0).getAsyncContext());
+        assertTrue(context.awaitCompletion(0, TimeUnit.MILLISECONDS));
+        try
+        {
+            context.start(new Runnable()
+            {
+                public void run()
+                {
+                }
+            });
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+    }
+
+    public void testStartInOtherThread()
+    {
+        request.setAsyncSupported(true);
+        final MockAsyncContext context = request.startAsync();
+        context.start(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    context.getResponse().getOutputStream().print("async");
+                }
+                catch(IOException exc)
+                {
+                    throw new RuntimeException(exc);
+                }
+                context.complete();
+            }
+        });
+        assertTrue(context.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals("async", response.getOutputStreamContent());
+    }
+
+    public void testTaskThrowsException()
+    {
+        request.setAsyncSupported(true);
+        request.setAsyncExecutor(new CallerRunsExecutor());
+        MockAsyncContext context = request.startAsync();
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        final RuntimeException exception = new RuntimeException();
+        context.start(new Runnable()
+        {
+            public void run()
+            {
+                throw exception;
+            }
+        });
+        assertEquals(1, listener.getErrorEvents().size());
+        assertSame(exception, listener.getErrorEvents().get(0).getThrowable());
+        assertEquals(1, listener.getCompleteEvents().size());
+        assertTrue(context.isCompleted());
+    }
+
+    public void testDispatch()
+    {
+        request.setAsyncSupported(true);
+        request.setAsyncExecutor(new CallerRunsExecutor());
+        request.setServletPath("/servlet");
+        request.setPathInfo("/info");
+        MockAsyncContext context = request.startAsync();
+        context.dispatch();
+        assertTrue(context.isCompleted());
+        assertEquals("/servlet/info", context.getDispatchedPath());
+        MockRequestDispatcher dispatcher = (MockRequestDispatcher)request.getRequestDispatcherMap().get("/servlet/info");
+        assertSame(request, dispatcher.getForwardedRequest());
+        assertSame(response, dispatcher.getForwardedResponse());
+        context = request.startAsync();
+        context.dispatch("/other");
+        dispatcher = (MockRequestDispatcher)request.getRequestDispatcherMap().get("/other");
+        assertSame(request, dispatcher.getForwardedRequest());
+        assertEquals("/other", context.getDispatchedPath());
+    }
+
+    public void testTimeout()
+    {
+        request.setAsyncSupported(true);
+        MockAsyncContext context = request.startAsync();
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        context.setTimeout(10);
+        assertTrue(context.awaitCompletion(10, TimeUnit.SECONDS));
+        assertTrue(context.isTimedOut());
+        assertEquals(1, listener.getTimeoutEvents().size());
+        assertEquals(1, listener.getCompleteEvents().size());
+    }
+
+    public void testTimeoutSetAfterNoTimeout()
+    {
+        request.setAsyncSupported(true);
+        MockAsyncContext context = request.startAsync();
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        context.setTimeout(0);
+        assertFalse(context.awaitCompletion(50, TimeUnit.MILLISECONDS));
+        context.setTimeout(10);
+        assertTrue(context.awaitCompletion(10, TimeUnit.SECONDS));
+        assertTrue(context.isTimedOut());
+        assertEquals(1, listener.getTimeoutEvents().size());
+    }
+
+    public void testResetCancelsTimeout() throws Exception
+    {
+        request.setAsyncSupported(true);
+        MockAsyncContext context = request.startAsync();
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        context.setTimeout(10);
+        request.resetAll();
+        assertFalse(context.awaitCompletion(100, TimeUnit.MILLISECONDS));
+        context.setTimeout(10);
+        assertFalse(context.awaitCompletion(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, listener.getTimeoutEvents().size());
+        assertEquals(0, listener.getCompleteEvents().size());
+    }
+
+    public void testStartAsyncAgain()
+    {
+        request.setAsyncSupported(true);
+        MockAsyncContext context = request.startAsync();
+        TestAsyncListener listener = new TestAsyncListener();
+        context.addListener(listener);
+        try
+        {
+            request.startAsync();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        context.complete();
+        MockHttpServletResponse otherResponse = new MockHttpServletResponse();
+        MockAsyncContext newContext = request.startAsync(request, otherResponse);
+        assertNotSame(context, newContext);
+        assertFalse(newContext.hasOriginalRequestAndResponse());
+        assertSame(otherResponse, newContext.getResponse());
+        assertEquals(1, listener.getStartAsyncEvents().size());
+        assertSame(newContext, listener.getStartAsyncEvents().get(0).getAsyncContext());
+        newContext.complete();
+    }
+
+    private static class CallerRunsExecutor implements Executor
+    {
+        public void execute(Runnable task)
+        {
+            task.run();
+        }
+    }
+
+    private static class TestAsyncListener implements MockAsyncListener
+    {
+        private List<MockAsyncEvent> completeEvents = new ArrayList<MockAsyncEvent>();
+        private List<MockAsyncEvent> timeoutEvents = new ArrayList<MockAsyncEvent>();
+        private List<MockAsyncEvent> errorEvents = new ArrayList<MockAsyncEvent>();
+        private List<MockAsyncEvent> startAsyncEvents = new ArrayList<MockAsyncEvent>();
+
+        public synchronized void onComplete(MockAsyncEvent event)
+        {
+            completeEvents.add(event);
+        }
+
+        public synchronized void onTimeout(MockAsyncEvent event)
+        {
+            timeoutEvents.add(event);
+        }
+
+        public synchronized void onError(MockAsyncEvent event)
+        {
+            errorEvents.add(event);
+        }
+
+        public synchronized void onStartAsync(MockAsyncEvent event)
+        {
+            startAsyncEvents.add(event);
+        }
+
+        public synchronized List<MockAsyncEvent> getCompleteEvents()
+        {
+            return completeEvents;
+        }
+
+        public synchronized List<MockAsyncEvent> getTimeoutEvents()
+        {
+            return timeoutEvents;
+        }
+
+        public synchronized List<MockAsyncEvent> getErrorEvents()
+        {
+            return errorEvents;
+        }
+
+        public synchronized List<MockAsyncEvent> getStartAsyncEvents()
+        {
+            return startAsyncEvents;
+        }
+    }
+}
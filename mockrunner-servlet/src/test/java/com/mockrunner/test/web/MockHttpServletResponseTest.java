@@ -1,15 +1,20 @@
 package com.mockrunner.test.web;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
 import junit.framework.TestCase;
 
 import com.mockrunner.mock.web.MockHttpServletResponse;
 import com.mockrunner.mock.web.MockServletOutputStream;
+import com.mockrunner.util.common.StreamUtil;
 
 public class MockHttpServletResponseTest extends TestCase
 {
@@ -170,4 +175,108 @@ public class MockHttpServletResponseTest extends TestCase
         final String encoded2 = response.encodeRedirectUrl("page");
         assertEquals("page", encoded2);
     }
+    
+    public void testLargeOutputStreamContent() throws IOException
+    {
+        byte[] data = new byte[3 * MockServletOutputStream.CHUNK_SIZE + 17];
+        for(int ii = 0; ii < data.length; ii++)
+        {
+            data[ii] = (byte)('a' + (ii % 26));
+        }
+        response.setCommitSimulated(true);
+        response.setBufferSize(data.length);
+        ServletOutputStream stream = response.getOutputStream();
+        stream.write(data, 0, 10);
+        stream.write(data[10]);
+        stream.write(data, 11, data.length - 11);
+        assertFalse(response.isCommitted());
+        assertTrue(Arrays.equals(data, response.getOutputStreamBinaryContent()));
+        String content = response.getOutputStreamContent();
+        assertEquals(new String(data, "ISO-8859-1"), content);
+        assertSame(content, response.getOutputStreamContent());
+        InputStream input = response.getOutputStreamContentAsInputStream();
+        assertTrue(Arrays.equals(data, StreamUtil.getStreamAsByteArray(input)));
+        ByteBuffer[] buffers = response.getOutputStreamContentAsByteBuffers();
+        assertEquals(4, buffers.length);
+        assertEquals(17, buffers[3].remaining());
+        assertTrue(buffers[0].isReadOnly());
+        assertEquals('a', buffers[0].get(0));
+        stream.write('x');
+        assertEquals(content + "x", response.getOutputStreamContent());
+        assertTrue(response.isCommitted());
+        response.resetAll();
+        assertEquals(0, response.getOutputStreamBinaryContent().length);
+        assertEquals(-1, response.getOutputStreamContentAsInputStream().read());
+    }
+    
+    public void testCommitted() throws IOException
+    {
+        response.setCommitSimulated(true);
+        response.setBufferSize(4);
+        response.getOutputStream().print("abc");
+        assertFalse(response.isCommitted());
+        response.resetBuffer();
+        response.getOutputStream().print("abcde");
+        assertTrue(response.isCommitted());
+        try
+        {
+            response.resetBuffer();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        try
+        {
+            response.setBufferSize(100);
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        response.resetAll();
+        response.setCommitSimulated(true);
+        response.getOutputStream().print("a");
+        response.flushBuffer();
+        assertTrue(response.isCommitted());
+        try
+        {
+            response.reset();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+    }
+
+    public void testNotCommittedByDefault() throws IOException
+    {
+        response.getOutputStream().write(new byte[20000]);
+        response.flushBuffer();
+        assertFalse(response.isCommitted());
+        response.resetBuffer();
+        assertEquals(0, response.getOutputStreamBinaryContent().length);
+        response.getWriter().print("abc");
+        response.reset();
+        response.setBufferSize(100);
+        assertEquals(100, response.getBufferSize());
+    }
+
+    public void testContentViewsAfterClear() throws IOException
+    {
+        response.getOutputStream().print("abc");
+        ByteBuffer[] buffers = response.getOutputStreamContentAsByteBuffers();
+        InputStream input = response.getOutputStreamContentAsInputStream();
+        response.resetBuffer();
+        MockHttpServletResponse otherResponse = new MockHttpServletResponse();
+        otherResponse.getOutputStream().print("xyz");
+        response.getOutputStream().print("123");
+        assertEquals('a', buffers[0].get(0));
+        assertEquals("abc", new String(StreamUtil.getStreamAsByteArray(input), "ISO-8859-1"));
+        assertEquals("123", response.getOutputStreamContent());
+        assertEquals("xyz", otherResponse.getOutputStreamContent());
+    }
 }
@@ -3,6 +3,7 @@ package com.mockrunner.test.web;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpSessionAttributeListener;
@@ -207,6 +208,60 @@ public class MockHttpSessionTest extends TestCase
         assertFalse(enumeration.hasMoreElements());
     }
     
+    public void testConcurrentAttributes() throws Exception
+    {
+        final AtomicInteger addedCalls = new AtomicInteger();
+        session.addAttributeListener(new HttpSessionAttributeListener()
+        {
+            public void attributeAdded(HttpSessionBindingEvent event)
+            {
+                addedCalls.incrementAndGet();
+            }
+
+            public void attributeRemoved(HttpSessionBindingEvent event)
+            {
+            }
+
+            public void attributeReplaced(HttpSessionBindingEvent event)
+            {
+            }
+        });
+        Thread[] threads = new Thread[4];
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            final int threadNumber = ii;
+            threads[ii] = new Thread()
+            {
+                public void run()
+                {
+                    for(int jj = 0; jj < 1000; jj++)
+                    {
+                        session.setAttribute("key" + threadNumber + "_" + jj, "value");
+                        session.getAttribute("key" + jj);
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(4000, addedCalls.get());
+        assertEquals(4000, session.getValueNames().length);
+        assertEquals("value", session.getAttribute("key3_999"));
+        assertNull(session.getAttribute(null));
+        try
+        {
+            session.setAttribute(null, "value");
+            fail();
+        }
+        catch(IllegalArgumentException exc)
+        {
+            //should throw exception
+        }
+    }
+    
     private static class TestSessionListener implements HttpSessionBindingListener
     {
         private boolean valueBoundCalled = false;
@@ -0,0 +1,314 @@
+package com.mockrunner.test.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+import com.mockrunner.mock.web.MockNonBlockingIOLoop;
+import com.mockrunner.mock.web.MockReadListener;
+import com.mockrunner.mock.web.MockServletInputStream;
+import com.mockrunner.mock.web.MockServletOutputStream;
+import com.mockrunner.mock.web.MockWriteListener;
+
+public class MockNonBlockingIOTest extends TestCase
+{
+    private byte[] createData(int length)
+    {
+        byte[] data = new byte[length];
+        for(int ii = 0; ii < data.length; ii++)
+        {
+            data[ii] = (byte)ii;
+        }
+        return data;
+    }
+
+    public void testBlockingReadIgnoresChunks() throws Exception
+    {
+        MockServletInputStream stream = new MockServletInputStream(createData(10));
+        stream.setChunkSize(3);
+        assertTrue(stream.isReady());
+        assertEquals(10, stream.available());
+        byte[] buffer = new byte[20];
+        assertEquals(10, stream.read(buffer));
+        assertEquals(-1, stream.read());
+        assertTrue(stream.isFinished());
+    }
+
+    public void testReadInChunks() throws Exception
+    {
+        byte[] data = createData(10);
+        final MockServletInputStream stream = new MockServletInputStream(data);
+        stream.setChunkSizes(3, 0, 3);
+        stream.setChunkSize(2);
+        TestReadListener listener = new TestReadListener(stream);
+        stream.setReadListener(listener);
+        assertFalse(stream.isReady());
+        try
+        {
+            stream.read();
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        MockNonBlockingIOLoop loop = stream.getEventLoop();
+        assertTrue(loop.step());
+        assertEquals(1, listener.getDataAvailableCalls());
+        assertEquals(3, listener.getData().length);
+        assertTrue(loop.step());
+        assertEquals(1, listener.getDataAvailableCalls());
+        assertTrue(loop.step());
+        assertEquals(2, listener.getDataAvailableCalls());
+        assertEquals(6, listener.getData().length);
+        assertFalse(listener.wasAllDataReadCalled());
+        assertEquals(2, loop.run(100));
+        assertTrue(loop.isIdle());
+        assertEquals(4, listener.getDataAvailableCalls());
+        assertTrue(listener.wasAllDataReadCalled());
+        assertTrue(stream.isFinished());
+        assertTrue(stream.isReady());
+        assertTrue(Arrays.equals(data, listener.getData()));
+        assertNull(listener.getError());
+    }
+
+    public void testEmptyBody() throws Exception
+    {
+        MockServletInputStream stream = new MockServletInputStream(new byte[0]);
+        TestReadListener listener = new TestReadListener(stream);
+        stream.setReadListener(listener);
+        assertFalse(stream.getEventLoop().step());
+        assertEquals(0, listener.getDataAvailableCalls());
+        assertTrue(listener.wasAllDataReadCalled());
+    }
+
+    public void testReadError() throws Exception
+    {
+        MockServletInputStream stream = new MockServletInputStream(createData(10));
+        stream.setChunkSize(4);
+        TestReadListener listener = new TestReadListener(stream);
+        stream.setReadListener(listener);
+        try
+        {
+            stream.setReadListener(listener);
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        assertTrue(stream.getEventLoop().step());
+        IOException error = new IOException("client aborted");
+        stream.simulateError(error);
+        assertFalse(stream.getEventLoop().step());
+        assertSame(error, listener.getError());
+        assertFalse(listener.wasAllDataReadCalled());
+        stream = new MockServletInputStream(createData(10));
+        listener = new TestReadListener(stream);
+        listener.setException(new IOException("listener failed"));
+        stream.setReadListener(listener);
+        assertFalse(stream.getEventLoop().step());
+        assertEquals("listener failed", listener.getError().getMessage());
+    }
+
+    public void testWriteWithBackPressure() throws Exception
+    {
+        MockServletOutputStream stream = new MockServletOutputStream();
+        stream.setWriteCapacities(4, 0, 0);
+        stream.setWriteCapacity(4);
+        byte[] data = createData(10);
+        TestWriteListener listener = new TestWriteListener(stream, data, 3);
+        stream.setWriteListener(listener);
+        assertTrue(stream.isReady());
+        MockNonBlockingIOLoop loop = stream.getEventLoop();
+        assertTrue(loop.step());
+        assertEquals(1, listener.getWritePossibleCalls());
+        assertEquals(6, stream.getContentLength());
+        assertEquals(2, stream.getPendingLength());
+        assertFalse(stream.isReady());
+        try
+        {
+            stream.write(1);
+            fail();
+        }
+        catch(IllegalStateException exc)
+        {
+            //should throw exception
+        }
+        assertTrue(loop.step());
+        assertTrue(loop.step());
+        assertEquals(1, listener.getWritePossibleCalls());
+        assertEquals(2, stream.getPendingLength());
+        loop.run(100);
+        assertTrue(loop.isIdle());
+        assertTrue(listener.getWritePossibleCalls() > 1);
+        assertEquals(0, stream.getPendingLength());
+        assertTrue(stream.isReady());
+        assertTrue(Arrays.equals(data, stream.getBinaryContent()));
+    }
+
+    public void testWriteError() throws Exception
+    {
+        MockServletOutputStream stream = new MockServletOutputStream();
+        stream.setWriteCapacity(0);
+        TestWriteListener listener = new TestWriteListener(stream, createData(10), 10);
+        stream.setWriteListener(listener);
+        assertTrue(stream.getEventLoop().step());
+        assertTrue(stream.getEventLoop().step());
+        IOException error = new IOException("connection closed");
+        stream.simulateError(error);
+        assertFalse(stream.getEventLoop().step());
+        assertSame(error, listener.getError());
+    }
+
+    public void testSharedLoop() throws Exception
+    {
+        MockNonBlockingIOLoop loop = new MockNonBlockingIOLoop();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setEventLoop(loop);
+        response.setEventLoop(loop);
+        request.setBodyContent(createData(20));
+        final MockServletInputStream input = (MockServletInputStream)request.getInputStream();
+        final MockServletOutputStream output = (MockServletOutputStream)response.getOutputStream();
+        assertSame(loop, input.getEventLoop());
+        assertSame(loop, output.getEventLoop());
+        input.setChunkSize(5);
+        output.setWriteCapacity(3);
+        input.setReadListener(new MockReadListener()
+        {
+            public void onDataAvailable() throws IOException
+            {
+                while(input.isReady() && !input.isFinished())
+                {
+                    input.read();
+                }
+            }
+
+            public void onAllDataRead() throws IOException
+            {
+                output.setWriteListener(new TestWriteListener(output, createData(7), 7));
+            }
+
+            public void onError(Throwable throwable)
+            {
+            }
+        });
+        int steps = loop.run(100);
+        assertTrue(loop.isIdle());
+        assertTrue(input.isFinished());
+        assertEquals(7, output.getContentLength());
+        assertEquals(0, output.getPendingLength());
+        assertTrue(steps > 4 && steps < 100);
+        assertEquals(steps, loop.getStepCount());
+    }
+
+    private static class TestReadListener implements MockReadListener
+    {
+        private MockServletInputStream stream;
+        private ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int dataAvailableCalls;
+        private boolean allDataReadCalled;
+        private Throwable error;
+        private IOException exception;
+
+        public TestReadListener(MockServletInputStream stream)
+        {
+            this.stream = stream;
+        }
+
+        public void setException(IOException exception)
+        {
+            this.exception = exception;
+        }
+
+        public void onDataAvailable() throws IOException
+        {
+            dataAvailableCalls++;
+            if(null != exception) throw exception;
+            byte[] buffer = new byte[2];
+            while(stream.isReady() && !stream.isFinished())
+            {
+                int count = stream.read(buffer);
+                data.write(buffer, 0, count);
+            }
+        }
+
+        public void onAllDataRead()
+        {
+            allDataReadCalled = true;
+        }
+
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+        }
+
+        public int getDataAvailableCalls()
+        {
+            return dataAvailableCalls;
+        }
+
+        public boolean wasAllDataReadCalled()
+        {
+            return allDataReadCalled;
+        }
+
+        public byte[] getData()
+        {
+            return data.toByteArray();
+        }
+
+        public Throwable getError()
+        {
+            return error;
+        }
+    }
+
+    private static class TestWriteListener implements MockWriteListener
+    {
+        private MockServletOutputStream stream;
+        private byte[] data;
+        private int writeSize;
+        private int position;
+        private int writePossibleCalls;
+        private Throwable error;
+
+        public TestWriteListener(MockServletOutputStream stream, byte[] data, int writeSize)
+        {
+            this.stream = stream;
+            this.data = data;
+            this.writeSize = writeSize;
+        }
+
+        public void onWritePossible() throws IOException
+        {
+            writePossibleCalls++;
+            while(position < data.length && stream.isReady())
+            {
+                int count = Math.min(writeSize, data.length - position);
+                stream.write(data, position, count);
+                position += count;
+            }
+        }
+
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+        }
+
+        public int getWritePossibleCalls()
+        {
+            return writePossibleCalls;
+        }
+
+        public Throwable getError()
+        {
+            return error;
+        }
+    }
+}
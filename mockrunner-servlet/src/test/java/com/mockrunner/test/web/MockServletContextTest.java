@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContextAttributeEvent;
@@ -406,4 +407,57 @@ public class MockServletContextTest extends TestCase
 
         }
     }
+
+    public void testConcurrentAttributes() throws Exception
+    {
+        final AtomicInteger addedCalls = new AtomicInteger();
+        context.addAttributeListener(new ServletContextAttributeListener()
+        {
+            public void attributeAdded(ServletContextAttributeEvent event)
+            {
+                addedCalls.incrementAndGet();
+            }
+
+            public void attributeRemoved(ServletContextAttributeEvent event)
+            {
+            }
+
+            public void attributeReplaced(ServletContextAttributeEvent event)
+            {
+            }
+        });
+        Thread[] threads = new Thread[4];
+        for(int ii = 0; ii < threads.length; ii++)
+        {
+            final int threadNumber = ii;
+            threads[ii] = new Thread()
+            {
+                public void run()
+                {
+                    for(int jj = 0; jj < 1000; jj++)
+                    {
+                        context.setAttribute("key" + threadNumber + "_" + jj, "value");
+                        context.getAttribute("key" + jj);
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(4000, addedCalls.get());
+        assertEquals("value", context.getAttribute("key3_999"));
+        assertNull(context.getAttribute(null));
+        try
+        {
+            context.setAttribute(null, "value");
+            fail();
+        }
+        catch(IllegalArgumentException exc)
+        {
+            //should throw exception
+        }
+    }
 }